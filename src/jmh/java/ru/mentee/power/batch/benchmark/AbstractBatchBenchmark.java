@@ -0,0 +1,86 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.batch.benchmark.BenchmarkData.RowWidth;
+import ru.mentee.power.batch.interfaces.BatchProcessor;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.model.Product;
+
+/**
+ * Общая часть бенчмарков процессоров: сетка параметров (операция, число строк, ширина строки),
+ * контейнер PostgreSQL на trial и подготовка таблицы перед каждым вызовом.
+ * Подготовка выполняется в fixture уровня Invocation и не входит в измерение.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public abstract class AbstractBatchBenchmark {
+    @Param({"INSERT", "UPDATE", "UPSERT", "DELETE"})
+    public BatchOperation operation;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"NARROW", "WIDE"})
+    public RowWidth width;
+
+    protected BenchmarkDatabase database;
+    private List<Product> products;
+    private List<?> records;
+
+    @Setup(Level.Trial)
+    public void startDatabase() throws Exception {
+        database = new BenchmarkDatabase();
+        database.start();
+        products = BenchmarkData.products(rows, width);
+        onStart();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareTable() throws SQLException {
+        records = database.prepare(products, operation);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws SQLException {
+        onStop();
+        database.close();
+    }
+
+    /** Создать процессоры, которым нужен запущенный контейнер. */
+    protected void onStart() throws Exception {}
+
+    /** Освободить ресурсы процессоров до остановки контейнера. */
+    protected void onStop() {}
+
+    @SuppressWarnings("unchecked")
+    protected void run(BatchProcessor processor, RowCounter counter) throws SQLException {
+        BatchResult result =
+                switch (operation) {
+                    case INSERT -> processor.insert(records);
+                    case UPDATE -> processor.update(records);
+                    case DELETE -> processor.delete((List<Long>) records);
+                    case UPSERT -> processor.upsert(records);
+                };
+        counter.rows += result.getSuccessfulRecords();
+    }
+}
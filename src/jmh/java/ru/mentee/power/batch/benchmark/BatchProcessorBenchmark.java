@@ -0,0 +1,64 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.benchmark;
+
+import java.sql.SQLException;
+import org.openjdk.jmh.annotations.Benchmark;
+import ru.mentee.power.batch.impl.AdaptiveBatchProcessor;
+import ru.mentee.power.batch.impl.BasicBatchProcessor;
+import ru.mentee.power.batch.impl.BatchSizeRegistry;
+import ru.mentee.power.batch.impl.MappedBatchProcessor;
+import ru.mentee.power.batch.impl.OptimizedBatchProcessor;
+import ru.mentee.power.batch.impl.PostgresCopyProcessor;
+import ru.mentee.power.batch.impl.RowBinderGenerator;
+import ru.mentee.power.batch.interfaces.RowBinder;
+import ru.mentee.power.batch.model.CopyFormat;
+import ru.mentee.power.model.Product;
+
+/**
+ * Однопоточные процессоры на одном соединении.
+ * Запуск: ./gradlew jmh -PjmhIncludes=BatchProcessorBenchmark -PjmhRows=1000,100000
+ */
+public class BatchProcessorBenchmark extends AbstractBatchBenchmark {
+    // Общий на trial: адаптивный процессор стартует с размера, выученного прошлыми вызовами
+    private BatchSizeRegistry registry;
+    // Сгенерированный по метаданным binder: сравнение с рукописным кодом basic
+    private RowBinder<Product> productBinder;
+
+    @Override
+    protected void onStart() throws SQLException {
+        registry = new BatchSizeRegistry();
+        productBinder =
+                RowBinderGenerator.forEntity(
+                        database.getConnection(), "mentee_power.products", Product.class, "sku");
+    }
+
+    @Benchmark
+    public void basic(RowCounter counter) throws SQLException {
+        run(new BasicBatchProcessor(database.getConnection()), counter);
+    }
+
+    @Benchmark
+    public void mapped(RowCounter counter) throws SQLException {
+        run(new MappedBatchProcessor<>(database.getConnection(), productBinder), counter);
+    }
+
+    @Benchmark
+    public void optimized(RowCounter counter) throws SQLException {
+        run(new OptimizedBatchProcessor(database.getConnection()), counter);
+    }
+
+    @Benchmark
+    public void copyCsv(RowCounter counter) throws SQLException {
+        run(new PostgresCopyProcessor(database.getConnection(), CopyFormat.CSV), counter);
+    }
+
+    @Benchmark
+    public void copyBinary(RowCounter counter) throws SQLException {
+        run(new PostgresCopyProcessor(database.getConnection(), CopyFormat.BINARY), counter);
+    }
+
+    @Benchmark
+    public void adaptive(RowCounter counter) throws SQLException {
+        run(new AdaptiveBatchProcessor(database.getConnection(), 1000, registry), counter);
+    }
+}
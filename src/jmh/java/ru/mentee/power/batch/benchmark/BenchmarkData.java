@@ -0,0 +1,43 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import ru.mentee.power.model.Product;
+
+/**
+ * Генерация продуктов заданной ширины строки для бенчмарков.
+ */
+public final class BenchmarkData {
+
+    /** Ширина строки: длина description определяет объем данных на запись. */
+    public enum RowWidth {
+        NARROW(16),
+        WIDE(1024);
+
+        private final int descriptionLength;
+
+        RowWidth(int descriptionLength) {
+            this.descriptionLength = descriptionLength;
+        }
+    }
+
+    private BenchmarkData() {}
+
+    public static List<Product> products(int count, RowWidth width) {
+        String description = "d".repeat(width.descriptionLength);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(
+                    Product.builder()
+                            .sku("BENCH-SKU-" + i)
+                            .name("Benchmark Product " + i)
+                            .description(description)
+                            .price(BigDecimal.valueOf(100 + i % 1000, 2))
+                            .categoryId(1L)
+                            .build());
+        }
+        return products;
+    }
+}
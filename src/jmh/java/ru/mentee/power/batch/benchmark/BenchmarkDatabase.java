@@ -0,0 +1,147 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ru.mentee.power.batch.impl.PostgresCopyProcessor;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.CopyFormat;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.connection.impl.HikariConnectionPoolManager;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+import ru.mentee.power.model.Product;
+
+/**
+ * Одноразовая PostgreSQL для бенчмарков: контейнер, миграции, соединение и пул,
+ * а также подготовка таблицы products перед каждым вызовом.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private static final String CHANGELOG = "db/migrations_161/changelog.yaml";
+    private static final String SELECT_IDS = "SELECT id FROM mentee_power.products ORDER BY id";
+
+    private final PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15-alpine")
+                    .withDatabaseName("postgres")
+                    .withUsername("postgres")
+                    .withPassword("postgres");
+
+    private Connection connection;
+    private ConnectionPoolManager pool;
+
+    public void start() throws Exception {
+        postgres.start();
+
+        try (Connection liquibaseConn = openConnection()) {
+            JdbcConnection jdbcConnection = new JdbcConnection(liquibaseConn);
+            Database database =
+                    DatabaseFactory.getInstance().findCorrectDatabaseImplementation(jdbcConnection);
+            try (Liquibase liquibase =
+                    new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database)) {
+                liquibase.update("dev,test");
+            }
+        }
+
+        connection = openConnection();
+        pool = new HikariConnectionPoolManager(createPoolConfig());
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public ConnectionPoolManager getPool() {
+        return pool;
+    }
+
+    /**
+     * Подготовить таблицу к операции: для INSERT - пустая таблица, для остальных операций
+     * таблица заполняется записями, а им проставляются id из БД.
+     *
+     * @return записи для вызова: продукты или идентификаторы для DELETE
+     */
+    public List<?> prepare(List<Product> products, BatchOperation operation) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("TRUNCATE mentee_power.products RESTART IDENTITY CASCADE");
+        }
+        if (operation == BatchOperation.INSERT) {
+            return products;
+        }
+
+        new PostgresCopyProcessor(connection, CopyFormat.BINARY).loadWithCopy(products);
+        // COPY вставляет в порядке входа, поэтому id из последовательности идут в том же порядке
+        List<Long> ids = new ArrayList<>(products.size());
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(SELECT_IDS)) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+
+        if (operation == BatchOperation.DELETE) {
+            return ids;
+        }
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            product.setId(ids.get(i));
+            product.setPrice(product.getPrice().add(BigDecimal.ONE));
+        }
+        return products;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        postgres.stop();
+    }
+
+    private Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(
+                postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    }
+
+    private ApplicationConfig createPoolConfig() throws Exception {
+        Properties props = new Properties();
+        String jdbc = postgres.getJdbcUrl();
+        String sep = jdbc.contains("?") ? "&" : "?";
+        String urlWithCreds =
+                jdbc
+                        + sep
+                        + "user="
+                        + postgres.getUsername()
+                        + "&password="
+                        + postgres.getPassword()
+                        + "&currentSchema=mentee_power";
+
+        props.setProperty("db.url", urlWithCreds);
+        props.setProperty("db.username", postgres.getUsername());
+        props.setProperty("db.driver", "org.postgresql.Driver");
+        props.setProperty("db.show-sql", "false");
+        System.setProperty("db.password", postgres.getPassword());
+
+        return new ApplicationConfig(props, new ConfigFilePath()) {
+            @Override
+            public void load(String path) {
+                /* конфигурация задана свойствами выше */
+            }
+        };
+    }
+}
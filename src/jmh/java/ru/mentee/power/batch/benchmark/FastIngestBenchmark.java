@@ -0,0 +1,104 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.batch.benchmark.BenchmarkData.RowWidth;
+import ru.mentee.power.batch.impl.FastIngestLoader;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.IngestOptions;
+import ru.mentee.power.model.Product;
+
+/**
+ * Цена надежности при загрузке: одна и та же COPY загрузка с полной надежностью
+ * и с ослабленными гарантиями. Выигрыш зависит от скорости fsync диска контейнера.
+ * Запуск: ./gradlew jmh -PjmhIncludes=FastIngestBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class FastIngestBenchmark {
+    private static final String REBUILD_TABLE = "mentee_power.products_snapshot";
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"NARROW", "WIDE"})
+    public RowWidth width;
+
+    private BenchmarkDatabase database;
+    private List<Product> products;
+
+    @Setup(Level.Trial)
+    public void startDatabase() throws Exception {
+        database = new BenchmarkDatabase();
+        database.start();
+        products = BenchmarkData.products(rows, width);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareTable() throws SQLException {
+        database.prepare(products, BatchOperation.INSERT);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws SQLException {
+        database.close();
+    }
+
+    /** Базовая линия: синхронный коммит на каждые 1000 строк. */
+    @Benchmark
+    public void durable(RowCounter counter) throws SQLException {
+        count(loader().insert(products, IngestOptions.durable()), counter);
+    }
+
+    @Benchmark
+    public void asyncCommit(RowCounter counter) throws SQLException {
+        IngestOptions options = IngestOptions.builder().synchronousCommit(false).build();
+        count(loader().insert(products, options), counter);
+    }
+
+    @Benchmark
+    public void largeChunks(RowCounter counter) throws SQLException {
+        IngestOptions options = IngestOptions.builder().commitChunkSize(50_000).build();
+        count(loader().insert(products, options), counter);
+    }
+
+    @Benchmark
+    public void durableRebuild(RowCounter counter) throws SQLException {
+        IngestOptions options = IngestOptions.builder().commitChunkSize(50_000).build();
+        count(loader().rebuild(REBUILD_TABLE, products, options), counter);
+    }
+
+    /** Асинхронный коммит, большие chunk и UNLOGGED таблица загрузки. */
+    @Benchmark
+    public void relaxedRebuild(RowCounter counter) throws SQLException {
+        count(loader().rebuild(REBUILD_TABLE, products, IngestOptions.relaxed()), counter);
+    }
+
+    private FastIngestLoader loader() {
+        return new FastIngestLoader(database.getConnection());
+    }
+
+    private void count(BatchResult result, RowCounter counter) {
+        counter.rows += result.getSuccessfulRecords();
+    }
+}
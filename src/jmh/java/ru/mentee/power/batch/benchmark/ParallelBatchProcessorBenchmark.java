@@ -0,0 +1,41 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.benchmark;
+
+import java.sql.SQLException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import ru.mentee.power.batch.impl.ParallelBatchProcessor;
+import ru.mentee.power.batch.impl.PipelinedBatchProcessor;
+
+/**
+ * Многопоточные процессоры на пуле соединений по уровням параллелизма.
+ * Для пула соединений parallelism - число воркеров, для конвейера - число отправителей.
+ */
+public class ParallelBatchProcessorBenchmark extends AbstractBatchBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ParallelBatchProcessor parallelProcessor;
+    private PipelinedBatchProcessor pipelinedProcessor;
+
+    @Override
+    protected void onStart() {
+        parallelProcessor = new ParallelBatchProcessor(database.getPool(), parallelism);
+        pipelinedProcessor = new PipelinedBatchProcessor(database.getPool(), parallelism);
+    }
+
+    @Override
+    protected void onStop() {
+        parallelProcessor.shutdown();
+    }
+
+    @Benchmark
+    public void parallel(RowCounter counter) throws SQLException {
+        run(parallelProcessor, counter);
+    }
+
+    @Benchmark
+    public void pipelined(RowCounter counter) throws SQLException {
+        run(pipelinedProcessor, counter);
+    }
+}
@@ -5,68 +5,111 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import ru.mentee.power.batch.interfaces.BatchProcessor;
 import ru.mentee.power.batch.model.BatchMetrics;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.BatchSizeAdjustment;
 import ru.mentee.power.batch.model.DetailedBatchResult;
+import ru.mentee.power.batch.model.ExecutionStrategy;
 
 /**
  * Адаптивный batch процессор с автоматической оптимизацией размера batch.
+ * Размер подбирает {@link AimdBatchSizeController} в пределах потолка latency одного batch,
+ * а лучший найденный размер сохраняется в {@link BatchSizeRegistry} по паре
+ * (таблица, операция) и становится стартовым для следующего запуска.
  */
 @Slf4j
 public class AdaptiveBatchProcessor implements BatchProcessor {
-    private int currentBatchSize = 100;
+    private static final int INITIAL_BATCH_SIZE = 100;
+    private static final int ADDITIVE_STEP = 100;
+    private static final long DEFAULT_LATENCY_CEILING_MS = 1000;
+
+    private int currentBatchSize = INITIAL_BATCH_SIZE;
     private final int minBatchSize = 10;
     private final int maxBatchSize = 10000;
+    private final long latencyCeilingMs;
     private final Connection connection;
+    private final BatchSizeRegistry registry;
     private final List<BatchMetrics> metrics = new ArrayList<>();
 
     public AdaptiveBatchProcessor(Connection connection) {
+        this(connection, DEFAULT_LATENCY_CEILING_MS);
+    }
+
+    public AdaptiveBatchProcessor(Connection connection, long latencyCeilingMs) {
+        this(connection, latencyCeilingMs, BatchSizeRegistry.shared());
+    }
+
+    public AdaptiveBatchProcessor(
+            Connection connection, long latencyCeilingMs, BatchSizeRegistry registry) {
         this.connection = connection;
+        this.latencyCeilingMs = latencyCeilingMs;
+        this.registry = registry;
     }
 
     @Override
     public <T> BatchResult insert(List<T> records) throws SQLException {
-        return processWithAdaptiveBatch(records);
+        return processWithAdaptiveBatch(records, BatchOperation.INSERT);
     }
 
     @Override
     public <T> BatchResult update(List<T> records) throws SQLException {
-        BasicBatchProcessor basicProcessor = new BasicBatchProcessor(connection);
-        return basicProcessor.update(records);
+        return processWithAdaptiveBatch(records, BatchOperation.UPDATE);
     }
 
     @Override
     public BatchResult delete(List<Long> ids) throws SQLException {
-        BasicBatchProcessor basicProcessor = new BasicBatchProcessor(connection);
-        return basicProcessor.delete(ids);
+        return processWithAdaptiveBatch(ids, BatchOperation.DELETE);
     }
 
     @Override
     public <T> BatchResult upsert(List<T> records) throws SQLException {
-        return processWithAdaptiveBatch(records);
+        return processWithAdaptiveBatch(records, BatchOperation.UPSERT);
     }
 
     @Override
     public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
             throws SQLException {
         ResilientBatchProcessor resilientProcessor = new ResilientBatchProcessor(connection);
-        return resilientProcessor.insertWithErrorHandling(records, operation);
+        return resilientProcessor.insertWithBisection(records, operation);
     }
 
     /**
      * Автоматически подбирает оптимальный размер batch.
      */
     public <T> BatchResult processWithAdaptiveBatch(List<T> records) throws SQLException {
+        return processWithAdaptiveBatch(records, BatchOperation.INSERT);
+    }
+
+    /**
+     * Выполнить операцию batch'ами, размер которых подбирается по ходу выполнения.
+     * Стартовый размер берется из реестра выученных размеров для (таблица, операция).
+     */
+    public <T> BatchResult processWithAdaptiveBatch(List<T> records, BatchOperation operation)
+            throws SQLException {
         metrics.clear();
         int processed = 0;
         int totalSuccessful = 0;
         int totalFailed = 0;
         long totalTime = 0;
 
+        AimdBatchSizeController controller =
+                new AimdBatchSizeController(
+                        registry.getOrDefault(
+                                PostgresCopyProcessor.PRODUCTS_TABLE,
+                                operation,
+                                INITIAL_BATCH_SIZE),
+                        minBatchSize,
+                        maxBatchSize,
+                        ADDITIVE_STEP,
+                        TimeUnit.MILLISECONDS.toNanos(latencyCeilingMs));
+        currentBatchSize = controller.getBatchSize();
+        int learnedBatchSize = currentBatchSize;
+
         BasicBatchProcessor processor = new BasicBatchProcessor(connection);
 
         while (processed < records.size()) {
@@ -74,31 +117,47 @@ public class AdaptiveBatchProcessor implements BatchProcessor {
             List<T> batch = records.subList(processed, batchEnd);
 
             long startTime = System.nanoTime();
-            BatchResult result = processor.insert(batch);
+            BatchResult result = execute(processor, batch, operation);
             long duration = System.nanoTime() - startTime;
 
             totalSuccessful += result.getSuccessfulRecords();
             totalFailed += result.getFailedRecords();
             totalTime += TimeUnit.NANOSECONDS.toMillis(duration);
 
+            BatchSizeAdjustment adjustment = controller.onBatchCompleted(batch.size(), duration);
+            currentBatchSize = controller.getBatchSize();
+            if (controller.getBestBatchSize() > 0) {
+                learnedBatchSize = controller.getBestBatchSize();
+            }
+
             BatchMetrics metric =
                     BatchMetrics.builder()
                             .batchSize(batch.size())
                             .executionTimeNanos(duration)
                             .throughput(calculateNanoThroughput(batch.size(), duration))
+                            .strategy(ExecutionStrategy.SEQUENTIAL)
+                            .parallelism(1)
+                            .smoothedThroughput(controller.getSmoothedThroughput())
+                            .sizeAdjustment(adjustment)
+                            .nextBatchSize(currentBatchSize)
+                            .learnedBatchSize(learnedBatchSize)
                             .build();
 
             metrics.add(metric);
 
-            adaptBatchSize(metric);
-
             processed = batchEnd;
 
             log.debug(
-                    "Обработан batch размером {} за {} мс, throughput: {} rec/s",
+                    "Обработан batch размером {} за {} мс, throughput: {} rec/s, {} -> {}",
                     batch.size(),
                     TimeUnit.NANOSECONDS.toMillis(duration),
-                    metric.getThroughput());
+                    metric.getThroughput(),
+                    adjustment,
+                    currentBatchSize);
+        }
+
+        if (controller.getBestBatchSize() > 0) {
+            registry.put(PostgresCopyProcessor.PRODUCTS_TABLE, operation, learnedBatchSize);
         }
 
         return BatchResult.builder()
@@ -110,16 +169,16 @@ public class AdaptiveBatchProcessor implements BatchProcessor {
                 .build();
     }
 
-    private void adaptBatchSize(BatchMetrics lastMetric) {
-        if (metrics.size() >= 2) {
-            BatchMetrics previous = metrics.get(metrics.size() - 2);
-
-            if (lastMetric.getThroughput() > previous.getThroughput() * 1.1) {
-                currentBatchSize = Math.min(currentBatchSize * 2, maxBatchSize);
-            } else if (lastMetric.getThroughput() < previous.getThroughput() * 0.9) {
-                currentBatchSize = Math.max(currentBatchSize / 2, minBatchSize);
-            }
-        }
+    @SuppressWarnings("unchecked")
+    private <T> BatchResult execute(
+            BasicBatchProcessor processor, List<T> batch, BatchOperation operation)
+            throws SQLException {
+        return switch (operation) {
+            case INSERT -> processor.insert(batch);
+            case UPDATE -> processor.update(batch);
+            case DELETE -> processor.delete((List<Long>) batch);
+            case UPSERT -> processor.upsert(batch);
+        };
     }
 
     private double calculateNanoThroughput(int records, long timeNanos) {
@@ -132,10 +191,21 @@ public class AdaptiveBatchProcessor implements BatchProcessor {
         return (records * 1000.0) / timeMs;
     }
 
+    /**
+     * История последнего запуска: размер, throughput и решение контроллера по каждому batch.
+     * learnedBatchSize последней записи - размер, сохраненный в реестр.
+     */
     public List<BatchMetrics> getMetrics() {
         return new ArrayList<>(metrics);
     }
 
+    /**
+     * Выученные размеры batch всех пар (таблица, операция) из реестра процессора.
+     */
+    public Map<String, Integer> getLearnedBatchSizes() {
+        return registry.snapshot();
+    }
+
     public int getCurrentBatchSize() {
         return currentBatchSize;
     }
@@ -0,0 +1,103 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import ru.mentee.power.batch.model.BatchSizeAdjustment;
+
+/**
+ * Контроллер размера batch: AIMD с восхождением по сглаженному throughput.
+ * Throughput сглаживается EWMA, поэтому единичный медленный batch на шумной сети не
+ * разворачивает направление. Пока сглаженный throughput не падает больше допуска, размер
+ * растет на постоянный шаг; при падении направление меняется. Batch дольше потолка latency
+ * держит блокировки слишком долго для остальных клиентов, поэтому размер сразу
+ * уменьшается вдвое.
+ */
+public class AimdBatchSizeController {
+    private static final double SMOOTHING = 0.3;
+    private static final double TOLERANCE = 0.05;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int additiveStep;
+    private final long latencyCeilingNanos;
+
+    private int batchSize;
+    private int direction = 1;
+    private double smoothedThroughput;
+    private double bestThroughput;
+    private int bestBatchSize;
+
+    public AimdBatchSizeController(
+            int initialBatchSize,
+            int minBatchSize,
+            int maxBatchSize,
+            int additiveStep,
+            long latencyCeilingNanos) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.additiveStep = additiveStep;
+        this.latencyCeilingNanos = latencyCeilingNanos;
+        this.batchSize = clamp(initialBatchSize);
+    }
+
+    /**
+     * Учесть выполненный batch и выбрать размер следующего.
+     * Неполный последний batch не влияет на направление и лучший размер.
+     */
+    public BatchSizeAdjustment onBatchCompleted(int size, long durationNanos) {
+        if (durationNanos > latencyCeilingNanos) {
+            int previousSize = batchSize;
+            batchSize = clamp((int) (batchSize * DECREASE_FACTOR));
+            // После сброса снова пробуем расти аддитивно
+            direction = 1;
+            return batchSize < previousSize
+                    ? BatchSizeAdjustment.LATENCY_BACKOFF
+                    : BatchSizeAdjustment.HOLD;
+        }
+        if (size < batchSize || durationNanos <= 0) {
+            return BatchSizeAdjustment.HOLD;
+        }
+
+        double throughput = (size * 1_000_000_000.0) / durationNanos;
+        double previous = smoothedThroughput;
+        smoothedThroughput =
+                previous == 0
+                        ? throughput
+                        : SMOOTHING * throughput + (1 - SMOOTHING) * previous;
+
+        if (smoothedThroughput >= bestThroughput) {
+            bestThroughput = smoothedThroughput;
+            bestBatchSize = size;
+        }
+        if (previous != 0 && smoothedThroughput < previous * (1 - TOLERANCE)) {
+            direction = -direction;
+        }
+
+        int previousSize = batchSize;
+        batchSize = clamp(batchSize + direction * additiveStep);
+        if (batchSize > previousSize) {
+            return BatchSizeAdjustment.INCREASE;
+        }
+        return batchSize < previousSize ? BatchSizeAdjustment.DECREASE : BatchSizeAdjustment.HOLD;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public double getSmoothedThroughput() {
+        return smoothedThroughput;
+    }
+
+    /**
+     * Размер batch с лучшим сглаженным throughput в пределах потолка latency,
+     * 0 - если полных batch еще не было.
+     */
+    public int getBestBatchSize() {
+        return bestBatchSize;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minBatchSize, Math.min(size, maxBatchSize));
+    }
+}
@@ -10,6 +10,7 @@ import ru.mentee.power.batch.interfaces.BatchProcessor;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.BatchResult;
 import ru.mentee.power.batch.model.DetailedBatchResult;
+import ru.mentee.power.batch.model.DuplicateKeyPolicy;
 import ru.mentee.power.model.Product;
 
 /**
@@ -17,14 +18,14 @@ import ru.mentee.power.model.Product;
  */
 @Slf4j
 public class BasicBatchProcessor implements BatchProcessor {
-    private static final String INSERT_PRODUCT =
+    static final String INSERT_PRODUCT =
             "INSERT INTO mentee_power.products (sku, name, description, price, category_id) "
                     + "VALUES (?, ?, ?, ?, ?)";
-    private static final String UPDATE_PRODUCT =
+    static final String UPDATE_PRODUCT =
             "UPDATE mentee_power.products SET name = ?, description = ?, price = ?, category_id = ?"
                     + " WHERE id = ?";
-    private static final String DELETE_PRODUCT = "DELETE FROM mentee_power.products WHERE id = ?";
-    private static final String UPSERT_PRODUCT =
+    static final String DELETE_PRODUCT = "DELETE FROM mentee_power.products WHERE id = ?";
+    static final String UPSERT_PRODUCT =
             "INSERT INTO mentee_power.products (sku, name, description, price, category_id) "
                     + "VALUES (?, ?, ?, ?, ?) "
                     + "ON CONFLICT (sku) DO UPDATE SET "
@@ -32,12 +33,24 @@ public class BasicBatchProcessor implements BatchProcessor {
                     + "price = EXCLUDED.price, "
                     + "description = EXCLUDED.description, "
                     + "category_id = EXCLUDED.category_id";
+    // Строка переписывается, только если изменилась хотя бы одна колонка: неизменные строки
+    // не создают мертвых версий, WAL и записей в индексы
+    static final String UPDATE_IF_CHANGED =
+            " WHERE (p.name, p.description, p.price, p.category_id) IS DISTINCT FROM "
+                    + "(EXCLUDED.name, EXCLUDED.description, EXCLUDED.price, EXCLUDED.category_id)"
+                    + " RETURNING (xmax = 0) AS inserted";
 
     private static final int BATCH_SIZE = 1000;
     private final Connection connection;
+    private final DuplicateKeyPolicy duplicateKeyPolicy;
 
     public BasicBatchProcessor(Connection connection) {
+        this(connection, DuplicateKeyPolicy.LAST_WINS);
+    }
+
+    public BasicBatchProcessor(Connection connection, DuplicateKeyPolicy duplicateKeyPolicy) {
         this.connection = connection;
+        this.duplicateKeyPolicy = duplicateKeyPolicy;
     }
 
     @Override
@@ -195,27 +208,25 @@ public class BasicBatchProcessor implements BatchProcessor {
         long startTime = System.currentTimeMillis();
         int totalProcessed = 0;
 
+        UpsertBatchPreparer preparer = new UpsertBatchPreparer(duplicateKeyPolicy);
+
         try (PreparedStatement ps = connection.prepareStatement(UPSERT_PRODUCT)) {
             connection.setAutoCommit(false);
 
-            int count = 0;
-            for (T record : records) {
-                if (record instanceof Product product) {
+            for (int i = 0; i < records.size(); i += BATCH_SIZE) {
+                List<T> batch = records.subList(i, Math.min(i + BATCH_SIZE, records.size()));
+                List<Product> prepared = preparer.prepare(batch);
+                if (prepared.isEmpty()) {
+                    continue;
+                }
+
+                for (Product product : prepared) {
                     setProductInsertParameters(ps, product);
                     ps.addBatch();
-                    count++;
-
-                    if (count % BATCH_SIZE == 0) {
-                        int[] results = ps.executeBatch();
-                        totalProcessed += results.length;
-                        connection.commit();
-                    }
                 }
-            }
-
-            if (count % BATCH_SIZE != 0) {
                 int[] results = ps.executeBatch();
-                totalProcessed += results.length;
+                // Схлопнутые дубликаты применены через оставшуюся запись с тем же sku
+                totalProcessed += results.length + preparer.getCollapsedCount();
                 connection.commit();
             }
 
@@ -235,15 +246,89 @@ public class BasicBatchProcessor implements BatchProcessor {
         }
     }
 
+    /**
+     * Delta upsert: неизменные строки не переписываются.
+     * Результат разделяет вставленные, обновленные и неизменные записи.
+     */
+    public <T> BatchResult deltaUpsert(List<T> records) throws SQLException {
+        return deltaUpsert(records, null);
+    }
+
+    /**
+     * Delta upsert с клиентским кэшем хэшей: записи, совпадающие с кэшем, не отправляются
+     * в БД и считаются неизменными. После коммита batch кэш обновляется отправленными записями.
+     * Выполняется одним запросом unnest на batch через {@link OptimizedBatchProcessor}:
+     * строки RETURNING читаются из executeQuery, а не из generated keys batch'а, состав
+     * которых зависит от драйвера.
+     */
+    public <T> BatchResult deltaUpsert(List<T> records, ProductHashCache cache)
+            throws SQLException {
+        return new OptimizedBatchProcessor(connection, duplicateKeyPolicy)
+                .deltaUpsertProducts(records, cache);
+    }
+
     @Override
     public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
             throws SQLException {
         // Делегируем ResilientBatchProcessor
         ResilientBatchProcessor resilientProcessor = new ResilientBatchProcessor(connection);
-        return resilientProcessor.insertWithErrorHandling(records, operation);
+        return resilientProcessor.insertWithBisection(records, operation);
+    }
+
+    /**
+     * SQL для построчной batch операции над продуктами.
+     */
+    static String sqlFor(BatchOperation operation) {
+        return switch (operation) {
+            case INSERT -> INSERT_PRODUCT;
+            case UPDATE -> UPDATE_PRODUCT;
+            case DELETE -> DELETE_PRODUCT;
+            case UPSERT -> UPSERT_PRODUCT;
+        };
+    }
+
+    /**
+     * Привязать запись к statement из {@link #sqlFor(BatchOperation)}.
+     * Для DELETE запись - идентификатор (Long), для остальных операций - Product.
+     *
+     * @return false, если запись не подходит для операции и не была привязана
+     */
+    static boolean bindParameters(PreparedStatement ps, Object record, BatchOperation operation)
+            throws SQLException {
+        if (operation == BatchOperation.DELETE) {
+            if (record instanceof Long id) {
+                ps.setLong(1, id);
+                return true;
+            }
+            return false;
+        }
+        if (!(record instanceof Product product)) {
+            return false;
+        }
+        if (operation == BatchOperation.UPDATE) {
+            setProductUpdateParameters(ps, product);
+        } else {
+            setProductInsertParameters(ps, product);
+        }
+        return true;
+    }
+
+    /**
+     * Ошибка соединения, а не данных: после нее соединение непригодно для следующих batch.
+     * SQLState класса 08 - ошибка соединения; остальные ошибки проверяются isValid.
+     */
+    static boolean isConnectionFailure(Connection connection, SQLException e) {
+        if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+            return true;
+        }
+        try {
+            return !connection.isValid(1);
+        } catch (SQLException validationEx) {
+            return true;
+        }
     }
 
-    private void setProductInsertParameters(PreparedStatement ps, Product product)
+    static void setProductInsertParameters(PreparedStatement ps, Product product)
             throws SQLException {
         ps.setString(1, product.getSku());
         ps.setString(2, product.getName());
@@ -252,7 +337,7 @@ public class BasicBatchProcessor implements BatchProcessor {
         ps.setObject(5, product.getCategoryId());
     }
 
-    private void setProductUpdateParameters(PreparedStatement ps, Product product)
+    static void setProductUpdateParameters(PreparedStatement ps, Product product)
             throws SQLException {
         ps.setString(1, product.getName());
         ps.setString(2, product.getDescription());
@@ -0,0 +1,121 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.util.List;
+import ru.mentee.power.batch.model.BatchMetrics;
+
+/**
+ * Линейная модель стоимости batch: время = фиксированные накладные расходы на batch
+ * (round trip, коммит, планирование) + стоимость строки * размер batch.
+ * Коэффициенты подбираются методом наименьших квадратов по измеренным {@link BatchMetrics}.
+ */
+public class BatchCostModel {
+    private final double fixedNanos;
+    private final double perRowNanos;
+    private final double relativeError;
+    private final int samples;
+
+    private BatchCostModel(
+            double fixedNanos, double perRowNanos, double relativeError, int samples) {
+        this.fixedNanos = fixedNanos;
+        this.perRowNanos = perRowNanos;
+        this.relativeError = relativeError;
+        this.samples = samples;
+    }
+
+    /**
+     * Подобрать модель по последовательным batch.
+     *
+     * @return модель или null, если нет хотя бы двух разных размеров batch
+     */
+    public static BatchCostModel fit(List<BatchMetrics> metrics) {
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXx = 0;
+        double sumXy = 0;
+        for (BatchMetrics metric : metrics) {
+            if (metric.getBatchSize() <= 0 || metric.getExecutionTimeNanos() <= 0) {
+                continue;
+            }
+            double x = metric.getBatchSize();
+            double y = metric.getExecutionTimeNanos();
+            n++;
+            sumX += x;
+            sumY += y;
+            sumXx += x * x;
+            sumXy += x * y;
+        }
+
+        double denominator = n * sumXx - sumX * sumX;
+        if (n < 2 || denominator <= 0) {
+            return null;
+        }
+
+        double perRow = (n * sumXy - sumX * sumY) / denominator;
+        double fixed = (sumY - perRow * sumX) / n;
+        if (perRow <= 0) {
+            // Шум перекрыл зависимость от размера: считаем все время построчным
+            perRow = sumY / sumX;
+            fixed = 0;
+        } else if (fixed < 0) {
+            // Прямая через начало координат: накладные расходы не бывают отрицательными
+            perRow = sumXy / sumXx;
+            fixed = 0;
+        }
+
+        double squaredError = 0;
+        for (BatchMetrics metric : metrics) {
+            if (metric.getBatchSize() <= 0 || metric.getExecutionTimeNanos() <= 0) {
+                continue;
+            }
+            double residual =
+                    metric.getExecutionTimeNanos() - (fixed + perRow * metric.getBatchSize());
+            squaredError += residual * residual;
+        }
+        double meanTime = sumY / n;
+        double relativeError = Math.sqrt(squaredError / n) / meanTime;
+
+        return new BatchCostModel(fixed, perRow, relativeError, n);
+    }
+
+    /**
+     * Оценка времени последовательной обработки records записей batch'ами batchSize.
+     */
+    public double estimateNanos(long records, int batchSize) {
+        long batches = (records + batchSize - 1) / batchSize;
+        return batches * fixedNanos + records * perRowNanos;
+    }
+
+    /**
+     * Наименьший размер batch, при котором фиксированные расходы занимают не больше
+     * overheadShare от времени batch. Дальше рост batch почти не дает throughput,
+     * но увеличивает память и время удержания блокировок.
+     */
+    public int batchSizeForOverheadShare(double overheadShare) {
+        if (fixedNanos == 0) {
+            return 1;
+        }
+        double size = fixedNanos * (1 - overheadShare) / (overheadShare * perRowNanos);
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(size));
+    }
+
+    public double getFixedNanos() {
+        return fixedNanos;
+    }
+
+    public double getPerRowNanos() {
+        return perRowNanos;
+    }
+
+    /**
+     * Среднеквадратичная ошибка модели, деленная на среднее время batch.
+     */
+    public double getRelativeError() {
+        return relativeError;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+}
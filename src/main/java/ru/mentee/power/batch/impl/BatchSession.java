@@ -0,0 +1,276 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.interfaces.RowBinder;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.BatchResult;
+
+/**
+ * Долгоживущая batch сессия на одном соединении для потоковой загрузки мелкими порциями.
+ * В отличие от {@link BasicBatchProcessor}, который на каждый вызов заново готовит statement
+ * и переключает autocommit, сессия готовит statement операции один раз, выключает autocommit
+ * на все время жизни и накапливает записи между вызовами {@link #add}. Накопленное
+ * отправляется одним executeBatch и коммитится, когда набралось commitRows записей
+ * или с прошлого коммита прошло commitIntervalMs; {@link #close()} отправляет остаток.
+ * Интервал проверяется при добавлении записей: фоновых потоков нет, соединение JDBC
+ * не потокобезопасно. Поток без новых записей может вызвать {@link #flushIfDue()}.
+ * Сессия не потокобезопасна.
+ */
+@Slf4j
+public class BatchSession implements AutoCloseable {
+    private static final int DEFAULT_COMMIT_ROWS = 1000;
+    private static final long DEFAULT_COMMIT_INTERVAL_MS = 1000;
+
+    private final Connection connection;
+    private final RowBinder<?> binder;
+    private final int commitRows;
+    private final long commitIntervalNanos;
+    private final boolean originalAutoCommit;
+    private final long startNanos;
+    private final Map<BatchOperation, PreparedStatement> statements =
+            new EnumMap<>(BatchOperation.class);
+
+    // Операция, записи которой ждут executeBatch; записи разных операций
+    // не смешиваются, чтобы сохранить порядок их применения
+    private BatchOperation pendingOperation;
+    private int pendingRows;
+    // Отправлены executeBatch, но еще не закоммичены
+    private int uncommittedRows;
+    private long lastCommitNanos;
+
+    private int totalRecords;
+    private int committedRows;
+    private int skippedRecords;
+    private int commits;
+    private boolean closed;
+
+    /**
+     * Сессия для продуктов с коммитом каждые 1000 записей или раз в секунду.
+     */
+    public BatchSession(Connection connection) throws SQLException {
+        this(connection, null, DEFAULT_COMMIT_ROWS, DEFAULT_COMMIT_INTERVAL_MS);
+    }
+
+    /**
+     * @param binder таблица и привязка параметров; null - продукты, как в
+     *     {@link BasicBatchProcessor}
+     * @param commitRows коммит после стольких накопленных записей
+     * @param commitIntervalMs коммит, если с прошлого прошло столько миллисекунд;
+     *     0 - только по количеству записей
+     */
+    public BatchSession(
+            Connection connection, RowBinder<?> binder, int commitRows, long commitIntervalMs)
+            throws SQLException {
+        if (commitRows <= 0 || commitIntervalMs < 0) {
+            throw new IllegalArgumentException(
+                    "Некорректные границы транзакции: "
+                            + commitRows
+                            + " записей, "
+                            + commitIntervalMs
+                            + " мс");
+        }
+        this.connection = connection;
+        this.binder = binder;
+        this.commitRows = commitRows;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMs);
+        this.originalAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        this.startNanos = System.nanoTime();
+        this.lastCommitNanos = startNanos;
+    }
+
+    /**
+     * Добавить запись. Для DELETE запись - идентификатор, для остальных операций - сущность.
+     * Записи, не подходящие для операции, пропускаются.
+     *
+     * @return количество закоммиченных этим вызовом записей, 0 - записи только накоплены
+     * @throws SQLException при ошибке отправки; незакоммиченные записи сессии откатываются
+     */
+    public int add(Object record, BatchOperation operation) throws SQLException {
+        ensureOpen();
+        totalRecords++;
+        if (operation != pendingOperation) {
+            // Записи прошлой операции отправляются раньше, чтобы сохранить порядок
+            executePending();
+            pendingOperation = operation;
+        }
+        if (!bind(statement(operation), record, operation)) {
+            skippedRecords++;
+            return 0;
+        }
+        statement(operation).addBatch();
+        pendingRows++;
+        return flushIfDue();
+    }
+
+    /**
+     * Добавить записи одной операции.
+     *
+     * @return количество закоммиченных за вызов записей
+     */
+    public int addAll(List<?> records, BatchOperation operation) throws SQLException {
+        int committed = 0;
+        for (Object record : records) {
+            committed += add(record, operation);
+        }
+        return committed;
+    }
+
+    /**
+     * Отправить и закоммитить накопленное, если достигнута граница транзакции.
+     *
+     * @return количество закоммиченных записей
+     */
+    public int flushIfDue() throws SQLException {
+        ensureOpen();
+        int accumulated = pendingRows + uncommittedRows;
+        if (accumulated == 0) {
+            return 0;
+        }
+        boolean intervalElapsed =
+                commitIntervalNanos > 0
+                        && System.nanoTime() - lastCommitNanos >= commitIntervalNanos;
+        if (accumulated < commitRows && !intervalElapsed) {
+            return 0;
+        }
+        return flush();
+    }
+
+    /**
+     * Отправить накопленные записи и закоммитить транзакцию.
+     *
+     * @return количество закоммиченных записей
+     */
+    public int flush() throws SQLException {
+        ensureOpen();
+        executePending();
+        int committed = uncommittedRows;
+        if (committed > 0) {
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                rollback();
+                throw new SQLException("Ошибка при коммите batch сессии", e);
+            }
+            committedRows += committed;
+            commits++;
+        }
+        uncommittedRows = 0;
+        lastCommitNanos = System.nanoTime();
+        return committed;
+    }
+
+    /**
+     * Итог сессии: закоммиченные записи успешны, остальные, включая пропущенные
+     * и откатанные, неуспешны.
+     */
+    public BatchResult getResult() {
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return BatchResult.builder()
+                .totalRecords(totalRecords)
+                .successfulRecords(committedRows)
+                .failedRecords(totalRecords - committedRows - pendingRows - uncommittedRows)
+                .executionTimeMs(duration)
+                .recordsPerSecond(calculateThroughput(committedRows, duration))
+                .build();
+    }
+
+    /**
+     * @return количество выполненных коммитов
+     */
+    public int getCommits() {
+        return commits;
+    }
+
+    /**
+     * Отправить остаток, закрыть statements и вернуть соединению исходный autocommit.
+     * Соединение не закрывается.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            for (PreparedStatement ps : statements.values()) {
+                ps.close();
+            }
+            statements.clear();
+            connection.setAutoCommit(originalAutoCommit);
+            log.debug(
+                    "Batch сессия закрыта: {} записей закоммичено за {} коммитов, пропущено {}",
+                    committedRows,
+                    commits,
+                    skippedRecords);
+        }
+    }
+
+    private void executePending() throws SQLException {
+        if (pendingRows == 0) {
+            return;
+        }
+        try {
+            statement(pendingOperation).executeBatch();
+        } catch (SQLException e) {
+            int lost = pendingRows + uncommittedRows;
+            rollback();
+            throw new SQLException(
+                    "Ошибка при batch " + pendingOperation + " в сессии, откачено записей: " + lost,
+                    e);
+        }
+        uncommittedRows += pendingRows;
+        pendingRows = 0;
+    }
+
+    private void rollback() throws SQLException {
+        if (pendingOperation != null) {
+            statement(pendingOperation).clearBatch();
+        }
+        connection.rollback();
+        pendingRows = 0;
+        uncommittedRows = 0;
+        lastCommitNanos = System.nanoTime();
+    }
+
+    private PreparedStatement statement(BatchOperation operation) throws SQLException {
+        PreparedStatement ps = statements.get(operation);
+        if (ps == null) {
+            String sql =
+                    binder != null
+                            ? binder.sqlFor(operation)
+                            : BasicBatchProcessor.sqlFor(operation);
+            ps = connection.prepareStatement(sql);
+            statements.put(operation, ps);
+        }
+        return ps;
+    }
+
+    private boolean bind(PreparedStatement ps, Object record, BatchOperation operation)
+            throws SQLException {
+        return binder != null
+                ? binder.bind(ps, record, operation)
+                : BasicBatchProcessor.bindParameters(ps, record, operation);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Batch сессия закрыта");
+        }
+    }
+
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+}
@@ -0,0 +1,119 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.model.BatchOperation;
+
+/**
+ * Выученные размеры batch по паре (таблица, операция).
+ * Следующий запуск начинает с размера, на котором предыдущий получил лучший throughput,
+ * вместо повторного разгона с минимального размера.
+ * Реестр без файла живет только в памяти процесса и теряется при перезапуске. Реестр
+ * с файлом загружает размеры при создании и сохраняет файл после каждого изменения,
+ * поэтому выученные размеры переживают перезапуск.
+ */
+@Slf4j
+public class BatchSizeRegistry {
+    private static final BatchSizeRegistry SHARED = new BatchSizeRegistry();
+
+    private final Map<String, Integer> learnedSizes = new ConcurrentHashMap<>();
+    private final Path file;
+
+    /**
+     * Реестр в памяти процесса.
+     */
+    public BatchSizeRegistry() {
+        this.file = null;
+    }
+
+    /**
+     * Реестр, сохраняемый в файл properties; отсутствующий файл - пустой реестр.
+     */
+    public BatchSizeRegistry(Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            load();
+        }
+    }
+
+    /**
+     * Общий реестр процесса, используется процессорами по умолчанию. Хранится только
+     * в памяти; для сохранения между запусками процессору передается реестр с файлом.
+     */
+    public static BatchSizeRegistry shared() {
+        return SHARED;
+    }
+
+    public int getOrDefault(String table, BatchOperation operation, int defaultSize) {
+        return learnedSizes.getOrDefault(key(table, operation), defaultSize);
+    }
+
+    public void put(String table, BatchOperation operation, int batchSize) {
+        Integer previous = learnedSizes.put(key(table, operation), batchSize);
+        if (file != null && (previous == null || previous != batchSize)) {
+            save();
+        }
+    }
+
+    /**
+     * Снимок выученных размеров в виде "таблица:операция" -> размер batch.
+     */
+    public Map<String, Integer> snapshot() {
+        return new TreeMap<>(learnedSizes);
+    }
+
+    private void load() {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            log.warn("Не удалось загрузить размеры batch из {}, реестр пуст", file, e);
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                learnedSizes.put(key, Integer.parseInt(properties.getProperty(key).trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Некорректный размер batch {} в {}", key, file);
+            }
+        }
+    }
+
+    /**
+     * Записать реестр во временный файл и заменить им основной, чтобы сбой записи
+     * не оставил файл наполовину записанным. Ошибка записи не прерывает загрузку данных.
+     */
+    private synchronized void save() {
+        Properties properties = new Properties();
+        snapshot().forEach((key, size) -> properties.setProperty(key, String.valueOf(size)));
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "Выученные размеры batch: таблица:операция=размер");
+            }
+            Files.move(
+                    temp,
+                    file,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить размеры batch в {}", file, e);
+        }
+    }
+
+    private static String key(String table, BatchOperation operation) {
+        return table + ":" + operation;
+    }
+}
@@ -0,0 +1,236 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import ru.mentee.power.batch.impl.ProductColumnBuffer.Column;
+import ru.mentee.power.model.Product;
+
+/**
+ * Кодировщик продуктов в бинарный формат PGCOPY в порядке колонок {@link ProductCopyLayout}:
+ * id и category_id передаются как bigint, строки - как text, price - как numeric.
+ * Сервер принимает значения без парсинга текста, а клиент не форматирует числа и не
+ * экранирует строки.
+ */
+public class BinaryCopyEncoder extends CopyRowEncoder {
+    private static final byte[] SIGNATURE = {
+        'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0
+    };
+    private static final int NULL_LENGTH = -1;
+
+    // Внутреннее представление numeric: цифры по основанию 10000
+    private static final int NUMERIC_POS = 0x0000;
+    private static final int NUMERIC_NEG = 0x4000;
+    private static final int NBASE = 10000;
+    private static final BigInteger BIG_NBASE = BigInteger.valueOf(NBASE);
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000};
+
+    private final ProductCopyLayout layout;
+    private short[] numericDigits = new short[8];
+
+    public BinaryCopyEncoder() {
+        this(ProductCopyLayout.PRODUCT);
+    }
+
+    public BinaryCopyEncoder(ProductCopyLayout layout) {
+        this.layout = layout;
+    }
+
+    @Override
+    public void writeHeader(OutputStream out) throws IOException {
+        out.write(SIGNATURE);
+        // flags + длина расширения заголовка
+        out.write(new byte[8]);
+    }
+
+    @Override
+    public void writeTrailer(OutputStream out) throws IOException {
+        out.write(0xFF);
+        out.write(0xFF);
+    }
+
+    @Override
+    public boolean encode(Object record) {
+        if (layout == ProductCopyLayout.ID) {
+            if (!(record instanceof Long id)) {
+                return false;
+            }
+            reset();
+            putShort(layout.getColumnCount());
+            putBigint(id);
+            return true;
+        }
+        if (!(record instanceof Product product)) {
+            return false;
+        }
+
+        reset();
+        putShort(layout.getColumnCount());
+        if (layout == ProductCopyLayout.PRODUCT_WITH_ID) {
+            putBigint(product.getId());
+        }
+        putText(product.getSku());
+        putText(product.getName());
+        putText(product.getDescription());
+        putNumeric(product.getPrice());
+        putBigint(product.getCategoryId());
+        return true;
+    }
+
+    @Override
+    public boolean encode(ProductColumnBuffer columns, int row) {
+        reset();
+        putShort(layout.getColumnCount());
+        if (layout != ProductCopyLayout.PRODUCT) {
+            putBigint(columns, row, Column.ID);
+            if (layout == ProductCopyLayout.ID) {
+                return true;
+            }
+        }
+        putText(columns, row, Column.SKU);
+        putText(columns, row, Column.NAME);
+        putText(columns, row, Column.DESCRIPTION);
+        if (columns.isNull(row, Column.PRICE)) {
+            putInt(NULL_LENGTH);
+        } else {
+            putNumeric(columns.getLong(row, Column.PRICE), ProductColumnBuffer.PRICE_SCALE);
+        }
+        putBigint(columns, row, Column.CATEGORY_ID);
+        return true;
+    }
+
+    private void putText(ProductColumnBuffer columns, int row, Column column) {
+        if (columns.isNull(row, column)) {
+            putInt(NULL_LENGTH);
+            return;
+        }
+        int count = columns.textLength(row, column);
+        putInt(count);
+        putBytes(columns.arena(), columns.textOffset(row, column), count);
+    }
+
+    private void putBigint(ProductColumnBuffer columns, int row, Column column) {
+        if (columns.isNull(row, column)) {
+            putInt(NULL_LENGTH);
+            return;
+        }
+        putInt(8);
+        putLong(columns.getLong(row, column));
+    }
+
+    private void putText(String value) {
+        if (value == null) {
+            putInt(NULL_LENGTH);
+            return;
+        }
+
+        int lengthPosition = position();
+        putInt(0);
+        int start = position();
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            putCodePoint(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        putIntAt(lengthPosition, position() - start);
+    }
+
+    private void putBigint(Long value) {
+        if (value == null) {
+            putInt(NULL_LENGTH);
+            return;
+        }
+        putInt(8);
+        putLong(value);
+    }
+
+    /**
+     * Numeric передается как ndigits, weight, sign, dscale и цифры по основанию 10000.
+     * Дробная часть выравнивается до целых групп по 4 десятичных знака.
+     */
+    private void putNumeric(BigDecimal value) {
+        if (value == null) {
+            putInt(NULL_LENGTH);
+            return;
+        }
+
+        int sign = value.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS;
+        int scale = Math.max(value.scale(), 0);
+        BigInteger unscaled = value.setScale(scale).unscaledValue().abs();
+        if (unscaled.bitLength() < 53) {
+            putNumeric(unscaled.longValue(), sign, scale);
+            return;
+        }
+        int fractionGroups = (scale + 3) / 4;
+        int padding = fractionGroups * 4 - scale;
+        int groups = splitDigits(unscaled.multiply(BigInteger.TEN.pow(padding)));
+        putNumericDigits(groups, fractionGroups, sign, scale);
+    }
+
+    /**
+     * Numeric из целого числа единиц масштаба scale, например копеек при scale = 2.
+     */
+    private void putNumeric(long unscaled, int scale) {
+        putNumeric(Math.abs(unscaled), unscaled < 0 ? NUMERIC_NEG : NUMERIC_POS, scale);
+    }
+
+    private void putNumeric(long unscaledAbs, int sign, int scale) {
+        int fractionGroups = (scale + 3) / 4;
+        int padding = fractionGroups * 4 - scale;
+        int groups = splitDigits(unscaledAbs * POWERS_OF_TEN[padding]);
+        putNumericDigits(groups, fractionGroups, sign, scale);
+    }
+
+    private void putNumericDigits(int groups, int fractionGroups, int sign, int scale) {
+        // Нули в младших группах не передаем, точность сохраняется через dscale
+        int lowest = 0;
+        while (lowest < groups && numericDigits[lowest] == 0) {
+            lowest++;
+        }
+        int ndigits = groups - lowest;
+        int weight = ndigits == 0 ? 0 : groups - fractionGroups - 1;
+
+        putInt(8 + 2 * ndigits);
+        putShort(ndigits);
+        putShort(weight);
+        putShort(sign);
+        putShort(scale);
+        for (int i = groups - 1; i >= lowest; i--) {
+            putShort(numericDigits[i]);
+        }
+    }
+
+    /**
+     * Разложить число на цифры по основанию 10000, младшие группы первыми.
+     */
+    private int splitDigits(long value) {
+        int groups = 0;
+        while (value > 0) {
+            ensureDigitCapacity(groups + 1);
+            numericDigits[groups++] = (short) (value % NBASE);
+            value /= NBASE;
+        }
+        return groups;
+    }
+
+    private int splitDigits(BigInteger value) {
+        int groups = 0;
+        while (value.signum() > 0) {
+            BigInteger[] divRem = value.divideAndRemainder(BIG_NBASE);
+            ensureDigitCapacity(groups + 1);
+            numericDigits[groups++] = divRem[1].shortValue();
+            value = divRem[0];
+        }
+        return groups;
+    }
+
+    private void ensureDigitCapacity(int required) {
+        if (required > numericDigits.length) {
+            short[] grown = new short[numericDigits.length * 2];
+            System.arraycopy(numericDigits, 0, grown, 0, numericDigits.length);
+            numericDigits = grown;
+        }
+    }
+}
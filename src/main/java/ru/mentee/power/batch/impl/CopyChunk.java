@@ -0,0 +1,63 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.OutputStream;
+
+/**
+ * Готовый к отправке фрагмент потока COPY: байты нескольких закодированных строк.
+ * Буфер переиспользуется между фрагментами и растет только до размера самого большого.
+ */
+public class CopyChunk extends OutputStream {
+    private byte[] buffer;
+    private int length;
+    private int records;
+
+    public CopyChunk(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    public void reset() {
+        length = 0;
+        records = 0;
+    }
+
+    public void addRecords(int count) {
+        records += count;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Количество входных записей, попавших во фрагмент (включая пропущенные кодировщиком).
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import ru.mentee.power.batch.model.CopyFormat;
+
+/**
+ * Кодировщик одной строки для COPY FROM STDIN.
+ * Строка пишется в переиспользуемый байтовый буфер, который растет только до размера самой
+ * длинной строки, поэтому потребление памяти не зависит от объема загрузки.
+ */
+public abstract class CopyRowEncoder {
+    private static final int INITIAL_CAPACITY = 512;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    /**
+     * Создать кодировщик для формата COPY и набора колонок.
+     */
+    public static CopyRowEncoder create(CopyFormat format, ProductCopyLayout layout) {
+        return switch (format) {
+            case CSV -> new CsvCopyEncoder(layout);
+            case BINARY -> new BinaryCopyEncoder(layout);
+        };
+    }
+
+    /**
+     * Закодировать запись в буфер, заменив предыдущее содержимое.
+     *
+     * @param record запись для кодирования
+     * @return false, если запись не поддерживается кодировщиком и должна быть пропущена
+     */
+    public abstract boolean encode(Object record);
+
+    /**
+     * Закодировать строку колоночного буфера, заменив предыдущее содержимое.
+     *
+     * @return false, если кодировщик не читает колоночный буфер
+     */
+    public boolean encode(ProductColumnBuffer columns, int row) {
+        return false;
+    }
+
+    /**
+     * Записать заголовок потока COPY (нужен только бинарному формату).
+     */
+    public void writeHeader(OutputStream out) throws IOException {}
+
+    /**
+     * Записать завершающий маркер потока COPY (нужен только бинарному формату).
+     */
+    public void writeTrailer(OutputStream out) throws IOException {}
+
+    /**
+     * Записать закодированную строку в поток COPY.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    protected void reset() {
+        length = 0;
+    }
+
+    protected void putByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    protected void putShort(int value) {
+        ensureCapacity(2);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    protected void putInt(int value) {
+        ensureCapacity(4);
+        putIntAt(length, value);
+        length += 4;
+    }
+
+    protected void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * Перезаписать int в уже закодированной части строки (например, длину поля).
+     */
+    protected void putIntAt(int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    protected int position() {
+        return length;
+    }
+
+    protected void putAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    protected void putDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            putByte('-');
+            value = -value;
+        }
+        ensureCapacity(19);
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    /**
+     * Записать число с фиксированной точкой, например копейки как 12.50.
+     */
+    protected void putScaled(long unscaled, int scale) {
+        if (scale == 0) {
+            putDecimal(unscaled);
+            return;
+        }
+        long divisor = 1;
+        for (int i = 0; i < scale; i++) {
+            divisor *= 10;
+        }
+        if (unscaled < 0) {
+            putByte('-');
+        }
+        putDecimal(Math.abs(unscaled / divisor));
+        putByte('.');
+        long fraction = Math.abs(unscaled % divisor);
+        for (long digit = divisor / 10; digit > 0; digit /= 10) {
+            putByte('0' + (int) (fraction / digit % 10));
+        }
+    }
+
+    /**
+     * Скопировать байты, например готовый UTF-8 текст из арены {@link ProductColumnBuffer}.
+     */
+    protected void putBytes(ByteBuffer source, int offset, int count) {
+        ensureCapacity(count);
+        source.get(offset, buffer, length, count);
+        length += count;
+    }
+
+    /**
+     * Записать символ в UTF-8 (Unicode code point).
+     */
+    protected void putCodePoint(int codePoint) {
+        ensureCapacity(4);
+        if (codePoint < 0x80) {
+            buffer[length++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[length++] = (byte) (0xC0 | (codePoint >> 6));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            buffer[length++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    /**
+     * Записать текстовое поле CSV: null - пустое поле, пустая строка и строки со специальными
+     * символами - в кавычках.
+     */
+    protected void putCsvText(String value) {
+        if (value == null) {
+            return;
+        }
+
+        boolean quoted = value.isEmpty() || needsQuoting(value);
+        if (quoted) {
+            putByte('"');
+        }
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            if (codePoint == '"') {
+                putByte('"');
+            }
+            putCodePoint(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        if (quoted) {
+            putByte('"');
+        }
+    }
+
+    /**
+     * Текстовое поле CSV из готовых UTF-8 байт. Байты кавычек и разделителей в UTF-8
+     * не встречаются внутри многобайтных символов, поэтому проверка идет по байтам.
+     */
+    protected void putCsvText(ByteBuffer source, int offset, int count) {
+        boolean quoted = count == 0;
+        for (int i = offset; i < offset + count && !quoted; i++) {
+            byte b = source.get(i);
+            quoted = b == ',' || b == '"' || b == '\n' || b == '\r' || b == '\\';
+        }
+        if (!quoted) {
+            putBytes(source, offset, count);
+            return;
+        }
+
+        putByte('"');
+        for (int i = offset; i < offset + count; i++) {
+            byte b = source.get(i);
+            if (b == '"') {
+                putByte('"');
+            }
+            putByte(b);
+        }
+        putByte('"');
+    }
+
+    private boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
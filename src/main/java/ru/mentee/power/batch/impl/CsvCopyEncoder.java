@@ -0,0 +1,99 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import ru.mentee.power.batch.impl.ProductColumnBuffer.Column;
+import ru.mentee.power.model.Product;
+
+/**
+ * Кодировщик продуктов в CSV-строки COPY в порядке колонок {@link ProductCopyLayout}.
+ * NULL передается пустым полем без кавычек, пустая строка - как "".
+ */
+public class CsvCopyEncoder extends CopyRowEncoder {
+    private final ProductCopyLayout layout;
+
+    public CsvCopyEncoder() {
+        this(ProductCopyLayout.PRODUCT);
+    }
+
+    public CsvCopyEncoder(ProductCopyLayout layout) {
+        this.layout = layout;
+    }
+
+    @Override
+    public boolean encode(Object record) {
+        if (layout == ProductCopyLayout.ID) {
+            if (!(record instanceof Long id)) {
+                return false;
+            }
+            reset();
+            putDecimal(id);
+            putByte('\n');
+            return true;
+        }
+        if (!(record instanceof Product product)) {
+            return false;
+        }
+
+        reset();
+        if (layout == ProductCopyLayout.PRODUCT_WITH_ID) {
+            if (product.getId() != null) {
+                putDecimal(product.getId());
+            }
+            putByte(',');
+        }
+        putCsvText(product.getSku());
+        putByte(',');
+        putCsvText(product.getName());
+        putByte(',');
+        putCsvText(product.getDescription());
+        putByte(',');
+        if (product.getPrice() != null) {
+            putAscii(product.getPrice().toPlainString());
+        }
+        putByte(',');
+        if (product.getCategoryId() != null) {
+            putDecimal(product.getCategoryId());
+        }
+        putByte('\n');
+        return true;
+    }
+
+    @Override
+    public boolean encode(ProductColumnBuffer columns, int row) {
+        reset();
+        if (layout != ProductCopyLayout.PRODUCT) {
+            if (!columns.isNull(row, Column.ID)) {
+                putDecimal(columns.getLong(row, Column.ID));
+            }
+            if (layout == ProductCopyLayout.ID) {
+                putByte('\n');
+                return true;
+            }
+            putByte(',');
+        }
+        putText(columns, row, Column.SKU);
+        putByte(',');
+        putText(columns, row, Column.NAME);
+        putByte(',');
+        putText(columns, row, Column.DESCRIPTION);
+        putByte(',');
+        if (!columns.isNull(row, Column.PRICE)) {
+            putScaled(columns.getLong(row, Column.PRICE), ProductColumnBuffer.PRICE_SCALE);
+        }
+        putByte(',');
+        if (!columns.isNull(row, Column.CATEGORY_ID)) {
+            putDecimal(columns.getLong(row, Column.CATEGORY_ID));
+        }
+        putByte('\n');
+        return true;
+    }
+
+    private void putText(ProductColumnBuffer columns, int row, Column column) {
+        if (!columns.isNull(row, column)) {
+            putCsvText(
+                    columns.arena(),
+                    columns.textOffset(row, column),
+                    columns.textLength(row, column));
+        }
+    }
+}
@@ -2,21 +2,52 @@
 package ru.mentee.power.batch.impl;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import ru.mentee.power.batch.interfaces.BatchOptimizer;
 import ru.mentee.power.batch.model.BatchMetrics;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.Constraints;
 import ru.mentee.power.batch.model.ExecutionPlan;
+import ru.mentee.power.batch.model.ExecutionStrategy;
 import ru.mentee.power.batch.model.OptimizationReport;
+import ru.mentee.power.model.Product;
 
 /**
  * Реализация оптимизатора batch операций.
+ * Размер batch, время и параллелизм оцениваются по модели стоимости
+ * {@link BatchCostModel}, обученной на записанных метриках каждой операции, и по
+ * измеренному масштабированию throughput. Пока измерений нет, используются
+ * консервативные значения по умолчанию: без измеренного масштабирования план
+ * последовательный, потому что и оценка времени не учитывает ускорения.
  */
 public class DefaultBatchOptimizer implements BatchOptimizer {
     private static final int DEFAULT_BATCH_SIZE = 1000;
     private static final int MIN_BATCH_SIZE = 100;
     private static final int MAX_BATCH_SIZE = 10000;
+    // Ускорение от параллелизма не измерено: план с тем же параллелизмом, что и оценка
+    private static final int DEFAULT_PARALLELISM = 1;
+    private static final long DEFAULT_BATCH_TIME_MS = 100;
+
+    // Batch, в котором фиксированные расходы меньше 5% времени, почти не уступает бесконечному
+    private static final double TARGET_OVERHEAD_SHARE = 0.05;
+    // Уровень параллелизма, дающий 95% лучшего throughput, считается насыщением
+    private static final double SCALING_SATURATION = 0.95;
+
+    private static final long DEFAULT_RECORD_BYTES = 256;
+    private static final long DEFAULT_BATCH_MEMORY_BYTES = 16L * 1024 * 1024;
+    // Значения batch живут одновременно в записях и в буфере параметров драйвера
+    private static final int DRIVER_COPY_FACTOR = 2;
+    private static final int SIZE_SAMPLE_LIMIT = 1000;
+    private static final int MAX_SAMPLES_PER_OPERATION = 10_000;
+
+    private final Map<BatchOperation, List<BatchMetrics>> sequentialSamples =
+            new EnumMap<>(BatchOperation.class);
+    private final Map<BatchOperation, Map<Integer, ThroughputStats>> parallelSamples =
+            new EnumMap<>(BatchOperation.class);
 
     @Override
     public <T> int findOptimalBatchSize(List<T> sampleData, BatchOperation operation) {
@@ -24,47 +55,249 @@ public class DefaultBatchOptimizer implements BatchOptimizer {
             return DEFAULT_BATCH_SIZE;
         }
 
-        int dataSize = sampleData.size();
-        int optimalSize = DEFAULT_BATCH_SIZE;
-
-        switch (operation) {
-            case INSERT:
-            case UPSERT:
-                optimalSize = Math.min(dataSize, 2000);
-                break;
-            case UPDATE:
-                optimalSize = Math.min(dataSize, 1500);
-                break;
-            case DELETE:
-                optimalSize = Math.min(dataSize, 3000);
-                break;
-        }
+        long recordBytes = estimateRecordBytes(sampleData);
+        int optimalSize =
+                Math.min(
+                        sampleData.size(),
+                        batchSizeFor(operation, recordBytes, DEFAULT_BATCH_MEMORY_BYTES));
 
         return Math.max(MIN_BATCH_SIZE, Math.min(optimalSize, MAX_BATCH_SIZE));
     }
 
     @Override
     public ExecutionPlan createExecutionPlan(int totalRecords, Constraints constraints) {
-        int optimalBatchSize = DEFAULT_BATCH_SIZE;
+        return createExecutionPlan(List.of(), totalRecords, BatchOperation.INSERT, constraints);
+    }
 
-        if (constraints != null) {
-            if (constraints.getMaxBatchSize() > 0) {
-                optimalBatchSize = Math.min(DEFAULT_BATCH_SIZE, constraints.getMaxBatchSize());
+    /**
+     * План по модели стоимости: параллелизм - наименьший измеренный уровень, близкий к
+     * насыщению throughput; размер batch - минимальный с малой долей накладных расходов,
+     * ограниченный памятью на воркер. Если оценка не укладывается в maxExecutionTimeMs,
+     * пробуются большие измеренные уровни параллелизма.
+     */
+    @Override
+    public synchronized <T> ExecutionPlan createExecutionPlan(
+            List<T> sampleData,
+            int totalRecords,
+            BatchOperation operation,
+            Constraints constraints) {
+        long recordBytes = estimateRecordBytes(sampleData);
+        BatchCostModel model = costModel(operation);
+        NavigableMap<Integer, Double> scaling = measuredScaling(operation);
+
+        int parallelism = recommendedParallelism(scaling);
+        int batchSize = planBatchSize(operation, recordBytes, parallelism, constraints);
+        long estimatedMs = estimateMs(model, scaling, totalRecords, batchSize, parallelism);
+
+        long timeLimitMs = constraints != null ? constraints.getMaxExecutionTimeMs() : 0;
+        if (timeLimitMs > 0 && estimatedMs > timeLimitMs) {
+            for (int level : scaling.tailMap(parallelism, false).keySet()) {
+                int levelBatchSize = planBatchSize(operation, recordBytes, level, constraints);
+                long levelMs = estimateMs(model, scaling, totalRecords, levelBatchSize, level);
+                if (levelMs < estimatedMs) {
+                    parallelism = level;
+                    batchSize = levelBatchSize;
+                    estimatedMs = levelMs;
+                }
+                if (estimatedMs <= timeLimitMs) {
+                    break;
+                }
             }
         }
 
-        int numberOfBatches = (int) Math.ceil((double) totalRecords / optimalBatchSize);
-        long estimatedExecutionTimeMs = numberOfBatches * 100; // Примерная оценка
-        int recommendedParallelism = Math.min(4, numberOfBatches);
+        int numberOfBatches = (int) Math.ceil((double) totalRecords / batchSize);
 
         return ExecutionPlan.builder()
-                .optimalBatchSize(optimalBatchSize)
+                .optimalBatchSize(batchSize)
                 .numberOfBatches(numberOfBatches)
-                .estimatedExecutionTimeMs(estimatedExecutionTimeMs)
-                .recommendedParallelism(recommendedParallelism)
+                .estimatedExecutionTimeMs(estimatedMs)
+                .recommendedParallelism(Math.max(1, Math.min(parallelism, numberOfBatches)))
+                .estimatedErrorPercent(model != null ? model.getRelativeError() * 100 : 0)
+                .estimatedRecordBytes(recordBytes)
+                .withinTimeLimit(timeLimitMs <= 0 || estimatedMs <= timeLimitMs)
                 .build();
     }
 
+    /**
+     * Последовательные batch обучают модель стоимости, прогоны
+     * {@link ExecutionStrategy#PARALLEL} дают точки кривой масштабирования.
+     * Метрики конвейера описывают другую модель стоимости (кодирование и отправка COPY
+     * перекрываются) и в план не входят - даже при одном отправителе.
+     */
+    @Override
+    public synchronized void recordMetrics(BatchOperation operation, List<BatchMetrics> metrics) {
+        for (BatchMetrics metric : metrics) {
+            switch (metric.getStrategy()) {
+                case SEQUENTIAL -> {
+                    List<BatchMetrics> samples =
+                            sequentialSamples.computeIfAbsent(operation, op -> new ArrayList<>());
+                    samples.add(metric);
+                    if (samples.size() > MAX_SAMPLES_PER_OPERATION) {
+                        samples.remove(0);
+                    }
+                }
+                case PARALLEL -> parallelSamples
+                        .computeIfAbsent(operation, op -> new TreeMap<>())
+                        .computeIfAbsent(
+                                Math.max(1, metric.getParallelism()),
+                                level -> new ThroughputStats())
+                        .add(metric.getThroughput());
+                case PIPELINED -> {
+                    // Не сравнимы ни с последовательными batch, ни с воркерами
+                }
+            }
+        }
+    }
+
+    /**
+     * Модель стоимости операции или null, если измерений недостаточно.
+     */
+    public synchronized BatchCostModel costModel(BatchOperation operation) {
+        return BatchCostModel.fit(sequentialSamples.getOrDefault(operation, List.of()));
+    }
+
+    /**
+     * Оценка среднего размера записи в куче по образцу данных.
+     */
+    public <T> long estimateRecordBytes(List<T> sampleData) {
+        if (sampleData.isEmpty()) {
+            return DEFAULT_RECORD_BYTES;
+        }
+
+        int limit = Math.min(sampleData.size(), SIZE_SAMPLE_LIMIT);
+        long total = 0;
+        for (int i = 0; i < limit; i++) {
+            total += estimateBytes(sampleData.get(i));
+        }
+        return Math.max(1, total / limit);
+    }
+
+    private synchronized int batchSizeFor(
+            BatchOperation operation, long recordBytes, long memoryBudgetBytes) {
+        BatchCostModel model = costModel(operation);
+        int size =
+                model != null
+                        ? model.batchSizeForOverheadShare(TARGET_OVERHEAD_SHARE)
+                        : defaultBatchSize(operation);
+        long memoryCap = memoryBudgetBytes / (recordBytes * DRIVER_COPY_FACTOR);
+        return (int) Math.max(1, Math.min(size, memoryCap));
+    }
+
+    private int planBatchSize(
+            BatchOperation operation, long recordBytes, int parallelism, Constraints constraints) {
+        long memoryBudget = DEFAULT_BATCH_MEMORY_BYTES;
+        int maxBatchSize = MAX_BATCH_SIZE;
+        if (constraints != null) {
+            if (constraints.getMaxMemoryBytes() > 0) {
+                // Каждый воркер держит в памяти свой batch
+                memoryBudget = constraints.getMaxMemoryBytes() / parallelism;
+            }
+            if (constraints.getMaxBatchSize() > 0) {
+                maxBatchSize = Math.min(maxBatchSize, constraints.getMaxBatchSize());
+            }
+        }
+
+        int size = Math.max(MIN_BATCH_SIZE, batchSizeFor(operation, recordBytes, Long.MAX_VALUE));
+        long memoryCap = Math.max(1, memoryBudget / (recordBytes * DRIVER_COPY_FACTOR));
+        return (int) Math.min(Math.min(size, maxBatchSize), memoryCap);
+    }
+
+    /**
+     * Без модели - прежняя оценка по числу batch, без измеренного масштабирования
+     * ускорение от параллелизма не учитывается, чтобы оценка не оказалась заниженной.
+     */
+    private long estimateMs(
+            BatchCostModel model,
+            NavigableMap<Integer, Double> scaling,
+            int totalRecords,
+            int batchSize,
+            int parallelism) {
+        double sequentialMs =
+                model != null
+                        ? model.estimateNanos(totalRecords, batchSize) / 1_000_000.0
+                        : Math.ceil((double) totalRecords / batchSize) * DEFAULT_BATCH_TIME_MS;
+
+        Double base = scaling.get(1);
+        Double scaled = scaling.get(parallelism);
+        double speedup = base != null && scaled != null && base > 0 ? scaled / base : 1.0;
+        return (long) Math.ceil(sequentialMs / Math.max(1.0, speedup));
+    }
+
+    /**
+     * Throughput по уровням параллелизма. Уровень 1 считается по последовательным batch,
+     * если нет измеренного прогона Parallel с одним воркером.
+     */
+    private NavigableMap<Integer, Double> measuredScaling(BatchOperation operation) {
+        NavigableMap<Integer, Double> scaling = new TreeMap<>();
+
+        long rows = 0;
+        long nanos = 0;
+        for (BatchMetrics metric : sequentialSamples.getOrDefault(operation, List.of())) {
+            rows += metric.getBatchSize();
+            nanos += metric.getExecutionTimeNanos();
+        }
+        if (nanos > 0) {
+            scaling.put(1, rows * 1_000_000_000.0 / nanos);
+        }
+
+        parallelSamples
+                .getOrDefault(operation, Map.of())
+                .forEach((level, stats) -> scaling.put(level, stats.average()));
+        return scaling;
+    }
+
+    private int recommendedParallelism(NavigableMap<Integer, Double> scaling) {
+        if (scaling.size() < 2) {
+            return DEFAULT_PARALLELISM;
+        }
+
+        double best = scaling.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+        for (Map.Entry<Integer, Double> level : scaling.entrySet()) {
+            if (level.getValue() >= best * SCALING_SATURATION) {
+                return level.getKey();
+            }
+        }
+        return scaling.lastKey();
+    }
+
+    private int defaultBatchSize(BatchOperation operation) {
+        return switch (operation) {
+            case INSERT, UPSERT -> 2000;
+            case UPDATE -> 1500;
+            case DELETE -> 3000;
+        };
+    }
+
+    /**
+     * Грубая оценка с учетом compact strings и сжатых ссылок:
+     * заголовок объекта и поля, плюс содержимое строк и boxed значений.
+     */
+    private static long estimateBytes(Object record) {
+        if (record instanceof Product product) {
+            return 56
+                    + stringBytes(product.getSku())
+                    + stringBytes(product.getName())
+                    + stringBytes(product.getDescription())
+                    + stringBytes(product.getCategoryName())
+                    + (product.getPrice() != null ? 40 : 0)
+                    + (product.getId() != null ? 16 : 0)
+                    + (product.getCategoryId() != null ? 16 : 0)
+                    + (product.getCreatedAt() != null ? 48 : 0);
+        }
+        if (record instanceof Long) {
+            return 16;
+        }
+        return DEFAULT_RECORD_BYTES;
+    }
+
+    private static long stringBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+        return 40 + (long) value.length() * (latin1 ? 1 : 2);
+    }
+
     @Override
     public OptimizationReport analyzePerformance(List<BatchMetrics> metrics) {
         if (metrics == null || metrics.isEmpty()) {
@@ -115,4 +348,18 @@ public class DefaultBatchOptimizer implements BatchOptimizer {
                 .expectedImprovementPercent(expectedImprovement)
                 .build();
     }
+
+    private static class ThroughputStats {
+        double sum;
+        int count;
+
+        void add(double throughput) {
+            sum += throughput;
+            count++;
+        }
+
+        double average() {
+            return count == 0 ? 0 : sum / count;
+        }
+    }
 }
@@ -0,0 +1,303 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+
+/**
+ * Массовая загрузка с отложенными вторичными индексами.
+ * Перед загрузкой определения вторичных индексов таблицы сохраняются в
+ * mentee_power.deferred_indexes, а сами индексы удаляются: загрузка не обновляет их построчно.
+ * После загрузки индексы строятся заново по одному на соединение из пула и таблица
+ * анализируется. Если загрузка упала, индексы все равно пересоздаются, а если упал процесс,
+ * их восстановит {@link #restorePending(String)} или следующая загрузка той же таблицы.
+ * Уникальные индексы и индексы ограничений не трогаются: они обеспечивают целостность
+ * и нужны для ON CONFLICT во время загрузки.
+ */
+@Slf4j
+public class DeferredIndexLoader {
+    static final String DEFERRED_TABLE = "mentee_power.deferred_indexes";
+
+    private static final String SELECT_SECONDARY_INDEXES =
+            "SELECT i.indexname, i.indexdef FROM pg_indexes i "
+                    + "JOIN pg_namespace n ON n.nspname = i.schemaname "
+                    + "JOIN pg_class c ON c.relname = i.indexname AND c.relnamespace = n.oid "
+                    + "JOIN pg_index x ON x.indexrelid = c.oid "
+                    + "WHERE i.schemaname = ? AND i.tablename = ? "
+                    + "AND NOT x.indisunique AND NOT x.indisprimary "
+                    + "AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conindid = c.oid)";
+    private static final String INSERT_DEFERRED =
+            "INSERT INTO "
+                    + DEFERRED_TABLE
+                    + " (schema_name, table_name, index_name, index_def) VALUES (?, ?, ?, ?) "
+                    + "ON CONFLICT (schema_name, index_name) DO NOTHING";
+    private static final String SELECT_DEFERRED =
+            "SELECT index_name, index_def FROM "
+                    + DEFERRED_TABLE
+                    + " WHERE schema_name = ? AND table_name = ? ORDER BY index_name";
+    private static final String DELETE_DEFERRED =
+            "DELETE FROM " + DEFERRED_TABLE + " WHERE schema_name = ? AND index_name = ?";
+    private static final String CREATE_INDEX_PREFIX = "CREATE INDEX ";
+
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    private final ConnectionPoolManager connectionPool;
+    private final int parallelism;
+    private final boolean online;
+
+    public DeferredIndexLoader(ConnectionPoolManager pool) {
+        this(pool, DEFAULT_PARALLELISM, false);
+    }
+
+    /**
+     * @param parallelism сколько индексов строится одновременно, не больше размера пула
+     * @param online строить через CREATE INDEX CONCURRENTLY, не блокируя запись в таблицу.
+     *     Такие построения берут на таблицу самоконфликтующую блокировку SHARE UPDATE
+     *     EXCLUSIVE и идут по одному, поэтому online режим медленнее
+     */
+    public DeferredIndexLoader(ConnectionPoolManager pool, int parallelism, boolean online) {
+        this.connectionPool = pool;
+        this.parallelism = parallelism;
+        this.online = online;
+    }
+
+    /**
+     * Выполнить загрузку с отложенными индексами таблицы.
+     *
+     * @param table имя таблицы со схемой, например mentee_power.products
+     * @param load загрузка, обычно вызов batch процессора
+     * @return результат загрузки
+     */
+    public <R> R load(String table, BulkLoad<R> load) throws SQLException {
+        TableName name = TableName.parse(table);
+        // Индексы, оставшиеся от упавшей загрузки, сначала восстанавливаются
+        restorePending(table);
+        int deferred = deferIndexes(name);
+
+        R result;
+        long loadStart = System.currentTimeMillis();
+        try {
+            result = load.run();
+        } catch (SQLException | RuntimeException e) {
+            try {
+                rebuildIndexes(name);
+            } catch (SQLException restoreEx) {
+                e.addSuppressed(restoreEx);
+            }
+            throw e;
+        }
+        long loadDuration = System.currentTimeMillis() - loadStart;
+
+        long rebuildStart = System.currentTimeMillis();
+        rebuildIndexes(name);
+        log.info(
+                "Загрузка {} без {} индексов: {} мс, пересоздание индексов и ANALYZE: {} мс",
+                table,
+                deferred,
+                loadDuration,
+                System.currentTimeMillis() - rebuildStart);
+        return result;
+    }
+
+    /**
+     * Пересоздать индексы таблицы, удаленные загрузкой, которая не завершилась.
+     *
+     * @return количество восстановленных индексов
+     */
+    public int restorePending(String table) throws SQLException {
+        TableName name = TableName.parse(table);
+        if (readDeferred(name).isEmpty()) {
+            return 0;
+        }
+        log.warn("Восстановление индексов {}, оставшихся от незавершенной загрузки", table);
+        return rebuildIndexes(name);
+    }
+
+    /**
+     * Сохранить определения и удалить вторичные индексы одной транзакцией:
+     * индекс удален тогда и только тогда, когда его определение сохранено.
+     */
+    private int deferIndexes(TableName name) throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<String, String> indexes = new LinkedHashMap<>();
+                try (PreparedStatement ps = conn.prepareStatement(SELECT_SECONDARY_INDEXES)) {
+                    ps.setString(1, name.schema);
+                    ps.setString(2, name.table);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            indexes.put(rs.getString("indexname"), rs.getString("indexdef"));
+                        }
+                    }
+                }
+
+                try (PreparedStatement insert = conn.prepareStatement(INSERT_DEFERRED);
+                        Statement drop = conn.createStatement()) {
+                    for (Map.Entry<String, String> index : indexes.entrySet()) {
+                        insert.setString(1, name.schema);
+                        insert.setString(2, name.table);
+                        insert.setString(3, index.getKey());
+                        insert.setString(4, index.getValue());
+                        insert.executeUpdate();
+                        drop.execute(
+                                "DROP INDEX " + name.schema + "." + quote(index.getKey()));
+                    }
+                }
+                conn.commit();
+                return indexes.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw new SQLException("Ошибка при удалении индексов " + name, e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Построить сохраненные индексы и выполнить ANALYZE. Определение удаляется из
+     * deferred_indexes сразу после построения своего индекса.
+     */
+    private int rebuildIndexes(TableName name) throws SQLException {
+        List<String[]> indexes = readDeferred(name);
+        if (!indexes.isEmpty()) {
+            int workers = online ? 1 : Math.max(1, Math.min(parallelism, indexes.size()));
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            AtomicInteger next = new AtomicInteger();
+            try {
+                List<CompletableFuture<Void>> futures = new ArrayList<>(workers);
+                for (int i = 0; i < workers; i++) {
+                    futures.add(
+                            CompletableFuture.runAsync(
+                                    () -> buildIndexes(name, indexes, next), executor));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                throw new SQLException("Ошибка при пересоздании индексов " + name, e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        try (Connection conn = connectionPool.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE " + name);
+        }
+        return indexes.size();
+    }
+
+    /**
+     * Воркер строит индексы из общей очереди на своем соединении.
+     */
+    private void buildIndexes(TableName name, List<String[]> indexes, AtomicInteger next) {
+        try (Connection conn = connectionPool.getConnection()) {
+            // CREATE INDEX CONCURRENTLY нельзя выполнять внутри транзакции
+            conn.setAutoCommit(true);
+            int i;
+            while ((i = next.getAndIncrement()) < indexes.size()) {
+                String indexName = indexes.get(i)[0];
+                String indexDef = indexes.get(i)[1];
+                buildIndex(conn, name, indexName, indexDef);
+                try (PreparedStatement ps = conn.prepareStatement(DELETE_DEFERRED)) {
+                    ps.setString(1, name.schema);
+                    ps.setString(2, indexName);
+                    ps.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void buildIndex(Connection conn, TableName name, String indexName, String indexDef)
+            throws SQLException {
+        // pg_indexes хранит определение вида "CREATE INDEX имя ON схема.таблица USING ..."
+        String ddl =
+                CREATE_INDEX_PREFIX
+                        + (online ? "CONCURRENTLY " : "")
+                        + "IF NOT EXISTS "
+                        + indexDef.substring(CREATE_INDEX_PREFIX.length());
+        long start = System.currentTimeMillis();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(ddl);
+        } catch (SQLException e) {
+            if (!online) {
+                throw e;
+            }
+            // Упавший CONCURRENTLY оставляет INVALID индекс: удаляем и строим обычным способом
+            log.warn("CREATE INDEX CONCURRENTLY {} не удался, строим с блокировкой", indexName, e);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP INDEX IF EXISTS " + name.schema + "." + quote(indexName));
+                stmt.execute(indexDef);
+            }
+        }
+        log.debug("Индекс {} построен за {} мс", indexName, System.currentTimeMillis() - start);
+    }
+
+    private List<String[]> readDeferred(TableName name) throws SQLException {
+        List<String[]> indexes = new ArrayList<>();
+        try (Connection conn = connectionPool.getConnection();
+                PreparedStatement ps = conn.prepareStatement(SELECT_DEFERRED)) {
+            ps.setString(1, name.schema);
+            ps.setString(2, name.table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    indexes.add(new String[] {rs.getString(1), rs.getString(2)});
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Загрузка, выполняемая без вторичных индексов.
+     */
+    @FunctionalInterface
+    public interface BulkLoad<R> {
+        R run() throws SQLException;
+    }
+
+    private static class TableName {
+        final String schema;
+        final String table;
+
+        private TableName(String schema, String table) {
+            this.schema = schema;
+            this.table = table;
+        }
+
+        static TableName parse(String qualifiedName) {
+            int dot = qualifiedName.indexOf('.');
+            if (dot < 0 || !FastIngestLoader.TABLE_NAME.matcher(qualifiedName).matches()) {
+                throw new IllegalArgumentException(
+                        "Ожидается имя таблицы со схемой: " + qualifiedName);
+            }
+            return new TableName(
+                    qualifiedName.substring(0, dot), qualifiedName.substring(dot + 1));
+        }
+
+        @Override
+        public String toString() {
+            return schema + "." + table;
+        }
+    }
+}
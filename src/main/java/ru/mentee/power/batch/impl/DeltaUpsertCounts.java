@@ -0,0 +1,50 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import ru.mentee.power.batch.model.BatchResult;
+
+/**
+ * Счетчики delta upsert. Upsert с guard IS DISTINCT FROM возвращает через
+ * RETURNING (xmax = 0) только вставленные и обновленные строки: xmax = 0 у новой версии
+ * бывает лишь при вставке. Строки, совпавшие с данными в БД, не возвращаются.
+ * Дубликаты ключа, схлопнутые до отправки, с БД не сравнивались и считаются отдельно.
+ */
+class DeltaUpsertCounts {
+    int inserted;
+    int updated;
+    int unchanged;
+    int collapsed;
+
+    /**
+     * Разобрать RETURNING batch из sent записей.
+     */
+    void addReturned(ResultSet rs, int sent) throws SQLException {
+        int returned = 0;
+        while (rs.next()) {
+            if (rs.getBoolean(1)) {
+                inserted++;
+            } else {
+                updated++;
+            }
+            returned++;
+        }
+        unchanged += sent - returned;
+    }
+
+    BatchResult toResult(int totalRecords, long duration) {
+        int successful = inserted + updated + unchanged + collapsed;
+        return BatchResult.builder()
+                .totalRecords(totalRecords)
+                .successfulRecords(successful)
+                .failedRecords(totalRecords - successful)
+                .insertedRecords(inserted)
+                .updatedRecords(updated)
+                .unchangedRecords(unchanged)
+                .collapsedRecords(collapsed)
+                .executionTimeMs(duration)
+                .recordsPerSecond(duration == 0 ? 0 : (successful * 1000.0) / duration)
+                .build();
+    }
+}
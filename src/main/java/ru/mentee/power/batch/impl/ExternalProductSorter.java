@@ -0,0 +1,189 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.model.Product;
+
+/**
+ * Внешняя сортировка слиянием для загрузок больше кучи.
+ * Входные продукты набираются в run до бюджета памяти, run сортируется и сбрасывается
+ * во временный файл в CSV-формате COPY. Затем run'ы сливаются k-way слиянием через
+ * {@link MappedFileReader}, так что в памяти одновременно находится по одной записи
+ * из каждого run. Если вход уместился в один run, файлы не создаются.
+ * Сортировка стабильна: при равных ключах сохраняется порядок входа.
+ * Временные файлы удаляются в {@link #close()}.
+ */
+@Slf4j
+public class ExternalProductSorter implements Closeable {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // Грубая оценка занимаемой продуктом кучи: заголовки объектов плюс UTF-16 строки
+    private static final int PRODUCT_OVERHEAD_BYTES = 160;
+
+    private final Comparator<Product> order;
+    private final long runBudgetBytes;
+    private final Path tempDir;
+    private final List<Path> runFiles = new ArrayList<>();
+    private final List<MappedFileReader> readers = new ArrayList<>();
+
+    /**
+     * @param runBudgetBytes примерный объем кучи под один run
+     * @param tempDir каталог временных файлов run'ов
+     */
+    public ExternalProductSorter(Comparator<Product> order, long runBudgetBytes, Path tempDir) {
+        this.order = order;
+        this.runBudgetBytes = runBudgetBytes;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Отсортировать продукты. Вход читается полностью при вызове, выход - лениво.
+     */
+    public Iterator<Product> sort(Iterator<Product> input) throws IOException {
+        List<Product> run = new ArrayList<>();
+        long runBytes = 0;
+        while (input.hasNext()) {
+            Product product = input.next();
+            run.add(product);
+            runBytes += estimateSize(product);
+            if (runBytes >= runBudgetBytes) {
+                spill(run);
+                run.clear();
+                runBytes = 0;
+            }
+        }
+
+        if (runFiles.isEmpty()) {
+            run.sort(order);
+            return run.iterator();
+        }
+        if (!run.isEmpty()) {
+            spill(run);
+        }
+        log.debug("Внешняя сортировка: слияние {} run'ов", runFiles.size());
+        return new MergeIterator();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (MappedFileReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        readers.clear();
+        for (Path runFile : runFiles) {
+            try {
+                Files.deleteIfExists(runFile);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        runFiles.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void spill(List<Product> run) throws IOException {
+        run.sort(order);
+        Path runFile = Files.createTempFile(tempDir, "sort-run-", ".csv");
+        runFiles.add(runFile);
+        CsvCopyEncoder encoder = new CsvCopyEncoder(ProductCopyLayout.PRODUCT);
+        try (OutputStream out =
+                new BufferedOutputStream(Files.newOutputStream(runFile), WRITE_BUFFER_SIZE)) {
+            for (Product product : run) {
+                encoder.encode(product);
+                encoder.writeTo(out);
+            }
+        }
+    }
+
+    private static long estimateSize(Product product) {
+        return PRODUCT_OVERHEAD_BYTES
+                + 2L
+                        * (length(product.getSku())
+                                + length(product.getName())
+                                + length(product.getDescription()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Текущая запись одного run'а.
+     */
+    private static class RunCursor {
+        final MappedFileReader reader;
+        final int runIndex;
+        Product current;
+
+        RunCursor(MappedFileReader reader, int runIndex) {
+            this.reader = reader;
+            this.runIndex = runIndex;
+        }
+
+        boolean advance() throws IOException {
+            String record = reader.nextRecord();
+            current = record != null ? ProductRecordParser.parseCsv(record) : null;
+            return current != null;
+        }
+    }
+
+    private class MergeIterator implements Iterator<Product> {
+        // При равных ключах первым идет более ранний run: так сохраняется стабильность
+        private final PriorityQueue<RunCursor> heap =
+                new PriorityQueue<>(
+                        Comparator.<RunCursor, Product>comparing(c -> c.current, order)
+                                .thenComparingInt(c -> c.runIndex));
+
+        MergeIterator() throws IOException {
+            for (int i = 0; i < runFiles.size(); i++) {
+                MappedFileReader reader = new MappedFileReader(runFiles.get(i), true);
+                readers.add(reader);
+                RunCursor cursor = new RunCursor(reader, i);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public Product next() {
+            RunCursor cursor = heap.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            Product product = cursor.current;
+            try {
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка чтения run'а внешней сортировки", e);
+            }
+            return product;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.IngestOptions;
+
+/**
+ * Загрузка через COPY с явно заданной надежностью задания ({@link IngestOptions}).
+ * Большие chunk и асинхронный коммит убирают ожидание fsync WAL на каждые 1000 строк,
+ * UNLOGGED таблица загрузки не пишет WAL вовсе. Режим подходит только для данных,
+ * которые можно пересоздать из источника: staging каталогов, производных витрин.
+ */
+@Slf4j
+public class FastIngestLoader {
+    private static final String ASYNC_COMMIT = "SET LOCAL synchronous_commit = off";
+    private static final String LOAD_SUFFIX = "_load";
+    static final Pattern TABLE_NAME = Pattern.compile("([a-z_][a-z0-9_]*\\.)?[a-z_][a-z0-9_]*");
+    private static final String FOREIGN_KEYS =
+            "SELECT conname, pg_get_constraintdef(oid) FROM pg_constraint"
+                    + " WHERE conrelid = ?::regclass AND contype = 'f'";
+    // Включая ссылки таблицы на саму себя: они указывали бы на удаляемую версию
+    private static final String REFERENCING_TABLES =
+            "SELECT conrelid::regclass::text FROM pg_constraint"
+                    + " WHERE confrelid = ?::regclass AND contype = 'f'";
+    // Последовательности serial-колонок удаляются вместе с таблицей-владельцем
+    private static final String OWNED_SEQUENCES =
+            "SELECT s.oid::regclass::text, a.attname FROM pg_depend d"
+                    + " JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S'"
+                    + " JOIN pg_attribute a"
+                    + " ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid"
+                    + " WHERE d.refobjid = ?::regclass AND d.deptype = 'a'";
+
+    private final Connection connection;
+
+    public FastIngestLoader(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Вставка в mentee_power.products chunk'ами, один коммит на chunk.
+     * На products ссылаются журналируемые таблицы, поэтому UNLOGGED для нее недоступен.
+     */
+    public <T> BatchResult insert(List<T> records, IngestOptions options) throws SQLException {
+        if (options.isUnloggedLoad() || options.isKeepUnlogged()) {
+            throw new IllegalArgumentException(
+                    "UNLOGGED загрузка возможна только через rebuild в отдельную таблицу");
+        }
+        if (records.isEmpty()) {
+            return BatchResult.empty();
+        }
+
+        long startTime = System.currentTimeMillis();
+        boolean originalAutoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+            int loaded = loadChunks(records, PostgresCopyProcessor.PRODUCTS_TABLE, options);
+            return buildResult(records.size(), loaded, startTime, options);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при быстрой загрузке продуктов", e);
+        } finally {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+    }
+
+    /**
+     * Пересоздать таблицу с колонками products: загрузка идет в теневую таблицу
+     * {@code table + "_load"}, которая в конце переводится в LOGGED (если не задан
+     * keepUnlogged) и подменяет table переименованием в одной транзакции.
+     * Читатели видят старую версию таблицы до подмены.
+     * Теневая таблица создается по образцу table (при первой загрузке - products)
+     * с ключами, индексами и ограничениями; внешние ключи table добавляются после
+     * загрузки, а последовательности serial-колонок переходят к новой таблице.
+     *
+     * @throws IllegalArgumentException на table ссылаются внешние ключи: удалить ее
+     *     подменой нельзя, для таких таблиц есть {@link #insert(List, IngestOptions)}
+     */
+    public <T> BatchResult rebuild(String table, List<T> records, IngestOptions options)
+            throws SQLException {
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("Некорректное имя таблицы: " + table);
+        }
+        long startTime = System.currentTimeMillis();
+        String shadowTable = table + LOAD_SUFFIX;
+        String tableName = table.substring(table.lastIndexOf('.') + 1);
+        boolean unlogged = options.isUnloggedLoad() || options.isKeepUnlogged();
+        boolean exists = exists(table);
+        if (exists) {
+            List<String> referencing = queryColumn(REFERENCING_TABLES, table);
+            if (!referencing.isEmpty()) {
+                throw new IllegalArgumentException(
+                        "На " + table + " ссылаются внешние ключи таблиц " + referencing);
+            }
+        }
+        String template = exists ? table : PostgresCopyProcessor.PRODUCTS_TABLE;
+        boolean originalAutoCommit = connection.getAutoCommit();
+
+        try {
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + shadowTable);
+                stmt.execute(
+                        "CREATE "
+                                + (unlogged ? "UNLOGGED " : "")
+                                + "TABLE "
+                                + shadowTable
+                                + " (LIKE "
+                                + template
+                                + " INCLUDING ALL)");
+            }
+            connection.commit();
+
+            int loaded = loadChunks(records, shadowTable, options);
+
+            // SET LOGGED пишет таблицу в WAL одним проходом и коммитится синхронно:
+            // после подмены данные переживают сбой
+            try (Statement stmt = connection.createStatement()) {
+                if (unlogged && !options.isKeepUnlogged()) {
+                    stmt.execute("ALTER TABLE " + shadowTable + " SET LOGGED");
+                }
+                // LIKE не копирует внешние ключи; проверка после загрузки - один проход
+                for (String[] foreignKey : queryPairs(FOREIGN_KEYS, template)) {
+                    stmt.execute(
+                            "ALTER TABLE "
+                                    + shadowTable
+                                    + " ADD CONSTRAINT "
+                                    + RowBinderGenerator.quote(foreignKey[0])
+                                    + " "
+                                    + foreignKey[1]);
+                }
+                if (exists) {
+                    for (String[] sequence : queryPairs(OWNED_SEQUENCES, table)) {
+                        stmt.execute(
+                                "ALTER SEQUENCE "
+                                        + sequence[0]
+                                        + " OWNED BY "
+                                        + shadowTable
+                                        + "."
+                                        + RowBinderGenerator.quote(sequence[1]));
+                    }
+                }
+                stmt.execute("DROP TABLE IF EXISTS " + table);
+                stmt.execute("ALTER TABLE " + shadowTable + " RENAME TO " + tableName);
+            }
+            connection.commit();
+
+            log.info("Таблица {} пересоздана: {} записей", table, loaded);
+            return buildResult(records.size(), loaded, startTime, options);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при пересоздании таблицы " + table, e);
+        } finally {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+    }
+
+    private boolean exists(String table) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT to_regclass(?)")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getString(1) != null;
+            }
+        }
+    }
+
+    private List<String> queryColumn(String sql, String table) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    values.add(rs.getString(1));
+                }
+            }
+        }
+        return values;
+    }
+
+    private List<String[]> queryPairs(String sql, String table) throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new String[] {rs.getString(1), rs.getString(2)});
+                }
+            }
+        }
+        return rows;
+    }
+
+    private <T> int loadChunks(List<T> records, String table, IngestOptions options)
+            throws SQLException {
+        PostgresCopyProcessor copier = new PostgresCopyProcessor(connection, options.getFormat());
+        int chunkSize = options.getCommitChunkSize();
+        int loaded = 0;
+
+        for (int i = 0; i < records.size(); i += chunkSize) {
+            List<T> chunk = records.subList(i, Math.min(i + chunkSize, records.size()));
+            if (!options.isSynchronousCommit()) {
+                // SET LOCAL действует до конца транзакции, поэтому повторяется в каждом chunk
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(ASYNC_COMMIT);
+                }
+            }
+            PostgresCopyProcessor.CopyCounts counts =
+                    copier.copyIn(
+                            chunk.iterator(),
+                            table,
+                            ProductCopyLayout.PRODUCT,
+                            options.getFormat());
+            loaded += (int) counts.rowsCopied;
+            connection.commit();
+        }
+        return loaded;
+    }
+
+    private BatchResult buildResult(
+            int totalRecords, int loaded, long startTime, IngestOptions options) {
+        long duration = System.currentTimeMillis() - startTime;
+        return BatchResult.builder()
+                .totalRecords(totalRecords)
+                .successfulRecords(loaded)
+                .failedRecords(totalRecords - loaded)
+                .executionTimeMs(duration)
+                .recordsPerSecond(calculateThroughput(loaded, duration))
+                .relaxedGuarantees(options.relaxedGuarantees())
+                .build();
+    }
+
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+}
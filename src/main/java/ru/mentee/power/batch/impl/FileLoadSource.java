@@ -0,0 +1,155 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import ru.mentee.power.batch.model.FileFormat;
+import ru.mentee.power.model.Product;
+
+/**
+ * Источник продуктов из файла CSV или NDJSON, который может быть больше кучи.
+ * Файл читается через {@link MappedFileReader}, продукты отдаются ленивым потоком,
+ * пригодным для {@link PostgresCopyProcessor#loadWithCopy(Stream)}. С
+ * {@link #sortedBy(Function)} продукты предварительно упорядочиваются внешней сортировкой,
+ * например по sku, чтобы upsert и индекс получали ключи по порядку.
+ * Поток нужно закрыть: при закрытии освобождается файл и удаляются временные run'ы.
+ * CSV, совпадающий с раскладкой COPY, быстрее загрузить без разбора через
+ * {@link PostgresCopyProcessor#loadCsvFile(Path, boolean)}.
+ */
+public class FileLoadSource {
+    static final long DEFAULT_RUN_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private final Path file;
+    private final FileFormat format;
+    private final boolean hasHeader;
+    private final Function<Product, String> sortKey;
+    private final long runBudgetBytes;
+    private final Path tempDir;
+
+    /**
+     * @param hasHeader первая строка файла - заголовок и пропускается
+     */
+    public FileLoadSource(Path file, FileFormat format, boolean hasHeader) {
+        this(file, format, hasHeader, null, DEFAULT_RUN_BUDGET_BYTES, null);
+    }
+
+    private FileLoadSource(
+            Path file,
+            FileFormat format,
+            boolean hasHeader,
+            Function<Product, String> sortKey,
+            long runBudgetBytes,
+            Path tempDir) {
+        this.file = file;
+        this.format = format;
+        this.hasHeader = hasHeader;
+        this.sortKey = sortKey;
+        this.runBudgetBytes = runBudgetBytes;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Источник с внешней сортировкой по ключу. Записи без ключа идут в конце.
+     * Временные файлы создаются рядом с исходным файлом.
+     */
+    public FileLoadSource sortedBy(Function<Product, String> key) {
+        return sortedBy(key, DEFAULT_RUN_BUDGET_BYTES, null);
+    }
+
+    /**
+     * @param runBudgetBytes примерный объем кучи под один run сортировки
+     * @param tempDir каталог временных файлов, null - каталог исходного файла
+     */
+    public FileLoadSource sortedBy(
+            Function<Product, String> key, long runBudgetBytes, Path tempDir) {
+        return new FileLoadSource(file, format, hasHeader, key, runBudgetBytes, tempDir);
+    }
+
+    /**
+     * Открыть поток продуктов. С сортировкой файл прочитывается и разбивается на run'ы
+     * при вызове, без нее - по мере потребления потока.
+     */
+    public Stream<Product> products() throws IOException {
+        MappedFileReader reader = new MappedFileReader(file, format == FileFormat.CSV);
+        ExternalProductSorter sorter = null;
+        try {
+            if (hasHeader) {
+                reader.nextRecord();
+            }
+            Iterator<Product> products = new RecordIterator(reader);
+            if (sortKey != null) {
+                Path runDir = tempDir != null ? tempDir : file.toAbsolutePath().getParent();
+                sorter =
+                        new ExternalProductSorter(
+                                Comparator.comparing(
+                                        sortKey, Comparator.nullsLast(Comparator.naturalOrder())),
+                                runBudgetBytes,
+                                runDir);
+                products = sorter.sort(products);
+            }
+
+            ExternalProductSorter openSorter = sorter;
+            return StreamSupport.stream(
+                            Spliterators.spliteratorUnknownSize(
+                                    products, Spliterator.ORDERED | Spliterator.NONNULL),
+                            false)
+                    .onClose(() -> close(reader, openSorter));
+        } catch (IOException | RuntimeException e) {
+            close(reader, sorter);
+            throw e;
+        }
+    }
+
+    private static void close(MappedFileReader reader, ExternalProductSorter sorter) {
+        try (reader;
+                ExternalProductSorter ignored = sorter) {
+            // Закрытие в обратном порядке: сначала run'ы сортировки, затем исходный файл
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при закрытии источника загрузки", e);
+        }
+    }
+
+    /**
+     * Продукты файла по одной записи, пустые строки пропускаются.
+     */
+    private class RecordIterator implements Iterator<Product> {
+        private final MappedFileReader reader;
+        private Product next;
+
+        RecordIterator(MappedFileReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                String record;
+                while (next == null && (record = reader.nextRecord()) != null) {
+                    next = ProductRecordParser.parse(format, record);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка чтения файла " + file, e);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Product next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Product product = next;
+            next = null;
+            return product;
+        }
+    }
+}
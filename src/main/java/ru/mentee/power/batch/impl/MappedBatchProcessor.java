@@ -0,0 +1,133 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.interfaces.BatchProcessor;
+import ru.mentee.power.batch.interfaces.RowBinder;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.DetailedBatchResult;
+
+/**
+ * Batch процессор для любой таблицы: SQL и привязку параметров задает {@link RowBinder},
+ * обычно созданный {@link RowBinderGenerator}. Записи выполняются JDBC batch по 1000
+ * с коммитом на batch, как в {@link BasicBatchProcessor}. Записи другого типа пропускаются
+ * и считаются неуспешными. Операция, которую binder не поддерживает (например, UPDATE
+ * таблицы без первичного ключа), отклоняется до обращения к БД.
+ * Параллельные, конвейерные и адаптивные пути остаются только для products.
+ *
+ * @param <E> тип сущности
+ */
+@Slf4j
+public class MappedBatchProcessor<E> implements BatchProcessor {
+    private static final int BATCH_SIZE = 1000;
+
+    private final Connection connection;
+    private final RowBinder<E> binder;
+
+    public MappedBatchProcessor(Connection connection, RowBinder<E> binder) {
+        this.connection = connection;
+        this.binder = binder;
+    }
+
+    @Override
+    public <T> BatchResult insert(List<T> records) throws SQLException {
+        return execute(records, BatchOperation.INSERT);
+    }
+
+    @Override
+    public <T> BatchResult update(List<T> records) throws SQLException {
+        return execute(records, BatchOperation.UPDATE);
+    }
+
+    @Override
+    public BatchResult delete(List<Long> ids) throws SQLException {
+        return execute(ids, BatchOperation.DELETE);
+    }
+
+    @Override
+    public <T> BatchResult upsert(List<T> records) throws SQLException {
+        return execute(records, BatchOperation.UPSERT);
+    }
+
+    @Override
+    public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
+            throws SQLException {
+        return new ResilientBatchProcessor(connection, binder)
+                .insertWithBisection(records, operation);
+    }
+
+    /**
+     * Загрузка через COPY в колонки binder; незаданные значения колонок с DEFAULT
+     * получают значение по умолчанию, как при {@link #insert(List)}.
+     */
+    public BatchResult loadWithCopy(List<E> records) throws SQLException {
+        return new PostgresCopyProcessor(connection).loadWithCopy(records, binder);
+    }
+
+    private <T> BatchResult execute(List<T> records, BatchOperation operation)
+            throws SQLException {
+        requireSupported(operation);
+        if (records.isEmpty()) {
+            return BatchResult.empty();
+        }
+
+        long startTime = System.currentTimeMillis();
+        int totalProcessed = 0;
+
+        try (PreparedStatement ps = connection.prepareStatement(binder.sqlFor(operation))) {
+            connection.setAutoCommit(false);
+
+            int count = 0;
+            for (T record : records) {
+                if (binder.bind(ps, record, operation)) {
+                    ps.addBatch();
+                    count++;
+
+                    if (count % BATCH_SIZE == 0) {
+                        totalProcessed += ps.executeBatch().length;
+                        connection.commit();
+                    }
+                }
+            }
+
+            if (count % BATCH_SIZE != 0) {
+                totalProcessed += ps.executeBatch().length;
+                connection.commit();
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.debug("{} {}: {} записей за {} мс", operation, binder.getTable(), count, duration);
+            return BatchResult.builder()
+                    .totalRecords(records.size())
+                    .successfulRecords(totalProcessed)
+                    .failedRecords(records.size() - totalProcessed)
+                    .executionTimeMs(duration)
+                    .recordsPerSecond(calculateThroughput(totalProcessed, duration))
+                    .build();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException(
+                    "Ошибка при batch " + operation + " в " + binder.getTable(), e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void requireSupported(BatchOperation operation) throws SQLFeatureNotSupportedException {
+        if (!binder.supports(operation)) {
+            throw new SQLFeatureNotSupportedException(
+                    operation + " невозможен для " + binder.getTable() + ": нет ключа");
+        }
+    }
+
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+}
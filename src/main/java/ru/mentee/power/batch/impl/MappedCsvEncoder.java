@@ -0,0 +1,57 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.math.BigDecimal;
+import ru.mentee.power.batch.interfaces.RowBinder;
+
+/**
+ * CSV-кодировщик COPY для сущностей, связанных {@link RowBinder}: значения колонок
+ * читаются через binder и форматируются по типу без промежуточных строк для чисел.
+ * NULL передается пустым полем без кавычек.
+ */
+public class MappedCsvEncoder<T> extends CopyRowEncoder {
+    private final RowBinder<T> binder;
+    private final int[] columns;
+
+    /**
+     * @param columns индексы колонок binder в порядке списка колонок COPY
+     */
+    public MappedCsvEncoder(RowBinder<T> binder, int[] columns) {
+        this.binder = binder;
+        this.columns = columns;
+    }
+
+    @Override
+    public boolean encode(Object record) {
+        if (!binder.getEntityType().isInstance(record)) {
+            return false;
+        }
+
+        T entity = binder.getEntityType().cast(record);
+        reset();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                putByte(',');
+            }
+            putValue(binder.getValue(entity, columns[i]));
+        }
+        putByte('\n');
+        return true;
+    }
+
+    private void putValue(Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            putDecimal(((Number) value).longValue());
+        } else if (value instanceof BigDecimal decimal) {
+            putAscii(decimal.toPlainString());
+        } else if (value instanceof Boolean bool) {
+            putByte(bool ? 't' : 'f');
+        } else {
+            // Строки и java.time: toString дает формат ISO, который понимает PostgreSQL
+            putCsvText(value.toString());
+        }
+    }
+}
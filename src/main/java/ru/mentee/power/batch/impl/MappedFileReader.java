@@ -0,0 +1,144 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Чтение файла загрузки через memory-mapped {@link FileChannel}.
+ * Файл отображается окнами фиксированного размера: файлы больше 2 ГБ (предел одного
+ * MappedByteBuffer) читаются последовательно, а страницы подгружает и вытесняет ОС,
+ * минуя буферы кучи. Отображение освобождается сборщиком мусора после перехода
+ * к следующему окну.
+ * Записи разделяются переводом строки. В режиме quoteAware перевод строки внутри
+ * CSV-кавычек не завершает запись.
+ */
+public class MappedFileReader implements AutoCloseable {
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final boolean quoteAware;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private byte[] recordBytes = new byte[1024];
+
+    public MappedFileReader(Path file, boolean quoteAware) throws IOException {
+        this(file, quoteAware, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileReader(Path file, boolean quoteAware, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.quoteAware = quoteAware;
+    }
+
+    /**
+     * Следующая запись без завершающего перевода строки (и \r перед ним).
+     *
+     * @return запись или null в конце файла
+     */
+    public String nextRecord() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+
+        if (window == null || position >= windowStart + window.limit()) {
+            map(position, windowSize);
+        }
+        long end;
+        while ((end = findRecordEnd()) < 0) {
+            if (windowStart + window.limit() >= size) {
+                // Последняя запись без перевода строки
+                end = size;
+                break;
+            }
+            // Запись не поместилась в окно: отображаем окно с начала записи,
+            // а если оно уже начинается с записи - вдвое большее
+            long length =
+                    windowStart == position ? (long) window.limit() * 2 : (long) windowSize;
+            map(position, (int) Math.min(Integer.MAX_VALUE, length));
+        }
+
+        int length = (int) (end - position);
+        if (length > 0 && window.get((int) (end - 1 - windowStart)) == '\r') {
+            length--;
+        }
+        if (recordBytes.length < length) {
+            recordBytes = new byte[Math.max(length, recordBytes.length * 2)];
+        }
+        window.get((int) (position - windowStart), recordBytes, 0, length);
+        position = end + 1;
+        return new String(recordBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Передать остаток файла в поток без разбора на записи, например в COPY FROM STDIN.
+     * Байты копируются из отображения через один переиспользуемый буфер.
+     *
+     * @return количество переданных байт
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        long transferred = 0;
+        while (position < size) {
+            if (window == null || position >= windowStart + window.limit()) {
+                map(position, windowSize);
+            }
+            int offset = (int) (position - windowStart);
+            int length = (int) Math.min(buffer.length, window.limit() - offset);
+            window.get(offset, buffer, 0, length);
+            out.write(buffer, 0, length);
+            position += length;
+            transferred += length;
+        }
+        return transferred;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Смещение перевода строки, завершающего запись с position, или -1, если его нет в окне.
+     */
+    private long findRecordEnd() {
+        boolean inQuotes = false;
+        for (int i = (int) (position - windowStart); i < window.limit(); i++) {
+            byte b = window.get(i);
+            if (quoteAware && b == '"') {
+                // Экранированная кавычка "" переключает состояние дважды
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                return windowStart + i;
+            }
+        }
+        return -1;
+    }
+
+    private void map(long offset, int length) throws IOException {
+        long mapped = Math.min(length, size - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapped);
+        windowStart = offset;
+    }
+}
@@ -1,36 +1,87 @@
 /* @MENTEE_POWER (C)2025 */
 package ru.mentee.power.batch.impl;
 
+import java.math.BigDecimal;
+import java.sql.Array;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import ru.mentee.power.batch.impl.ProductColumnBuffer.Column;
 import ru.mentee.power.batch.interfaces.BatchProcessor;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.BatchResult;
 import ru.mentee.power.batch.model.DetailedBatchResult;
+import ru.mentee.power.batch.model.DuplicateKeyPolicy;
 import ru.mentee.power.model.Product;
 
 /**
  * Оптимизированный batch процессор с использованием специфичных для БД оптимизаций.
+ * Каждая колонка batch передается одним параметром-массивом и разворачивается через unnest,
+ * поэтому текст запроса одинаков для любого размера batch и сервер переиспользует план.
  */
 @Slf4j
 public class OptimizedBatchProcessor implements BatchProcessor {
-    private static final String MULTI_VALUE_INSERT =
+    private static final String UNNEST_UPSERT =
             "INSERT INTO mentee_power.products (sku, name, description, price, category_id) "
-                    + "VALUES %s "
+                    + "SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::numeric[],"
+                    + " ?::bigint[]) "
                     + "ON CONFLICT (sku) DO UPDATE SET "
                     + "name = EXCLUDED.name, "
                     + "price = EXCLUDED.price, "
                     + "description = EXCLUDED.description, "
                     + "category_id = EXCLUDED.category_id";
+    private static final String UNNEST_DELTA_UPSERT =
+            "INSERT INTO mentee_power.products AS p (sku, name, description, price, category_id) "
+                    + "SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::numeric[],"
+                    + " ?::bigint[]) "
+                    + "ON CONFLICT (sku) DO UPDATE SET "
+                    + "name = EXCLUDED.name, "
+                    + "price = EXCLUDED.price, "
+                    + "description = EXCLUDED.description, "
+                    + "category_id = EXCLUDED.category_id"
+                    + BasicBatchProcessor.UPDATE_IF_CHANGED;
+    private static final String UNNEST_UPDATE =
+            "UPDATE mentee_power.products p SET name = u.name, description = u.description, "
+                    + "price = u.price, category_id = u.category_id "
+                    + "FROM unnest(?::bigint[], ?::text[], ?::text[], ?::numeric[], ?::bigint[]) "
+                    + "AS u(id, name, description, price, category_id) "
+                    + "WHERE p.id = u.id";
+    // Колоночный буфер не проходит через UpsertBatchPreparer: дубликаты sku схлопываются
+    // DISTINCT ON по порядковому номеру (последняя запись побеждает), цена - в копейках.
+    // Строки без sku не схлопываются: ключом для них служит собственный порядковый номер
+    private static final String UNNEST_COLUMNS_UPSERT =
+            "INSERT INTO mentee_power.products (sku, name, description, price, category_id) "
+                    + "SELECT DISTINCT ON (sku, CASE WHEN sku IS NULL THEN ord END)"
+                    + " sku, name, description, price_units * 0.01, category_id "
+                    + "FROM unnest(?::text[], ?::text[], ?::text[], ?::bigint[], ?::bigint[]) "
+                    + "WITH ORDINALITY AS u(sku, name, description, price_units, category_id, ord) "
+                    + "ORDER BY sku, CASE WHEN sku IS NULL THEN ord END, ord DESC "
+                    + "ON CONFLICT (sku) DO UPDATE SET "
+                    + "name = EXCLUDED.name, "
+                    + "price = EXCLUDED.price, "
+                    + "description = EXCLUDED.description, "
+                    + "category_id = EXCLUDED.category_id";
+    private static final String ANY_DELETE =
+            "DELETE FROM mentee_power.products WHERE id = ANY(?::bigint[])";
 
     private static final int BATCH_SIZE = 1000;
     private final Connection connection;
+    private final DuplicateKeyPolicy duplicateKeyPolicy;
 
     public OptimizedBatchProcessor(Connection connection) {
+        this(connection, DuplicateKeyPolicy.LAST_WINS);
+    }
+
+    public OptimizedBatchProcessor(Connection connection, DuplicateKeyPolicy duplicateKeyPolicy) {
         this.connection = connection;
+        this.duplicateKeyPolicy = duplicateKeyPolicy;
     }
 
     @Override
@@ -40,13 +91,36 @@ public class OptimizedBatchProcessor implements BatchProcessor {
 
     @Override
     public <T> BatchResult update(List<T> records) throws SQLException {
-        return bulkUpsertProducts(records);
+        return bulkUpdateProducts(records);
     }
 
     @Override
     public BatchResult delete(List<Long> ids) throws SQLException {
-        BasicBatchProcessor basicProcessor = new BasicBatchProcessor(connection);
-        return basicProcessor.delete(ids);
+        if (ids.isEmpty()) {
+            return BatchResult.empty();
+        }
+
+        long startTime = System.currentTimeMillis();
+        int totalDeleted = 0;
+
+        try (PreparedStatement ps = connection.prepareStatement(ANY_DELETE)) {
+            connection.setAutoCommit(false);
+
+            for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+                List<Long> batch = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+                ps.setArray(1, connection.createArrayOf("int8", batch.toArray(new Long[0])));
+                totalDeleted += ps.executeUpdate();
+                connection.commit();
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+            return buildResult(ids.size(), totalDeleted, duration);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при bulk удалении", e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
     }
 
     @Override
@@ -58,85 +132,315 @@ public class OptimizedBatchProcessor implements BatchProcessor {
     public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
             throws SQLException {
         ResilientBatchProcessor resilientProcessor = new ResilientBatchProcessor(connection);
-        return resilientProcessor.insertWithErrorHandling(records, operation);
+        return resilientProcessor.insertWithBisection(records, operation);
     }
 
     /**
-     * Сверхбыстрая вставка с использованием multi-value INSERT.
-     * Работает в 5-10 раз быстрее обычного batch.
+     * Сверхбыстрая вставка: INSERT ... SELECT FROM unnest(массивы колонок) ON CONFLICT.
+     * Один prepared statement на любой размер batch, без форматирования строк SQL.
+     * Дубликаты sku внутри batch схлопываются, а строки сортируются по sku: один INSERT
+     * не может обновить строку дважды.
      */
     public <T> BatchResult bulkUpsertProducts(List<T> products) throws SQLException {
+        return executeColumnBatches(products, UNNEST_UPSERT, false, "bulk upsert");
+    }
+
+    /**
+     * Upsert одного chunk из колоночного буфера одной транзакцией. Числовые колонки без NULL
+     * передаются примитивными long[] без упаковки в Long, строки собираются из арены
+     * только на время привязки параметров.
+     * Политика дубликатов - всегда LAST_WINS.
+     */
+    public BatchResult bulkUpsertProducts(ProductColumnBuffer columns) throws SQLException {
+        if (columns.isEmpty()) {
+            return BatchResult.empty();
+        }
+
+        long startTime = System.currentTimeMillis();
+        try (PreparedStatement ps = connection.prepareStatement(UNNEST_COLUMNS_UPSERT)) {
+            connection.setAutoCommit(false);
+
+            String[] skus = textValues(columns, Column.SKU);
+            ps.setArray(1, connection.createArrayOf("text", skus));
+            ps.setArray(2, textArray(columns, Column.NAME));
+            ps.setArray(3, textArray(columns, Column.DESCRIPTION));
+            ps.setArray(4, longArray(columns, Column.PRICE));
+            ps.setArray(5, longArray(columns, Column.CATEGORY_ID));
+            int affected = ps.executeUpdate();
+            connection.commit();
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.debug(
+                    "Upsert из колоночного буфера: {} записей, {} строк",
+                    columns.size(),
+                    affected);
+            // Схлопнутые DISTINCT ON записи применены через последнюю запись с тем же sku
+            int collapsed = countDuplicates(skus);
+            BatchResult result = buildResult(columns.size(), affected + collapsed, duration);
+            result.setCollapsedRecords(collapsed);
+            return result;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при bulk upsert из колоночного буфера", e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Delta upsert через unnest: DO UPDATE срабатывает, только если изменилась хотя бы одна
+     * колонка, поэтому повторная загрузка неизменного каталога не переписывает строки.
+     */
+    public <T> BatchResult deltaUpsertProducts(List<T> products) throws SQLException {
+        return deltaUpsertProducts(products, null);
+    }
+
+    /**
+     * Delta upsert с клиентским кэшем хэшей: совпадающие с кэшем записи отбрасываются
+     * до заполнения массивов колонок и не уходят в БД.
+     */
+    public <T> BatchResult deltaUpsertProducts(List<T> products, ProductHashCache cache)
+            throws SQLException {
+        if (products.isEmpty()) {
+            return BatchResult.empty();
+        }
+        ProductCopyLayout.PRODUCT.requireRecords(products);
+
+        long startTime = System.currentTimeMillis();
+        DeltaUpsertCounts counts = new DeltaUpsertCounts();
+        ProductColumns columns = new ProductColumns(Math.min(BATCH_SIZE, products.size()));
+        UpsertBatchPreparer preparer = new UpsertBatchPreparer(duplicateKeyPolicy);
+
+        try (PreparedStatement ps = connection.prepareStatement(UNNEST_DELTA_UPSERT)) {
+            connection.setAutoCommit(false);
+
+            for (int i = 0; i < products.size(); i += BATCH_SIZE) {
+                List<T> batch = products.subList(i, Math.min(i + BATCH_SIZE, products.size()));
+                List<Product> prepared = preparer.prepare(batch);
+                List<Product> changed = cache != null ? cache.filterChanged(prepared) : prepared;
+                counts.collapsed += preparer.getCollapsedCount();
+                counts.unchanged += prepared.size() - changed.size();
+                int filled = columns.fill(changed);
+                if (filled == 0) {
+                    continue;
+                }
+
+                bindColumns(ps, columns, false);
+                try (ResultSet rs = ps.executeQuery()) {
+                    counts.addReturned(rs, filled);
+                }
+                connection.commit();
+                if (cache != null) {
+                    cache.putAll(changed);
+                }
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.debug(
+                    "Delta upsert: вставлено {}, обновлено {}, без изменений {}, схлопнуто {}",
+                    counts.inserted,
+                    counts.updated,
+                    counts.unchanged,
+                    counts.collapsed);
+            return counts.toResult(products.size(), duration);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при bulk delta upsert", e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Массовое обновление по id: UPDATE ... FROM unnest(массивы колонок).
+     */
+    public <T> BatchResult bulkUpdateProducts(List<T> products) throws SQLException {
+        return executeColumnBatches(products, UNNEST_UPDATE, true, "bulk update");
+    }
+
+    private <T> BatchResult executeColumnBatches(
+            List<T> products, String sql, boolean byId, String operationName)
+            throws SQLException {
         if (products.isEmpty()) {
             return BatchResult.empty();
         }
+        ProductCopyLayout.PRODUCT.requireRecords(products);
 
         long startTime = System.currentTimeMillis();
         int totalProcessed = 0;
+        ProductColumns columns = new ProductColumns(Math.min(BATCH_SIZE, products.size()));
+        // UPDATE по id не конфликтует по sku, подготовка нужна только для upsert
+        UpsertBatchPreparer preparer = byId ? null : new UpsertBatchPreparer(duplicateKeyPolicy);
 
-        try {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
             connection.setAutoCommit(false);
 
             for (int i = 0; i < products.size(); i += BATCH_SIZE) {
                 int endIndex = Math.min(i + BATCH_SIZE, products.size());
                 List<T> batch = products.subList(i, endIndex);
-                String sql = buildMultiValueInsert(batch);
-
-                try (Statement stmt = connection.createStatement()) {
-                    int affected = stmt.executeUpdate(sql);
-                    totalProcessed += affected;
+                int filled =
+                        preparer == null
+                                ? columns.fill(batch)
+                                : columns.fill(preparer.prepare(batch));
+                if (filled == 0) {
+                    continue;
                 }
 
+                bindColumns(ps, columns, byId);
+                totalProcessed += ps.executeUpdate();
+                if (preparer != null) {
+                    totalProcessed += preparer.getCollapsedCount();
+                }
                 connection.commit();
                 log.debug("Обработано {} записей из {}", endIndex, products.size());
             }
 
             long duration = System.currentTimeMillis() - startTime;
-            return BatchResult.builder()
-                    .totalRecords(products.size())
-                    .successfulRecords(totalProcessed)
-                    .failedRecords(products.size() - totalProcessed)
-                    .executionTimeMs(duration)
-                    .recordsPerSecond(calculateThroughput(totalProcessed, duration))
-                    .build();
+            return buildResult(products.size(), totalProcessed, duration);
         } catch (SQLException e) {
             connection.rollback();
-            throw new SQLException("Ошибка при bulk upsert", e);
+            throw new SQLException("Ошибка при " + operationName, e);
         } finally {
             connection.setAutoCommit(true);
         }
     }
 
-    private <T> String buildMultiValueInsert(List<T> batch) {
-        StringBuilder values = new StringBuilder();
+    private void bindColumns(PreparedStatement ps, ProductColumns columns, boolean byId)
+            throws SQLException {
+        int index = 1;
+        if (byId) {
+            ps.setArray(index++, connection.createArrayOf("int8", columns.ids()));
+        } else {
+            ps.setArray(index++, connection.createArrayOf("text", columns.skus()));
+        }
+        ps.setArray(index++, connection.createArrayOf("text", columns.names()));
+        ps.setArray(index++, connection.createArrayOf("text", columns.descriptions()));
+        ps.setArray(index++, connection.createArrayOf("numeric", columns.prices()));
+        ps.setArray(index, connection.createArrayOf("int8", columns.categoryIds()));
+    }
 
-        for (int i = 0; i < batch.size(); i++) {
-            T record = batch.get(i);
-            if (record instanceof Product product) {
-                if (i > 0) values.append(",");
+    private Array textArray(ProductColumnBuffer columns, Column column) throws SQLException {
+        return connection.createArrayOf("text", textValues(columns, column));
+    }
 
-                values.append(
-                        String.format(
-                                "('%s', '%s', '%s', %s, %s)",
-                                escapeSql(product.getSku()),
-                                escapeSql(product.getName()),
-                                escapeSql(product.getDescription()),
-                                product.getPrice() != null ? product.getPrice() : "NULL",
-                                product.getCategoryId() != null
-                                        ? product.getCategoryId()
-                                        : "NULL"));
+    private static String[] textValues(ProductColumnBuffer columns, Column column) {
+        String[] values = new String[columns.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = columns.getText(row, column);
+        }
+        return values;
+    }
+
+    /**
+     * @return записей с sku, повторяющим sku другой записи; записи без sku не дубликаты
+     */
+    private static int countDuplicates(String[] skus) {
+        Set<String> seen = new HashSet<>(skus.length * 2);
+        int duplicates = 0;
+        for (String sku : skus) {
+            if (sku != null && !seen.add(sku)) {
+                duplicates++;
             }
         }
+        return duplicates;
+    }
 
-        return String.format(MULTI_VALUE_INSERT, values.toString());
+    private Array longArray(ProductColumnBuffer columns, Column column) throws SQLException {
+        long[] values = columns.longColumn(column);
+        if (!columns.hasNulls(column)) {
+            // pgjdbc кодирует long[] напрямую, без Long[] на каждый элемент
+            long[] trimmed =
+                    values.length == columns.size()
+                            ? values
+                            : Arrays.copyOf(values, columns.size());
+            return connection.unwrap(PGConnection.class).createArrayOf("int8", trimmed);
+        }
+        Long[] boxed = new Long[columns.size()];
+        for (int row = 0; row < boxed.length; row++) {
+            boxed[row] = columns.isNull(row, column) ? null : values[row];
+        }
+        return connection.createArrayOf("int8", boxed);
     }
 
-    private String escapeSql(String value) {
-        if (value == null) return "NULL";
-        return value.replace("'", "''");
+    private BatchResult buildResult(int totalRecords, int successfulRecords, long duration) {
+        return BatchResult.builder()
+                .totalRecords(totalRecords)
+                .successfulRecords(successfulRecords)
+                .failedRecords(totalRecords - successfulRecords)
+                .executionTimeMs(duration)
+                .recordsPerSecond(calculateThroughput(successfulRecords, duration))
+                .build();
     }
 
     private double calculateThroughput(int records, long timeMs) {
         if (timeMs == 0) return 0;
         return (records * 1000.0) / timeMs;
     }
+
+    /**
+     * Переиспользуемые массивы колонок одного batch. Массивы сериализуются драйвером в
+     * createArrayOf, поэтому их можно перезаписывать для следующего batch.
+     */
+    private static class ProductColumns {
+        final Long[] ids;
+        final String[] skus;
+        final String[] names;
+        final String[] descriptions;
+        final BigDecimal[] prices;
+        final Long[] categoryIds;
+        int size;
+
+        ProductColumns(int capacity) {
+            ids = new Long[capacity];
+            skus = new String[capacity];
+            names = new String[capacity];
+            descriptions = new String[capacity];
+            prices = new BigDecimal[capacity];
+            categoryIds = new Long[capacity];
+        }
+
+        <T> int fill(List<T> batch) {
+            size = 0;
+            for (T record : batch) {
+                if (record instanceof Product product) {
+                    ids[size] = product.getId();
+                    skus[size] = product.getSku();
+                    names[size] = product.getName();
+                    descriptions[size] = product.getDescription();
+                    prices[size] = product.getPrice();
+                    categoryIds[size] = product.getCategoryId();
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        Long[] ids() {
+            return trimmed(ids);
+        }
+
+        String[] skus() {
+            return trimmed(skus);
+        }
+
+        String[] names() {
+            return trimmed(names);
+        }
+
+        String[] descriptions() {
+            return trimmed(descriptions);
+        }
+
+        BigDecimal[] prices() {
+            return trimmed(prices);
+        }
+
+        Long[] categoryIds() {
+            return trimmed(categoryIds);
+        }
+
+        private <E> E[] trimmed(E[] column) {
+            return size == column.length ? column : Arrays.copyOf(column, size);
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.math.BigDecimal;
+import ru.mentee.power.model.Order;
+import ru.mentee.power.model.OrderItem;
+
+/**
+ * Кодировщик заказов и позиций в CSV-строки COPY в порядке колонок
+ * {@link OrderGraphLoader#orderColumns(int)} и {@link OrderGraphLoader#ITEM_COLUMNS}.
+ * Необязательные колонки заказа пишутся, только если значение задано: заказы без них
+ * загружаются COPY без этих колонок в списке, и сервер подставляет DEFAULT.
+ * id заказа передается отдельно от объекта, чтобы он попадал в объекты вызывающего
+ * только после коммита.
+ */
+public class OrderGraphCsvEncoder extends CopyRowEncoder {
+
+    @Override
+    public boolean encode(Object record) {
+        if (record instanceof OrderRow row) {
+            encodeOrder(row.id, row.order);
+            return true;
+        }
+        if (record instanceof ItemRow row) {
+            encodeItem(row.orderId, row.item);
+            return true;
+        }
+        return false;
+    }
+
+    private void encodeOrder(long id, Order order) {
+        reset();
+        putDecimal(id);
+        putByte(',');
+        putId(order.getUserId());
+        putByte(',');
+        putNumber(order.getTotal());
+        if (order.getStatus() != null) {
+            putByte(',');
+            putCsvText(order.getStatus());
+        }
+        if (order.getCreatedAt() != null) {
+            putByte(',');
+            // ISO-8601 (2025-01-31T10:15:30) PostgreSQL принимает как timestamp
+            putAscii(order.getCreatedAt().toString());
+        }
+        if (order.getRegion() != null) {
+            putByte(',');
+            putCsvText(order.getRegion());
+        }
+        putByte('\n');
+    }
+
+    private void encodeItem(long orderId, OrderItem item) {
+        reset();
+        putDecimal(orderId);
+        putByte(',');
+        putId(item.getProductId());
+        putByte(',');
+        if (item.getQuantity() != null) {
+            putDecimal(item.getQuantity());
+        }
+        putByte(',');
+        putNumber(item.getPrice());
+        putByte('\n');
+    }
+
+    // NULL в NOT NULL колонке отклонит сервер с понятной ошибкой
+    private void putId(Long value) {
+        if (value != null) {
+            putDecimal(value);
+        }
+    }
+
+    private void putNumber(BigDecimal value) {
+        if (value != null) {
+            putAscii(value.toPlainString());
+        }
+    }
+
+    /**
+     * Заказ с зарезервированным id.
+     */
+    static final class OrderRow {
+        final long id;
+        final Order order;
+
+        OrderRow(long id, Order order) {
+            this.id = id;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Позиция с id ее заказа.
+     */
+    static final class ItemRow {
+        final long orderId;
+        final OrderItem item;
+
+        ItemRow(long orderId, OrderItem item) {
+            this.orderId = orderId;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.impl.OrderGraphCsvEncoder.ItemRow;
+import ru.mentee.power.batch.impl.OrderGraphCsvEncoder.OrderRow;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.OrderGraph;
+import ru.mentee.power.model.Order;
+import ru.mentee.power.model.OrderItem;
+
+/**
+ * Пакетная загрузка заказов вместе с позициями.
+ * id заказов резервируются блоками из последовательности orders и проставляются на клиенте,
+ * поэтому позиции получают order_id без RETURNING и построчных round trip. Каждый chunk
+ * загружается одной транзакцией: COPY заказов, затем COPY позиций, чтобы внешний ключ
+ * order_items.order_id проверялся по уже вставленным заказам.
+ * Заказы chunk'а группируются по заданным необязательным колонкам (status, created_at,
+ * region), и каждая группа загружается своим COPY без незаданных колонок в списке:
+ * значения по умолчанию подставляет схема, а не клиент.
+ * id в переданные заказы и order_id в их позиции проставляются после коммита chunk'а;
+ * заказы chunk'а, откаченного ошибкой, остаются без id.
+ */
+@Slf4j
+public class OrderGraphLoader {
+    static final String ORDERS_TABLE = "mentee_power.orders";
+    static final String ORDER_ITEMS_TABLE = "mentee_power.order_items";
+    static final String REQUIRED_ORDER_COLUMNS = "id, user_id, total";
+    static final String[] OPTIONAL_ORDER_COLUMNS = {"status", "created_at", "region"};
+    static final String ITEM_COLUMNS = "order_id, product_id, quantity, price";
+
+    private static final String COPY_OPTIONS = "FORMAT csv";
+    private static final int DEFAULT_CHUNK_SIZE = 5_000;
+
+    private final Connection connection;
+    private final int chunkSize;
+
+    public OrderGraphLoader(Connection connection) {
+        this(connection, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize количество заказов в одной транзакции, он же размер блока id
+     */
+    public OrderGraphLoader(Connection connection, int chunkSize) {
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Загрузить заказы с позициями.
+     *
+     * @throws IllegalArgumentException если в списке есть граф без заказа: его позициям
+     *     не к чему привязаться, а молча пропущенный граф потерял бы их
+     */
+    public BatchResult load(List<OrderGraph> graphs) throws SQLException {
+        for (int i = 0; i < graphs.size(); i++) {
+            OrderGraph graph = graphs.get(i);
+            if (graph == null || graph.getOrder() == null) {
+                throw new IllegalArgumentException(
+                        "Граф заказа на позиции " + i + " не содержит заказа");
+            }
+        }
+        if (graphs.isEmpty()) {
+            return BatchResult.empty();
+        }
+
+        long startTime = System.currentTimeMillis();
+        boolean originalAutoCommit = connection.getAutoCommit();
+        SequenceBlockAllocator orderIds =
+                SequenceBlockAllocator.forSerialColumn(connection, ORDERS_TABLE, "id", chunkSize);
+        PostgresCopyProcessor copier = new PostgresCopyProcessor(connection);
+        OrderGraphCsvEncoder encoder = new OrderGraphCsvEncoder();
+        String copyItems = copySql(ORDER_ITEMS_TABLE, ITEM_COLUMNS);
+
+        // Заказы chunk'а по маске заданных необязательных колонок
+        List<List<OrderRow>> ordersByColumns = new ArrayList<>();
+        for (int mask = 0; mask < 1 << OPTIONAL_ORDER_COLUMNS.length; mask++) {
+            ordersByColumns.add(new ArrayList<>());
+        }
+        List<ItemRow> items = new ArrayList<>();
+        long[] ids = new long[Math.min(chunkSize, graphs.size())];
+        long loadedOrders = 0;
+        long loadedItems = 0;
+        int chunkStart = 0;
+
+        try {
+            connection.setAutoCommit(false);
+
+            for (; chunkStart < graphs.size(); chunkStart += chunkSize) {
+                ordersByColumns.forEach(List::clear);
+                items.clear();
+                List<OrderGraph> chunk =
+                        graphs.subList(chunkStart, Math.min(chunkStart + chunkSize, graphs.size()));
+                for (int i = 0; i < chunk.size(); i++) {
+                    OrderGraph graph = chunk.get(i);
+                    ids[i] = orderIds.nextId();
+                    ordersByColumns
+                            .get(presentColumns(graph.getOrder()))
+                            .add(new OrderRow(ids[i], graph.getOrder()));
+                    for (OrderItem item : graph.getItems()) {
+                        items.add(new ItemRow(ids[i], item));
+                    }
+                }
+
+                // Порядок важен: позиции ссылаются на заказы этой же транзакции
+                for (int mask = 0; mask < ordersByColumns.size(); mask++) {
+                    Iterator<OrderRow> orders = ordersByColumns.get(mask).iterator();
+                    if (orders.hasNext()) {
+                        String copyOrders = copySql(ORDERS_TABLE, orderColumns(mask));
+                        loadedOrders += copier.copyIn(orders, copyOrders, encoder).rowsCopied;
+                    }
+                }
+                loadedItems += copier.copyIn(items.iterator(), copyItems, encoder).rowsCopied;
+                connection.commit();
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    OrderGraph graph = chunk.get(i);
+                    graph.getOrder().setId(ids[i]);
+                    for (OrderItem item : graph.getItems()) {
+                        item.setOrderId(ids[i]);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException(
+                    "Ошибка при загрузке заказов, chunk с позиции " + chunkStart, e);
+        } finally {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        log.info(
+                "Загружено {} заказов и {} позиций за {} мс, запросов к последовательности: {}",
+                loadedOrders,
+                loadedItems,
+                duration,
+                orderIds.getRoundTrips());
+
+        int successful = (int) loadedOrders;
+        return BatchResult.builder()
+                .totalRecords(graphs.size())
+                .successfulRecords(successful)
+                .failedRecords(graphs.size() - successful)
+                .executionTimeMs(duration)
+                .recordsPerSecond(calculateThroughput(successful, duration))
+                .build();
+    }
+
+    /**
+     * @return маска заданных необязательных колонок заказа, бит i - OPTIONAL_ORDER_COLUMNS[i]
+     */
+    static int presentColumns(Order order) {
+        int mask = 0;
+        if (order.getStatus() != null) {
+            mask |= 1;
+        }
+        if (order.getCreatedAt() != null) {
+            mask |= 1 << 1;
+        }
+        if (order.getRegion() != null) {
+            mask |= 1 << 2;
+        }
+        return mask;
+    }
+
+    /**
+     * Список колонок COPY заказов: обязательные и заданные маской необязательные.
+     */
+    static String orderColumns(int mask) {
+        StringBuilder columns = new StringBuilder(REQUIRED_ORDER_COLUMNS);
+        for (int i = 0; i < OPTIONAL_ORDER_COLUMNS.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                columns.append(", ").append(OPTIONAL_ORDER_COLUMNS[i]);
+            }
+        }
+        return columns.toString();
+    }
+
+    private static String copySql(String table, String columns) {
+        return String.format(PostgresCopyProcessor.COPY_SQL, table, columns, COPY_OPTIONS);
+    }
+
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+}
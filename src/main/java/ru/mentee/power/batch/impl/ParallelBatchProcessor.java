@@ -2,105 +2,272 @@
 package ru.mentee.power.batch.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import ru.mentee.power.batch.interfaces.BatchProcessor;
+import ru.mentee.power.batch.model.BatchMetrics;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.BatchResult;
 import ru.mentee.power.batch.model.DetailedBatchResult;
+import ru.mentee.power.batch.model.DuplicateKeyPolicy;
+import ru.mentee.power.batch.model.ExecutionStrategy;
 import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
 
 /**
  * Многопоточный batch процессор для максимальной производительности.
+ * Входные данные режутся на много небольших чанков, которые воркеры забирают из общей
+ * очереди: медленный чанк задерживает только своего воркера, остальные разбирают очередь
+ * дальше. Каждый воркер держит одно соединение из пула и один prepared statement
+ * на все время работы, поэтому parallelism не должен превышать размер пула.
+ * Upsert чанки схлопывают дубликаты sku и сортируются по sku, чтобы воркеры брали блокировки
+ * уникального индекса в одном порядке и не попадали во взаимную блокировку.
+ * Воркер, потерявший соединение, останавливается, и его чанки разбирают остальные;
+ * чанки, которые не забрал ни один воркер, считаются неуспешными.
  */
 @Slf4j
 public class ParallelBatchProcessor implements BatchProcessor {
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
     private final ExecutorService executor;
     private final ConnectionPoolManager connectionPool;
     private final int parallelism;
+    private final int chunkSize;
+    private final DuplicateKeyPolicy duplicateKeyPolicy;
+    private volatile BatchMetrics lastMetrics;
 
     public ParallelBatchProcessor(ConnectionPoolManager pool, int parallelism) {
+        this(pool, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelBatchProcessor(ConnectionPoolManager pool, int parallelism, int chunkSize) {
+        this(pool, parallelism, chunkSize, DuplicateKeyPolicy.LAST_WINS);
+    }
+
+    public ParallelBatchProcessor(
+            ConnectionPoolManager pool,
+            int parallelism,
+            int chunkSize,
+            DuplicateKeyPolicy duplicateKeyPolicy) {
         this.connectionPool = pool;
         this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.duplicateKeyPolicy = duplicateKeyPolicy;
         this.executor = new ForkJoinPool(parallelism);
     }
 
     @Override
     public <T> BatchResult insert(List<T> records) throws SQLException {
-        try {
-            return processInParallel(records).get();
-        } catch (Exception e) {
-            throw new SQLException("Ошибка при параллельной обработке", e);
-        }
+        return await(processInParallel(records, BatchOperation.INSERT));
     }
 
     @Override
     public <T> BatchResult update(List<T> records) throws SQLException {
-        return insert(records);
+        return await(processInParallel(records, BatchOperation.UPDATE));
     }
 
     @Override
     public BatchResult delete(List<Long> ids) throws SQLException {
-        BasicBatchProcessor basicProcessor =
-                new BasicBatchProcessor(connectionPool.getConnection());
-        return basicProcessor.delete(ids);
+        return await(processInParallel(ids, BatchOperation.DELETE));
     }
 
     @Override
     public <T> BatchResult upsert(List<T> records) throws SQLException {
-        return insert(records);
+        return await(processInParallel(records, BatchOperation.UPSERT));
     }
 
     @Override
     public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
             throws SQLException {
-        ResilientBatchProcessor resilientProcessor =
-                new ResilientBatchProcessor(connectionPool.getConnection());
-        return resilientProcessor.insertWithErrorHandling(records, operation);
+        try (Connection conn = connectionPool.getConnection()) {
+            ResilientBatchProcessor resilientProcessor = new ResilientBatchProcessor(conn);
+            return resilientProcessor.insertWithBisection(records, operation);
+        }
     }
 
     /**
      * Параллельная обработка больших объемов данных.
      */
     public <T> CompletableFuture<BatchResult> processInParallel(List<T> products) {
-        int chunkSize = Math.max(1, products.size() / parallelism);
-        List<CompletableFuture<BatchResult>> futures = new ArrayList<>();
+        return processInParallel(products, BatchOperation.INSERT);
+    }
 
-        for (int i = 0; i < parallelism; i++) {
-            int start = i * chunkSize;
-            int end = (i == parallelism - 1) ? products.size() : (i + 1) * chunkSize;
+    /**
+     * Параллельная обработка через общую очередь чанков.
+     * Для DELETE записи - идентификаторы (Long), для остальных операций - Product.
+     *
+     * @throws IllegalArgumentException запись другого типа
+     */
+    public <T> CompletableFuture<BatchResult> processInParallel(
+            List<T> records, BatchOperation operation) {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(BatchResult.empty());
+        }
+        if (operation == BatchOperation.DELETE) {
+            ProductCopyLayout.ID.requireRecords(records);
+        } else {
+            ProductCopyLayout.PRODUCT.requireRecords(records);
+        }
 
-            if (start >= products.size()) break;
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        int chunkCount = (records.size() + chunkSize - 1) / chunkSize;
+        int workerCount = Math.min(parallelism, chunkCount);
+        AtomicInteger nextChunk = new AtomicInteger();
 
-            List<T> chunk = products.subList(start, end);
-            CompletableFuture<BatchResult> future =
-                    CompletableFuture.supplyAsync(() -> processChunk(chunk), executor);
-            futures.add(future);
+        List<CompletableFuture<Integer>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(
+                    CompletableFuture.supplyAsync(
+                            () -> runWorker(records, operation, chunkCount, nextChunk), executor));
         }
 
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+        return CompletableFuture.allOf(workers.toArray(new CompletableFuture[0]))
                 .thenApply(
-                        v ->
-                                futures.stream()
-                                        .map(CompletableFuture::join)
-                                        .reduce(BatchResult.empty(), BatchResult::merge));
+                        v -> {
+                            int successful =
+                                    workers.stream().mapToInt(CompletableFuture::join).sum();
+                            long duration = System.currentTimeMillis() - startTime;
+                            long wallNanos = System.nanoTime() - startNanos;
+                            lastMetrics =
+                                    BatchMetrics.builder()
+                                            .batchSize(chunkSize)
+                                            .executionTimeNanos(wallNanos)
+                                            .throughput(
+                                                    wallNanos > 0
+                                                            ? successful * 1_000_000_000.0
+                                                                    / wallNanos
+                                                            : 0)
+                                            .strategy(ExecutionStrategy.PARALLEL)
+                                            .parallelism(workerCount)
+                                            .build();
+                            return BatchResult.builder()
+                                    .totalRecords(records.size())
+                                    .successfulRecords(successful)
+                                    .failedRecords(records.size() - successful)
+                                    .executionTimeMs(duration)
+                                    .recordsPerSecond(calculateThroughput(successful, duration))
+                                    .build();
+                        });
     }
 
-    private <T> BatchResult processChunk(List<T> chunk) {
-        try (Connection conn = connectionPool.getConnection()) {
-            BasicBatchProcessor processor = new BasicBatchProcessor(conn);
-            return processor.insert(chunk);
+    /**
+     * Метрики последнего запуска: точка кривой масштабирования
+     * {@link DefaultBatchOptimizer} на уровне parallelism фактически запущенных воркеров.
+     */
+    public BatchMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    /**
+     * Воркер забирает чанки из очереди, пока она не опустеет.
+     * Ошибка в чанке откатывает только этот чанк, записи чанка считаются неуспешными.
+     * После ошибки соединения воркер останавливается: следующие чанки на том же
+     * соединении тоже завершились бы ошибкой.
+     *
+     * @return количество успешно обработанных записей
+     */
+    private <T> int runWorker(
+            List<T> records, BatchOperation operation, int chunkCount, AtomicInteger nextChunk) {
+        int successful = 0;
+        UpsertBatchPreparer preparer =
+                operation == BatchOperation.UPSERT
+                        ? new UpsertBatchPreparer(duplicateKeyPolicy)
+                        : null;
+
+        String sql = BasicBatchProcessor.sqlFor(operation);
+        try (Connection conn = connectionPool.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            try {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                    int start = chunk * chunkSize;
+                    int end = Math.min(start + chunkSize, records.size());
+                    List<T> chunkRecords = records.subList(start, end);
+                    try {
+                        successful += processChunk(conn, ps, chunkRecords, operation, preparer);
+                    } catch (SQLException e) {
+                        if (BasicBatchProcessor.isConnectionFailure(conn, e)) {
+                            // Оставшиеся чанки заберут воркеры с рабочими соединениями
+                            log.error("Воркер остановлен: соединение потеряно", e);
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Оставшиеся чанки заберут другие воркеры
+            log.error("Воркер остановлен: ошибка соединения из пула", e);
+        }
+
+        return successful;
+    }
+
+    /**
+     * @return количество успешно обработанных записей чанка
+     * @throws SQLException при ошибке чанка, после отката
+     */
+    private <T> int processChunk(
+            Connection conn,
+            PreparedStatement ps,
+            List<T> chunk,
+            BatchOperation operation,
+            UpsertBatchPreparer preparer)
+            throws SQLException {
+        try {
+            List<?> prepared = preparer != null ? preparer.prepare(chunk) : chunk;
+            int bound = 0;
+            for (Object record : prepared) {
+                if (BasicBatchProcessor.bindParameters(ps, record, operation)) {
+                    ps.addBatch();
+                    bound++;
+                }
+            }
+            if (bound == 0) {
+                return 0;
+            }
+
+            int[] results = ps.executeBatch();
+            conn.commit();
+            // Схлопнутые дубликаты применены через оставшуюся запись с тем же sku
+            return results.length + (preparer != null ? preparer.getCollapsedCount() : 0);
         } catch (SQLException e) {
             log.error("Ошибка обработки chunk размером {}", chunk.size(), e);
-            return BatchResult.failed(chunk.size());
+            try {
+                ps.clearBatch();
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                log.warn("Не удалось откатить chunk", rollbackEx);
+            }
+            throw e;
+        }
+    }
+
+    private BatchResult await(CompletableFuture<BatchResult> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Параллельная обработка прервана", e);
+        } catch (Exception e) {
+            throw new SQLException("Ошибка при параллельной обработке", e);
         }
     }
 
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+
     public void shutdown() {
         executor.shutdown();
     }
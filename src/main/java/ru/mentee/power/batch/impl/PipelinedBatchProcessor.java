@@ -0,0 +1,446 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import ru.mentee.power.batch.interfaces.BatchProcessor;
+import ru.mentee.power.batch.model.BatchMetrics;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.CopyFormat;
+import ru.mentee.power.batch.model.DetailedBatchResult;
+import ru.mentee.power.batch.model.ExecutionStrategy;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+
+/**
+ * Конвейерный процессор загрузки: кодирование и отправка выполняются разными потоками.
+ * Стадия 1 превращает записи в готовые фрагменты потока COPY, стадия 2 отправляет их
+ * по N соединениям. Между стадиями - ограниченная очередь (backpressure), буферы
+ * фрагментов переиспользуются, поэтому пока одна часть буферов отправляется, другая
+ * уже заполняется следующими записями.
+ * INSERT выполняется прямым COPY, UPDATE/UPSERT/DELETE - через staging каждого фрагмента.
+ * Потоки стадий создаются на каждый запуск, поэтому одновременные запуски не делят
+ * потоки и не ждут друг друга. Отправитель без соединения или потерявший его выходит
+ * из конвейера, и его фрагменты отправляют остальные; если не осталось ни одного
+ * отправителя, запуск завершается SQLException.
+ */
+@Slf4j
+public class PipelinedBatchProcessor implements BatchProcessor {
+    private static final int DEFAULT_CHUNK_ROWS = 5000;
+    private static final int DEFAULT_QUEUE_CAPACITY = 4;
+    private static final int INITIAL_CHUNK_BYTES = 256 * 1024;
+    private static final CopyChunk END_OF_STREAM = new CopyChunk(0);
+
+    private final ConnectionPoolManager connectionPool;
+    private final int encoderThreads;
+    private final int senderConnections;
+    private final int queueCapacity;
+    private final int chunkRows;
+    private final CopyFormat format;
+    private volatile BatchMetrics lastMetrics;
+
+    public PipelinedBatchProcessor(ConnectionPoolManager pool, int senderConnections) {
+        this(
+                pool,
+                1,
+                senderConnections,
+                DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_CHUNK_ROWS,
+                CopyFormat.BINARY);
+    }
+
+    public PipelinedBatchProcessor(
+            ConnectionPoolManager pool,
+            int encoderThreads,
+            int senderConnections,
+            int queueCapacity,
+            int chunkRows,
+            CopyFormat format) {
+        this.connectionPool = pool;
+        this.encoderThreads = encoderThreads;
+        this.senderConnections = senderConnections;
+        this.queueCapacity = queueCapacity;
+        this.chunkRows = chunkRows;
+        this.format = format;
+    }
+
+    @Override
+    public <T> BatchResult insert(List<T> records) throws SQLException {
+        return process(records, BatchOperation.INSERT);
+    }
+
+    @Override
+    public <T> BatchResult update(List<T> records) throws SQLException {
+        return process(records, BatchOperation.UPDATE);
+    }
+
+    @Override
+    public BatchResult delete(List<Long> ids) throws SQLException {
+        return process(ids, BatchOperation.DELETE);
+    }
+
+    @Override
+    public <T> BatchResult upsert(List<T> records) throws SQLException {
+        return process(records, BatchOperation.UPSERT);
+    }
+
+    @Override
+    public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
+            throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            ResilientBatchProcessor resilientProcessor = new ResilientBatchProcessor(conn);
+            return resilientProcessor.insertWithBisection(records, operation);
+        }
+    }
+
+    /**
+     * Прогнать записи через конвейер кодирование -> отправка.
+     *
+     * @throws IllegalArgumentException запись не продукт (для DELETE - не Long)
+     * @throws SQLException если ни один отправитель не смог отправлять фрагменты;
+     *     фрагменты, закоммиченные до этого, остаются в базе
+     */
+    public <T> BatchResult process(List<T> records, BatchOperation operation)
+            throws SQLException {
+        if (records.isEmpty()) {
+            return BatchResult.empty();
+        }
+        layoutFor(operation).requireRecords(records);
+
+        PipelineRun run = new PipelineRun(records.size());
+        long startNanos = System.nanoTime();
+
+        // Свои потоки на запуск: в общем пуле кодировщики одного запуска могли бы занять
+        // все потоки в ожидании буферов, которые освобождают отправители
+        ExecutorService executor =
+                Executors.newFixedThreadPool(encoderThreads + senderConnections);
+        try {
+            List<CompletableFuture<Void>> stages = new ArrayList<>();
+            for (int i = 0; i < encoderThreads; i++) {
+                stages.add(
+                        CompletableFuture.runAsync(
+                                () -> runEncoder(records, operation, run), executor));
+            }
+            for (int i = 0; i < senderConnections; i++) {
+                stages.add(
+                        CompletableFuture.runAsync(() -> runSender(operation, run), executor));
+            }
+            CompletableFuture.allOf(stages.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Конвейерная загрузка прервана", e);
+        } catch (Exception e) {
+            throw new SQLException("Ошибка конвейерной загрузки", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long wallNanos = System.nanoTime() - startNanos;
+        int successful = (int) run.successful.sum();
+        if (run.failure.get() != null) {
+            throw new SQLException(
+                    "Ни один отправитель конвейера не может отправлять фрагменты, загружено "
+                            + successful
+                            + " из "
+                            + records.size()
+                            + " записей",
+                    run.failure.get());
+        }
+        lastMetrics = buildMetrics(run, successful, wallNanos);
+
+        log.info(
+                "Конвейер {}: {} записей за {} мс, загрузка кодировщиков {}, отправителей {}",
+                operation,
+                successful,
+                wallNanos / 1_000_000,
+                String.format("%.2f", lastMetrics.getEncoderUtilization()),
+                String.format("%.2f", lastMetrics.getSenderUtilization()));
+
+        long durationMs = wallNanos / 1_000_000;
+        return BatchResult.builder()
+                .totalRecords(records.size())
+                .successfulRecords(successful)
+                .failedRecords(records.size() - successful)
+                .collapsedRecords((int) run.collapsed.sum())
+                .executionTimeMs(durationMs)
+                .recordsPerSecond(calculateThroughput(successful, durationMs))
+                .build();
+    }
+
+    /**
+     * Метрики последнего запуска: если загрузка кодировщиков близка к 1, а отправителей
+     * низкая - узкое место в кодировании, и наоборот.
+     */
+    public BatchMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    private <T> void runEncoder(List<T> records, BatchOperation operation, PipelineRun run) {
+        CopyRowEncoder encoder = CopyRowEncoder.create(format, layoutFor(operation));
+        try {
+            int chunk;
+            while (!run.aborted && (chunk = run.nextChunk.getAndIncrement()) < run.chunkCount) {
+                long waitStart = System.nanoTime();
+                CopyChunk buffer = run.freeBuffers.take();
+                long busyStart = System.nanoTime();
+                run.encodeWaitNanos.add(busyStart - waitStart);
+
+                int start = chunk * chunkRows;
+                int end = Math.min(start + chunkRows, records.size());
+                buffer.reset();
+                encoder.writeHeader(buffer);
+                for (int i = start; i < end; i++) {
+                    if (encoder.encode(records.get(i))) {
+                        encoder.writeTo(buffer);
+                    }
+                }
+                encoder.writeTrailer(buffer);
+                buffer.addRecords(end - start);
+
+                run.encodeBusyNanos.add(System.nanoTime() - busyStart);
+                run.filledChunks.put(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // CopyChunk пишет в память и не бросает IOException
+            throw new IllegalStateException(e);
+        } finally {
+            if (run.activeEncoders.decrementAndGet() == 0) {
+                for (int i = 0; i < senderConnections; i++) {
+                    run.filledChunks.add(END_OF_STREAM);
+                }
+            }
+        }
+    }
+
+    private void runSender(BatchOperation operation, PipelineRun run) {
+        Connection conn = null;
+        try {
+            try {
+                conn = connectionPool.getConnection();
+                conn.setAutoCommit(false);
+                CopyManager copyManager = new CopyManager(conn.unwrap(BaseConnection.class));
+                send(conn, copyManager, operation, run);
+            } catch (SQLException e) {
+                // Фрагменты этого отправителя отправят остальные
+                log.error("Отправитель конвейера остановлен: ошибка соединения", e);
+                leave(run, e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Отправлять фрагменты до конца потока. Ошибка фрагмента откатывает только его,
+     * записи фрагмента считаются неуспешными.
+     *
+     * @throws SQLException при ошибке соединения: следующие фрагменты на нем тоже
+     *     завершились бы ошибкой
+     */
+    private void send(
+            Connection conn, CopyManager copyManager, BatchOperation operation, PipelineRun run)
+            throws SQLException, InterruptedException {
+        while (true) {
+            long waitStart = System.nanoTime();
+            CopyChunk chunk = run.filledChunks.take();
+            long busyStart = System.nanoTime();
+            run.sendWaitNanos.add(busyStart - waitStart);
+            if (chunk == END_OF_STREAM) {
+                return;
+            }
+
+            try {
+                sendChunk(conn, copyManager, chunk, operation, run);
+            } catch (SQLException e) {
+                log.error("Ошибка отправки фрагмента из {} записей", chunk.getRecords(), e);
+                if (BasicBatchProcessor.isConnectionFailure(conn, e)) {
+                    throw e;
+                }
+            } finally {
+                run.sendBusyNanos.add(System.nanoTime() - busyStart);
+                // Емкость пула равна числу буферов, offer не блокируется
+                run.freeBuffers.offer(chunk);
+            }
+        }
+    }
+
+    /**
+     * Отправитель выходит из конвейера. Последний выбывший отменяет запуск: кодировщики
+     * останавливаются, а очередь разбирается без отправки, чтобы они не ждали буферов.
+     */
+    private void leave(PipelineRun run, SQLException cause) throws InterruptedException {
+        if (run.liveSenders.decrementAndGet() > 0) {
+            return;
+        }
+        run.failure.set(cause);
+        run.aborted = true;
+        CopyChunk chunk;
+        while ((chunk = run.filledChunks.take()) != END_OF_STREAM) {
+            run.freeBuffers.offer(chunk);
+        }
+    }
+
+    private void sendChunk(
+            Connection conn,
+            CopyManager copyManager,
+            CopyChunk chunk,
+            BatchOperation operation,
+            PipelineRun run)
+            throws SQLException {
+        try {
+            PostgresCopyProcessor.StagingApply apply = stagingApplyFor(operation);
+            String table = PostgresCopyProcessor.PRODUCTS_TABLE;
+            if (apply != null) {
+                table = PostgresCopyProcessor.STAGING_TABLE;
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(PostgresCopyProcessor.CREATE_STAGING);
+                }
+            }
+
+            CopyIn copyIn =
+                    copyManager.copyIn(
+                            String.format(
+                                    PostgresCopyProcessor.COPY_SQL,
+                                    table,
+                                    layoutFor(operation).getColumns(),
+                                    format.getCopyOptions()));
+            long copied;
+            try {
+                copyIn.writeToCopy(chunk.getBuffer(), 0, chunk.getLength());
+                copied = copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+
+            long affected = copied;
+            long collapsed = 0;
+            if (apply != null) {
+                try (Statement stmt = conn.createStatement()) {
+                    affected = stmt.executeUpdate(apply.sql);
+                }
+                collapsed = apply.collapsed(copied, affected);
+            }
+            conn.commit();
+            run.successful.add(affected + collapsed);
+            run.collapsed.add(collapsed);
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                log.warn("Не удалось откатить фрагмент", rollbackEx);
+            }
+            throw e;
+        }
+    }
+
+    private ProductCopyLayout layoutFor(BatchOperation operation) {
+        return switch (operation) {
+            case INSERT, UPSERT -> ProductCopyLayout.PRODUCT;
+            case UPDATE -> ProductCopyLayout.PRODUCT_WITH_ID;
+            case DELETE -> ProductCopyLayout.ID;
+        };
+    }
+
+    private PostgresCopyProcessor.StagingApply stagingApplyFor(BatchOperation operation) {
+        return switch (operation) {
+            case INSERT -> null;
+            case UPSERT -> PostgresCopyProcessor.StagingApply.UPSERT;
+            case UPDATE -> PostgresCopyProcessor.StagingApply.UPDATE;
+            case DELETE -> PostgresCopyProcessor.StagingApply.DELETE;
+        };
+    }
+
+    private BatchMetrics buildMetrics(PipelineRun run, int successful, long wallNanos) {
+        long encodeBusy = run.encodeBusyNanos.sum();
+        long sendBusy = run.sendBusyNanos.sum();
+        return BatchMetrics.builder()
+                .batchSize(chunkRows)
+                .executionTimeNanos(wallNanos)
+                .throughput(wallNanos > 0 ? successful * 1_000_000_000.0 / wallNanos : 0)
+                .strategy(ExecutionStrategy.PIPELINED)
+                .parallelism(senderConnections)
+                .encodeBusyNanos(encodeBusy)
+                .encodeWaitNanos(run.encodeWaitNanos.sum())
+                .sendBusyNanos(sendBusy)
+                .sendWaitNanos(run.sendWaitNanos.sum())
+                .encoderUtilization(utilization(encodeBusy, wallNanos, encoderThreads))
+                .senderUtilization(utilization(sendBusy, wallNanos, senderConnections))
+                .build();
+    }
+
+    private double utilization(long busyNanos, long wallNanos, int threads) {
+        if (wallNanos == 0 || threads == 0) return 0;
+        return Math.min(1.0, (double) busyNanos / ((double) wallNanos * threads));
+    }
+
+    private void closeQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.setAutoCommit(true);
+            conn.close();
+        } catch (SQLException e) {
+            log.warn("Не удалось вернуть соединение в пул", e);
+        }
+    }
+
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+
+    /**
+     * Состояние одного запуска конвейера.
+     */
+    private class PipelineRun {
+        final int chunkCount;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicInteger activeEncoders = new AtomicInteger(encoderThreads);
+        final AtomicInteger liveSenders = new AtomicInteger(senderConnections);
+        // Ошибка, из-за которой не осталось отправителей; запуск отменен
+        final AtomicReference<SQLException> failure = new AtomicReference<>();
+        volatile boolean aborted;
+        final BlockingQueue<CopyChunk> filledChunks;
+        final BlockingQueue<CopyChunk> freeBuffers;
+        final LongAdder successful = new LongAdder();
+        final LongAdder collapsed = new LongAdder();
+        final LongAdder encodeBusyNanos = new LongAdder();
+        final LongAdder encodeWaitNanos = new LongAdder();
+        final LongAdder sendBusyNanos = new LongAdder();
+        final LongAdder sendWaitNanos = new LongAdder();
+
+        PipelineRun(int totalRecords) {
+            chunkCount = (totalRecords + chunkRows - 1) / chunkRows;
+            // Очередь + буфер в работе у каждого потока обеих стадий
+            int buffers = queueCapacity + encoderThreads + senderConnections;
+            filledChunks = new ArrayBlockingQueue<>(buffers + senderConnections);
+            freeBuffers = new ArrayBlockingQueue<>(buffers);
+            for (int i = 0; i < buffers; i++) {
+                freeBuffers.add(new CopyChunk(INITIAL_CHUNK_BYTES));
+            }
+        }
+    }
+}
@@ -2,32 +2,84 @@
 package ru.mentee.power.batch.impl;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
-import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.postgresql.core.BaseConnection;
 import ru.mentee.power.batch.interfaces.BatchProcessor;
+import ru.mentee.power.batch.interfaces.RowBinder;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.CopyFormat;
 import ru.mentee.power.batch.model.DetailedBatchResult;
-import ru.mentee.power.model.Product;
+import ru.mentee.power.batch.model.MappedColumn;
 
 /**
  * Сверхбыстрая загрузка данных через PostgreSQL COPY. В 10-50 раз быстрее обычного batch!
  */
 @Slf4j
 public class PostgresCopyProcessor implements BatchProcessor {
-    private static final String COPY_SQL =
-            "COPY mentee_power.products (sku, name, description, price, category_id) "
-                    + "FROM STDIN WITH (FORMAT csv, HEADER false, DELIMITER ',')";
+    static final String PRODUCTS_TABLE = "mentee_power.products";
+    static final String STAGING_TABLE = "products_staging";
+    static final String COPY_SQL = "COPY %s (%s) FROM STDIN WITH (%s)";
+
+    // Staging без индексов и ограничений: COPY в нее не проверяет уникальность и FK
+    static final String CREATE_STAGING =
+            "CREATE TEMP TABLE "
+                    + STAGING_TABLE
+                    + " (id BIGINT, sku VARCHAR(50), name VARCHAR(200), description TEXT,"
+                    + " price NUMERIC(10,2), category_id BIGINT) ON COMMIT DROP";
+    // DISTINCT ON оставляет последнюю строку каждого sku (в свежей staging ctid растет в порядке
+    // COPY), ORDER BY sku задает единый порядок блокировок индекса для параллельных загрузок.
+    // NULL sku не конфликтуют в UNIQUE, поэтому строки без sku не схлопываются: ключом
+    // для них служит собственный ctid
+    static final String UPSERT_FROM_STAGING =
+            "INSERT INTO mentee_power.products (sku, name, description, price, category_id) "
+                    + "SELECT DISTINCT ON (sku, CASE WHEN sku IS NULL THEN ctid END)"
+                    + " sku, name, description, price, category_id FROM "
+                    + STAGING_TABLE
+                    + " ORDER BY sku, CASE WHEN sku IS NULL THEN ctid END, ctid DESC"
+                    + " ON CONFLICT (sku) DO UPDATE SET "
+                    + "name = EXCLUDED.name, "
+                    + "price = EXCLUDED.price, "
+                    + "description = EXCLUDED.description, "
+                    + "category_id = EXCLUDED.category_id";
+    static final String UPDATE_FROM_STAGING =
+            "UPDATE mentee_power.products p SET name = s.name, description = s.description, "
+                    + "price = s.price, category_id = s.category_id FROM "
+                    + STAGING_TABLE
+                    + " s WHERE p.id = s.id";
+    static final String DELETE_USING_STAGING =
+            "DELETE FROM mentee_power.products p USING " + STAGING_TABLE + " s WHERE p.id = s.id";
+
+    private static final String CSV_WITH_HEADER = "FORMAT csv, HEADER true, DELIMITER ','";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // Временные таблицы не видит autovacuum, статистику для плана собираем сами
+    private static final int STAGING_ANALYZE_THRESHOLD = 1000;
 
     private final Connection connection;
+    private final CopyFormat defaultFormat;
 
     public PostgresCopyProcessor(Connection connection) {
+        this(connection, CopyFormat.CSV);
+    }
+
+    public PostgresCopyProcessor(Connection connection, CopyFormat defaultFormat) {
         this.connection = connection;
+        this.defaultFormat = defaultFormat;
     }
 
     @Override
@@ -37,93 +89,429 @@ public class PostgresCopyProcessor implements BatchProcessor {
 
     @Override
     public <T> BatchResult update(List<T> records) throws SQLException {
-        BasicBatchProcessor basicProcessor = new BasicBatchProcessor(connection);
-        return basicProcessor.update(records);
+        return updateWithCopy(records.iterator(), defaultFormat);
     }
 
     @Override
     public BatchResult delete(List<Long> ids) throws SQLException {
-        BasicBatchProcessor basicProcessor = new BasicBatchProcessor(connection);
-        return basicProcessor.delete(ids);
+        return deleteWithCopy(ids.iterator(), defaultFormat);
     }
 
     @Override
     public <T> BatchResult upsert(List<T> records) throws SQLException {
-        return loadWithCopy(records);
+        return upsertWithCopy(records.iterator(), defaultFormat);
     }
 
     @Override
     public <T> DetailedBatchResult processWithDetails(List<T> records, BatchOperation operation)
             throws SQLException {
         ResilientBatchProcessor resilientProcessor = new ResilientBatchProcessor(connection);
-        return resilientProcessor.insertWithErrorHandling(records, operation);
+        return resilientProcessor.insertWithBisection(records, operation);
     }
 
     /**
      * Загрузка через COPY - максимальная производительность для PostgreSQL.
      */
     public <T> BatchResult loadWithCopy(List<T> products) throws SQLException {
-        if (!(connection instanceof BaseConnection)) {
-            throw new IllegalStateException("Требуется PostgreSQL connection");
+        return loadWithCopy(products.iterator(), defaultFormat);
+    }
+
+    public <T> BatchResult loadWithCopy(List<T> products, CopyFormat format) throws SQLException {
+        return loadWithCopy(products.iterator(), format);
+    }
+
+    /**
+     * Потоковая загрузка через COPY. Поток закрывается после загрузки.
+     */
+    public <T> BatchResult loadWithCopy(Stream<T> records) throws SQLException {
+        return loadWithCopy(records, defaultFormat);
+    }
+
+    public <T> BatchResult loadWithCopy(Stream<T> records, CopyFormat format) throws SQLException {
+        try (records) {
+            return loadWithCopy(records.iterator(), format);
         }
+    }
 
-        BaseConnection pgConnection = (BaseConnection) connection;
-        CopyManager copyManager = new CopyManager(pgConnection);
+    public <T> BatchResult loadWithCopy(Iterator<T> records) throws SQLException {
+        return loadWithCopy(records, defaultFormat);
+    }
 
+    /**
+     * Потоковая загрузка через COPY с ограниченным потреблением памяти.
+     * Записи кодируются по одной и сразу пишутся в PGCopyOutputStream через буфер
+     * фиксированного размера, поэтому данные начинают уходить на сервер сразу,
+     * а размер кучи не зависит от количества записей.
+     * Формат BINARY избавляет от форматирования чисел и CSV-экранирования на клиенте
+     * и от парсинга текста на сервере.
+     */
+    public <T> BatchResult loadWithCopy(Iterator<T> records, CopyFormat format)
+            throws SQLException {
         long startTime = System.currentTimeMillis();
+        CopyCounts counts = copyIn(records, PRODUCTS_TABLE, ProductCopyLayout.PRODUCT, format);
+        long duration = System.currentTimeMillis() - startTime;
+
+        log.info("COPY ({}) загрузил {} записей за {} мс", format, counts.rowsCopied, duration);
 
+        return buildResult(counts.totalRecords, (int) counts.rowsCopied, duration);
+    }
+
+    /**
+     * COPY сущностей в таблицу binder (формат CSV). Колонки, не перечисленные в COPY,
+     * получают DEFAULT, а явный NULL в перечисленной колонке так и остается NULL. Поэтому
+     * записи группируются по набору колонок с DEFAULT, значение которых не задано,
+     * и каждая группа загружается своим COPY без этих колонок - как INSERT binder'а,
+     * подставляющий DEFAULT вместо NULL. Несколько групп загружаются одной транзакцией.
+     */
+    public <T> BatchResult loadWithCopy(List<T> records, RowBinder<T> binder)
+            throws SQLException {
+        long startTime = System.currentTimeMillis();
+        List<MappedColumn> mapped = binder.getColumns();
+        Map<BitSet, List<T>> groups = new LinkedHashMap<>();
+        for (T record : records) {
+            if (!binder.getEntityType().isInstance(record)) {
+                continue;
+            }
+            BitSet omitted = new BitSet(mapped.size());
+            for (int column = 0; column < mapped.size(); column++) {
+                if (mapped.get(column).hasDefault() && binder.getValue(record, column) == null) {
+                    omitted.set(column);
+                }
+            }
+            groups.computeIfAbsent(omitted, key -> new ArrayList<>()).add(record);
+        }
+
+        boolean originalAutoCommit = connection.getAutoCommit();
+        // Транзакцией управляет вызывающий, если она уже открыта, или одна группа
+        boolean ownTransaction = originalAutoCommit && groups.size() > 1;
+        long rowsCopied = 0;
         try {
-            String csvData = convertToCsv(products);
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            }
+            for (Map.Entry<BitSet, List<T>> group : groups.entrySet()) {
+                rowsCopied += copyMapped(group.getValue(), binder, group.getKey());
+            }
+            if (ownTransaction) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            if (ownTransaction) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (ownTransaction) {
+                connection.setAutoCommit(true);
+            }
+        }
+        long duration = System.currentTimeMillis() - startTime;
+
+        log.info(
+                "COPY в {} загрузил {} записей за {} мс, групп колонок: {}",
+                binder.getTable(),
+                rowsCopied,
+                duration,
+                groups.size());
+
+        return buildResult(records.size(), (int) rowsCopied, duration);
+    }
+
+    private <T> long copyMapped(List<T> records, RowBinder<T> binder, BitSet omitted)
+            throws SQLException {
+        List<MappedColumn> mapped = binder.getColumns();
+        int[] columns =
+                IntStream.range(0, mapped.size())
+                        .filter(column -> !omitted.get(column))
+                        .toArray();
+        String columnList =
+                Arrays.stream(columns)
+                        .mapToObj(c -> RowBinderGenerator.quote(mapped.get(c).getName()))
+                        .collect(Collectors.joining(", "));
+        String copySql =
+                String.format(
+                        COPY_SQL,
+                        binder.getTable(),
+                        columnList,
+                        CopyFormat.CSV.getCopyOptions());
+        return copyIn(records.iterator(), copySql, new MappedCsvEncoder<>(binder, columns))
+                .rowsCopied;
+    }
+
+    /**
+     * COPY одного chunk из колоночного буфера: строки кодируются прямо из примитивных
+     * массивов и UTF-8 арены, без объектов Product. Буфер не очищается и может быть
+     * переиспользован вызывающим после {@link ProductColumnBuffer#clear()}.
+     */
+    public BatchResult loadWithCopy(ProductColumnBuffer columns, CopyFormat format)
+            throws SQLException {
+        long startTime = System.currentTimeMillis();
+        CopyCounts counts = copyIn(columns, PRODUCTS_TABLE, ProductCopyLayout.PRODUCT, format);
+        long duration = System.currentTimeMillis() - startTime;
+
+        log.debug("COPY ({}) из колоночного буфера: {} записей", format, counts.rowsCopied);
 
-            long rowsInserted = copyManager.copyIn(COPY_SQL, new StringReader(csvData));
+        return buildResult(counts.totalRecords, (int) counts.rowsCopied, duration);
+    }
+
+    /**
+     * Загрузка CSV-файла, совпадающего с раскладкой COPY (sku,name,description,price,
+     * category_id), без разбора на клиенте: байты memory-mapped файла передаются
+     * в COPY FROM STDIN как есть, а заголовок пропускает сам сервер (HEADER true).
+     * Файл загружается одной командой COPY: при ошибке в любой строке не загружается ничего.
+     */
+    public BatchResult loadCsvFile(Path file, boolean hasHeader) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        String copySql =
+                String.format(
+                        COPY_SQL,
+                        PRODUCTS_TABLE,
+                        ProductCopyLayout.PRODUCT.getColumns(),
+                        hasHeader ? CSV_WITH_HEADER : CopyFormat.CSV.getCopyOptions());
+        BaseConnection pgConnection = unwrapPgConnection();
+        PGCopyOutputStream out = new PGCopyOutputStream(pgConnection, copySql, COPY_BUFFER_SIZE);
+        long bytes;
+        long rows;
+        try (MappedFileReader reader = new MappedFileReader(file, false)) {
+            bytes = reader.transferTo(out);
+            rows = out.endCopy();
+        } catch (IOException e) {
+            throw new SQLException("Ошибка при COPY файла " + file, e);
+        } finally {
+            cancelIfActive(out);
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        log.info("COPY файла {}: {} байт, {} записей за {} мс", file, bytes, rows, duration);
+        return buildResult((int) rows, (int) rows, duration);
+    }
+
+    /**
+     * Upsert по sku через staging: COPY во временную таблицу и один
+     * INSERT ... SELECT ... ON CONFLICT (sku) DO UPDATE в одной транзакции.
+     */
+    public <T> BatchResult upsertWithCopy(Iterator<T> records, CopyFormat format)
+            throws SQLException {
+        return applyThroughStaging(records, ProductCopyLayout.PRODUCT, StagingApply.UPSERT, format);
+    }
+
+    /**
+     * Обновление по id через staging: COPY во временную таблицу и один UPDATE ... FROM.
+     */
+    public <T> BatchResult updateWithCopy(Iterator<T> records, CopyFormat format)
+            throws SQLException {
+        return applyThroughStaging(
+                records, ProductCopyLayout.PRODUCT_WITH_ID, StagingApply.UPDATE, format);
+    }
+
+    /**
+     * Удаление по id через staging: COPY во временную таблицу и один DELETE ... USING.
+     */
+    public BatchResult deleteWithCopy(Iterator<Long> ids, CopyFormat format) throws SQLException {
+        return applyThroughStaging(ids, ProductCopyLayout.ID, StagingApply.DELETE, format);
+    }
+
+    private BatchResult applyThroughStaging(
+            Iterator<?> records,
+            ProductCopyLayout layout,
+            StagingApply apply,
+            CopyFormat format)
+            throws SQLException {
+        long startTime = System.currentTimeMillis();
+        boolean originalAutoCommit = connection.getAutoCommit();
+
+        try {
+            connection.setAutoCommit(false);
+
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(CREATE_STAGING);
+            }
+
+            CopyCounts counts = copyIn(records, STAGING_TABLE, layout, format);
+
+            int affected;
+            try (Statement stmt = connection.createStatement()) {
+                if (counts.rowsCopied >= STAGING_ANALYZE_THRESHOLD) {
+                    stmt.execute("ANALYZE " + STAGING_TABLE);
+                }
+                affected = stmt.executeUpdate(apply.sql);
+            }
+
+            connection.commit();
 
             long duration = System.currentTimeMillis() - startTime;
+            int collapsed = (int) apply.collapsed(counts.rowsCopied, affected);
+            log.info(
+                    "COPY {} через staging: {} записей, затронуто {} строк, схлопнуто {} за {} мс",
+                    apply,
+                    counts.totalRecords,
+                    affected,
+                    collapsed,
+                    duration);
+
+            BatchResult result =
+                    buildResult(counts.totalRecords, affected + collapsed, duration);
+            result.setCollapsedRecords(collapsed);
+            return result;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при COPY " + apply + " через staging", e);
+        } catch (RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+    }
+
+    /**
+     * COPY продуктов (или id для {@link ProductCopyLayout#ID}). Запись другого типа
+     * прерывает COPY с IllegalArgumentException, а не пропускается молча.
+     */
+    CopyCounts copyIn(
+            Iterator<?> records, String table, ProductCopyLayout layout, CopyFormat format)
+            throws SQLException {
+        String copySql =
+                String.format(COPY_SQL, table, layout.getColumns(), format.getCopyOptions());
+        Iterator<Object> checked =
+                new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return records.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return layout.requireRecord(records.next());
+                    }
+                };
+        return copyIn(checked, copySql, CopyRowEncoder.create(format, layout));
+    }
 
-            log.info("COPY загрузил {} записей за {} мс", rowsInserted, duration);
+    /**
+     * COPY записей произвольным кодировщиком: записи, которые кодировщик не принял,
+     * учитываются в totalRecords, но не отправляются.
+     */
+    CopyCounts copyIn(Iterator<?> records, String copySql, CopyRowEncoder encoder)
+            throws SQLException {
+        BaseConnection pgConnection = unwrapPgConnection();
+        int totalRecords = 0;
+        PGCopyOutputStream out = new PGCopyOutputStream(pgConnection, copySql, COPY_BUFFER_SIZE);
+        try {
+            encoder.writeHeader(out);
+            while (records.hasNext()) {
+                Object record = records.next();
+                totalRecords++;
+                if (encoder.encode(record)) {
+                    encoder.writeTo(out);
+                }
+            }
+            encoder.writeTrailer(out);
 
-            return BatchResult.builder()
-                    .totalRecords(products.size())
-                    .successfulRecords((int) rowsInserted)
-                    .failedRecords(products.size() - (int) rowsInserted)
-                    .executionTimeMs(duration)
-                    .recordsPerSecond(calculateThroughput((int) rowsInserted, duration))
-                    .build();
+            return new CopyCounts(totalRecords, out.endCopy());
         } catch (IOException e) {
             throw new SQLException("Ошибка при COPY операции", e);
+        } finally {
+            cancelIfActive(out);
         }
     }
 
-    private <T> String convertToCsv(List<T> products) {
-        StringBuilder csv = new StringBuilder();
-
-        for (T record : products) {
-            if (record instanceof Product product) {
-                csv.append(escapeCsv(product.getSku()))
-                        .append(",")
-                        .append(escapeCsv(product.getName()))
-                        .append(",")
-                        .append(escapeCsv(product.getDescription()))
-                        .append(",")
-                        .append(product.getPrice() != null ? product.getPrice() : "")
-                        .append(",")
-                        .append(product.getCategoryId() != null ? product.getCategoryId() : "")
-                        .append("\n");
+    CopyCounts copyIn(
+            ProductColumnBuffer columns,
+            String table,
+            ProductCopyLayout layout,
+            CopyFormat format)
+            throws SQLException {
+        String copySql =
+                String.format(COPY_SQL, table, layout.getColumns(), format.getCopyOptions());
+        CopyRowEncoder encoder = CopyRowEncoder.create(format, layout);
+        BaseConnection pgConnection = unwrapPgConnection();
+        PGCopyOutputStream out = new PGCopyOutputStream(pgConnection, copySql, COPY_BUFFER_SIZE);
+        try {
+            encoder.writeHeader(out);
+            for (int row = 0; row < columns.size(); row++) {
+                encoder.encode(columns, row);
+                encoder.writeTo(out);
             }
+            encoder.writeTrailer(out);
+
+            return new CopyCounts(columns.size(), out.endCopy());
+        } catch (IOException e) {
+            throw new SQLException("Ошибка при COPY операции", e);
+        } finally {
+            cancelIfActive(out);
         }
+    }
+
+    private BaseConnection unwrapPgConnection() throws SQLException {
+        if (!connection.isWrapperFor(BaseConnection.class)) {
+            throw new IllegalStateException("Требуется PostgreSQL connection");
+        }
+        return connection.unwrap(BaseConnection.class);
+    }
 
-        return csv.toString();
+    private void cancelIfActive(PGCopyOutputStream out) {
+        if (!out.isActive()) {
+            return;
+        }
+        try {
+            out.cancelCopy();
+        } catch (SQLException e) {
+            // Основная ошибка уже пробрасывается, отмена COPY - best effort
+            log.warn("Не удалось отменить COPY операцию", e);
+        }
     }
 
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+    /**
+     * Применение staging к products. Тип операции передается явно: от него зависит,
+     * как строки staging, не затронувшие таблицу, учитываются в результате.
+     */
+    enum StagingApply {
+        UPSERT(UPSERT_FROM_STAGING, true),
+        UPDATE(UPDATE_FROM_STAGING, false),
+        DELETE(DELETE_USING_STAGING, false);
+
+        final String sql;
+        // DO UPDATE без условия затрагивает каждую оставшуюся после DISTINCT ON строку,
+        // поэтому разница скопированных и затронутых строк - схлопнутые дубликаты sku
+        private final boolean collapsesDuplicates;
+
+        StagingApply(String sql, boolean collapsesDuplicates) {
+            this.sql = sql;
+            this.collapsesDuplicates = collapsesDuplicates;
         }
-        return value;
+
+        /**
+         * @return строк staging, примененных через дубликат ключа; для UPDATE и DELETE
+         *     незатронутые строки - неуспешные записи, а не дубликаты
+         */
+        long collapsed(long copied, long affected) {
+            return collapsesDuplicates ? copied - affected : 0;
+        }
+    }
+
+    private BatchResult buildResult(int totalRecords, int successfulRecords, long duration) {
+        return BatchResult.builder()
+                .totalRecords(totalRecords)
+                .successfulRecords(successfulRecords)
+                .failedRecords(totalRecords - successfulRecords)
+                .executionTimeMs(duration)
+                .recordsPerSecond(calculateThroughput(successfulRecords, duration))
+                .build();
     }
 
     private double calculateThroughput(int records, long timeMs) {
         if (timeMs == 0) return 0;
         return (records * 1000.0) / timeMs;
     }
+
+    static class CopyCounts {
+        final int totalRecords;
+        final long rowsCopied;
+
+        CopyCounts(int totalRecords, long rowsCopied) {
+            this.totalRecords = totalRecords;
+            this.rowsCopied = rowsCopied;
+        }
+    }
 }
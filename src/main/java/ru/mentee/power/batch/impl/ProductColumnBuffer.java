@@ -0,0 +1,307 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import ru.mentee.power.model.Product;
+
+/**
+ * Колоночный буфер продуктов для массовых загрузок вместо списка объектов {@link Product}.
+ * id, price и category_id хранятся в примитивных массивах (price - в копейках, в масштабе
+ * колонки DECIMAL(10,2)), строки - в UTF-8 арене с массивом смещений. Буфер рассчитан на
+ * один chunk и переиспользуется после {@link #clear()}: между chunk'ами не остается
+ * объектов на строку, и сборщику мусора нечего обходить.
+ * Арена строк может размещаться вне кучи (direct {@link ByteBuffer}).
+ * Кодировщики COPY и unnest upsert читают значения прямо из буфера.
+ */
+public class ProductColumnBuffer {
+    static final int PRICE_SCALE = 2;
+    private static final int TEXT_COLUMNS = 3;
+    private static final int INITIAL_TEXT_BYTES_PER_ROW = 64;
+
+    /** Колонки буфера. Первые три - текстовые. */
+    public enum Column {
+        SKU,
+        NAME,
+        DESCRIPTION,
+        ID,
+        PRICE,
+        CATEGORY_ID
+    }
+
+    private final int capacity;
+    private final boolean offHeap;
+    private final long[] ids;
+    private final long[] prices;
+    private final long[] categoryIds;
+    // Биты NULL по ordinal колонки
+    private final byte[] nulls;
+    // Конец каждого текстового значения в арене, начало - конец предыдущего
+    private final int[] textEnds;
+    private ByteBuffer arena;
+    private int size;
+
+    public ProductColumnBuffer(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param capacity количество строк в chunk
+     * @param offHeap разместить арену строк в direct памяти вне кучи
+     */
+    public ProductColumnBuffer(int capacity, boolean offHeap) {
+        this.capacity = capacity;
+        this.offHeap = offHeap;
+        this.ids = new long[capacity];
+        this.prices = new long[capacity];
+        this.categoryIds = new long[capacity];
+        this.nulls = new byte[capacity];
+        this.textEnds = new int[capacity * TEXT_COLUMNS];
+        this.arena = allocate(Math.max(capacity, 1) * INITIAL_TEXT_BYTES_PER_ROW);
+    }
+
+    /**
+     * Добавить продукт. Цена приводится к 2 знакам после запятой без округления.
+     *
+     * @throws IllegalStateException буфер заполнен
+     * @throws IllegalArgumentException у цены больше 2 знаков после запятой
+     */
+    public void add(Product product) {
+        int row = startRow();
+        // Цена проверяется до записи строк в арену: отклоненная запись не оставляет следов
+        if (product.getPrice() != null) {
+            prices[row] = toMinorUnits(product.getPrice());
+        } else {
+            setNull(row, Column.PRICE);
+        }
+        putText(row, Column.SKU, product.getSku());
+        putText(row, Column.NAME, product.getName());
+        putText(row, Column.DESCRIPTION, product.getDescription());
+        if (product.getId() != null) {
+            ids[row] = product.getId();
+        } else {
+            setNull(row, Column.ID);
+        }
+        if (product.getCategoryId() != null) {
+            categoryIds[row] = product.getCategoryId();
+        } else {
+            setNull(row, Column.CATEGORY_ID);
+        }
+        size++;
+    }
+
+    /**
+     * Добавить новый продукт без создания объекта Product.
+     *
+     * @param priceMinorUnits цена в копейках
+     */
+    public void add(
+            String sku, String name, String description, long priceMinorUnits, long categoryId) {
+        int row = startRow();
+        putText(row, Column.SKU, sku);
+        putText(row, Column.NAME, name);
+        putText(row, Column.DESCRIPTION, description);
+        setNull(row, Column.ID);
+        prices[row] = priceMinorUnits;
+        categoryIds[row] = categoryId;
+        size++;
+    }
+
+    /**
+     * Очистить буфер для следующего chunk. Массивы и арена сохраняются.
+     */
+    public void clear() {
+        size = 0;
+        arena.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public boolean isNull(int row, Column column) {
+        return (nulls[checkRow(row)] & (1 << column.ordinal())) != 0;
+    }
+
+    /**
+     * Значение числовой колонки; для PRICE - цена в копейках.
+     */
+    public long getLong(int row, Column column) {
+        return longColumn(column)[checkRow(row)];
+    }
+
+    public BigDecimal getPrice(int row) {
+        return isNull(row, Column.PRICE) ? null : BigDecimal.valueOf(prices[row], PRICE_SCALE);
+    }
+
+    /**
+     * Значение текстовой колонки. Создает строку, поэтому на горячих путях кодировщики
+     * копируют байты арены напрямую.
+     */
+    public String getText(int row, Column column) {
+        if (isNull(row, column)) {
+            return null;
+        }
+        byte[] bytes = new byte[textLength(row, column)];
+        arena.get(textOffset(row, column), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Есть ли NULL в колонке среди заполненных строк.
+     */
+    public boolean hasNulls(Column column) {
+        int mask = 1 << column.ordinal();
+        for (int row = 0; row < size; row++) {
+            if ((nulls[row] & mask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Массив числовой колонки длиной capacity; значения NULL-строк не определены.
+     */
+    long[] longColumn(Column column) {
+        return switch (column) {
+            case ID -> ids;
+            case PRICE -> prices;
+            case CATEGORY_ID -> categoryIds;
+            default -> throw new IllegalArgumentException("Колонка не числовая: " + column);
+        };
+    }
+
+    int textOffset(int row, Column column) {
+        int index = textIndex(row, column);
+        return index == 0 ? 0 : textEnds[index - 1];
+    }
+
+    int textLength(int row, Column column) {
+        return textEnds[textIndex(row, column)] - textOffset(row, column);
+    }
+
+    /**
+     * Арена строк для чтения абсолютными get: позиция буфера кодировщиками не меняется.
+     */
+    ByteBuffer arena() {
+        return arena;
+    }
+
+    static long toMinorUnits(BigDecimal price) {
+        try {
+            return price.setScale(PRICE_SCALE, RoundingMode.UNNECESSARY)
+                    .unscaledValue()
+                    .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                    "Цена не представима в копейках: " + price.toPlainString(), e);
+        }
+    }
+
+    private int startRow() {
+        if (size == capacity) {
+            throw new IllegalStateException("Буфер заполнен: " + capacity + " строк");
+        }
+        nulls[size] = 0;
+        return size;
+    }
+
+    private void setNull(int row, Column column) {
+        nulls[row] |= (byte) (1 << column.ordinal());
+    }
+
+    /**
+     * Записать строку в арену в UTF-8 посимвольно, без промежуточного byte[].
+     */
+    private void putText(int row, Column column, String value) {
+        if (value == null) {
+            setNull(row, column);
+        } else {
+            ensureArenaCapacity(value.length() * 3);
+            for (int i = 0; i < value.length(); ) {
+                int codePoint = value.codePointAt(i);
+                putCodePoint(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+        textEnds[row * TEXT_COLUMNS + column.ordinal()] = arena.position();
+    }
+
+    private void putCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            arena.put((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            arena.put((byte) (0xC0 | (codePoint >> 6)));
+            arena.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            arena.put((byte) (0xE0 | (codePoint >> 12)));
+            arena.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            arena.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            arena.put((byte) (0xF0 | (codePoint >> 18)));
+            arena.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            arena.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            arena.put((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    private void ensureArenaCapacity(int extra) {
+        if (arena.remaining() >= extra) {
+            return;
+        }
+        ByteBuffer grown = allocate(Math.max(arena.capacity() * 2, arena.position() + extra));
+        arena.flip();
+        grown.put(arena);
+        arena = grown;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    private int textIndex(int row, Column column) {
+        if (column.ordinal() >= TEXT_COLUMNS) {
+            throw new IllegalArgumentException("Колонка не текстовая: " + column);
+        }
+        return checkRow(row) * TEXT_COLUMNS + column.ordinal();
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Строка " + row + " вне буфера из " + size);
+        }
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductColumnBuffer{size="
+                + size
+                + ", capacity="
+                + capacity
+                + ", textBytes="
+                + arena.position()
+                + ", offHeap="
+                + offHeap
+                + "}";
+    }
+}
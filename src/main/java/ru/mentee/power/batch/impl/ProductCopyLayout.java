@@ -0,0 +1,65 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.util.List;
+import ru.mentee.power.model.Product;
+
+/**
+ * Набор и порядок колонок продукта в потоке COPY.
+ * Быстрые пути (COPY, staging, unnest, Parallel, Pipelined) работают только с products
+ * и проверяют записи через {@link #requireRecord(Object)}: сущности других таблиц
+ * загружаются через {@link ru.mentee.power.batch.interfaces.RowBinder}.
+ */
+public enum ProductCopyLayout {
+    /** Новые продукты: id генерируется БД. */
+    PRODUCT("sku, name, description, price, category_id", 5),
+    /** Продукты с известным id (обновление по первичному ключу). */
+    PRODUCT_WITH_ID("id, sku, name, description, price, category_id", 6),
+    /** Только идентификаторы (удаление), записи - Long. */
+    ID("id", 1);
+
+    private final String columns;
+    private final int columnCount;
+
+    ProductCopyLayout(String columns, int columnCount) {
+        this.columns = columns;
+        this.columnCount = columnCount;
+    }
+
+    public String getColumns() {
+        return columns;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @throws IllegalArgumentException запись не продукт, а для {@link #ID} - не Long
+     */
+    public Object requireRecord(Object record) {
+        Class<?> expected = this == ID ? Long.class : Product.class;
+        if (!expected.isInstance(record)) {
+            throw new IllegalArgumentException(
+                    "Ожидается "
+                            + expected.getSimpleName()
+                            + " для колонок ("
+                            + columns
+                            + "), получено "
+                            + (record == null ? "null" : record.getClass().getName())
+                            + ": другие таблицы загружаются через RowBinder");
+        }
+        return record;
+    }
+
+    /**
+     * Проверить все записи до начала загрузки, чтобы не закоммитить ее часть.
+     *
+     * @throws IllegalArgumentException см. {@link #requireRecord(Object)}
+     */
+    public void requireRecords(List<?> records) {
+        for (Object record : records) {
+            requireRecord(record);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import ru.mentee.power.model.Product;
+
+/**
+ * Клиентский кэш содержимого продуктов для delta upsert: sku -> 64-битный хэш
+ * (name, description, price, category_id) последней записанной версии.
+ * Записи, совпадающие с кэшем, отбрасываются до отправки в БД.
+ * Хранит не строки, а 64-битные хэши sku в двух массивах long (16 байт на продукт):
+ * миллион продуктов занимает около 32 МБ вместе с запасом open-addressing таблицы.
+ * Совпадение хэшей sku у разных продуктов возможно, но при 64 битах и миллионах ключей
+ * его вероятность пренебрежимо мала.
+ * Кэш отражает только записи этого процесса: если продукты меняют другие клиенты,
+ * кэш нужно очистить через {@link #clear()}. Экземпляр не потокобезопасен.
+ */
+public class ProductHashCache {
+    private static final int MIN_CAPACITY = 1024;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // 0 - пустой слот, поэтому ключи никогда не равны 0
+    private long[] keys;
+    private long[] hashes;
+    private int size;
+
+    public ProductHashCache() {
+        this(MIN_CAPACITY);
+    }
+
+    public ProductHashCache(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        hashes = new long[capacity];
+    }
+
+    /**
+     * Запись совпадает с последней версией, записанной через этот кэш.
+     * Записи без sku всегда считаются измененными.
+     */
+    public boolean isUnchanged(Product product) {
+        if (product.getSku() == null) {
+            return false;
+        }
+        int slot = find(keyOf(product.getSku()));
+        return keys[slot] != 0 && hashes[slot] == contentHash(product);
+    }
+
+    /**
+     * Записи, отличающиеся от кэша, в исходном порядке.
+     */
+    public List<Product> filterChanged(List<Product> products) {
+        List<Product> changed = new ArrayList<>(products.size());
+        for (Product product : products) {
+            if (!isUnchanged(product)) {
+                changed.add(product);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Запомнить версию продукта. Вызывается только после коммита, иначе откат оставит
+     * в кэше версию, которой нет в БД.
+     */
+    public void put(Product product) {
+        if (product.getSku() == null) {
+            return;
+        }
+        long key = keyOf(product.getSku());
+        int slot = find(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            size++;
+        }
+        hashes[slot] = contentHash(product);
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    public void putAll(List<Product> products) {
+        for (Product product : products) {
+            put(product);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        hashes = new long[MIN_CAPACITY];
+        size = 0;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldHashes = hashes;
+        keys = new long[oldKeys.length * 2];
+        hashes = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static long keyOf(String sku) {
+        long key = mix(hash(FNV_OFFSET, sku));
+        return key != 0 ? key : 1;
+    }
+
+    /**
+     * Хэш колонок, которые сравнивает guard IS DISTINCT FROM в delta upsert.
+     * Цена нормализуется, чтобы 10.5 и 10.50 (равные для numeric) давали один хэш.
+     */
+    static long contentHash(Product product) {
+        long h = FNV_OFFSET;
+        h = hash(h, product.getName());
+        h = hash(h, product.getDescription());
+        BigDecimal price = product.getPrice();
+        h = hash(h, price != null ? price.stripTrailingZeros().toPlainString() : null);
+        Long categoryId = product.getCategoryId();
+        h = (h ^ (categoryId != null ? 1 : 0)) * FNV_PRIME;
+        if (categoryId != null) {
+            h = (h ^ categoryId) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    /**
+     * FNV-1a по символам с признаком null и длиной, чтобы границы полей не сдвигались.
+     */
+    private static long hash(long h, String value) {
+        h = (h ^ (value != null ? 1 : 0)) * FNV_PRIME;
+        if (value == null) {
+            return h;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return (h ^ value.length()) * FNV_PRIME;
+    }
+
+    // Финализатор MurmurHash3: младшие биты ключа выбирают слот и должны быть перемешаны
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,202 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ru.mentee.power.batch.model.FileFormat;
+import ru.mentee.power.model.Product;
+
+/**
+ * Разбор записей файла загрузки в продукты.
+ * CSV понимается так же, как его понимает COPY: пустое поле без кавычек - NULL,
+ * "" - пустая строка. NDJSON разбирается минимальным парсером плоских объектов
+ * с ключами sku, name, description, price, categoryId (или category_id).
+ */
+public final class ProductRecordParser {
+    private static final int CSV_FIELDS = 5;
+
+    private ProductRecordParser() {}
+
+    /**
+     * @return продукт или null для пустой строки
+     */
+    public static Product parse(FileFormat format, String record) {
+        if (record.isBlank()) {
+            return null;
+        }
+        return switch (format) {
+            case CSV -> parseCsv(record);
+            case NDJSON -> parseJson(record);
+        };
+    }
+
+    static Product parseCsv(String record) {
+        List<String> fields = new ArrayList<>(CSV_FIELDS);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(quoted || field.length() > 0 ? field.toString() : null);
+                field.setLength(0);
+                quoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(quoted || field.length() > 0 ? field.toString() : null);
+
+        if (fields.size() != CSV_FIELDS) {
+            throw new IllegalArgumentException(
+                    "Ожидается " + CSV_FIELDS + " полей CSV, получено " + fields.size());
+        }
+        return Product.builder()
+                .sku(fields.get(0))
+                .name(fields.get(1))
+                .description(fields.get(2))
+                .price(fields.get(3) != null ? new BigDecimal(fields.get(3)) : null)
+                .categoryId(fields.get(4) != null ? Long.valueOf(fields.get(4)) : null)
+                .build();
+    }
+
+    static Product parseJson(String record) {
+        Map<String, String> values = new JsonObjectReader(record).read();
+        String price = values.get("price");
+        String categoryId =
+                values.containsKey("categoryId")
+                        ? values.get("categoryId")
+                        : values.get("category_id");
+        return Product.builder()
+                .sku(values.get("sku"))
+                .name(values.get("name"))
+                .description(values.get("description"))
+                .price(price != null ? new BigDecimal(price) : null)
+                .categoryId(categoryId != null ? Long.valueOf(categoryId) : null)
+                .build();
+    }
+
+    /**
+     * Плоский JSON-объект: значения - строки, числа, true/false или null.
+     * Числа и логические значения возвращаются исходным текстом.
+     */
+    private static class JsonObjectReader {
+        private final String json;
+        private int pos;
+
+        JsonObjectReader(String json) {
+            this.json = json;
+        }
+
+        Map<String, String> read() {
+            Map<String, String> values = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                pos++;
+                return values;
+            }
+            while (true) {
+                String key = readString();
+                expect(':');
+                values.put(key, readValue());
+                char c = next();
+                if (c == '}') {
+                    return values;
+                }
+                if (c != ',') {
+                    throw error("ожидается ',' или '}'");
+                }
+            }
+        }
+
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (pos < json.length() && ",} \t\r".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = json.substring(start, pos);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                throw error("поддерживаются только плоские объекты");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (pos >= json.length()) {
+                    throw error("незакрытая строка");
+                }
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        value.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            }
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("ожидается '" + expected + "'");
+            }
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private char peek() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= json.length()) {
+                throw error("неожиданный конец записи");
+            }
+            return json.charAt(pos);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(
+                    "Некорректный JSON в позиции " + pos + ": " + message);
+        }
+    }
+}
@@ -4,8 +4,12 @@ package ru.mentee.power.batch.impl;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import ru.mentee.power.batch.interfaces.RowBinder;
 import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.DetailedBatchResult;
 import ru.mentee.power.batch.model.FailedRecord;
@@ -18,10 +22,33 @@ public class ResilientBatchProcessor {
     private static final String INSERT_PRODUCT =
             "INSERT INTO mentee_power.products (sku, name, description, price, category_id) "
                     + "VALUES (?, ?, ?, ?, ?)";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
     private final Connection connection;
+    private final int batchSize;
+    // null - продукты через SQL и привязку BasicBatchProcessor
+    private final RowBinder<?> binder;
 
     public ResilientBatchProcessor(Connection connection) {
+        this(connection, DEFAULT_BATCH_SIZE);
+    }
+
+    public ResilientBatchProcessor(Connection connection, int batchSize) {
+        this(connection, batchSize, null);
+    }
+
+    /**
+     * Процессор для таблицы, заданной binder. Для DELETE записи - значения первичного
+     * ключа типа {@link RowBinder#getKeyType()}.
+     */
+    public ResilientBatchProcessor(Connection connection, RowBinder<?> binder) {
+        this(connection, DEFAULT_BATCH_SIZE, binder);
+    }
+
+    private ResilientBatchProcessor(Connection connection, int batchSize, RowBinder<?> binder) {
         this.connection = connection;
+        this.batchSize = batchSize;
+        this.binder = binder;
     }
 
     /**
@@ -66,12 +93,12 @@ public class ResilientBatchProcessor {
                     } catch (SQLException e) {
                         // PostgreSQL использует SQLState для кодов ошибок, а не getErrorCode()
                         // SQLState "23505" = unique_violation
-                        int errorCode = parsePostgresErrorCode(e);
                         resultBuilder.addFailedRecord(
                                 FailedRecord.builder()
                                         .index(i)
                                         .data(product)
-                                        .errorCode(errorCode)
+                                        .sqlState(e.getSQLState())
+                                        .errorCode(parsePostgresErrorCode(e))
                                         .errorMessage(e.getMessage())
                                         .build());
                         try {
@@ -115,6 +142,200 @@ public class ResilientBatchProcessor {
         return result;
     }
 
+    /**
+     * Batch обработка с изоляцией ошибок делением пополам.
+     * Записи отправляются полными batch; упавший batch откатывается до savepoint и делится
+     * пополам, пока ошибочные записи не останутся поодиночке. Чистые данные идут со скоростью
+     * batch, а число дополнительных round trip растет как O(k log n) от числа k плохих записей.
+     * Коммит выполняется один раз на batch.
+     */
+    public <T> DetailedBatchResult insertWithBisection(List<T> records, BatchOperation operation)
+            throws SQLException {
+        DetailedBatchResult.DetailedBatchResultBuilder resultBuilder =
+                DetailedBatchResult.builder()
+                        .totalRecords(records.size())
+                        .successfulRecords(0)
+                        .failedRecords(0);
+
+        long startTime = System.currentTimeMillis();
+        boolean originalAutoCommit = connection.getAutoCommit();
+
+        if (binder != null && !binder.supports(operation)) {
+            throw new SQLFeatureNotSupportedException(
+                    operation + " невозможен для " + binder.getTable() + ": нет ключа");
+        }
+        String sql =
+                binder != null ? binder.sqlFor(operation) : BasicBatchProcessor.sqlFor(operation);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+
+            // Позиции подходящих для операции записей текущего batch в исходном списке
+            int[] positions = new int[Math.min(batchSize, records.size())];
+            for (int start = 0; start < records.size(); start += batchSize) {
+                int end = Math.min(start + batchSize, records.size());
+                int count = 0;
+                for (int i = start; i < end; i++) {
+                    if (isApplicable(records.get(i), operation)) {
+                        positions[count++] = i;
+                    }
+                }
+
+                // В транзакции только этот batch, поэтому верхний уровень обходится без savepoint
+                executeIsolating(ps, records, operation, positions, 0, count, null, resultBuilder);
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка при batch обработке с изоляцией ошибок", e);
+        } finally {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        DetailedBatchResult result = resultBuilder.executionTimeMs(duration).build();
+        result.setRecordsPerSecond(
+                result.getSuccessfulRecords() > 0 && duration > 0
+                        ? (result.getSuccessfulRecords() * 1000.0) / duration
+                        : 0.0);
+        return result;
+    }
+
+    /**
+     * Выполнить записи positions[from..to) одним batch. При ошибке откатиться к savepoint
+     * (или ко всей транзакции, если savepoint == null) и рекурсивно обработать половины.
+     */
+    private <T> void executeIsolating(
+            PreparedStatement ps,
+            List<T> records,
+            BatchOperation operation,
+            int[] positions,
+            int from,
+            int to,
+            Savepoint savepoint,
+            DetailedBatchResult.DetailedBatchResultBuilder resultBuilder)
+            throws SQLException {
+        if (from >= to) {
+            return;
+        }
+        if (to - from == 1) {
+            int index = positions[from];
+            executeSingle(ps, records.get(index), index, operation, savepoint, resultBuilder);
+            return;
+        }
+
+        int[] updateCounts;
+        try {
+            for (int i = from; i < to; i++) {
+                bindParameters(ps, records.get(positions[i]), operation);
+                ps.addBatch();
+            }
+            updateCounts = ps.executeBatch();
+        } catch (SQLException e) {
+            ps.clearBatch();
+            rollbackTo(savepoint);
+
+            int middle = (from + to) >>> 1;
+            Savepoint left = connection.setSavepoint();
+            executeIsolating(ps, records, operation, positions, from, middle, left, resultBuilder);
+            Savepoint right = connection.setSavepoint();
+            executeIsolating(ps, records, operation, positions, middle, to, right, resultBuilder);
+            // Освобождаем savepoint сразу, чтобы не копить подтранзакции до коммита
+            releaseIfSet(savepoint);
+            return;
+        }
+
+        releaseIfSet(savepoint);
+        for (int i = 0; i < updateCounts.length; i++) {
+            int index = positions[from + i];
+            recordOutcome(resultBuilder, index, records.get(index), updateCounts[i]);
+        }
+    }
+
+    /**
+     * Одиночная запись выполняется через executeUpdate, чтобы получить исходное сообщение
+     * и SQLState ошибки, а не обертку BatchUpdateException.
+     */
+    private void executeSingle(
+            PreparedStatement ps,
+            Object record,
+            int index,
+            BatchOperation operation,
+            Savepoint savepoint,
+            DetailedBatchResult.DetailedBatchResultBuilder resultBuilder)
+            throws SQLException {
+        try {
+            bindParameters(ps, record, operation);
+            int updateCount = ps.executeUpdate();
+            releaseIfSet(savepoint);
+            recordOutcome(resultBuilder, index, record, updateCount);
+        } catch (SQLException e) {
+            rollbackTo(savepoint);
+            releaseIfSet(savepoint);
+            resultBuilder.addFailedRecord(
+                    FailedRecord.builder()
+                            .index(index)
+                            .data(record)
+                            .sqlState(e.getSQLState())
+                            .errorCode(parsePostgresErrorCode(e))
+                            .errorMessage(e.getMessage())
+                            .build());
+        }
+    }
+
+    private void recordOutcome(
+            DetailedBatchResult.DetailedBatchResultBuilder resultBuilder,
+            int index,
+            Object record,
+            int updateCount) {
+        if (updateCount > 0 || updateCount == Statement.SUCCESS_NO_INFO) {
+            resultBuilder.incrementSuccessful();
+        } else {
+            resultBuilder.addFailedRecord(
+                    FailedRecord.builder()
+                            .index(index)
+                            .data(record)
+                            .errorCode(0)
+                            .errorMessage("No rows affected")
+                            .build());
+        }
+    }
+
+    private void rollbackTo(Savepoint savepoint) throws SQLException {
+        if (savepoint == null) {
+            connection.rollback();
+        } else {
+            connection.rollback(savepoint);
+        }
+    }
+
+    private void releaseIfSet(Savepoint savepoint) throws SQLException {
+        if (savepoint != null) {
+            connection.releaseSavepoint(savepoint);
+        }
+    }
+
+    private void bindParameters(PreparedStatement ps, Object record, BatchOperation operation)
+            throws SQLException {
+        if (binder != null) {
+            binder.bind(ps, record, operation);
+        } else {
+            BasicBatchProcessor.bindParameters(ps, record, operation);
+        }
+    }
+
+    private boolean isApplicable(Object record, BatchOperation operation) {
+        if (operation == BatchOperation.DELETE) {
+            if (binder == null) {
+                return record instanceof Long;
+            }
+            Class<?> keyType = binder.getKeyType();
+            return keyType != null && keyType.isInstance(record);
+        }
+        return binder != null
+                ? binder.getEntityType().isInstance(record)
+                : record instanceof Product;
+    }
+
     private void setProductParameters(PreparedStatement ps, Product product) throws SQLException {
         ps.setString(1, product.getSku());
         ps.setString(2, product.getName());
@@ -126,7 +347,8 @@ public class ResilientBatchProcessor {
     /**
      * Парсит код ошибки PostgreSQL из SQLException.
      * PostgreSQL использует SQLState для кодов ошибок (например, "23505" для unique_violation).
-     * Если SQLState не является числовым кодом, возвращает getErrorCode().
+     * Если SQLState не является числовым кодом (например, "22P02"), возвращает getErrorCode():
+     * точный код в этом случае доступен только в {@link FailedRecord#getSqlState()}.
      */
     private int parsePostgresErrorCode(SQLException e) {
         String sqlState = e.getSQLState();
@@ -0,0 +1,237 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.CopyFormat;
+import ru.mentee.power.model.Product;
+
+/**
+ * Возобновляемая загрузка продуктов с чекпоинтами.
+ * Вход режется на chunk фиксированного размера, и каждый chunk коммитится вместе со строкой
+ * (job_id, chunk_id, offset) в batch_load_checkpoints. Если загрузка упала, повторный запуск
+ * с тем же jobId пропускает закоммиченные chunk и продолжает с первого отсутствующего.
+ */
+@Slf4j
+public class ResumableBatchLoader {
+    static final String CHECKPOINT_TABLE = "mentee_power.batch_load_checkpoints";
+
+    private static final String SELECT_CHECKPOINTS =
+            "SELECT chunk_id, start_offset FROM " + CHECKPOINT_TABLE + " WHERE job_id = ?";
+    private static final String INSERT_CHECKPOINT =
+            "INSERT INTO "
+                    + CHECKPOINT_TABLE
+                    + " (job_id, chunk_id, start_offset, record_count) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_CHECKPOINTS =
+            "DELETE FROM " + CHECKPOINT_TABLE + " WHERE job_id = ?";
+
+    private static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    private final Connection connection;
+    private final int chunkSize;
+
+    public ResumableBatchLoader(Connection connection) {
+        this(connection, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ResumableBatchLoader(Connection connection, int chunkSize) {
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Возобновляемая batch вставка через JDBC batch.
+     */
+    public <T> BatchResult insert(String jobId, List<T> records) throws SQLException {
+        try (PreparedStatement ps =
+                connection.prepareStatement(BasicBatchProcessor.INSERT_PRODUCT)) {
+            return load(jobId, records.iterator(), chunk -> insertChunk(ps, chunk));
+        }
+    }
+
+    /**
+     * Возобновляемая загрузка через COPY, по одной COPY операции на chunk.
+     */
+    public <T> BatchResult loadWithCopy(String jobId, List<T> records, CopyFormat format)
+            throws SQLException {
+        return loadWithCopy(jobId, records.iterator(), format);
+    }
+
+    public <T> BatchResult loadWithCopy(String jobId, Iterator<T> records, CopyFormat format)
+            throws SQLException {
+        PostgresCopyProcessor copier = new PostgresCopyProcessor(connection, format);
+        return load(jobId, records, chunk -> copyChunk(copier, chunk, format));
+    }
+
+    /**
+     * Удалить чекпоинты задания, например после успешной загрузки или для полной перезагрузки.
+     */
+    public void clearCheckpoints(String jobId) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(DELETE_CHECKPOINTS)) {
+            ps.setString(1, jobId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Количество закоммиченных chunk задания.
+     */
+    public int getCommittedChunks(String jobId) throws SQLException {
+        return readCheckpoints(jobId).cardinality();
+    }
+
+    private BatchResult load(String jobId, Iterator<?> records, ChunkWriter writer)
+            throws SQLException {
+        long startTime = System.currentTimeMillis();
+        BitSet committed = readCheckpoints(jobId);
+        boolean originalAutoCommit = connection.getAutoCommit();
+
+        int totalRecords = 0;
+        int loaded = 0;
+        int skipped = 0;
+        int chunkId = 0;
+        List<Object> chunk = new ArrayList<>(chunkSize);
+
+        try (PreparedStatement checkpoint = connection.prepareStatement(INSERT_CHECKPOINT)) {
+            connection.setAutoCommit(false);
+
+            for (; records.hasNext(); chunkId++) {
+                long offset = (long) chunkId * chunkSize;
+
+                if (committed.get(chunkId)) {
+                    // Итератор нельзя перемотать, но пропущенные записи не кодируются и не
+                    // отправляются в БД
+                    int count = 0;
+                    while (count < chunkSize && records.hasNext()) {
+                        records.next();
+                        count++;
+                    }
+                    totalRecords += count;
+                    skipped += count;
+                    continue;
+                }
+
+                chunk.clear();
+                while (chunk.size() < chunkSize && records.hasNext()) {
+                    chunk.add(records.next());
+                }
+                totalRecords += chunk.size();
+
+                loaded += writer.write(chunk);
+
+                checkpoint.setString(1, jobId);
+                checkpoint.setInt(2, chunkId);
+                checkpoint.setLong(3, offset);
+                checkpoint.setInt(4, chunk.size());
+                checkpoint.executeUpdate();
+
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException(
+                    "Ошибка при загрузке задания "
+                            + jobId
+                            + ", повторный запуск продолжит с chunk "
+                            + chunkId,
+                    e);
+        } finally {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        if (skipped > 0) {
+            log.info(
+                    "Задание {} возобновлено: пропущено {} записей, загружено {} за {} мс",
+                    jobId,
+                    skipped,
+                    loaded,
+                    duration);
+        }
+
+        return BatchResult.builder()
+                .totalRecords(totalRecords)
+                .successfulRecords(loaded)
+                .skippedRecords(skipped)
+                .failedRecords(totalRecords - loaded - skipped)
+                .executionTimeMs(duration)
+                .recordsPerSecond(calculateThroughput(loaded, duration))
+                .build();
+    }
+
+    /**
+     * Закоммиченные chunk задания. Смещения проверяются, чтобы не пропустить чужие записи,
+     * если задание перезапущено с другим размером chunk.
+     */
+    private BitSet readCheckpoints(String jobId) throws SQLException {
+        BitSet committed = new BitSet();
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_CHECKPOINTS)) {
+            ps.setString(1, jobId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int chunkId = rs.getInt("chunk_id");
+                    if (rs.getLong("start_offset") != (long) chunkId * chunkSize) {
+                        throw new IllegalStateException(
+                                "Чекпоинты задания "
+                                        + jobId
+                                        + " записаны с другим размером chunk");
+                    }
+                    committed.set(chunkId);
+                }
+            }
+        }
+        return committed;
+    }
+
+    private int insertChunk(PreparedStatement ps, List<?> chunk) throws SQLException {
+        int bound = 0;
+        for (Object record : chunk) {
+            if (record instanceof Product product) {
+                BasicBatchProcessor.setProductInsertParameters(ps, product);
+                ps.addBatch();
+                bound++;
+            }
+        }
+        if (bound == 0) {
+            return 0;
+        }
+
+        int inserted = 0;
+        for (int count : ps.executeBatch()) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    private int copyChunk(PostgresCopyProcessor copier, List<?> chunk, CopyFormat format)
+            throws SQLException {
+        PostgresCopyProcessor.CopyCounts counts =
+                copier.copyIn(
+                        chunk.iterator(),
+                        PostgresCopyProcessor.PRODUCTS_TABLE,
+                        ProductCopyLayout.PRODUCT,
+                        format);
+        return (int) counts.rowsCopied;
+    }
+
+    private double calculateThroughput(int records, long timeMs) {
+        if (timeMs == 0) return 0;
+        return (records * 1000.0) / timeMs;
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        int write(List<?> chunk) throws SQLException;
+    }
+}
@@ -0,0 +1,470 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.batch.interfaces.RowBinder;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.MappedColumn;
+
+/**
+ * Генератор {@link RowBinder} по метаданным таблицы ({@link DatabaseMetaData}).
+ * Колонка связывается со свойством сущности по имени: category_id - getCategoryId().
+ * Колонки без геттера не участвуют в операциях. Геттеры один раз превращаются в
+ * {@link MethodHandle}, а способ привязки параметра выбирается по типу свойства,
+ * поэтому на строку нет рефлексии и разбора типов. Binder кэшируется на базу данных
+ * (URL и каталог соединения), класс и таблицу: одноименные таблицы разных баз могут
+ * отличаться колонками.
+ * NULL в колонке с DEFAULT (в том числе serial id) заменяется значением по умолчанию при
+ * INSERT и не затирает текущее значение при UPDATE и upsert.
+ */
+@Slf4j
+public final class RowBinderGenerator {
+    private static final Map<String, RowBinder<?>> BINDERS = new ConcurrentHashMap<>();
+    private static final Pattern QUALIFIED_TABLE =
+            Pattern.compile("([a-z_][a-z0-9_]*)\\.([a-z_][a-z0-9_]*)");
+
+    private RowBinderGenerator() {}
+
+    /**
+     * Binder сущности для таблицы. Upsert разрешает конфликт по первичному ключу.
+     *
+     * @param table имя таблицы со схемой, например mentee_power.orders
+     */
+    public static <T> RowBinder<T> forEntity(Connection connection, String table, Class<T> type)
+            throws SQLException {
+        return forEntity(connection, table, type, new String[0]);
+    }
+
+    /**
+     * @param conflictColumns колонки уникального ключа для ON CONFLICT upsert
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowBinder<T> forEntity(
+            Connection connection, String table, Class<T> type, String... conflictColumns)
+            throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String key =
+                metaData.getURL()
+                        + "|"
+                        + connection.getCatalog()
+                        + "|"
+                        + type.getName()
+                        + "|"
+                        + table
+                        + "|"
+                        + String.join(",", conflictColumns);
+        RowBinder<?> binder = BINDERS.get(key);
+        if (binder == null) {
+            binder = generate(metaData, table, type, conflictColumns);
+            RowBinder<?> existing = BINDERS.putIfAbsent(key, binder);
+            if (existing != null) {
+                binder = existing;
+            }
+        }
+        return (RowBinder<T>) binder;
+    }
+
+    private static <T> RowBinder<T> generate(
+            DatabaseMetaData metaData, String table, Class<T> type, String[] conflictColumns)
+            throws SQLException {
+        Matcher name = QUALIFIED_TABLE.matcher(table);
+        if (!name.matches()) {
+            throw new IllegalArgumentException("Ожидается имя таблицы со схемой: " + table);
+        }
+        String schemaName = name.group(1);
+        String tableName = name.group(2);
+
+        // getPrimaryKeys принимает точное имя, getColumns - шаблон LIKE, где '_' означает
+        // любой символ: имя экранируется, а строки чужих таблиц отбрасываются в обоих случаях
+        List<String> primaryKey = new ArrayList<>();
+        try (ResultSet rs = metaData.getPrimaryKeys(null, schemaName, tableName)) {
+            while (rs.next()) {
+                if (isTable(rs, schemaName, tableName)) {
+                    primaryKey.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+        }
+
+        String escape = metaData.getSearchStringEscape();
+        String schemaPattern = escapePattern(schemaName, escape);
+        String tablePattern = escapePattern(tableName, escape);
+
+        List<MappedColumn> columns = new ArrayList<>();
+        List<MethodHandle> getters = new ArrayList<>();
+        List<ValueSetter> setters = new ArrayList<>();
+        List<Class<?>> propertyTypes = new ArrayList<>();
+        try (ResultSet rs = metaData.getColumns(null, schemaPattern, tablePattern, null)) {
+            while (rs.next()) {
+                if (!isTable(rs, schemaName, tableName)) {
+                    continue;
+                }
+                String columnName = rs.getString("COLUMN_NAME");
+                String property = toPropertyName(columnName);
+                Method getter = findGetter(type, property);
+                if (getter == null) {
+                    log.debug("Колонка {}.{} не связана со свойством {}", table, columnName, type);
+                    continue;
+                }
+                columns.add(
+                        MappedColumn.builder()
+                                .name(columnName)
+                                .property(property)
+                                .sqlType(rs.getInt("DATA_TYPE"))
+                                .defaultExpression(rs.getString("COLUMN_DEF"))
+                                // Ключ из нескольких колонок не используется для UPDATE и DELETE
+                                .primaryKey(
+                                        primaryKey.size() == 1
+                                                && primaryKey.get(0).equals(columnName))
+                                .build());
+                getters.add(toHandle(getter));
+                Class<?> propertyType = getter.getReturnType();
+                setters.add(setterFor(propertyType));
+                propertyTypes.add(MethodType.methodType(propertyType).wrap().returnType());
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Нет колонок " + table + ", связанных со свойствами " + type.getName());
+        }
+
+        List<String> conflict =
+                conflictColumns.length > 0 ? Arrays.asList(conflictColumns) : primaryKey;
+        return new GeneratedRowBinder<>(
+                type,
+                table,
+                List.copyOf(columns),
+                getters.toArray(new MethodHandle[0]),
+                setters.toArray(new ValueSetter[0]),
+                propertyTypes.toArray(new Class<?>[0]),
+                conflict);
+    }
+
+    private static boolean isTable(ResultSet rs, String schemaName, String tableName)
+            throws SQLException {
+        return schemaName.equals(rs.getString("TABLE_SCHEM"))
+                && tableName.equals(rs.getString("TABLE_NAME"));
+    }
+
+    /**
+     * Экранировать '_' и '%' для аргумента-шаблона DatabaseMetaData.
+     */
+    static String escapePattern(String name, String escape) {
+        if (escape == null || escape.isEmpty()) {
+            return name;
+        }
+        return name.replace(escape, escape + escape)
+                .replace("_", escape + "_")
+                .replace("%", escape + "%");
+    }
+
+    static String toPropertyName(String columnName) {
+        StringBuilder property = new StringBuilder(columnName.length());
+        boolean upper = false;
+        for (int i = 0; i < columnName.length(); i++) {
+            char c = columnName.charAt(i);
+            if (c == '_') {
+                upper = property.length() > 0;
+            } else {
+                property.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return property.toString();
+    }
+
+    private static Method findGetter(Class<?> type, String property) {
+        String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String prefix : new String[] {"get", "is"}) {
+            try {
+                Method method = type.getMethod(prefix + suffix);
+                if (method.getReturnType() != void.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // Пробуем следующий префикс
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle toHandle(Method getter) {
+        try {
+            return MethodHandles.publicLookup()
+                    .unreflect(getter)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Геттер недоступен: " + getter, e);
+        }
+    }
+
+    /**
+     * Привязка значения по типу свойства выбирается один раз при генерации binder.
+     */
+    private static ValueSetter setterFor(Class<?> propertyType) {
+        if (propertyType == Long.class || propertyType == long.class) {
+            return (ps, index, value) -> ps.setLong(index, (Long) value);
+        }
+        if (propertyType == Integer.class || propertyType == int.class) {
+            return (ps, index, value) -> ps.setInt(index, (Integer) value);
+        }
+        if (propertyType == String.class) {
+            return (ps, index, value) -> ps.setString(index, (String) value);
+        }
+        if (propertyType == BigDecimal.class) {
+            return (ps, index, value) -> ps.setBigDecimal(index, (BigDecimal) value);
+        }
+        if (propertyType == Boolean.class || propertyType == boolean.class) {
+            return (ps, index, value) -> ps.setBoolean(index, (Boolean) value);
+        }
+        // java.time и прочие типы драйвер преобразует сам
+        return PreparedStatement::setObject;
+    }
+
+    @FunctionalInterface
+    private interface ValueSetter {
+        void set(PreparedStatement ps, int index, Object value) throws SQLException;
+    }
+
+    private static final class GeneratedRowBinder<T> implements RowBinder<T> {
+        private final Class<T> type;
+        private final String table;
+        private final List<MappedColumn> columns;
+        private final MethodHandle[] getters;
+        private final ValueSetter[] setters;
+        private final int keyColumn;
+        private final Class<?> keyType;
+        // Колонки, обновляемые UPDATE и upsert: все, кроме ключа и колонок конфликта
+        private final int[] updateColumns;
+        // Обновляемые колонки с DEFAULT: в upsert их значение привязывается повторно
+        private final int[] upsertRebound;
+        private final String insertSql;
+        private final String upsertSql;
+        private final String updateSql;
+        private final String deleteSql;
+
+        GeneratedRowBinder(
+                Class<T> type,
+                String table,
+                List<MappedColumn> columns,
+                MethodHandle[] getters,
+                ValueSetter[] setters,
+                Class<?>[] propertyTypes,
+                List<String> conflictColumns) {
+            this.type = type;
+            this.table = table;
+            this.columns = columns;
+            this.getters = getters;
+            this.setters = setters;
+
+            int key = -1;
+            List<Integer> updatable = new ArrayList<>();
+            List<Integer> rebound = new ArrayList<>();
+            for (int i = 0; i < columns.size(); i++) {
+                MappedColumn column = columns.get(i);
+                if (column.isPrimaryKey()) {
+                    key = i;
+                } else if (!conflictColumns.contains(column.getName())) {
+                    updatable.add(i);
+                    if (column.hasDefault()) {
+                        rebound.add(i);
+                    }
+                }
+            }
+            this.keyColumn = key;
+            this.keyType = key < 0 ? null : propertyTypes[key];
+            this.updateColumns = updatable.stream().mapToInt(Integer::intValue).toArray();
+            this.upsertRebound = rebound.stream().mapToInt(Integer::intValue).toArray();
+
+            String columnList =
+                    columns.stream().map(c -> quote(c.getName())).collect(Collectors.joining(", "));
+            String values =
+                    columns.stream().map(this::insertValue).collect(Collectors.joining(", "));
+            this.insertSql =
+                    "INSERT INTO " + table + " (" + columnList + ") VALUES (" + values + ")";
+            this.upsertSql = buildUpsertSql(columnList, values, conflictColumns);
+            this.updateSql = key < 0 ? null : buildUpdateSql();
+            this.deleteSql =
+                    key < 0 ? null : "DELETE FROM " + table + " WHERE " + keyName() + " = ?";
+        }
+
+        @Override
+        public Class<T> getEntityType() {
+            return type;
+        }
+
+        @Override
+        public String getTable() {
+            return table;
+        }
+
+        @Override
+        public List<MappedColumn> getColumns() {
+            return columns;
+        }
+
+        @Override
+        public Object getValue(T record, int column) {
+            try {
+                return (Object) getters[column].invokeExact((Object) record);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(
+                        "Ошибка чтения свойства " + columns.get(column).getProperty(), e);
+            }
+        }
+
+        @Override
+        public boolean supports(BatchOperation operation) {
+            return sql(operation) != null;
+        }
+
+        @Override
+        public Class<?> getKeyType() {
+            return keyType;
+        }
+
+        @Override
+        public String sqlFor(BatchOperation operation) {
+            String sql = sql(operation);
+            if (sql == null) {
+                throw new UnsupportedOperationException(
+                        operation + " невозможен для " + table + ": нет ключа");
+            }
+            return sql;
+        }
+
+        @Override
+        public boolean bind(PreparedStatement ps, Object record, BatchOperation operation)
+                throws SQLException {
+            if (operation == BatchOperation.DELETE) {
+                if (keyType == null || !keyType.isInstance(record)) {
+                    return false;
+                }
+                setters[keyColumn].set(ps, 1, record);
+                return true;
+            }
+            if (!type.isInstance(record)) {
+                return false;
+            }
+
+            T entity = type.cast(record);
+            int index = 1;
+            if (operation == BatchOperation.UPDATE) {
+                for (int column : updateColumns) {
+                    setValue(ps, index++, entity, column);
+                }
+                setValue(ps, index, entity, keyColumn);
+                return true;
+            }
+            for (int column = 0; column < columns.size(); column++) {
+                setValue(ps, index++, entity, column);
+            }
+            if (operation == BatchOperation.UPSERT) {
+                for (int column : upsertRebound) {
+                    setValue(ps, index++, entity, column);
+                }
+            }
+            return true;
+        }
+
+        private String sql(BatchOperation operation) {
+            return switch (operation) {
+                case INSERT -> insertSql;
+                case UPDATE -> updateSql;
+                case DELETE -> deleteSql;
+                case UPSERT -> upsertSql;
+            };
+        }
+
+        private void setValue(PreparedStatement ps, int index, T record, int column)
+                throws SQLException {
+            Object value = getValue(record, column);
+            if (value == null) {
+                ps.setNull(index, columns.get(column).getSqlType());
+            } else {
+                setters[column].set(ps, index, value);
+            }
+        }
+
+        private String insertValue(MappedColumn column) {
+            return column.hasDefault() ? "COALESCE(?, " + column.getDefaultExpression() + ")" : "?";
+        }
+
+        private String buildUpsertSql(
+                String columnList, String values, List<String> conflictColumns) {
+            if (conflictColumns.isEmpty()) {
+                return null;
+            }
+            StringBuilder sql =
+                    new StringBuilder("INSERT INTO ")
+                            .append(table)
+                            .append(" AS t (")
+                            .append(columnList)
+                            .append(") VALUES (")
+                            .append(values)
+                            .append(") ON CONFLICT (")
+                            .append(
+                                    conflictColumns.stream()
+                                            .map(RowBinderGenerator::quote)
+                                            .collect(Collectors.joining(", ")))
+                            .append(")");
+            if (updateColumns.length == 0) {
+                return sql.append(" DO NOTHING").toString();
+            }
+            sql.append(" DO UPDATE SET ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                MappedColumn column = columns.get(updateColumns[i]);
+                String name = quote(column.getName());
+                sql.append(i > 0 ? ", " : "").append(name).append(" = ");
+                if (column.hasDefault()) {
+                    // EXCLUDED уже содержит DEFAULT: NULL из записи сохраняет текущее значение
+                    sql.append("COALESCE(?, t.").append(name).append(")");
+                } else {
+                    sql.append("EXCLUDED.").append(name);
+                }
+            }
+            return sql.toString();
+        }
+
+        private String buildUpdateSql() {
+            StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                MappedColumn column = columns.get(updateColumns[i]);
+                String name = quote(column.getName());
+                sql.append(i > 0 ? ", " : "").append(name).append(" = ");
+                sql.append(column.hasDefault() ? "COALESCE(?, " + name + ")" : "?");
+            }
+            return sql.append(" WHERE ").append(keyName()).append(" = ?").toString();
+        }
+
+        private String keyName() {
+            return quote(columns.get(keyColumn).getName());
+        }
+    }
+
+    static String quote(String identifier) {
+        if (identifier.matches("[a-z_][a-z0-9_]*")) {
+            return identifier;
+        }
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
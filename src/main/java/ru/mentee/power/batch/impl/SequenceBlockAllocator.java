@@ -0,0 +1,97 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Выдача идентификаторов из последовательности блоками (hi/lo): блок из blockSize значений
+ * резервируется одним запросом, дальше id выдаются на клиенте без обращения к БД.
+ * nextval не откатывается вместе с транзакцией, поэтому зарезервированные id уникальны
+ * даже при откате загрузки, а неиспользованный остаток блока становится пропуском
+ * в последовательности. Экземпляр не потокобезопасен.
+ */
+public class SequenceBlockAllocator {
+    private static final String SERIAL_SEQUENCE = "SELECT pg_get_serial_sequence(?, ?)";
+    private static final String RESERVE_BLOCK =
+            "SELECT array_agg(nextval(?::regclass)) FROM generate_series(1, ?)";
+
+    private final Connection connection;
+    private final String sequence;
+    private final int blockSize;
+
+    private long[] block = new long[0];
+    private int next;
+    private int roundTrips;
+
+    public SequenceBlockAllocator(Connection connection, String sequence, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Размер блока должен быть положительным");
+        }
+        this.connection = connection;
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Аллокатор для последовательности BIGSERIAL колонки.
+     */
+    public static SequenceBlockAllocator forSerialColumn(
+            Connection connection, String table, String column, int blockSize)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SERIAL_SEQUENCE)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getString(1) == null) {
+                    throw new SQLException(
+                            "Колонка "
+                                    + table
+                                    + "."
+                                    + column
+                                    + " не связана с последовательностью");
+                }
+                return new SequenceBlockAllocator(connection, rs.getString(1), blockSize);
+            }
+        }
+    }
+
+    public long nextId() throws SQLException {
+        if (next == block.length) {
+            reserveBlock();
+        }
+        return block[next++];
+    }
+
+    /**
+     * Количество запросов к последовательности с момента создания.
+     */
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    private void reserveBlock() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(RESERVE_BLOCK)) {
+            ps.setString(1, sequence);
+            ps.setInt(2, blockSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                Array array = rs.getArray(1);
+                Long[] ids = (Long[]) array.getArray();
+                array.free();
+
+                if (block.length != ids.length) {
+                    block = new long[ids.length];
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    block[i] = ids[i];
+                }
+                next = 0;
+                roundTrips++;
+            }
+        }
+    }
+}
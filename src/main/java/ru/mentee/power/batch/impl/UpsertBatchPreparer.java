@@ -0,0 +1,134 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import ru.mentee.power.batch.model.DuplicateKeyPolicy;
+import ru.mentee.power.model.Product;
+
+/**
+ * Подготовка upsert batch: схлопывание дубликатов sku и сортировка по sku.
+ * Один statement с ON CONFLICT не может обновить строку дважды, поэтому дубликаты ключа
+ * внутри batch сводятся к одной записи. Сортировка по ключу заставляет параллельные
+ * транзакции брать блокировки уникального индекса в одном порядке, и они не образуют
+ * взаимную блокировку.
+ * Дубликаты ищутся в open-addressing таблице индексов (int[]) без boxed ключей и Map.Entry.
+ * Экземпляр переиспользует таблицу между batch и не потокобезопасен.
+ */
+public class UpsertBatchPreparer {
+    private static final int MIN_CAPACITY = 16;
+    private static final Comparator<Product> BY_SKU =
+            Comparator.comparing(Product::getSku, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final DuplicateKeyPolicy policy;
+    // 0 - пустой слот, иначе индекс записи в unique + 1
+    private int[] slots = new int[MIN_CAPACITY];
+    private int collapsedCount;
+
+    public UpsertBatchPreparer() {
+        this(DuplicateKeyPolicy.LAST_WINS);
+    }
+
+    public UpsertBatchPreparer(DuplicateKeyPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Продукты batch без дубликатов sku, отсортированные по sku.
+     * Записи другого типа пропускаются, записи без sku не схлопываются.
+     */
+    public <T> List<Product> prepare(List<T> batch) {
+        collapsedCount = 0;
+        resetSlots(batch.size());
+        int mask = slots.length - 1;
+        List<Product> unique = new ArrayList<>(batch.size());
+
+        for (T record : batch) {
+            if (!(record instanceof Product product)) {
+                continue;
+            }
+            String sku = product.getSku();
+            if (sku == null) {
+                unique.add(product);
+                continue;
+            }
+
+            int slot = spread(sku.hashCode()) & mask;
+            while (true) {
+                int entry = slots[slot];
+                if (entry == 0) {
+                    unique.add(product);
+                    slots[slot] = unique.size();
+                    break;
+                }
+                Product existing = unique.get(entry - 1);
+                if (sku.equals(existing.getSku())) {
+                    unique.set(entry - 1, resolve(existing, product));
+                    collapsedCount++;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        unique.sort(BY_SKU);
+        return unique;
+    }
+
+    /**
+     * Количество записей, схлопнутых в последнем вызове {@link #prepare(List)}.
+     */
+    public int getCollapsedCount() {
+        return collapsedCount;
+    }
+
+    private Product resolve(Product existing, Product next) {
+        if (policy == DuplicateKeyPolicy.LAST_WINS) {
+            return next;
+        }
+        // Новый объект, чтобы не менять записи вызывающего кода
+        return Product.builder()
+                .id(next.getId() != null ? next.getId() : existing.getId())
+                .sku(existing.getSku())
+                .name(next.getName() != null ? next.getName() : existing.getName())
+                .description(
+                        next.getDescription() != null
+                                ? next.getDescription()
+                                : existing.getDescription())
+                .price(next.getPrice() != null ? next.getPrice() : existing.getPrice())
+                .categoryId(
+                        next.getCategoryId() != null
+                                ? next.getCategoryId()
+                                : existing.getCategoryId())
+                .createdAt(
+                        next.getCreatedAt() != null
+                                ? next.getCreatedAt()
+                                : existing.getCreatedAt())
+                .categoryName(
+                        next.getCategoryName() != null
+                                ? next.getCategoryName()
+                                : existing.getCategoryName())
+                .build();
+    }
+
+    /**
+     * Таблица заполнена не больше чем наполовину, чтобы цепочки проб оставались короткими.
+     */
+    private void resetSlots(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        if (capacity > slots.length) {
+            slots = new int[capacity];
+        } else {
+            Arrays.fill(slots, 0);
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
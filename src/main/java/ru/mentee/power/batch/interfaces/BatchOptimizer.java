@@ -30,6 +30,29 @@ public interface BatchOptimizer {
      */
     ExecutionPlan createExecutionPlan(int totalRecords, Constraints constraints);
 
+    /**
+     * Создать план выполнения по модели стоимости операции.
+     *
+     * @param sampleData образец данных для оценки размера записи
+     * @param totalRecords общее количество записей
+     * @param operation тип операции
+     * @param constraints ограничения (память, время)
+     * @return план выполнения batch операций
+     */
+    <T> ExecutionPlan createExecutionPlan(
+            List<T> sampleData,
+            int totalRecords,
+            BatchOperation operation,
+            Constraints constraints);
+
+    /**
+     * Записать измеренные метрики операции для обучения модели стоимости.
+     *
+     * @param operation тип операции
+     * @param metrics метрики выполненных batch
+     */
+    void recordMetrics(BatchOperation operation, List<BatchMetrics> metrics);
+
     /**
      * Анализировать производительность и предложить улучшения.
      *
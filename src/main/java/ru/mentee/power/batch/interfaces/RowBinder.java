@@ -0,0 +1,73 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.interfaces;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import ru.mentee.power.batch.model.BatchOperation;
+import ru.mentee.power.batch.model.MappedColumn;
+
+/**
+ * Связывание сущности с таблицей для batch процессоров: SQL операций и привязка
+ * параметров одной записи. Позволяет использовать batch и COPY пути для любой таблицы,
+ * а не только для products.
+ * Binder принимают {@link ru.mentee.power.batch.impl.MappedBatchProcessor},
+ * {@link ru.mentee.power.batch.impl.ResilientBatchProcessor} и COPY
+ * {@link ru.mentee.power.batch.impl.PostgresCopyProcessor}; остальные процессоры
+ * (Basic, Optimized, Adaptive, Parallel, Pipelined) работают только с products.
+ * Быстрые пути - unnest Optimized, Parallel, Pipelined и COPY в products и staging -
+ * отклоняют записи других типов с IllegalArgumentException до начала загрузки.
+ *
+ * @param <T> тип сущности
+ */
+public interface RowBinder<T> {
+    /**
+     * @return тип сущности; записи других типов процессоры пропускают
+     */
+    Class<T> getEntityType();
+
+    /**
+     * @return имя таблицы со схемой
+     */
+    String getTable();
+
+    /**
+     * @return связанные колонки в порядке INSERT и COPY
+     */
+    List<MappedColumn> getColumns();
+
+    /**
+     * Значение колонки записи.
+     *
+     * @param column индекс в {@link #getColumns()}
+     */
+    Object getValue(T record, int column);
+
+    /**
+     * @return false, если операция невозможна для таблицы: UPDATE и DELETE требуют
+     *     первичного ключа из одной колонки, upsert - ключа конфликта
+     */
+    boolean supports(BatchOperation operation);
+
+    /**
+     * @return тип первичного ключа, то есть записей DELETE; null, если ключа нет
+     */
+    Class<?> getKeyType();
+
+    /**
+     * SQL операции с позиционными параметрами.
+     *
+     * @throws UnsupportedOperationException если {@link #supports(BatchOperation)} - false
+     */
+    String sqlFor(BatchOperation operation);
+
+    /**
+     * Привязать запись к statement из {@link #sqlFor(BatchOperation)}.
+     * Для DELETE запись - значение первичного ключа, для остальных операций - сущность.
+     *
+     * @return false, если запись не подходит для операции и не была привязана
+     * @throws SQLException при ошибках привязки
+     */
+    boolean bind(PreparedStatement ps, Object record, BatchOperation operation)
+            throws SQLException;
+}
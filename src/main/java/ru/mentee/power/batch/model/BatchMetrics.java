@@ -10,4 +10,21 @@ public class BatchMetrics {
     private int batchSize;
     private long executionTimeNanos;
     private double throughput;
+    @Builder.Default private ExecutionStrategy strategy = ExecutionStrategy.SEQUENTIAL;
+    // Число параллельных воркеров (отправителей конвейера), давших эту метрику
+    private int parallelism;
+
+    // Состояние контроллера размера batch после этого batch (история сходимости)
+    private double smoothedThroughput;
+    private BatchSizeAdjustment sizeAdjustment;
+    private int nextBatchSize;
+    private int learnedBatchSize;
+
+    // Метрики стадий конвейера загрузки (кодирование -> отправка)
+    private long encodeBusyNanos;
+    private long encodeWaitNanos;
+    private long sendBusyNanos;
+    private long sendWaitNanos;
+    private double encoderUtilization;
+    private double senderUtilization;
 }
@@ -1,6 +1,8 @@
 /* @MENTEE_POWER (C)2025 */
 package ru.mentee.power.batch.model;
 
+import java.util.EnumSet;
+import java.util.Set;
 import lombok.Builder;
 import lombok.Data;
 
@@ -12,6 +14,17 @@ public class BatchResult {
     private int failedRecords;
     private long executionTimeMs;
     private double recordsPerSecond;
+    // Записи, пропущенные при возобновлении загрузки: уже закоммичены предыдущим запуском
+    private int skippedRecords;
+    // Разбивка успешных записей delta upsert: вставлены, обновлены, совпали с данными в БД
+    private int insertedRecords;
+    private int updatedRecords;
+    private int unchangedRecords;
+    // Успешные записи, схлопнутые с дубликатом ключа в том же batch: применены через него
+    private int collapsedRecords;
+    // Гарантии надежности, ослабленные режимом быстрой загрузки
+    @Builder.Default
+    private Set<RelaxedGuarantee> relaxedGuarantees = EnumSet.noneOf(RelaxedGuarantee.class);
 
     public static BatchResult empty() {
         return BatchResult.builder()
@@ -34,10 +47,19 @@ public class BatchResult {
     }
 
     public BatchResult merge(BatchResult other) {
+        Set<RelaxedGuarantee> relaxed = EnumSet.noneOf(RelaxedGuarantee.class);
+        relaxed.addAll(this.relaxedGuarantees);
+        relaxed.addAll(other.relaxedGuarantees);
         return BatchResult.builder()
                 .totalRecords(this.totalRecords + other.totalRecords)
                 .successfulRecords(this.successfulRecords + other.successfulRecords)
                 .failedRecords(this.failedRecords + other.failedRecords)
+                .skippedRecords(this.skippedRecords + other.skippedRecords)
+                .insertedRecords(this.insertedRecords + other.insertedRecords)
+                .updatedRecords(this.updatedRecords + other.updatedRecords)
+                .unchangedRecords(this.unchangedRecords + other.unchangedRecords)
+                .collapsedRecords(this.collapsedRecords + other.collapsedRecords)
+                .relaxedGuarantees(relaxed)
                 .executionTimeMs(this.executionTimeMs + other.executionTimeMs)
                 .recordsPerSecond(
                         (this.totalRecords + other.totalRecords) > 0
@@ -0,0 +1,16 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+/**
+ * Решение контроллера размера batch после очередного batch.
+ */
+public enum BatchSizeAdjustment {
+    /** Аддитивное увеличение: сглаженный throughput не ухудшился. */
+    INCREASE,
+    /** Аддитивное уменьшение: после предыдущего шага throughput упал, идем обратно. */
+    DECREASE,
+    /** Мультипликативное уменьшение: batch превысил потолок latency. */
+    LATENCY_BACKOFF,
+    /** Размер уперся в границу и не изменился. */
+    HOLD
+}
@@ -0,0 +1,22 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+/**
+ * Формат данных для PostgreSQL COPY FROM STDIN.
+ */
+public enum CopyFormat {
+    /** Текстовый CSV: простой для отладки, но требует форматирования и парсинга чисел. */
+    CSV("FORMAT csv, HEADER false, DELIMITER ','"),
+    /** Бинарный PGCOPY: значения передаются во внутреннем представлении PostgreSQL. */
+    BINARY("FORMAT binary");
+
+    private final String copyOptions;
+
+    CopyFormat(String copyOptions) {
+        this.copyOptions = copyOptions;
+    }
+
+    public String getCopyOptions() {
+        return copyOptions;
+    }
+}
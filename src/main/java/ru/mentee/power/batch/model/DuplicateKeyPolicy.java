@@ -0,0 +1,12 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+/**
+ * Правило схлопывания записей с одинаковым ключом конфликта (sku) внутри одного upsert batch.
+ */
+public enum DuplicateKeyPolicy {
+    /** Остается последняя запись с ключом. */
+    LAST_WINS,
+    /** Поля более поздней записи перекрывают ранние, null не затирает значение. */
+    MERGE
+}
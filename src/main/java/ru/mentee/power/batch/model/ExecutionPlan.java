@@ -11,4 +11,8 @@ public class ExecutionPlan {
     private int numberOfBatches;
     private long estimatedExecutionTimeMs;
     private int recommendedParallelism;
+    // Среднеквадратичная ошибка модели стоимости относительно времени batch, 0 без модели
+    private double estimatedErrorPercent;
+    private long estimatedRecordBytes;
+    private boolean withinTimeLimit;
 }
@@ -0,0 +1,15 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+/**
+ * Стратегия выполнения, давшая метрику. Метрики разных стратегий несравнимы: время
+ * одного batch и время конвейерного прогона описывают разные модели стоимости.
+ */
+public enum ExecutionStrategy {
+    /** Последовательные batch на одном соединении. */
+    SEQUENTIAL,
+    /** Чанки на нескольких воркерах со своими соединениями. */
+    PARALLEL,
+    /** Конвейер кодирование -> отправка COPY. */
+    PIPELINED
+}
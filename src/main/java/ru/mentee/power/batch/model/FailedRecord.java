@@ -9,6 +9,9 @@ import lombok.Data;
 public class FailedRecord {
     private int index;
     private Object data;
+    // SQLSTATE ошибки, например 23505 или 22P02; null, если запись отклонена без ошибки БД
+    private String sqlState;
+    // Числовой SQLSTATE или, если он содержит буквы, код ошибки драйвера
     private int errorCode;
     private String errorMessage;
 }
@@ -0,0 +1,12 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+/**
+ * Формат файла загрузки продуктов.
+ */
+public enum FileFormat {
+    /** CSV в порядке колонок COPY: sku,name,description,price,category_id. */
+    CSV,
+    /** NDJSON: один плоский JSON-объект продукта на строку. */
+    NDJSON
+}
@@ -0,0 +1,57 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Параметры загрузки задания. По умолчанию полная надежность, каждое ослабление
+ * включается явно и только для данных, которые можно пересоздать из источника.
+ */
+@Data
+@Builder
+public class IngestOptions {
+    // Выключение делает SET LOCAL synchronous_commit = off в каждой транзакции загрузки
+    @Builder.Default private boolean synchronousCommit = true;
+    // Грузить в UNLOGGED таблицу и перевести ее в LOGGED в конце (только для rebuild)
+    private boolean unloggedLoad;
+    // Оставить итоговую таблицу UNLOGGED, например для промежуточных витрин
+    private boolean keepUnlogged;
+    @Builder.Default private int commitChunkSize = 1000;
+    @Builder.Default private CopyFormat format = CopyFormat.BINARY;
+
+    /**
+     * Полная надежность, коммит на каждые 1000 строк, как у batch процессоров.
+     */
+    public static IngestOptions durable() {
+        return IngestOptions.builder().build();
+    }
+
+    /**
+     * Быстрая загрузка пересоздаваемых данных: асинхронный коммит, UNLOGGED таблица загрузки
+     * и один коммит на 50 000 строк.
+     */
+    public static IngestOptions relaxed() {
+        return IngestOptions.builder()
+                .synchronousCommit(false)
+                .unloggedLoad(true)
+                .commitChunkSize(50_000)
+                .build();
+    }
+
+    public Set<RelaxedGuarantee> relaxedGuarantees() {
+        Set<RelaxedGuarantee> relaxed = EnumSet.noneOf(RelaxedGuarantee.class);
+        if (!synchronousCommit) {
+            relaxed.add(RelaxedGuarantee.ASYNCHRONOUS_COMMIT);
+        }
+        if (unloggedLoad || keepUnlogged) {
+            relaxed.add(RelaxedGuarantee.UNLOGGED_LOAD);
+        }
+        if (keepUnlogged) {
+            relaxed.add(RelaxedGuarantee.UNLOGGED_TABLE);
+        }
+        return relaxed;
+    }
+}
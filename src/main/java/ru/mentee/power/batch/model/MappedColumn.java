@@ -0,0 +1,24 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Колонка таблицы, связанная со свойством сущности, по метаданным JDBC.
+ */
+@Data
+@Builder
+public class MappedColumn {
+    private String name;
+    private String property;
+    /** Тип из {@link java.sql.Types}. */
+    private int sqlType;
+    /** Выражение DEFAULT колонки или null. */
+    private String defaultExpression;
+    private boolean primaryKey;
+
+    public boolean hasDefault() {
+        return defaultExpression != null;
+    }
+}
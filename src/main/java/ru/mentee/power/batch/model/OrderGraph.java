@@ -0,0 +1,23 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.mentee.power.model.Order;
+import ru.mentee.power.model.OrderItem;
+
+/**
+ * Заказ вместе с позициями для пакетной загрузки.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderGraph {
+    private Order order;
+    @Builder.Default private List<OrderItem> items = new ArrayList<>();
+}
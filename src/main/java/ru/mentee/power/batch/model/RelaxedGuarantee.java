@@ -0,0 +1,17 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.batch.model;
+
+/**
+ * Гарантия надежности, ослабленная режимом быстрой загрузки.
+ */
+public enum RelaxedGuarantee {
+    /**
+     * synchronous_commit = off: коммит не ждет сброса WAL на диск. При сбое сервера теряются
+     * последние коммиты (до трех wal_writer_delay), но БД остается согласованной.
+     */
+    ASYNCHRONOUS_COMMIT,
+    /** Загрузка шла в UNLOGGED таблицу: при сбое во время загрузки таблица будет пустой. */
+    UNLOGGED_LOAD,
+    /** Итоговая таблица осталась UNLOGGED: не переживает сбой и не реплицируется. */
+    UNLOGGED_TABLE
+}
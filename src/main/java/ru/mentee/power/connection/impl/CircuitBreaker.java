@@ -0,0 +1,205 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.model.CircuitBreakerPolicy;
+import ru.mentee.power.connection.model.CircuitState;
+
+/**
+ * Автомат защиты узла без блокировок: состояние - неизменяемый объект в AtomicReference,
+ * переходы выполняются CAS, отказы и успехи считаются атомарными счетчиками
+ * в скользящем окне из корзин.
+ * CLOSED размыкается в OPEN, когда доля отказов в окне достигает порога. OPEN не пропускает
+ * запросы до истечения паузы, после чего ровно один запрос выполняется как проба
+ * (HALF_OPEN). Успешная проба замыкает автомат, неудачная снова размыкает его с вдвое
+ * большей паузой. Паузы получают случайный разброс 20%, чтобы пробы разных экземпляров
+ * не совпадали.
+ */
+@Slf4j
+final class CircuitBreaker {
+    private static final State CLOSED = new State(CircuitState.CLOSED, 0, 0);
+
+    private final String name;
+    private final CircuitBreakerPolicy policy;
+    private final LongSupplier nanoTime;
+    private final long bucketNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(CLOSED);
+    private final AtomicLongArray bucketEpochs;
+    private final AtomicLongArray successes;
+    private final AtomicLongArray failures;
+
+    CircuitBreaker(String name, CircuitBreakerPolicy policy) {
+        this(name, policy, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime источник монотонного времени; тесты подставляют управляемые часы
+     */
+    CircuitBreaker(String name, CircuitBreakerPolicy policy, LongSupplier nanoTime) {
+        this.name = name;
+        this.policy = policy;
+        this.nanoTime = nanoTime;
+        int buckets = policy.getWindowBuckets();
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(policy.getWindowMs());
+        this.bucketNanos = Math.max(1, windowNanos / buckets);
+        this.bucketEpochs = new AtomicLongArray(buckets);
+        this.successes = new AtomicLongArray(buckets);
+        this.failures = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; i++) {
+            bucketEpochs.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Разрешение на запрос к узлу. В OPEN после паузы разрешение получает один поток,
+     * и его запрос становится пробой; он обязан сообщить результат через
+     * {@link #onSuccess()} или {@link #onFailure()}.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            State current = state.get();
+            if (current.circuit == CircuitState.CLOSED) {
+                return true;
+            }
+            long now = nanoTime.getAsLong();
+            if (now - current.retryAtNanos < 0) {
+                return false;
+            }
+            // Пауза истекла или прошлая проба потеряна: этот поток выполняет пробу
+            State trial =
+                    new State(
+                            CircuitState.HALF_OPEN,
+                            now + TimeUnit.MILLISECONDS.toNanos(policy.getTrialTimeoutMs()),
+                            current.backoffNanos);
+            if (state.compareAndSet(current, trial)) {
+                log.debug("Узел {}: пробный запрос", name);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Можно ли сейчас направить запрос на узел. В отличие от {@link #tryAcquire()}
+     * не занимает пробу и подходит для выбора узла.
+     */
+    boolean isAvailable() {
+        State current = state.get();
+        return current.circuit == CircuitState.CLOSED
+                || nanoTime.getAsLong() - current.retryAtNanos >= 0;
+    }
+
+    void onSuccess() {
+        State current = state.get();
+        if (current.circuit == CircuitState.CLOSED) {
+            record(successes);
+        } else if (current.circuit == CircuitState.HALF_OPEN
+                && state.compareAndSet(current, CLOSED)) {
+            resetWindow();
+            log.info("Узел {} восстановлен", name);
+        }
+        // Успех в OPEN - запоздавший запрос, начатый до размыкания: не меняет состояние
+    }
+
+    void onFailure() {
+        State current = state.get();
+        if (current.circuit == CircuitState.CLOSED) {
+            record(failures);
+            if (failureRateExceeded()) {
+                trip(current, TimeUnit.MILLISECONDS.toNanos(policy.getInitialBackoffMs()));
+            }
+        } else if (current.circuit == CircuitState.HALF_OPEN) {
+            long maxBackoff = TimeUnit.MILLISECONDS.toNanos(policy.getMaxBackoffMs());
+            trip(current, Math.min(maxBackoff, current.backoffNanos * 2));
+        }
+    }
+
+    /**
+     * Исключить узел без накопления доли отказов, например по неудачным проверкам.
+     * Действует только в CLOSED: пробы и паузы уже исключенного узла не меняются.
+     */
+    void forceOpen() {
+        State current = state.get();
+        if (current.circuit == CircuitState.CLOSED) {
+            trip(current, TimeUnit.MILLISECONDS.toNanos(policy.getInitialBackoffMs()));
+        }
+    }
+
+    CircuitState getState() {
+        return state.get().circuit;
+    }
+
+    /**
+     * @return миллисекунд до следующей пробы, 0 - узел доступен
+     */
+    long getRetryDelayMillis() {
+        State current = state.get();
+        if (current.circuit == CircuitState.CLOSED) {
+            return 0;
+        }
+        long remaining = current.retryAtNanos - nanoTime.getAsLong();
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    private void trip(State current, long backoffNanos) {
+        double jitter = 0.8 + 0.4 * ThreadLocalRandom.current().nextDouble();
+        long delay = (long) (backoffNanos * jitter);
+        State open = new State(CircuitState.OPEN, nanoTime.getAsLong() + delay, backoffNanos);
+        // Неудачный CAS значит, что состояние уже сменил другой поток
+        if (state.compareAndSet(current, open)) {
+            log.warn(
+                    "Узел {} исключен после отказов, проба через {} мс",
+                    name,
+                    TimeUnit.NANOSECONDS.toMillis(delay));
+        }
+    }
+
+    private void record(AtomicLongArray counters) {
+        long epoch = Math.floorDiv(nanoTime.getAsLong(), bucketNanos);
+        int index = (int) Math.floorMod(epoch, (long) bucketEpochs.length());
+        long seen = bucketEpochs.get(index);
+        if (seen < epoch && bucketEpochs.compareAndSet(index, seen, epoch)) {
+            successes.set(index, 0);
+            failures.set(index, 0);
+        }
+        counters.incrementAndGet(index);
+    }
+
+    private boolean failureRateExceeded() {
+        long current = Math.floorDiv(nanoTime.getAsLong(), bucketNanos);
+        long calls = 0;
+        long failed = 0;
+        for (int i = 0; i < bucketEpochs.length(); i++) {
+            long epoch = bucketEpochs.get(i);
+            if (epoch != Long.MIN_VALUE && current - epoch < bucketEpochs.length()) {
+                calls += successes.get(i) + failures.get(i);
+                failed += failures.get(i);
+            }
+        }
+        return calls >= policy.getMinimumCalls()
+                && failed >= policy.getFailureRateThreshold() * calls;
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < bucketEpochs.length(); i++) {
+            bucketEpochs.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    private static final class State {
+        final CircuitState circuit;
+        // OPEN: когда разрешена проба; HALF_OPEN: когда проба считается потерянной
+        final long retryAtNanos;
+        final long backoffNanos;
+
+        State(CircuitState circuit, long retryAtNanos, long backoffNanos) {
+            this.circuit = circuit;
+            this.retryAtNanos = retryAtNanos;
+            this.backoffNanos = backoffNanos;
+        }
+    }
+}
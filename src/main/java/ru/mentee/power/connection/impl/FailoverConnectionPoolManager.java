@@ -7,39 +7,72 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+import ru.mentee.power.connection.model.CircuitBreakerPolicy;
+import ru.mentee.power.connection.model.CircuitState;
 import ru.mentee.power.connection.model.DatabaseNode;
 import ru.mentee.power.connection.model.HealthCheckResult;
+import ru.mentee.power.connection.model.LatencySnapshot;
+import ru.mentee.power.connection.model.NodeRole;
 import ru.mentee.power.connection.model.PoolStatistics;
+import ru.mentee.power.connection.model.ProbePolicy;
 
 /**
- * Пул с поддержкой failover на резервные серверы БД.
+ * Пул с поддержкой failover на резервные серверы БД и разделением чтения и записи:
+ * запись идет на PRIMARY узлы, чтение через {@link #getConnection(boolean)} - на реплики.
+ * Каждый узел защищен {@link CircuitBreaker}: узел исключается, когда доля отказов
+ * в скользящем окне достигает порога, и возвращается после успешной пробы. Узлы
+ * параллельно проверяет {@link NodeProber}.
  */
 @Slf4j
 public class FailoverConnectionPoolManager implements ConnectionPoolManager {
+    // Метрики событий каждого узла и всех узлов вместе
+    private final PoolMetricsCollector metricsCollector = new PoolMetricsCollector();
+    private final List<DatabaseNode> nodes;
     private final List<HikariDataSource> dataSources;
     private final AtomicInteger currentIndex = new AtomicInteger(0);
-    private final HealthChecker healthChecker;
-    private final List<Boolean> nodeHealthStatus;
+    private final AtomicInteger replicaCursor = new AtomicInteger(0);
+    private final NodeProber prober;
+    private final List<CircuitBreaker> breakers;
 
     public FailoverConnectionPoolManager(List<DatabaseNode> nodes) {
+        this(nodes, CircuitBreakerPolicy.builder().build());
+    }
+
+    /**
+     * @param breakerPolicy пороги и паузы автоматов защиты узлов
+     */
+    public FailoverConnectionPoolManager(
+            List<DatabaseNode> nodes, CircuitBreakerPolicy breakerPolicy) {
+        this(nodes, breakerPolicy, ProbePolicy.builder().build());
+    }
+
+    /**
+     * @param breakerPolicy пороги и паузы автоматов защиты узлов
+     * @param probePolicy интервалы и сроки фоновой проверки узлов
+     */
+    public FailoverConnectionPoolManager(
+            List<DatabaseNode> nodes,
+            CircuitBreakerPolicy breakerPolicy,
+            ProbePolicy probePolicy) {
+        this.nodes = nodes.stream().filter(DatabaseNode::isEnabled).collect(Collectors.toList());
         this.dataSources =
-                nodes.stream()
-                        .filter(DatabaseNode::isEnabled)
-                        .map(this::createDataSource)
+                this.nodes.stream().map(this::createDataSource).collect(Collectors.toList());
+        this.breakers =
+                this.nodes.stream()
+                        .map(node -> new CircuitBreaker(node.getNodeName(), breakerPolicy))
                         .collect(Collectors.toList());
-        this.nodeHealthStatus = new ArrayList<>(dataSources.size());
-        for (int i = 0; i < dataSources.size(); i++) {
-            nodeHealthStatus.add(true);
-        }
-        this.healthChecker = new HealthChecker(dataSources, nodeHealthStatus);
-        this.healthChecker.start();
-        log.info("Failover пул инициализирован с {} узлами", dataSources.size());
+        this.prober = new NodeProber(this.nodes, breakers, probePolicy);
+        this.prober.start();
+        log.info(
+                "Failover пул инициализирован с {} узлами, из них реплик: {}",
+                dataSources.size(),
+                this.nodes.stream().filter(node -> node.getRole() == NodeRole.REPLICA).count());
     }
 
     private HikariDataSource createDataSource(DatabaseNode node) {
@@ -60,6 +93,7 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
         hikariConfig.setConnectionTestQuery("SELECT 1");
         hikariConfig.setValidationTimeout(5000);
         hikariConfig.setLeakDetectionThreshold(120000);
+        hikariConfig.setMetricsTrackerFactory(metricsCollector);
 
         hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
@@ -71,49 +105,173 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
 
     @Override
     public Connection getConnection() throws SQLException {
-        int attempts = 0;
+        return getConnection(false);
+    }
+
+    /**
+     * Запись идет на PRIMARY узлы: на текущий, а при его отказе - на следующий по списку.
+     * Чтение идет на реплику с наименьшим числом выданных и ожидающих соединений,
+     * взвешенным средним временем использования соединения на узле. Без доступных реплик
+     * чтение выполняется на PRIMARY. Соединения для чтения помечаются read-only.
+     */
+    @Override
+    public Connection getConnection(boolean readOnly) throws SQLException {
+        if (readOnly) {
+            Connection connection = getReplicaConnection();
+            if (connection == null) {
+                log.debug("Нет доступных реплик, чтение выполняется на основном узле");
+                connection = getPrimaryConnection();
+            }
+            return markReadOnly(connection);
+        }
+        return getPrimaryConnection();
+    }
+
+    private Connection getPrimaryConnection() throws SQLException {
         SQLException lastException = null;
+        int busyIndex = -1;
         int startIndex = currentIndex.get();
 
-        while (attempts < dataSources.size()) {
+        for (int attempts = 0; attempts < dataSources.size(); attempts++) {
             int index = (startIndex + attempts) % dataSources.size();
 
-            // Пропускаем нездоровые узлы
-            if (!nodeHealthStatus.get(index)) {
-                attempts++;
+            // Пропускаем реплики и исключенные узлы
+            if (nodes.get(index).getRole() != NodeRole.PRIMARY
+                    || !breakers.get(index).isAvailable()) {
                 continue;
             }
 
             HikariDataSource ds = dataSources.get(index);
+            var poolMXBean = ds.getHikariPoolMXBean();
+            if (poolMXBean == null
+                    || poolMXBean.getActiveConnections() >= ds.getMaximumPoolSize() * 0.8) {
+                if (busyIndex < 0) {
+                    busyIndex = index;
+                }
+                continue;
+            }
             try {
-                var poolMXBean = ds.getHikariPoolMXBean();
-                if (poolMXBean != null
-                        && poolMXBean.getActiveConnections() < ds.getMaximumPoolSize() * 0.8) {
-                    Connection connection = ds.getConnection();
+                Connection connection = borrow(index);
+                if (connection != null) {
                     currentIndex.set(index);
                     return connection;
                 }
             } catch (SQLException e) {
                 lastException = e;
-                log.warn("Не удалось получить соединение от узла {}: {}", index, e.getMessage());
-                nodeHealthStatus.set(index, false);
             }
+        }
 
-            attempts++;
+        // Все основные узлы заняты: ждем соединение в очереди первого из них
+        if (busyIndex >= 0) {
+            try {
+                Connection connection = borrow(busyIndex);
+                if (connection != null) {
+                    currentIndex.set(busyIndex);
+                    return connection;
+                }
+            } catch (SQLException e) {
+                lastException = e;
+            }
         }
 
         throw new SQLException("Не удалось получить соединение ни от одного узла", lastException);
     }
 
+    /**
+     * Соединение с наименее нагруженной доступной реплики; при отказе реплики пробуется
+     * следующая по нагрузке.
+     *
+     * @return соединение или null, если ни одна реплика не выдала соединение
+     */
+    private Connection getReplicaConnection() {
+        int count = dataSources.size();
+        // Равные по нагрузке реплики выбираются по кругу
+        int start = Math.floorMod(replicaCursor.getAndIncrement(), count);
+        boolean[] tried = new boolean[count];
+
+        while (true) {
+            int best = -1;
+            double bestScore = Double.MAX_VALUE;
+            for (int offset = 0; offset < count; offset++) {
+                int index = (start + offset) % count;
+                if (tried[index]
+                        || nodes.get(index).getRole() != NodeRole.REPLICA
+                        || !breakers.get(index).isAvailable()) {
+                    continue;
+                }
+                double score = replicaScore(index);
+                if (score < bestScore) {
+                    best = index;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            tried[best] = true;
+            try {
+                Connection connection = borrow(best);
+                if (connection != null) {
+                    return connection;
+                }
+            } catch (SQLException e) {
+                // Отказ учтен автоматом узла, пробуем следующую реплику
+            }
+        }
+    }
+
+    /**
+     * Нагрузка реплики: выданные и ожидающие соединения вместе с новым запросом, умноженные
+     * на среднее время использования соединения узла в мс, но не меньше 1 мс. Реплика,
+     * которая отвечает вдвое медленнее, получает примерно вдвое меньше запросов.
+     */
+    private double replicaScore(int index) {
+        var poolMXBean = dataSources.get(index).getHikariPoolMXBean();
+        int outstanding =
+                poolMXBean != null
+                        ? poolMXBean.getActiveConnections()
+                                + poolMXBean.getThreadsAwaitingConnection()
+                        : 0;
+        double latencyMs = getNodeMetrics(index).getAverageUsageMicros() / 1000.0;
+        return (outstanding + 1) * Math.max(1.0, latencyMs);
+    }
+
+    /**
+     * Соединение от узла с учетом результата в его автомате защиты.
+     *
+     * @return соединение или null, если автомат не пропустил запрос: пробу уже выполняет
+     *     другой поток
+     */
+    private Connection borrow(int index) throws SQLException {
+        CircuitBreaker breaker = breakers.get(index);
+        if (!breaker.tryAcquire()) {
+            return null;
+        }
+        try {
+            Connection connection = dataSources.get(index).getConnection();
+            breaker.onSuccess();
+            return connection;
+        } catch (SQLException e) {
+            log.warn("Не удалось получить соединение от узла {}: {}", index, e.getMessage());
+            breaker.onFailure();
+            throw e;
+        }
+    }
+
+    private static Connection markReadOnly(Connection connection) throws SQLException {
+        try {
+            connection.setReadOnly(true);
+            return connection;
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
     @Override
     public void shutdown() {
         log.info("Закрытие failover пула соединений...");
-        healthChecker.interrupt();
-        try {
-            healthChecker.join(5000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        prober.close();
         for (HikariDataSource ds : dataSources) {
             if (ds != null && !ds.isClosed()) {
                 ds.close();
@@ -159,15 +317,17 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
 
         for (int i = 0; i < dataSources.size(); i++) {
             HikariDataSource ds = dataSources.get(i);
-            boolean isHealthy = nodeHealthStatus.get(i);
+            CircuitBreaker breaker = breakers.get(i);
 
-            if (isHealthy) {
+            // Проверка не занимает пробу исключенного узла: ее выполняют NodeProber и borrow
+            if (breaker.getState() == CircuitState.CLOSED) {
                 try (Connection conn = ds.getConnection();
                         Statement stmt = conn.createStatement()) {
                     stmt.execute("SELECT 1");
+                    breaker.onSuccess();
                     healthyNodes++;
                 } catch (SQLException e) {
-                    nodeHealthStatus.set(i, false);
+                    breaker.onFailure();
                     message.append("Узел ")
                             .append(i)
                             .append(" недоступен: ")
@@ -175,7 +335,13 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
                             .append(". ");
                 }
             } else {
-                message.append("Узел ").append(i).append(" помечен как нездоровый. ");
+                message.append("Узел ")
+                        .append(i)
+                        .append(" исключен (")
+                        .append(breaker.getState())
+                        .append("), повтор через ")
+                        .append(breaker.getRetryDelayMillis())
+                        .append(" мс. ");
             }
         }
 
@@ -185,6 +351,9 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
         }
 
         PoolStatistics stats = getStatistics();
+        PoolMetrics metrics = metricsCollector.getTotal();
+        LatencySnapshot acquisition = metrics.getAcquisitionLatency();
+        LatencySnapshot usage = metrics.getUsageLatency();
 
         return HealthCheckResult.builder()
                 .healthy(overallHealthy)
@@ -195,11 +364,42 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
                 .checkTime(Instant.now())
                 .activeConnections(stats.getActiveConnections())
                 .idleConnections(stats.getIdleConnections())
-                .averageConnectionAcquisitionTime(0)
-                .averageConnectionUsageTime(0)
+                .averageConnectionAcquisitionTime(
+                        TimeUnit.MICROSECONDS.toMillis(acquisition.getMeanMicros()))
+                .averageConnectionUsageTime(TimeUnit.MICROSECONDS.toMillis(usage.getMeanMicros()))
+                .acquisitionLatency(acquisition)
+                .usageLatency(usage)
+                .creationLatency(metrics.getCreationLatency())
                 .build();
     }
 
+    /**
+     * Состояние автомата защиты узла.
+     *
+     * @param index номер узла среди включенных
+     */
+    public CircuitState getNodeState(int index) {
+        return breakers.get(index).getState();
+    }
+
+    /**
+     * Время фоновых проверок узла за последнюю минуту.
+     *
+     * @param index номер узла среди включенных
+     */
+    public LatencySnapshot getNodeProbeLatency(int index) {
+        return prober.getLatency(index);
+    }
+
+    /**
+     * Метрики событий узла за скользящее окно.
+     *
+     * @param index номер узла среди включенных
+     */
+    public PoolMetrics getNodeMetrics(int index) {
+        return metricsCollector.getPoolMetrics(dataSources.get(index).getPoolName());
+    }
+
     @Override
     public void refreshPool() {
         log.info("Обновление failover пула соединений...");
@@ -220,50 +420,4 @@ public class FailoverConnectionPoolManager implements ConnectionPoolManager {
         }
         log.info("Размер failover пула изменен");
     }
-
-    /**
-     * Health checker для автоматического исключения проблемных узлов.
-     */
-    private static class HealthChecker extends Thread {
-        private final List<HikariDataSource> dataSources;
-        private final List<Boolean> nodeHealthStatus;
-
-        public HealthChecker(List<HikariDataSource> dataSources, List<Boolean> nodeHealthStatus) {
-            this.dataSources = dataSources;
-            this.nodeHealthStatus = nodeHealthStatus;
-            setDaemon(true);
-            setName("FailoverHealthChecker");
-        }
-
-        @Override
-        public void run() {
-            while (!isInterrupted()) {
-                try {
-                    Thread.sleep(30000); // Проверка каждые 30 секунд
-                    for (int i = 0; i < dataSources.size(); i++) {
-                        checkHealth(dataSources.get(i), i);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
-
-        private void checkHealth(HikariDataSource ds, int index) {
-            try (Connection conn = ds.getConnection();
-                    Statement stmt = conn.createStatement()) {
-                stmt.execute("SELECT 1");
-                if (!nodeHealthStatus.get(index)) {
-                    log.info("Узел {} восстановлен", index);
-                    nodeHealthStatus.set(index, true);
-                }
-            } catch (SQLException e) {
-                if (nodeHealthStatus.get(index)) {
-                    log.error("Узел {} недоступен: {}", index, e.getMessage());
-                    nodeHealthStatus.set(index, false);
-                }
-            }
-        }
-    }
 }
@@ -6,10 +6,13 @@ import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import ru.mentee.power.config.ApplicationConfig;
 import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+import ru.mentee.power.connection.model.AutoSizingPolicy;
 import ru.mentee.power.connection.model.HealthCheckResult;
+import ru.mentee.power.connection.model.LatencySnapshot;
 import ru.mentee.power.connection.model.PoolConfiguration;
 import ru.mentee.power.connection.model.PoolStatistics;
 
@@ -18,12 +21,17 @@ import ru.mentee.power.connection.model.PoolStatistics;
  */
 @Slf4j
 public class HikariConnectionPoolManager implements ConnectionPoolManager {
+    // p99 ожидания соединения выше этого значения считается деградацией пула
+    private static final long SLOW_ACQUISITION_MICROS = TimeUnit.SECONDS.toMicros(1);
+
+    private final PoolMetricsCollector metricsCollector = new PoolMetricsCollector();
     private final HikariDataSource dataSource;
     private final PoolMetrics metrics;
+    private PoolAutoSizer autoSizer;
 
     public HikariConnectionPoolManager(ApplicationConfig config) {
         this.dataSource = createDataSource(config);
-        this.metrics = new PoolMetrics(dataSource);
+        this.metrics = metricsCollector.getPoolMetrics(dataSource.getPoolName());
         log.info(
                 "HikariCP инициализирован с максимумом {} соединений",
                 dataSource.getMaximumPoolSize());
@@ -31,7 +39,7 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
 
     public HikariConnectionPoolManager(ApplicationConfig config, PoolConfiguration poolConfig) {
         this.dataSource = createDataSource(config, poolConfig);
-        this.metrics = new PoolMetrics(dataSource);
+        this.metrics = metricsCollector.getPoolMetrics(dataSource.getPoolName());
         log.info(
                 "HikariCP инициализирован с максимумом {} соединений",
                 dataSource.getMaximumPoolSize());
@@ -62,6 +70,9 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
         // Обнаружение утечек соединений
         hikariConfig.setLeakDetectionThreshold(120000); // 2 минуты
 
+        // Гистограммы времени получения, использования и создания соединений
+        hikariConfig.setMetricsTrackerFactory(metricsCollector);
+
         // Оптимизация для PostgreSQL
         hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
@@ -105,6 +116,9 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
         // Обнаружение утечек соединений
         hikariConfig.setLeakDetectionThreshold(poolConfig.getLeakDetectionThreshold());
 
+        // Гистограммы времени получения, использования и создания соединений
+        hikariConfig.setMetricsTrackerFactory(metricsCollector);
+
         // Оптимизация для PostgreSQL
         hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
@@ -130,9 +144,30 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
         }
     }
 
+    /**
+     * Включить автоматическое изменение размера пула по метрикам событий.
+     * Повторный вызов заменяет прежнюю политику.
+     *
+     * @return запущенный контур размера пула
+     */
+    public synchronized PoolAutoSizer enableAutoSizing(AutoSizingPolicy policy) {
+        if (autoSizer != null) {
+            autoSizer.close();
+        }
+        autoSizer = new PoolAutoSizer(this, metrics, dataSource.getMaximumPoolSize(), policy);
+        autoSizer.start();
+        return autoSizer;
+    }
+
     @Override
     public void shutdown() {
         log.info("Закрытие пула соединений...");
+        synchronized (this) {
+            if (autoSizer != null) {
+                autoSizer.close();
+                autoSizer = null;
+            }
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
             log.info("Пул соединений закрыт");
@@ -166,8 +201,8 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
     public HealthCheckResult performHealthCheck() {
         try {
             PoolStatistics stats = getStatistics();
-            long avgAcquisition = metrics.getAverageConnectionAcquisitionTime();
-            long avgUsage = metrics.getAverageConnectionUsageTime();
+            LatencySnapshot acquisition = metrics.getAcquisitionLatency();
+            LatencySnapshot usage = metrics.getUsageLatency();
 
             // Проверяем здоровье пула
             boolean healthy = true;
@@ -189,6 +224,13 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
                         .append(". ");
             }
 
+            if (acquisition.getP99Micros() > SLOW_ACQUISITION_MICROS) {
+                healthy = false;
+                message.append("Медленное получение соединения, p99: ")
+                        .append(TimeUnit.MICROSECONDS.toMillis(acquisition.getP99Micros()))
+                        .append("ms. ");
+            }
+
             // Проверяем соединение
             try (Connection conn = dataSource.getConnection();
                     var stmt = conn.createStatement()) {
@@ -210,8 +252,13 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
                     .checkTime(Instant.now())
                     .activeConnections(stats.getActiveConnections())
                     .idleConnections(stats.getIdleConnections())
-                    .averageConnectionAcquisitionTime(avgAcquisition)
-                    .averageConnectionUsageTime(avgUsage)
+                    .averageConnectionAcquisitionTime(
+                            TimeUnit.MICROSECONDS.toMillis(acquisition.getMeanMicros()))
+                    .averageConnectionUsageTime(
+                            TimeUnit.MICROSECONDS.toMillis(usage.getMeanMicros()))
+                    .acquisitionLatency(acquisition)
+                    .usageLatency(usage)
+                    .creationLatency(metrics.getCreationLatency())
                     .build();
         } catch (Exception e) {
             log.error("Ошибка при проверке здоровья пула", e);
@@ -227,6 +274,13 @@ public class HikariConnectionPoolManager implements ConnectionPoolManager {
         }
     }
 
+    /**
+     * Метрики событий пула за скользящее окно.
+     */
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void refreshPool() {
         log.info("Обновление пула соединений...");
@@ -0,0 +1,168 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import ru.mentee.power.connection.model.LatencySnapshot;
+
+/**
+ * Гистограмма задержек в микросекундах со скользящим окном, без блокировок.
+ * Корзины устроены как в HdrHistogram: значения до 128 хранятся точно, дальше каждый
+ * интервал [2^k, 2^(k+1)) делится на 64 равные корзины, поэтому относительная погрешность
+ * перцентилей не больше 1,6%, а массив счетчиков фиксирован. Окно состоит из нескольких
+ * интервалов; интервал, из которого окно ушло, обнуляется первым записывающим потоком.
+ * Запись - несколько атомарных инкрементов; значения, записанные одновременно с обнулением
+ * интервала, могут потеряться.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    // Около 25 дней: больше не бывает ни ожидания, ни использования соединения
+    private static final long MAX_VALUE = (1L << 41) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final Interval[] intervals;
+    private final long intervalNanos;
+
+    /**
+     * @param window длина скользящего окна
+     * @param intervals на сколько интервалов делится окно
+     */
+    LatencyHistogram(long window, TimeUnit unit, int intervals) {
+        this.intervals = new Interval[intervals];
+        for (int i = 0; i < intervals; i++) {
+            this.intervals[i] = new Interval();
+        }
+        this.intervalNanos = Math.max(1, unit.toNanos(window) / intervals);
+        // Текущий интервал занят сразу: первые записи не гонятся с его обнулением
+        long epoch = Math.floorDiv(System.nanoTime(), intervalNanos);
+        this.intervals[(int) Math.floorMod(epoch, (long) intervals)].epoch.set(epoch);
+    }
+
+    void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        long epoch = Math.floorDiv(System.nanoTime(), intervalNanos);
+        Interval interval = intervals[(int) Math.floorMod(epoch, (long) intervals.length)];
+        long seen = interval.epoch.get();
+        if (seen < epoch && interval.epoch.compareAndSet(seen, epoch)) {
+            interval.reset();
+        }
+        interval.counts.incrementAndGet(bucketIndex(value));
+        interval.count.incrementAndGet();
+        interval.sum.addAndGet(value);
+        if (value > interval.max.get()) {
+            interval.max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Среднее за окно без построения распределения: дешево для горячего пути.
+     */
+    long mean() {
+        long current = Math.floorDiv(System.nanoTime(), intervalNanos);
+        long count = 0;
+        long sum = 0;
+        for (Interval interval : intervals) {
+            long epoch = interval.epoch.get();
+            if (epoch != Long.MIN_VALUE && current - epoch < intervals.length) {
+                count += interval.count.get();
+                sum += interval.sum.get();
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    LatencySnapshot snapshot() {
+        return snapshot(List.of(this));
+    }
+
+    /**
+     * Объединенный снимок окон нескольких гистограмм, например всех узлов пула.
+     */
+    static LatencySnapshot snapshot(Collection<LatencyHistogram> histograms) {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (LatencyHistogram histogram : histograms) {
+            long current = Math.floorDiv(System.nanoTime(), histogram.intervalNanos);
+            for (Interval interval : histogram.intervals) {
+                long epoch = interval.epoch.get();
+                if (epoch == Long.MIN_VALUE || current - epoch >= histogram.intervals.length) {
+                    continue;
+                }
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    counts[i] += interval.counts.get(i);
+                }
+                count += interval.count.get();
+                sum += interval.sum.get();
+                max = Math.max(max, interval.max.get());
+            }
+        }
+        if (count == 0) {
+            return LatencySnapshot.empty();
+        }
+        return LatencySnapshot.builder()
+                .count(count)
+                .meanMicros(sum / count)
+                .p50Micros(percentile(counts, count, max, 0.5))
+                .p99Micros(percentile(counts, count, max, 0.99))
+                .p999Micros(percentile(counts, count, max, 0.999))
+                .maxMicros(max)
+                .build();
+    }
+
+    /**
+     * Верхняя граница корзины, в которую попадает перцентиль, но не больше максимума.
+     */
+    private static long percentile(long[] counts, long count, long max, double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static class Interval {
+        // Номер интервала с начала отсчета nanoTime; Long.MIN_VALUE - интервал еще не писался
+        final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.model.CircuitState;
+import ru.mentee.power.connection.model.DatabaseNode;
+import ru.mentee.power.connection.model.LatencySnapshot;
+import ru.mentee.power.connection.model.ProbePolicy;
+
+/**
+ * Фоновая проверка узлов failover пула. Каждый узел проверяется в своем виртуальном потоке
+ * независимо от остальных, поэтому зависший узел не задерживает проверку других.
+ * Проверка - SELECT 1 через отдельное соединение вне пула: она не занимает соединения
+ * приложения и не видит ошибок пула. Проверка, не уложившаяся в timeoutMs, считается
+ * неудачной, а ее соединение закрывается и открывается заново следующей проверкой.
+ * Таймауты подключения и сокета драйвера выводятся из timeoutMs, поэтому отмененная
+ * проверка не оставляет висящий поток; пока предыдущее подключение не завершилось,
+ * новое не начинается, и проверка считается неудачной.
+ * После неудачной проверки интервал сокращается до suspectIntervalMs; failuresToOpen
+ * неудач подряд исключают узел через его {@link CircuitBreaker}. Исключенный узел
+ * проверяется только пробой, которую разрешает автомат. Время успешных проверок
+ * публикуется по узлам.
+ */
+@Slf4j
+final class NodeProber implements AutoCloseable {
+    private final ProbePolicy policy;
+    private final List<Probe> probes;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    NodeProber(List<DatabaseNode> nodes, List<CircuitBreaker> breakers, ProbePolicy policy) {
+        this.policy = policy;
+        this.probes = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            DatabaseNode node = nodes.get(i);
+            probes.add(new Probe(node, breakers.get(i), connectProperties(node, policy)));
+        }
+    }
+
+    void start() {
+        for (Probe probe : probes) {
+            executor.execute(() -> run(probe));
+        }
+        log.info(
+                "Проверка {} узлов каждые {} мс, срок проверки {} мс",
+                probes.size(),
+                policy.getIntervalMs(),
+                policy.getTimeoutMs());
+    }
+
+    /**
+     * Время успешных проверок узла за последнюю минуту.
+     */
+    LatencySnapshot getLatency(int index) {
+        return probes.get(index).latency.snapshot();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Probe probe : probes) {
+            probe.disconnect();
+        }
+    }
+
+    private void run(Probe probe) {
+        int failures = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean suspect =
+                        failures > 0 || probe.breaker.getState() != CircuitState.CLOSED;
+                long intervalMs =
+                        suspect ? policy.getSuspectIntervalMs() : policy.getIntervalMs();
+                Thread.sleep(jittered(intervalMs));
+                failures = check(probe, failures);
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // Проверка остановлена при закрытии пула
+        }
+    }
+
+    /**
+     * @return число неудачных проверок узла подряд
+     */
+    private int check(Probe probe, int failures) throws InterruptedException {
+        CircuitBreaker breaker = probe.breaker;
+        boolean closed = breaker.getState() == CircuitState.CLOSED;
+        // Исключенный узел проверяется, только когда автомат разрешает пробу
+        if (!closed && !breaker.tryAcquire()) {
+            return failures;
+        }
+        boolean healthy = probe(probe);
+        if (!closed) {
+            if (healthy) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
+        } else if (!healthy && failures + 1 >= policy.getFailuresToOpen()) {
+            breaker.forceOpen();
+        }
+        return healthy ? 0 : failures + 1;
+    }
+
+    private boolean probe(Probe probe) throws InterruptedException {
+        long start = System.nanoTime();
+        Future<?> result =
+                executor.submit(
+                        () -> {
+                            probe.execute();
+                            return null;
+                        });
+        try {
+            result.get(policy.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            probe.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            return true;
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            probe.disconnect();
+            log.debug(
+                    "Узел {} не ответил на проверку за {} мс",
+                    probe.node.getNodeName(),
+                    policy.getTimeoutMs());
+            return false;
+        } catch (ExecutionException e) {
+            probe.disconnect();
+            log.debug(
+                    "Проверка узла {} неудачна: {}",
+                    probe.node.getNodeName(),
+                    e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Параметры подключения проверки: таймауты драйвера задаются в секундах,
+     * поэтому срок проверки округляется вверх до целой секунды.
+     */
+    private static Properties connectProperties(DatabaseNode node, ProbePolicy policy) {
+        String timeoutSeconds =
+                String.valueOf(Math.max(1, (policy.getTimeoutMs() + 999) / 1000));
+        Properties properties = new Properties();
+        properties.setProperty("user", node.getUsername());
+        properties.setProperty("password", node.getPassword());
+        properties.setProperty("connectTimeout", timeoutSeconds);
+        properties.setProperty("loginTimeout", timeoutSeconds);
+        properties.setProperty("socketTimeout", timeoutSeconds);
+        return properties;
+    }
+
+    private long jittered(long intervalMs) {
+        double jitter = policy.getJitter();
+        double factor = 1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.max(1, (long) (intervalMs * factor));
+    }
+
+    private static final class Probe {
+        final DatabaseNode node;
+        final CircuitBreaker breaker;
+        final LatencyHistogram latency = new LatencyHistogram(60, TimeUnit.SECONDS, 6);
+        private final Properties connectProperties;
+        private final AtomicBoolean connecting = new AtomicBoolean();
+        // Соединение проверки; null - открыть заново при следующей проверке
+        private volatile Connection connection;
+        // Растет при каждом disconnect; guarded by this
+        private long generation;
+
+        Probe(DatabaseNode node, CircuitBreaker breaker, Properties connectProperties) {
+            this.node = node;
+            this.breaker = breaker;
+            this.connectProperties = connectProperties;
+        }
+
+        void execute() throws SQLException {
+            Connection conn = connection;
+            if (conn == null) {
+                conn = connect();
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SELECT 1");
+            }
+        }
+
+        /**
+         * Открыть соединение проверки. Соединение сохраняется, только если за время
+         * подключения проверку не отменили: иначе запоздавшее подключение закрывается
+         * и не подменяет результат disconnect.
+         */
+        private Connection connect() throws SQLException {
+            if (!connecting.compareAndSet(false, true)) {
+                throw new SQLException("Предыдущее подключение к узлу еще не завершено");
+            }
+            try {
+                long started;
+                synchronized (this) {
+                    started = generation;
+                }
+                Connection conn = DriverManager.getConnection(node.getJdbcUrl(), connectProperties);
+                synchronized (this) {
+                    if (started == generation) {
+                        connection = conn;
+                        return conn;
+                    }
+                }
+                close(conn);
+                throw new SQLException("Проверка отменена во время подключения");
+            } finally {
+                connecting.set(false);
+            }
+        }
+
+        /**
+         * Закрыть соединение проверки в отдельном потоке: закрытие соединения
+         * с зависшим узлом само может зависнуть.
+         */
+        void disconnect() {
+            Connection conn;
+            synchronized (this) {
+                generation++;
+                conn = connection;
+                connection = null;
+            }
+            if (conn != null) {
+                Thread.startVirtualThread(() -> close(conn));
+            }
+        }
+
+        private static void close(Connection conn) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                log.debug("Ошибка закрытия соединения проверки: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+import ru.mentee.power.connection.model.AutoSizingPolicy;
+import ru.mentee.power.connection.model.LatencySnapshot;
+import ru.mentee.power.connection.model.PoolStatistics;
+import ru.mentee.power.connection.model.UsageMetrics;
+
+/**
+ * Замкнутый контур размера пула. Фоновый поток снимает статистику пула и по событиям
+ * {@link PoolMetrics} собирает {@link UsageMetrics} за окно, после чего выбирает размер.
+ * Цель - число соединений, одновременно нужных нагрузке, по закону Литтла:
+ * интенсивность выдачи соединений, умноженная на время использования плюс время ожидания
+ * в очереди пула, с запасом {@link AutoSizingPolicy#getHeadroom()}, но не меньше пика
+ * активных соединений за окно. Рост выполняется сразу после паузы growCooldownMs,
+ * уменьшение - только если цель ниже текущего размера на shrinkThreshold несколько окон
+ * подряд, после паузы shrinkCooldownMs и не больше чем вдвое за шаг.
+ */
+@Slf4j
+public class PoolAutoSizer implements AutoCloseable {
+    private final ConnectionPoolManager pool;
+    private final PoolMetrics metrics;
+    private final AutoSizingPolicy policy;
+    private final ScheduledExecutorService scheduler;
+
+    // Состояние окна и решений меняет только поток планировщика
+    private volatile int currentMaxSize;
+    private volatile UsageMetrics lastMetrics;
+    private Instant windowStart;
+    private long windowStartAcquired;
+    private long windowStartReturned;
+    private long windowStartTimeouts;
+    private int peakActive;
+    private int peakIdle;
+    private int lowWindows;
+    private long lastResizeMillis;
+
+    /**
+     * @param metrics метрики событий этого пула
+     * @param currentMaxSize текущий максимальный размер пула
+     */
+    public PoolAutoSizer(
+            ConnectionPoolManager pool,
+            PoolMetrics metrics,
+            int currentMaxSize,
+            AutoSizingPolicy policy) {
+        if (policy.getMinPoolSize() <= 0 || policy.getMinPoolSize() > policy.getMaxPoolSize()) {
+            throw new IllegalArgumentException(
+                    "Некорректные границы размера пула: "
+                            + policy.getMinPoolSize()
+                            + ".."
+                            + policy.getMaxPoolSize());
+        }
+        this.pool = pool;
+        this.metrics = metrics;
+        this.policy = policy;
+        this.currentMaxSize = currentMaxSize;
+        this.scheduler =
+                Executors.newSingleThreadScheduledExecutor(
+                        task -> {
+                            Thread thread =
+                                    new Thread(task, "PoolAutoSizer-" + metrics.getPoolName());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /**
+     * Запустить фоновый контур.
+     */
+    public void start() {
+        scheduler.execute(() -> openWindow(Instant.now()));
+        scheduler.scheduleAtFixedRate(
+                this::sample,
+                policy.getSampleIntervalMs(),
+                policy.getSampleIntervalMs(),
+                TimeUnit.MILLISECONDS);
+        log.info(
+                "Автоматический размер пула {}: {}..{}, окно {} мс",
+                metrics.getPoolName(),
+                policy.getMinPoolSize(),
+                policy.getMaxPoolSize(),
+                policy.getEvaluationIntervalMs());
+    }
+
+    /**
+     * @return максимальный размер пула, установленный последним решением
+     */
+    public int getCurrentMaxSize() {
+        return currentMaxSize;
+    }
+
+    /**
+     * @return метрики последнего завершенного окна или null, если окон еще не было
+     */
+    public UsageMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void sample() {
+        try {
+            PoolStatistics stats = pool.getStatistics();
+            peakActive = Math.max(peakActive, stats.getActiveConnections());
+            peakIdle = Math.max(peakIdle, stats.getIdleConnections());
+
+            Instant now = Instant.now();
+            if (Duration.between(windowStart, now).toMillis() < policy.getEvaluationIntervalMs()) {
+                return;
+            }
+            LatencySnapshot acquisition = metrics.getAcquisitionLatency();
+            LatencySnapshot usageLatency = metrics.getUsageLatency();
+            UsageMetrics usage = closeWindow(now, acquisition, usageLatency);
+            lastMetrics = usage;
+            openWindow(now);
+
+            double demand =
+                    demand(
+                            usage.getTotalConnectionsAcquired(),
+                            Duration.between(usage.getStartTime(), now),
+                            acquisition,
+                            usageLatency);
+            int size =
+                    nextSize(usage.getPeakActiveConnections(), demand, System.currentTimeMillis());
+            if (size != currentMaxSize) {
+                resize(size, usage, demand);
+            }
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу
+            log.warn("Ошибка автоматического изменения размера пула {}", metrics.getPoolName(), e);
+        }
+    }
+
+    /**
+     * Размер пула после окна с пиком активных соединений peakActive и спросом demand.
+     */
+    int nextSize(int peakActive, double demand, long nowMillis) {
+        int target = clamp(targetSize(peakActive, demand, policy.getHeadroom()));
+        if (target > currentMaxSize) {
+            lowWindows = 0;
+            return nowMillis - lastResizeMillis >= policy.getGrowCooldownMs()
+                    ? target
+                    : currentMaxSize;
+        }
+        if (target < currentMaxSize * (1 - policy.getShrinkThreshold())) {
+            lowWindows++;
+            if (lowWindows >= policy.getShrinkConfirmations()
+                    && nowMillis - lastResizeMillis >= policy.getShrinkCooldownMs()) {
+                return clamp(Math.max(target, currentMaxSize / 2));
+            }
+            return currentMaxSize;
+        }
+        lowWindows = 0;
+        return currentMaxSize;
+    }
+
+    /**
+     * Число соединений, нужных нагрузке окна, с запасом headroom.
+     */
+    static int targetSize(int peakActive, double demand, double headroom) {
+        return Math.max(peakActive, (int) Math.ceil(demand * headroom));
+    }
+
+    /**
+     * Закон Литтла: среднее число запросов в системе равно интенсивности поступления,
+     * умноженной на время пребывания. Запрос соединения пребывает в пуле время ожидания
+     * и время использования. Считается в микросекундах: при коротких запросах средние,
+     * округленные до миллисекунд, обнулили бы спрос.
+     *
+     * @param acquired соединений выдано за окно
+     */
+    static double demand(
+            long acquired, Duration window, LatencySnapshot acquisition, LatencySnapshot usage) {
+        long windowMicros = TimeUnit.NANOSECONDS.toMicros(window.toNanos());
+        if (windowMicros <= 0) {
+            return 0;
+        }
+        double arrivalsPerMicro = (double) acquired / windowMicros;
+        return arrivalsPerMicro * (usage.getMeanMicros() + acquisition.getMeanMicros());
+    }
+
+    private void resize(int size, UsageMetrics usage, double demand) {
+        // Среднее число занятых соединений держится открытым
+        int busy = (int) Math.ceil(demand);
+        int minIdle = Math.max(policy.getMinPoolSize(), Math.min(size, busy));
+        log.info(
+                "Размер пула {}: {} -> {} (minIdle {}), выдано за окно {}, пик активных {}",
+                metrics.getPoolName(),
+                currentMaxSize,
+                size,
+                minIdle,
+                usage.getTotalConnectionsAcquired(),
+                usage.getPeakActiveConnections());
+        pool.resizePool(minIdle, size);
+        currentMaxSize = size;
+        lastResizeMillis = System.currentTimeMillis();
+        lowWindows = 0;
+    }
+
+    private void openWindow(Instant now) {
+        windowStart = now;
+        windowStartAcquired = metrics.getConnectionsAcquired();
+        windowStartReturned = metrics.getConnectionsReturned();
+        windowStartTimeouts = metrics.getConnectionTimeouts();
+        peakActive = 0;
+        peakIdle = 0;
+    }
+
+    /**
+     * Метрики окна. Счетчики выдачи считаются ровно за окно, средние и максимумы
+     * времени - по скользящему окну {@link PoolMetrics}.
+     */
+    private UsageMetrics closeWindow(
+            Instant now, LatencySnapshot acquisition, LatencySnapshot usage) {
+        long acquired = metrics.getConnectionsAcquired() - windowStartAcquired;
+        long timeouts = metrics.getConnectionTimeouts() - windowStartTimeouts;
+        return UsageMetrics.builder()
+                .startTime(windowStart)
+                .endTime(now)
+                .totalConnectionsRequested(acquired + timeouts)
+                .totalConnectionsAcquired(acquired)
+                .totalConnectionsReturned(metrics.getConnectionsReturned() - windowStartReturned)
+                .averageAcquisitionTime(TimeUnit.MICROSECONDS.toMillis(acquisition.getMeanMicros()))
+                .averageUsageTime(TimeUnit.MICROSECONDS.toMillis(usage.getMeanMicros()))
+                .maxAcquisitionTime(TimeUnit.MICROSECONDS.toMillis(acquisition.getMaxMicros()))
+                .maxUsageTime(TimeUnit.MICROSECONDS.toMillis(usage.getMaxMicros()))
+                .peakActiveConnections(peakActive)
+                .peakIdleConnections(peakIdle)
+                // Отдельные замеры не хранятся: распределения дают гистограммы PoolMetrics
+                .acquisitionTimeSamples(List.of())
+                .usageTimeSamples(List.of())
+                .build();
+    }
+
+    private int clamp(int size) {
+        return Math.max(policy.getMinPoolSize(), Math.min(policy.getMaxPoolSize(), size));
+    }
+}
@@ -1,45 +1,120 @@
 /* @MENTEE_POWER (C)2025 */
 package ru.mentee.power.connection.impl;
 
-import com.zaxxer.hikari.HikariDataSource;
-import lombok.extern.slf4j.Slf4j;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import ru.mentee.power.connection.model.LatencySnapshot;
 
 /**
- * Сборщик метрик для пула соединений HikariCP.
+ * Метрики пула соединений по событиям HikariCP: распределения времени получения,
+ * использования и создания соединений за последнюю минуту.
+ * События записывает {@link PoolMetricsCollector}, подключенный к пулу как
+ * MetricsTrackerFactory.
  */
-@Slf4j
 public class PoolMetrics {
-    private final HikariDataSource dataSource;
+    static final long WINDOW_SECONDS = 60;
+    private static final int WINDOW_INTERVALS = 6;
 
-    public PoolMetrics(HikariDataSource dataSource) {
-        this.dataSource = dataSource;
+    private final String poolName;
+    private final LatencyHistogram acquisition = newHistogram();
+    private final LatencyHistogram usage = newHistogram();
+    private final LatencyHistogram creation = newHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+
+    public PoolMetrics(String poolName) {
+        this.poolName = poolName;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    /**
+     * Время ожидания соединения из пула.
+     */
+    public LatencySnapshot getAcquisitionLatency() {
+        return acquisition.snapshot();
+    }
+
+    /**
+     * Время от выдачи соединения до его возврата в пул.
+     */
+    public LatencySnapshot getUsageLatency() {
+        return usage.snapshot();
     }
 
+    /**
+     * Время открытия нового физического соединения.
+     */
+    public LatencySnapshot getCreationLatency() {
+        return creation.snapshot();
+    }
+
+    /**
+     * Среднее время получения соединения за окно, мс.
+     */
     public long getAverageConnectionAcquisitionTime() {
-        try {
-            var poolMXBean = dataSource.getHikariPoolMXBean();
-            if (poolMXBean != null) {
-                return poolMXBean.getTotalConnections() > 0
-                        ? poolMXBean.getTotalConnections() * 10
-                        : 0;
-            }
-        } catch (Exception e) {
-            log.warn("Не удалось получить метрики времени получения соединения", e);
-        }
-        return 0;
+        return TimeUnit.MICROSECONDS.toMillis(getAcquisitionLatency().getMeanMicros());
     }
 
+    /**
+     * Среднее время использования соединения за окно, мс.
+     */
     public long getAverageConnectionUsageTime() {
-        try {
-            var poolMXBean = dataSource.getHikariPoolMXBean();
-            if (poolMXBean != null) {
-                return poolMXBean.getActiveConnections() > 0
-                        ? poolMXBean.getActiveConnections() * 50
-                        : 0;
-            }
-        } catch (Exception e) {
-            log.warn("Не удалось получить метрики времени использования соединения", e);
-        }
-        return 0;
+        return TimeUnit.MICROSECONDS.toMillis(getUsageLatency().getMeanMicros());
+    }
+
+    /**
+     * Среднее время использования соединения за окно, мкс. В отличие от
+     * {@link #getUsageLatency()} не строит распределение и подходит для выбора узла
+     * на каждое получение соединения.
+     */
+    public long getAverageUsageMicros() {
+        return usage.mean();
+    }
+
+    /**
+     * Количество таймаутов получения соединения с создания пула.
+     */
+    public long getConnectionTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Количество выданных соединений с создания пула.
+     */
+    public long getConnectionsAcquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * Количество возвращенных в пул соединений с создания пула.
+     */
+    public long getConnectionsReturned() {
+        return returned.sum();
+    }
+
+    void recordAcquisition(long elapsedNanos) {
+        acquired.increment();
+        acquisition.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    void recordUsage(long elapsedMillis) {
+        returned.increment();
+        usage.record(TimeUnit.MILLISECONDS.toMicros(elapsedMillis));
+    }
+
+    void recordCreation(long elapsedMillis) {
+        creation.record(TimeUnit.MILLISECONDS.toMicros(elapsedMillis));
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    private static LatencyHistogram newHistogram() {
+        return new LatencyHistogram(WINDOW_SECONDS, TimeUnit.SECONDS, WINDOW_INTERVALS);
     }
 }
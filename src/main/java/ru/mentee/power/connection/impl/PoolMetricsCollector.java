@@ -6,15 +6,28 @@ import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 import com.zaxxer.hikari.metrics.PoolStats;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Сбор метрик для connection pool.
+ * События каждого пула записываются в его {@link PoolMetrics} и в общие метрики всех пулов
+ * коллектора, а при заданном MeterRegistry - еще и в таймеры Micrometer.
  */
 @Slf4j
 public class PoolMetricsCollector implements MetricsTrackerFactory {
     private final MeterRegistry registry;
+    private final Map<String, PoolMetrics> pools = new ConcurrentHashMap<>();
+    private final PoolMetrics total = new PoolMetrics("total");
+
+    /**
+     * Коллектор без Micrometer: только гистограммы {@link PoolMetrics}.
+     */
+    public PoolMetricsCollector() {
+        this(null);
+    }
 
     public PoolMetricsCollector(MeterRegistry registry) {
         this.registry = registry;
@@ -22,7 +35,22 @@ public class PoolMetricsCollector implements MetricsTrackerFactory {
 
     @Override
     public IMetricsTracker create(String poolName, PoolStats poolStats) {
-        return new MicrometerMetricsTracker(poolName, poolStats, registry);
+        return new MicrometerMetricsTracker(poolName, getPoolMetrics(poolName), total, registry);
+    }
+
+    /**
+     * Метрики пула по имени. Метрики создаются при первом обращении, поэтому их можно
+     * получить и до старта пула.
+     */
+    public PoolMetrics getPoolMetrics(String poolName) {
+        return pools.computeIfAbsent(poolName, PoolMetrics::new);
+    }
+
+    /**
+     * Метрики всех пулов коллектора вместе, например всех узлов failover пула.
+     */
+    public PoolMetrics getTotal() {
+        return total;
     }
 
     private static class MicrometerMetricsTracker implements IMetricsTracker {
@@ -30,10 +58,24 @@ public class PoolMetricsCollector implements MetricsTrackerFactory {
         private final Timer connectionUsageTimer;
         private final Timer connectionCreationTimer;
         private final String poolName;
+        private final PoolMetrics poolMetrics;
+        private final PoolMetrics totalMetrics;
 
         public MicrometerMetricsTracker(
-                String poolName, PoolStats poolStats, MeterRegistry registry) {
+                String poolName,
+                PoolMetrics poolMetrics,
+                PoolMetrics totalMetrics,
+                MeterRegistry registry) {
             this.poolName = poolName;
+            this.poolMetrics = poolMetrics;
+            this.totalMetrics = totalMetrics;
+
+            if (registry == null) {
+                this.connectionAcquisitionTimer = null;
+                this.connectionUsageTimer = null;
+                this.connectionCreationTimer = null;
+                return;
+            }
 
             this.connectionAcquisitionTimer =
                     Timer.builder("hikari.connection.acquisition")
@@ -56,7 +98,11 @@ public class PoolMetricsCollector implements MetricsTrackerFactory {
 
         @Override
         public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
-            connectionAcquisitionTimer.record(elapsedAcquiredNanos, TimeUnit.NANOSECONDS);
+            poolMetrics.recordAcquisition(elapsedAcquiredNanos);
+            totalMetrics.recordAcquisition(elapsedAcquiredNanos);
+            if (connectionAcquisitionTimer != null) {
+                connectionAcquisitionTimer.record(elapsedAcquiredNanos, TimeUnit.NANOSECONDS);
+            }
             if (elapsedAcquiredNanos > TimeUnit.SECONDS.toNanos(1)) {
                 log.warn(
                         "Медленное получение соединения: {}ms",
@@ -66,7 +112,11 @@ public class PoolMetricsCollector implements MetricsTrackerFactory {
 
         @Override
         public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
-            connectionUsageTimer.record(elapsedBorrowedMillis, TimeUnit.MILLISECONDS);
+            poolMetrics.recordUsage(elapsedBorrowedMillis);
+            totalMetrics.recordUsage(elapsedBorrowedMillis);
+            if (connectionUsageTimer != null) {
+                connectionUsageTimer.record(elapsedBorrowedMillis, TimeUnit.MILLISECONDS);
+            }
             if (elapsedBorrowedMillis > TimeUnit.MINUTES.toMillis(2)) {
                 log.warn("Соединение использовалось слишком долго: {}ms", elapsedBorrowedMillis);
             }
@@ -74,11 +124,17 @@ public class PoolMetricsCollector implements MetricsTrackerFactory {
 
         @Override
         public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
-            connectionCreationTimer.record(connectionCreatedMillis, TimeUnit.MILLISECONDS);
+            poolMetrics.recordCreation(connectionCreatedMillis);
+            totalMetrics.recordCreation(connectionCreatedMillis);
+            if (connectionCreationTimer != null) {
+                connectionCreationTimer.record(connectionCreatedMillis, TimeUnit.MILLISECONDS);
+            }
         }
 
         @Override
         public void recordConnectionTimeout() {
+            poolMetrics.recordTimeout();
+            totalMetrics.recordTimeout();
             log.warn("Таймаут получения соединения из пула {}", poolName);
         }
     }
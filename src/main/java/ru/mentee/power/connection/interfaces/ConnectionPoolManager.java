@@ -18,6 +18,18 @@ public interface ConnectionPoolManager {
      */
     Connection getConnection() throws SQLException;
 
+    /**
+     * Получить соединение с учетом вида работы. Пул с репликами направляет чтение
+     * на реплику, остальные пулы выдают обычное соединение.
+     *
+     * @param readOnly через соединение выполняется только чтение
+     * @return активное соединение
+     * @throws SQLException если не удалось получить соединение
+     */
+    default Connection getConnection(boolean readOnly) throws SQLException {
+        return getConnection();
+    }
+
     /**
      * Получить статистику использования пула.
      *
@@ -0,0 +1,28 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Границы и темп автоматического изменения размера пула.
+ */
+@Value
+@Builder
+public class AutoSizingPolicy {
+    // Размер пула не выходит за эти границы
+    @Builder.Default int minPoolSize = 2;
+    @Builder.Default int maxPoolSize = 50;
+    // Как часто снимается статистика пула и как часто принимается решение о размере
+    @Builder.Default long sampleIntervalMs = 1000;
+    @Builder.Default long evaluationIntervalMs = 30000;
+    // Запас к оценке по закону Литтла на всплески внутри окна
+    @Builder.Default double headroom = 1.25;
+    // Уменьшение, только если цель меньше текущего размера на эту долю
+    @Builder.Default double shrinkThreshold = 0.25;
+    // Сколько окон подряд цель должна быть ниже порога перед уменьшением
+    @Builder.Default int shrinkConfirmations = 2;
+    // Минимальные паузы после предыдущего изменения размера
+    @Builder.Default long growCooldownMs = 30000;
+    @Builder.Default long shrinkCooldownMs = 300000;
+}
@@ -0,0 +1,24 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Пороги и паузы автомата защиты узла.
+ */
+@Value
+@Builder
+public class CircuitBreakerPolicy {
+    // Автомат размыкается, когда доля отказов в окне достигает порога
+    @Builder.Default double failureRateThreshold = 0.5;
+    // и в окне набралось не меньше стольких попыток
+    @Builder.Default int minimumCalls = 3;
+    @Builder.Default long windowMs = 10000;
+    @Builder.Default int windowBuckets = 10;
+    // Пауза до пробной попытки удваивается после каждой неудачной пробы
+    @Builder.Default long initialBackoffMs = 500;
+    @Builder.Default long maxBackoffMs = 30000;
+    // Проба, не сообщившая результат за это время, считается потерянной
+    @Builder.Default long trialTimeoutMs = 30000;
+}
@@ -0,0 +1,14 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.model;
+
+/**
+ * Состояние автомата, защищающего узел от запросов после отказов.
+ */
+public enum CircuitState {
+    // Узел принимает запросы, отказы считаются в скользящем окне
+    CLOSED,
+    // Узел исключен до истечения паузы повтора
+    OPEN,
+    // Идет пробное получение соединения; остальные запросы узел не получает
+    HALF_OPEN
+}
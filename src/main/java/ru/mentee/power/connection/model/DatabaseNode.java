@@ -17,4 +17,6 @@ public class DatabaseNode {
     String nodeName;
     int priority;
     boolean enabled;
+    // Узлы без роли считаются PRIMARY и работают как раньше: резервы в порядке списка
+    @Builder.Default NodeRole role = NodeRole.PRIMARY;
 }
@@ -18,4 +18,8 @@ public class HealthCheckResult {
     int idleConnections;
     long averageConnectionAcquisitionTime;
     long averageConnectionUsageTime;
+    // Распределения за скользящее окно; пустые, если пул не собирает метрики событий
+    @Builder.Default LatencySnapshot acquisitionLatency = LatencySnapshot.empty();
+    @Builder.Default LatencySnapshot usageLatency = LatencySnapshot.empty();
+    @Builder.Default LatencySnapshot creationLatency = LatencySnapshot.empty();
 }
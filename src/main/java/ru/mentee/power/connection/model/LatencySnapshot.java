@@ -0,0 +1,23 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Распределение задержек за скользящее окно, значения в микросекундах.
+ */
+@Value
+@Builder
+public class LatencySnapshot {
+    long count;
+    long meanMicros;
+    long p50Micros;
+    long p99Micros;
+    long p999Micros;
+    long maxMicros;
+
+    public static LatencySnapshot empty() {
+        return LatencySnapshot.builder().build();
+    }
+}
@@ -0,0 +1,12 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.model;
+
+/**
+ * Роль узла базы данных при разделении чтения и записи.
+ */
+public enum NodeRole {
+    // Принимает запись; несколько PRIMARY узлов - резервы друг друга в порядке списка
+    PRIMARY,
+    // Реплика только для чтения
+    REPLICA
+}
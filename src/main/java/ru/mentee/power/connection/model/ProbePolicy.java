@@ -0,0 +1,23 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Интервалы и сроки фоновой проверки узлов failover пула.
+ */
+@Value
+@Builder
+public class ProbePolicy {
+    // Интервал между проверками здорового узла
+    @Builder.Default long intervalMs = 500;
+    // Интервал, пока последняя проверка узла неудачна или узел исключен
+    @Builder.Default long suspectIntervalMs = 100;
+    // Проверка, не ответившая за это время, считается неудачной
+    @Builder.Default long timeoutMs = 400;
+    // Сколько неудачных проверок подряд исключают узел
+    @Builder.Default int failuresToOpen = 2;
+    // Случайный разброс интервала, доля от интервала
+    @Builder.Default double jitter = 0.2;
+}
@@ -10,6 +10,7 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
 import ru.mentee.power.exception.DataAccessException;
 import ru.mentee.power.model.mp172.*;
 import ru.mentee.power.repository.interfaces.AdvancedAnalyticsRepository;
@@ -117,12 +118,30 @@ public class PostgresAdvancedAnalyticsRepository implements AdvancedAnalyticsRep
       """;
 
     private ApplicationConfig config;
+    private ConnectionPoolManager connectionPool;
 
     public PostgresAdvancedAnalyticsRepository(ApplicationConfig config) {
         this.config = config;
     }
 
+    /**
+     * Репозиторий, читающий через пул: все запросы аналитики только читают данные,
+     * поэтому пул с репликами направляет их на реплики.
+     */
+    public PostgresAdvancedAnalyticsRepository(
+            ApplicationConfig config, ConnectionPoolManager connectionPool) {
+        this.config = config;
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Соединение из пула возвращается как есть: запросы аналитики указывают схему таблиц,
+     * а SET search_path остался бы на соединении после возврата в пул.
+     */
     protected Connection getConnection() throws SQLException, DataAccessException {
+        if (connectionPool != null) {
+            return connectionPool.getConnection(true);
+        }
         Connection conn =
                 DriverManager.getConnection(
                         config.getUrl(), config.getUsername(), config.getPassword());
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
 import ru.mentee.power.exception.DataAccessException;
 import ru.mentee.power.model.mp164.*;
 import ru.mentee.power.repository.interfaces.PerformanceMonitoringRepository;
@@ -184,23 +185,61 @@ public class PostgresPerformanceMonitoringRepository implements PerformanceMonit
             ORDER BY heap_blks_read + idx_blks_read DESC;
         """;
 
+    private static final String SEARCH_PATH = "mentee_power, public";
+
     private static final String EXPLAIN_ANALYZE_WRAPPER =
             """
       EXPLAIN (ANALYZE, BUFFERS, VERBOSE, FORMAT JSON) %s
       """;
 
     private ApplicationConfig config;
+    private ConnectionPoolManager connectionPool;
 
     public PostgresPerformanceMonitoringRepository(ApplicationConfig config) {
         this.config = config;
     }
 
+    /**
+     * Репозиторий, работающий через пул. Чтение статистики идет на реплику, если она есть
+     * в пуле, и тогда описывает эту реплику: pg_stat_* и pg_stat_statements у каждого
+     * сервера свои. Создание индексов и EXPLAIN ANALYZE, который выполняет запрос,
+     * идут на основной узел.
+     */
+    public PostgresPerformanceMonitoringRepository(
+            ApplicationConfig config, ConnectionPoolManager connectionPool) {
+        this.config = config;
+        this.connectionPool = connectionPool;
+    }
+
     protected Connection getConnection() throws DataAccessException, SQLException {
+        return getConnection(true);
+    }
+
+    /**
+     * На соединении из пула SET search_path остался бы после возврата в пул. Поэтому
+     * чтение идет в транзакции с SET LOCAL, которую пул завершает при возврате
+     * соединения, а соединение для записи выдается без search_path: создание индекса
+     * указывает схему таблицы, а EXPLAIN ANALYZE задает search_path сам.
+     */
+    protected Connection getConnection(boolean readOnly) throws DataAccessException, SQLException {
+        if (connectionPool != null) {
+            Connection conn = connectionPool.getConnection(readOnly);
+            if (readOnly) {
+                try (Statement stmt = conn.createStatement()) {
+                    conn.setAutoCommit(false);
+                    stmt.execute("SET LOCAL search_path TO " + SEARCH_PATH);
+                } catch (SQLException e) {
+                    conn.close();
+                    throw new DataAccessException("Ошибка соединения", e);
+                }
+            }
+            return conn;
+        }
         Connection conn =
                 DriverManager.getConnection(
                         config.getUrl(), config.getUsername(), config.getPassword());
         try (PreparedStatement statement =
-                conn.prepareStatement("SET search_path TO mentee_power, public")) {
+                conn.prepareStatement("SET search_path TO " + SEARCH_PATH)) {
             statement.execute();
         } catch (SQLException e) {
             throw new DataAccessException("Ошибка соединения", e);
@@ -342,21 +381,43 @@ public class PostgresPerformanceMonitoringRepository implements PerformanceMonit
 
     @Override
     public QueryExecutionPlan getQueryExecutionPlan(String query) throws DataAccessException {
-        try (Connection conn = getConnection()) {
+        try (Connection conn = getConnection(false)) {
             clearPlanCache(conn);
+            if (connectionPool == null) {
+                return explain(conn, query);
+            }
 
-            String explainQuery = String.format(EXPLAIN_ANALYZE_WRAPPER, query);
-            try (PreparedStatement explainStmt = conn.prepareStatement(explainQuery);
-                    ResultSet explainRs = explainStmt.executeQuery()) {
-
-                if (explainRs.next()) {
-                    String queryPlan = explainRs.getString(1);
-                    return parseExecutionPlan(query, queryPlan);
+            // Таблицы в запросе пользователя могут быть без схемы: search_path задается
+            // SET LOCAL и действует только до конца транзакции
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET LOCAL search_path TO " + SEARCH_PATH);
                 }
+                QueryExecutionPlan plan = explain(conn, query);
+                conn.commit();
+                return plan;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         } catch (SQLException ex) {
             throw new DataAccessException("Ошибка получения плана выполнения запроса", ex);
         }
+    }
+
+    private QueryExecutionPlan explain(Connection conn, String query) throws SQLException {
+        String explainQuery = String.format(EXPLAIN_ANALYZE_WRAPPER, query);
+        try (PreparedStatement explainStmt = conn.prepareStatement(explainQuery);
+                ResultSet explainRs = explainStmt.executeQuery()) {
+
+            if (explainRs.next()) {
+                String queryPlan = explainRs.getString(1);
+                return parseExecutionPlan(query, queryPlan);
+            }
+        }
         return QueryExecutionPlan.builder().originalQuery(query).usesIndexes(false).build();
     }
 
@@ -535,7 +596,7 @@ public class PostgresPerformanceMonitoringRepository implements PerformanceMonit
         LocalDateTime creationTime = LocalDateTime.now();
         String indexTypeStr = indexType != null && !indexType.isEmpty() ? indexType : "btree";
 
-        try (Connection conn = getConnection()) {
+        try (Connection conn = getConnection(false)) {
             // Проверяем, существует ли индекс
             try (PreparedStatement checkStmt =
                     conn.prepareStatement(
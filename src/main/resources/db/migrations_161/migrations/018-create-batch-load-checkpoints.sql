@@ -0,0 +1,16 @@
+--liquibase formatted sql
+--changeset mp-batch:create-batch-load-checkpoints
+
+-- Чекпоинты возобновляемых загрузок: строка на каждый закоммиченный chunk.
+-- Пишется в той же транзакции, что и данные chunk, поэтому чекпоинт есть тогда и только тогда,
+-- когда данные chunk закоммичены.
+CREATE TABLE IF NOT EXISTS mentee_power.batch_load_checkpoints (
+    job_id VARCHAR(100) NOT NULL,
+    chunk_id INTEGER NOT NULL,
+    start_offset BIGINT NOT NULL,
+    record_count INTEGER NOT NULL,
+    committed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (job_id, chunk_id)
+);
+
+--rollback DROP TABLE IF EXISTS mentee_power.batch_load_checkpoints;
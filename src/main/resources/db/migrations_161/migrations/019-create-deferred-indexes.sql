@@ -0,0 +1,16 @@
+--liquibase formatted sql
+--changeset mp-batch:create-deferred-indexes
+
+-- Определения индексов, удаленных на время массовой загрузки.
+-- Строка пишется в той же транзакции, что и DROP INDEX, и удаляется после пересоздания индекса,
+-- поэтому после падения загрузки (даже вместе с JVM) индексы можно восстановить по этой таблице.
+CREATE TABLE IF NOT EXISTS mentee_power.deferred_indexes (
+    schema_name VARCHAR(63) NOT NULL,
+    table_name VARCHAR(63) NOT NULL,
+    index_name VARCHAR(63) NOT NULL,
+    index_def TEXT NOT NULL,
+    deferred_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (schema_name, index_name)
+);
+
+--rollback DROP TABLE IF EXISTS mentee_power.deferred_indexes;
@@ -98,6 +98,7 @@ public class BatchProcessorErrorHandlingTest {
             int errorCode = result.getFailedRecordsDetails().get(0).getErrorCode();
             // PostgreSQL error code 23505 = unique_violation
             assertThat(errorCode).isEqualTo(23505);
+            assertThat(result.getFailedRecordsDetails().get(0).getSqlState()).isEqualTo("23505");
         }
     }
 
@@ -181,6 +182,38 @@ public class BatchProcessorErrorHandlingTest {
         assertThat(result.getFailedRecordsDetails().get(0).getData()).isNotNull();
     }
 
+    @Test
+    @DisplayName("Should isolate failing records by batch bisection")
+    void shouldIsolateFailingRecordsByBisection() throws Exception {
+        // Given - каждый 20-й продукт дублирует SKU первого
+        List<Product> products = generateProductsWithDuplicates(1000);
+        ResilientBatchProcessor processor = new ResilientBatchProcessor(connection, 100);
+
+        // When
+        DetailedBatchResult result = processor.insertWithBisection(products, BatchOperation.INSERT);
+
+        // Then - результат совпадает с построчной обработкой
+        assertThat(result.getTotalRecords()).isEqualTo(1000);
+        assertThat(result.getSuccessfulRecords()).isEqualTo(951);
+        assertThat(result.getFailedRecords()).isEqualTo(49);
+        assertThat(result.getFailedRecordsDetails())
+                .allSatisfy(
+                        failed -> {
+                            assertThat(failed.getIndex() % 20).isZero();
+                            assertThat(failed.getIndex()).isPositive();
+                            assertThat(failed.getSqlState()).isEqualTo("23505");
+                            assertThat(failed.getErrorCode()).isEqualTo(23505);
+                            assertThat(failed.getErrorMessage()).isNotNull();
+                            assertThat(failed.getData()).isSameAs(products.get(failed.getIndex()));
+                        });
+
+        try (var stmt = connection.createStatement();
+                var rs = stmt.executeQuery("SELECT COUNT(*) FROM mentee_power.products")) {
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(951);
+        }
+    }
+
     private List<Product> generateProductsWithDuplicates(int count) {
         List<Product> products = new ArrayList<>();
         String duplicateSku = "DUPLICATE-SKU-" + UUID.randomUUID();
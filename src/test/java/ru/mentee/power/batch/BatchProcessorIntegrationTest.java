@@ -2,14 +2,25 @@
 package ru.mentee.power.batch;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import liquibase.Liquibase;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
@@ -19,14 +30,51 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import ru.mentee.power.batch.impl.AdaptiveBatchProcessor;
 import ru.mentee.power.batch.impl.BasicBatchProcessor;
+import ru.mentee.power.batch.impl.BatchSession;
+import ru.mentee.power.batch.impl.BatchSizeRegistry;
+import ru.mentee.power.batch.impl.DefaultBatchOptimizer;
+import ru.mentee.power.batch.impl.DeferredIndexLoader;
+import ru.mentee.power.batch.impl.FastIngestLoader;
+import ru.mentee.power.batch.impl.FileLoadSource;
+import ru.mentee.power.batch.impl.MappedBatchProcessor;
 import ru.mentee.power.batch.impl.OptimizedBatchProcessor;
+import ru.mentee.power.batch.impl.OrderGraphLoader;
+import ru.mentee.power.batch.impl.ParallelBatchProcessor;
+import ru.mentee.power.batch.impl.PipelinedBatchProcessor;
 import ru.mentee.power.batch.impl.PostgresCopyProcessor;
+import ru.mentee.power.batch.impl.ProductColumnBuffer;
+import ru.mentee.power.batch.impl.ProductHashCache;
+import ru.mentee.power.batch.impl.ResumableBatchLoader;
+import ru.mentee.power.batch.impl.RowBinderGenerator;
+import ru.mentee.power.batch.interfaces.RowBinder;
+import ru.mentee.power.batch.model.BatchMetrics;
+import ru.mentee.power.batch.model.BatchOperation;
 import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.Constraints;
+import ru.mentee.power.batch.model.CopyFormat;
+import ru.mentee.power.batch.model.DetailedBatchResult;
+import ru.mentee.power.batch.model.DuplicateKeyPolicy;
+import ru.mentee.power.batch.model.ExecutionPlan;
+import ru.mentee.power.batch.model.ExecutionStrategy;
+import ru.mentee.power.batch.model.FileFormat;
+import ru.mentee.power.batch.model.IngestOptions;
+import ru.mentee.power.batch.model.MappedColumn;
+import ru.mentee.power.batch.model.OrderGraph;
+import ru.mentee.power.batch.model.RelaxedGuarantee;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.connection.impl.HikariConnectionPoolManager;
+import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+import ru.mentee.power.connection.model.HealthCheckResult;
+import ru.mentee.power.connection.model.PoolStatistics;
+import ru.mentee.power.model.Order;
+import ru.mentee.power.model.OrderItem;
 import ru.mentee.power.model.Product;
 
 @Testcontainers
@@ -150,6 +198,200 @@ public class BatchProcessorIntegrationTest {
         assertThat(processor.getMetrics()).isNotEmpty();
     }
 
+    @Test
+    @DisplayName("Should start next adaptive run from learned batch size")
+    void shouldReuseLearnedBatchSize() throws Exception {
+        // Given
+        BatchSizeRegistry registry = new BatchSizeRegistry();
+        AdaptiveBatchProcessor processor = new AdaptiveBatchProcessor(connection, 1000, registry);
+
+        // When
+        processor.insert(generateProducts(5_000));
+        List<BatchMetrics> firstRun = processor.getMetrics();
+        int learned = firstRun.get(firstRun.size() - 1).getLearnedBatchSize();
+        processor.upsert(generateProducts(2_000));
+
+        // Then
+        assertThat(firstRun).extracting(BatchMetrics::getSizeAdjustment).doesNotContainNull();
+        assertThat(registry.snapshot())
+                .containsEntry("mentee_power.products:INSERT", learned)
+                .containsKey("mentee_power.products:UPSERT");
+
+        AdaptiveBatchProcessor nextRun = new AdaptiveBatchProcessor(connection, 1000, registry);
+        nextRun.insert(generateProducts(learned));
+        assertThat(nextRun.getMetrics().get(0).getBatchSize()).isEqualTo(learned);
+    }
+
+    @Test
+    @DisplayName("Should keep learned batch sizes across registry restarts")
+    void shouldPersistLearnedBatchSizes(@TempDir Path tempDir) throws Exception {
+        // Given
+        Path file = tempDir.resolve("batch-sizes.properties");
+        BatchSizeRegistry registry = new BatchSizeRegistry(file);
+        new AdaptiveBatchProcessor(connection, 1000, registry).insert(generateProducts(5_000));
+
+        // When - новый реестр, как после перезапуска процесса
+        BatchSizeRegistry restored = new BatchSizeRegistry(file);
+
+        // Then
+        assertThat(restored.snapshot())
+                .isEqualTo(registry.snapshot())
+                .containsKey("mentee_power.products:INSERT");
+    }
+
+    @Test
+    @DisplayName("Should plan execution from measured cost model")
+    void shouldPlanFromMeasuredCostModel() throws Exception {
+        // Given - метрики реального адаптивного прогона
+        AdaptiveBatchProcessor processor =
+                new AdaptiveBatchProcessor(connection, 1000, new BatchSizeRegistry());
+        processor.insert(generateProducts(5_000));
+        DefaultBatchOptimizer optimizer = new DefaultBatchOptimizer();
+        optimizer.recordMetrics(BatchOperation.INSERT, processor.getMetrics());
+
+        List<Product> sample = generateProducts(100);
+        Constraints constraints =
+                Constraints.builder()
+                        .maxMemoryBytes(1024 * 1024)
+                        .maxExecutionTimeMs(60_000)
+                        .build();
+
+        // When
+        ExecutionPlan plan =
+                optimizer.createExecutionPlan(sample, 100_000, BatchOperation.INSERT, constraints);
+
+        // Then
+        assertThat(optimizer.costModel(BatchOperation.INSERT)).isNotNull();
+        assertThat(plan.getEstimatedRecordBytes()).isGreaterThan(0);
+        assertThat(plan.getEstimatedExecutionTimeMs()).isPositive();
+        assertThat(plan.getEstimatedErrorPercent()).isNotNegative();
+        // Масштабирование не измерялось: план последовательный, как и оценка времени
+        assertThat(plan.getRecommendedParallelism()).isEqualTo(1);
+        assertThat(
+                        (long) plan.getOptimalBatchSize()
+                                * plan.getEstimatedRecordBytes()
+                                * 2
+                                * plan.getRecommendedParallelism())
+                .isLessThanOrEqualTo(1024 * 1024);
+    }
+
+    @Test
+    @DisplayName("Should estimate execution time within predicted error of true cost")
+    void shouldEstimateWithinPredictedError() {
+        // Given - batch с известной стоимостью 2 мс + 10 мкс на строку и шумом +-5%
+        long fixedNanos = 2_000_000;
+        long perRowNanos = 10_000;
+        List<BatchMetrics> metrics = new ArrayList<>();
+        long rows = 0;
+        long nanos = 0;
+        for (int size = 100; size <= 2_000; size += 100) {
+            double noise = metrics.size() % 2 == 0 ? 1.05 : 0.95;
+            long time = (long) ((fixedNanos + perRowNanos * size) * noise);
+            metrics.add(batchMetrics(size, time, 1, 0));
+            rows += size;
+            nanos += time;
+        }
+        DefaultBatchOptimizer optimizer = new DefaultBatchOptimizer();
+        optimizer.recordMetrics(BatchOperation.INSERT, metrics);
+        int totalRecords = 100_000;
+
+        // When
+        ExecutionPlan sequential =
+                optimizer.createExecutionPlan(
+                        List.of(), totalRecords, BatchOperation.INSERT, null);
+
+        // Then - оценка отличается от истинной стоимости не больше предсказанной ошибки
+        int batchSize = sequential.getOptimalBatchSize();
+        double trueMs =
+                (sequential.getNumberOfBatches() * fixedNanos
+                                + (double) totalRecords * perRowNanos)
+                        / 1_000_000;
+        assertThat(sequential.getRecommendedParallelism()).isEqualTo(1);
+        assertThat(sequential.getEstimatedErrorPercent()).isBetween(1.0, 6.0);
+        assertThat(Math.abs(sequential.getEstimatedExecutionTimeMs() - trueMs))
+                .isLessThanOrEqualTo(trueMs * sequential.getEstimatedErrorPercent() / 100);
+        // Фиксированные расходы - около 5% времени batch
+        assertThat(batchSize).isBetween(3_500, 4_500);
+
+        // When - измерено ускорение: 1.8 раза на 2 воркерах, 1.85 на 4
+        double sequentialThroughput = rows * 1_000_000_000.0 / nanos;
+        optimizer.recordMetrics(
+                BatchOperation.INSERT,
+                List.of(
+                        batchMetrics(batchSize, 0, 2, sequentialThroughput * 1.8),
+                        batchMetrics(batchSize, 0, 4, sequentialThroughput * 1.85)));
+        ExecutionPlan parallel =
+                optimizer.createExecutionPlan(
+                        List.of(), totalRecords, BatchOperation.INSERT, null);
+
+        // Then - 2 воркера дают 97% лучшего throughput, оценка делится на их ускорение
+        assertThat(parallel.getRecommendedParallelism()).isEqualTo(2);
+        assertThat((double) parallel.getEstimatedExecutionTimeMs())
+                .isCloseTo(sequential.getEstimatedExecutionTimeMs() / 1.8, within(1.0));
+    }
+
+    @Test
+    @DisplayName("Should keep pipelined runs out of sequential cost model")
+    void shouldSeparateMetricsByExecutionStrategy() {
+        // Given - последовательные batch по 1 мс + 10 мкс на строку
+        List<BatchMetrics> sequentialMetrics = new ArrayList<>();
+        for (int size = 100; size <= 2_000; size += 100) {
+            sequentialMetrics.add(batchMetrics(size, 1_000_000 + 10_000L * size, 1, 0));
+        }
+        DefaultBatchOptimizer optimizer = new DefaultBatchOptimizer();
+        optimizer.recordMetrics(BatchOperation.INSERT, sequentialMetrics);
+        ExecutionPlan before =
+                optimizer.createExecutionPlan(List.of(), 100_000, BatchOperation.INSERT, null);
+
+        // When - конвейер с одним отправителем в 10 раз быстрее на строку
+        optimizer.recordMetrics(
+                BatchOperation.INSERT,
+                List.of(
+                        BatchMetrics.builder()
+                                .batchSize(5_000)
+                                .executionTimeNanos(5_000_000)
+                                .throughput(1_000_000)
+                                .strategy(ExecutionStrategy.PIPELINED)
+                                .parallelism(1)
+                                .build()));
+        ExecutionPlan after =
+                optimizer.createExecutionPlan(List.of(), 100_000, BatchOperation.INSERT, null);
+
+        // Then
+        assertThat(after.getEstimatedExecutionTimeMs())
+                .isEqualTo(before.getEstimatedExecutionTimeMs());
+        assertThat(after.getOptimalBatchSize()).isEqualTo(before.getOptimalBatchSize());
+        assertThat(after.getRecommendedParallelism()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should resume failed load from first missing chunk")
+    void shouldResumeLoadFromCheckpoint() throws Exception {
+        // Given - запись в chunk 3 дублирует SKU из chunk 0
+        List<Product> products = generateProducts(1_000);
+        Product valid = products.get(650);
+        Product duplicate = generateProduct(650);
+        duplicate.setSku(products.get(10).getSku());
+        products.set(650, duplicate);
+        String jobId = "job-" + UUID.randomUUID();
+        ResumableBatchLoader loader = new ResumableBatchLoader(connection, 200);
+
+        // When - первый запуск падает на chunk 3
+        assertThatThrownBy(() -> loader.loadWithCopy(jobId, products, CopyFormat.BINARY))
+                .isInstanceOf(SQLException.class);
+        assertThat(loader.getCommittedChunks(jobId)).isEqualTo(3);
+
+        products.set(650, valid);
+        BatchResult result = loader.loadWithCopy(jobId, products, CopyFormat.BINARY);
+
+        // Then - повторный запуск загружает только незакоммиченные chunk
+        assertThat(result.getSkippedRecords()).isEqualTo(600);
+        assertThat(result.getSuccessfulRecords()).isEqualTo(400);
+        assertThat(result.getFailedRecords()).isZero();
+        assertThat(loader.getCommittedChunks(jobId)).isEqualTo(5);
+        assertThat(getProductIds()).hasSize(1_000);
+    }
+
     @Test
     @DisplayName("Should use PostgreSQL COPY for maximum performance")
     void shouldUsePostgresCopy() throws Exception {
@@ -168,6 +410,1062 @@ public class BatchProcessorIntegrationTest {
         assertThat(result.getRecordsPerSecond()).isGreaterThan(2_000);
     }
 
+    @Test
+    @DisplayName("Should stream records into COPY without materializing them")
+    void shouldStreamRecordsIntoCopy() throws Exception {
+        // Given - записи генерируются лениво и не хранятся в списке
+        Stream<Product> products = IntStream.range(0, 50_000).mapToObj(this::generateProduct);
+        PostgresCopyProcessor processor = new PostgresCopyProcessor(connection);
+
+        // When
+        BatchResult result = processor.loadWithCopy(products);
+
+        // Then
+        assertThat(result.getTotalRecords()).isEqualTo(50_000);
+        assertThat(result.getSuccessfulRecords()).isEqualTo(50_000);
+        assertThat(result.getFailedRecords()).isZero();
+        assertThat(getProductIds()).hasSize(50_000);
+    }
+
+    @Test
+    @DisplayName("Should load products with binary COPY format")
+    void shouldLoadWithBinaryCopy() throws Exception {
+        // Given - цены с разным масштабом и знаками, чтобы проверить кодирование numeric
+        List<Product> products = generateProducts(1_000);
+        products.get(0).setPrice(new BigDecimal("0.01"));
+        products.get(1).setPrice(new BigDecimal("99999999.99"));
+        products.get(2).setPrice(new BigDecimal("12345.6"));
+        products.get(3).setDescription(null);
+        products.get(4).setName("Имя с \"кавычками\", запятой и юникодом");
+        PostgresCopyProcessor processor = new PostgresCopyProcessor(connection);
+
+        // When
+        BatchResult result = processor.loadWithCopy(products, CopyFormat.BINARY);
+
+        // Then
+        assertThat(result.getSuccessfulRecords()).isEqualTo(1_000);
+        for (Product expected : products.subList(0, 5)) {
+            try (var ps =
+                    connection.prepareStatement(
+                            "SELECT name, description, price, category_id"
+                                    + " FROM mentee_power.products WHERE sku = ?")) {
+                ps.setString(1, expected.getSku());
+                try (var rs = ps.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getString("name")).isEqualTo(expected.getName());
+                    assertThat(rs.getString("description")).isEqualTo(expected.getDescription());
+                    assertThat(rs.getBigDecimal("price")).isEqualByComparingTo(expected.getPrice());
+                    assertThat(rs.getLong("category_id")).isEqualTo(expected.getCategoryId());
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should upsert, update and delete through COPY staging table")
+    void shouldApplySetBasedOperationsThroughStaging() throws Exception {
+        // Given
+        List<Product> products = generateProducts(2_000);
+        PostgresCopyProcessor processor = new PostgresCopyProcessor(connection);
+        processor.insert(products.subList(0, 1_000));
+
+        // When - upsert: половина конфликтует по sku, половина новые
+        List<Product> changed = new ArrayList<>();
+        for (Product product : products) {
+            changed.add(
+                    Product.builder()
+                            .sku(product.getSku())
+                            .name(product.getName() + " v2")
+                            .description(product.getDescription())
+                            .price(product.getPrice())
+                            .categoryId(product.getCategoryId())
+                            .build());
+        }
+        BatchResult upsertResult = processor.upsert(changed);
+
+        // Then
+        assertThat(upsertResult.getSuccessfulRecords()).isEqualTo(2_000);
+        List<Long> ids = getProductIds();
+        assertThat(ids).hasSize(2_000);
+
+        // When - update по id
+        List<Product> updates = new ArrayList<>();
+        for (Long id : ids) {
+            updates.add(
+                    Product.builder()
+                            .id(id)
+                            .name("Updated " + id)
+                            .description("Updated Description")
+                            .price(BigDecimal.valueOf(300))
+                            .categoryId(1L)
+                            .build());
+        }
+        BatchResult updateResult = processor.update(updates);
+
+        // Then
+        assertThat(updateResult.getSuccessfulRecords()).isEqualTo(2_000);
+
+        // When - delete по id
+        BatchResult deleteResult = processor.delete(ids.subList(0, 500));
+
+        // Then
+        assertThat(deleteResult.getSuccessfulRecords()).isEqualTo(500);
+        assertThat(getProductIds()).hasSize(1_500);
+    }
+
+    @Test
+    @DisplayName("Should upsert and update through unnest array parameters")
+    void shouldUseArrayParametersInOptimizedProcessor() throws Exception {
+        // Given - спецсимволы больше не экранируются вручную в тексте SQL
+        List<Product> products = generateProducts(2_500);
+        products.get(0).setName("O'Reilly; DROP TABLE x --");
+        products.get(1).setDescription(null);
+        OptimizedBatchProcessor processor = new OptimizedBatchProcessor(connection);
+
+        // When
+        BatchResult upsertResult = processor.upsert(products);
+        List<Long> ids = getProductIds();
+        List<Product> updates = new ArrayList<>();
+        for (Long id : ids) {
+            updates.add(
+                    Product.builder()
+                            .id(id)
+                            .name("Updated " + id)
+                            .description("Updated Description")
+                            .price(BigDecimal.valueOf(250))
+                            .categoryId(1L)
+                            .build());
+        }
+        BatchResult updateResult = processor.update(updates);
+        BatchResult deleteResult = processor.delete(ids.subList(0, 1_200));
+
+        // Then
+        assertThat(upsertResult.getSuccessfulRecords()).isEqualTo(2_500);
+        assertThat(updateResult.getSuccessfulRecords()).isEqualTo(2_500);
+        assertThat(deleteResult.getSuccessfulRecords()).isEqualTo(1_200);
+        assertThat(getProductIds()).hasSize(1_300);
+    }
+
+    @Test
+    @DisplayName("Should collapse duplicate sku inside one upsert batch")
+    void shouldCollapseDuplicateSkusInUpsertBatch() throws Exception {
+        // Given - без схлопывания ON CONFLICT падает на повторном sku в одной команде
+        List<Product> products = generateProducts(100);
+        Product duplicate = generateProduct(1_000);
+        duplicate.setSku(products.get(0).getSku());
+        duplicate.setDescription(null);
+        products.add(duplicate);
+
+        // When
+        BatchResult lastWins = new OptimizedBatchProcessor(connection).upsert(products);
+        String lastWinsName = getProductName(duplicate.getSku());
+        String lastWinsDescription = getProductDescription(duplicate.getSku());
+        BatchResult merged =
+                new OptimizedBatchProcessor(connection, DuplicateKeyPolicy.MERGE)
+                        .upsert(List.of(products.get(1), withoutDescription(products.get(1))));
+        BatchResult copied =
+                new PostgresCopyProcessor(connection)
+                        .upsertWithCopy(products.iterator(), CopyFormat.CSV);
+
+        // Then
+        assertThat(lastWins.getSuccessfulRecords()).isEqualTo(101);
+        assertThat(lastWinsName).isEqualTo("Product 1000");
+        assertThat(lastWinsDescription).isNull();
+        assertThat(merged.getSuccessfulRecords()).isEqualTo(2);
+        assertThat(getProductDescription(products.get(1).getSku()))
+                .isEqualTo(products.get(1).getDescription());
+        assertThat(copied.getSuccessfulRecords()).isEqualTo(101);
+        assertThat(copied.getCollapsedRecords()).isEqualTo(1);
+        assertThat(getProductIds()).hasSize(100);
+    }
+
+    @Test
+    @DisplayName("Should keep every sku-less row in staging upsert")
+    void shouldKeepRowsWithoutSkuInStagingUpsert() throws Exception {
+        // Given - дубликат sku схлопывается, строки без sku - нет
+        List<Product> products = generateProducts(2);
+        Product duplicate = generateProduct(2);
+        duplicate.setSku(products.get(0).getSku());
+        products.add(duplicate);
+        for (int i = 0; i < 2; i++) {
+            Product withoutSku = generateProduct(10 + i);
+            withoutSku.setSku(null);
+            products.add(withoutSku);
+        }
+        List<Product> piped = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Product withoutSku = generateProduct(20 + i);
+            withoutSku.setSku(null);
+            piped.add(withoutSku);
+        }
+        ConnectionPoolManager pool = createPool();
+        PipelinedBatchProcessor pipeline =
+                new PipelinedBatchProcessor(pool, 1, 1, 1, 100, CopyFormat.CSV);
+
+        try {
+            // When
+            BatchResult copied =
+                    new PostgresCopyProcessor(connection)
+                            .upsertWithCopy(products.iterator(), CopyFormat.CSV);
+            BatchResult pipelined = pipeline.upsert(piped);
+
+            // Then
+            assertThat(copied.getSuccessfulRecords()).isEqualTo(5);
+            assertThat(copied.getCollapsedRecords()).isEqualTo(1);
+            assertThat(pipelined.getSuccessfulRecords()).isEqualTo(2);
+            assertThat(pipelined.getCollapsedRecords()).isZero();
+            assertThat(getProductIds()).hasSize(6);
+            try (var stmt = connection.createStatement();
+                    var rs =
+                            stmt.executeQuery(
+                                    "SELECT count(*) FROM mentee_power.products"
+                                            + " WHERE sku IS NULL")) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(4);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should load with explicitly relaxed durability")
+    void shouldIngestWithRelaxedDurability() throws Exception {
+        // Given
+        FastIngestLoader loader = new FastIngestLoader(connection);
+        IngestOptions asyncCommit =
+                IngestOptions.builder().synchronousCommit(false).commitChunkSize(2_000).build();
+
+        // When
+        BatchResult inserted = loader.insert(generateProducts(5_000), asyncCommit);
+        loader.rebuild("mentee_power.products_snapshot", generateProducts(300), asyncCommit);
+        BatchResult rebuilt =
+                loader.rebuild(
+                        "mentee_power.products_snapshot",
+                        generateProducts(200),
+                        IngestOptions.relaxed());
+
+        // Then
+        assertThat(inserted.getSuccessfulRecords()).isEqualTo(5_000);
+        assertThat(inserted.getRelaxedGuarantees())
+                .containsExactly(RelaxedGuarantee.ASYNCHRONOUS_COMMIT);
+        assertThat(getProductIds()).hasSize(5_000);
+        assertThat(rebuilt.getRelaxedGuarantees())
+                .containsExactlyInAnyOrder(
+                        RelaxedGuarantee.ASYNCHRONOUS_COMMIT, RelaxedGuarantee.UNLOGGED_LOAD);
+        try (var stmt = connection.createStatement();
+                var rs =
+                        stmt.executeQuery(
+                                "SELECT count(*), (SELECT relpersistence FROM pg_class"
+                                        + " WHERE oid = 'mentee_power.products_snapshot'::regclass)"
+                                        + " FROM mentee_power.products_snapshot")) {
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(200);
+            assertThat(rs.getString(2)).isEqualTo("p");
+        }
+        assertThatThrownBy(() -> loader.insert(generateProducts(1), IngestOptions.relaxed()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should keep keys, indexes and foreign keys of rebuilt table")
+    void shouldKeepSchemaOfRebuiltTable() throws Exception {
+        // Given - витрина со своим serial id, индексом и внешним ключом на categories
+        FastIngestLoader loader = new FastIngestLoader(connection);
+        long categoryId;
+        try (var stmt = connection.createStatement()) {
+            stmt.execute(
+                    "CREATE TABLE mentee_power.products_featured"
+                            + " (LIKE mentee_power.products INCLUDING DEFAULTS)");
+            stmt.execute(
+                    "ALTER TABLE mentee_power.products_featured"
+                            + " ALTER COLUMN id SET DEFAULT NULL,"
+                            + " ADD PRIMARY KEY (id), ADD UNIQUE (sku),"
+                            + " ADD CONSTRAINT featured_category_fk FOREIGN KEY (category_id)"
+                            + " REFERENCES mentee_power.categories(id)");
+            stmt.execute(
+                    "CREATE SEQUENCE mentee_power.products_featured_id_seq"
+                            + " OWNED BY mentee_power.products_featured.id");
+            stmt.execute(
+                    "ALTER TABLE mentee_power.products_featured ALTER COLUMN id"
+                            + " SET DEFAULT nextval('mentee_power.products_featured_id_seq')");
+            stmt.execute(
+                    "CREATE INDEX products_featured_name_idx"
+                            + " ON mentee_power.products_featured (name)");
+            try (var rs =
+                    stmt.executeQuery(
+                            "INSERT INTO mentee_power.categories (name)"
+                                    + " VALUES ('Featured') RETURNING id")) {
+                rs.next();
+                categoryId = rs.getLong(1);
+            }
+        }
+        List<Product> products = generateProducts(100);
+        products.forEach(product -> product.setCategoryId(categoryId));
+        List<Product> orphans = generateProducts(1);
+        orphans.get(0).setCategoryId(-1L);
+
+        try {
+            // When
+            loader.rebuild("mentee_power.products_featured", products, IngestOptions.relaxed());
+            BatchResult rebuilt =
+                    loader.rebuild(
+                            "mentee_power.products_featured",
+                            products.subList(0, 50),
+                            IngestOptions.durable());
+
+            // Then
+            assertThat(rebuilt.getSuccessfulRecords()).isEqualTo(50);
+            try (var stmt = connection.createStatement();
+                    var rs =
+                            stmt.executeQuery(
+                                    "SELECT (SELECT count(*) FROM pg_constraint"
+                                            + " WHERE conrelid = 'mentee_power.products_featured'"
+                                            + "::regclass AND contype IN ('p', 'u', 'f')),"
+                                            + " (SELECT count(*) FROM pg_indexes"
+                                            + " WHERE schemaname = 'mentee_power'"
+                                            + " AND tablename = 'products_featured'),"
+                                            + " (SELECT count(*) FROM pg_class"
+                                            + " WHERE oid = to_regclass("
+                                            + "'mentee_power.products_featured_id_seq'))")) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(3);
+                assertThat(rs.getInt(2)).isEqualTo(3);
+                assertThat(rs.getInt(3)).isEqualTo(1);
+            }
+            assertThatThrownBy(
+                            () ->
+                                    loader.rebuild(
+                                            "mentee_power.products_featured",
+                                            orphans,
+                                            IngestOptions.durable()))
+                    .isInstanceOf(SQLException.class);
+            try (var stmt = connection.createStatement()) {
+                stmt.execute(
+                        "CREATE TABLE mentee_power.featured_notes (product_id BIGINT"
+                                + " REFERENCES mentee_power.products_featured(id))");
+            }
+            assertThatThrownBy(
+                            () ->
+                                    loader.rebuild(
+                                            "mentee_power.products_featured",
+                                            products,
+                                            IngestOptions.durable()))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            try (var stmt = connection.createStatement()) {
+                stmt.execute(
+                        "DROP TABLE IF EXISTS mentee_power.featured_notes,"
+                                + " mentee_power.products_featured,"
+                                + " mentee_power.products_featured_load");
+                stmt.execute("DELETE FROM mentee_power.categories WHERE id = " + categoryId);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should defer secondary indexes during bulk load and restore them")
+    void shouldDeferSecondaryIndexesDuringLoad() throws Exception {
+        // Given
+        List<String> indexesBefore = getProductIndexes();
+        ConnectionPoolManager pool = createPool();
+        DeferredIndexLoader loader = new DeferredIndexLoader(pool, 2, false);
+        List<String> indexesDuringLoad = new ArrayList<>();
+
+        try {
+            // When
+            BatchResult result =
+                    loader.load(
+                            "mentee_power.products",
+                            () -> {
+                                indexesDuringLoad.addAll(getProductIndexes());
+                                return new PostgresCopyProcessor(connection)
+                                        .loadWithCopy(generateProducts(5_000));
+                            });
+
+            // Then - уникальные индексы и индексы ограничений остаются на время загрузки
+            assertThat(result.getSuccessfulRecords()).isEqualTo(5_000);
+            assertThat(indexesDuringLoad)
+                    .isNotEmpty()
+                    .hasSizeLessThan(indexesBefore.size())
+                    .isSubsetOf(indexesBefore);
+            assertThat(getProductIndexes()).containsExactlyInAnyOrderElementsOf(indexesBefore);
+
+            assertThatThrownBy(
+                            () ->
+                                    loader.load(
+                                            "mentee_power.products",
+                                            () -> {
+                                                throw new SQLException("Загрузка упала");
+                                            }))
+                    .isInstanceOf(SQLException.class);
+            assertThat(getProductIndexes()).containsExactlyInAnyOrderElementsOf(indexesBefore);
+            assertThat(loader.restorePending("mentee_power.products")).isZero();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should load order graphs with client-assigned ids")
+    void shouldLoadOrderGraphsWithPreallocatedIds() throws Exception {
+        // Given
+        long userId = createUser();
+        new BasicBatchProcessor(connection).insert(generateProducts(10));
+        List<Long> productIds = getProductIds();
+        List<OrderGraph> graphs = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            List<OrderItem> items = new ArrayList<>();
+            for (int j = 0; j < 2; j++) {
+                items.add(
+                        OrderItem.builder()
+                                .productId(productIds.get((i + j) % productIds.size()))
+                                .quantity(j + 1)
+                                .price(BigDecimal.valueOf(50))
+                                .build());
+            }
+            graphs.add(
+                    OrderGraph.builder()
+                            .order(
+                                    Order.builder()
+                                            .userId(userId)
+                                            .total(BigDecimal.valueOf(150))
+                                            .build())
+                            .items(items)
+                            .build());
+        }
+
+        // When
+        BatchResult result = new OrderGraphLoader(connection, 1_000).load(graphs);
+
+        // Then
+        assertThat(result.getSuccessfulRecords()).isEqualTo(2_500);
+        assertThat(graphs)
+                .allSatisfy(
+                        graph ->
+                                assertThat(graph.getItems())
+                                        .extracting(OrderItem::getOrderId)
+                                        .containsOnly(graph.getOrder().getId()));
+        try (var ps =
+                connection.prepareStatement(
+                        "SELECT count(DISTINCT o.id), count(oi.id), min(o.status), min(o.region)"
+                                + " FROM mentee_power.orders o"
+                                + " JOIN mentee_power.order_items oi ON oi.order_id = o.id"
+                                + " WHERE o.user_id = ?")) {
+            ps.setLong(1, userId);
+            try (var rs = ps.executeQuery()) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(2_500);
+                assertThat(rs.getInt(2)).isEqualTo(5_000);
+                assertThat(rs.getString(3)).isEqualTo("PENDING");
+                assertThat(rs.getString(4)).isEqualTo("MOSCOW");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep explicit order columns and assign ids only after commit")
+    void shouldLoadMixedOrderGraphsAndAssignIdsAfterCommit() throws Exception {
+        // Given - заказы с заданными и незаданными status/region
+        long userId = createUser();
+        new BasicBatchProcessor(connection).insert(generateProducts(1));
+        long productId = getProductIds().get(0);
+        List<OrderGraph> graphs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Order order = Order.builder().userId(userId).total(BigDecimal.TEN).build();
+            if (i % 2 == 0) {
+                order.setStatus("CONFIRMED");
+            }
+            if (i % 5 == 0) {
+                order.setRegion("SPB");
+            }
+            graphs.add(orderGraph(order, productId));
+        }
+        OrderGraphLoader loader = new OrderGraphLoader(connection);
+        List<OrderGraph> withoutOrder = List.of(graphs.get(0), new OrderGraph());
+        Order failing = Order.builder().userId(userId).total(BigDecimal.ONE).build();
+        List<OrderGraph> brokenItem = List.of(orderGraph(failing, -1L));
+
+        // When
+        BatchResult result = loader.load(graphs);
+
+        // Then - незаданные колонки заполнила схема
+        assertThat(result.getSuccessfulRecords()).isEqualTo(10);
+        try (var ps =
+                connection.prepareStatement(
+                        "SELECT count(*) FILTER (WHERE status = 'CONFIRMED'),"
+                                + " count(*) FILTER (WHERE status = 'PENDING'),"
+                                + " count(*) FILTER (WHERE region = 'SPB'),"
+                                + " count(*) FILTER (WHERE region = 'MOSCOW'),"
+                                + " count(*) FILTER (WHERE created_at IS NOT NULL)"
+                                + " FROM mentee_power.orders WHERE user_id = ?")) {
+            ps.setLong(1, userId);
+            try (var rs = ps.executeQuery()) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(5);
+                assertThat(rs.getInt(2)).isEqualTo(5);
+                assertThat(rs.getInt(3)).isEqualTo(2);
+                assertThat(rs.getInt(4)).isEqualTo(8);
+                assertThat(rs.getInt(5)).isEqualTo(10);
+            }
+        }
+        assertThatThrownBy(() -> loader.load(withoutOrder))
+                .isInstanceOf(IllegalArgumentException.class);
+        // Откаченный chunk не оставляет id в объектах вызывающего
+        assertThatThrownBy(() -> loader.load(brokenItem)).isInstanceOf(SQLException.class);
+        assertThat(failing.getId()).isNull();
+        assertThat(brokenItem.get(0).getItems().get(0).getOrderId()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should skip unchanged rows in delta upsert")
+    void shouldSkipUnchangedRowsInDeltaUpsert() throws Exception {
+        // Given - повторная выгрузка каталога: 10 измененных и 5 новых продуктов
+        List<Product> products = generateProducts(100);
+        OptimizedBatchProcessor processor = new OptimizedBatchProcessor(connection);
+        BatchResult initial = processor.deltaUpsertProducts(products);
+        List<Product> feed = new ArrayList<>(products);
+        for (int i = 0; i < 10; i++) {
+            feed.get(i).setPrice(feed.get(i).getPrice().add(BigDecimal.ONE));
+        }
+        feed.addAll(generateProducts(5));
+        ProductHashCache cache = new ProductHashCache();
+        cache.putAll(products.subList(10, 100));
+
+        // When
+        BatchResult delta = processor.deltaUpsertProducts(feed);
+        BatchResult cached = new BasicBatchProcessor(connection).deltaUpsert(feed, cache);
+
+        // Then
+        assertThat(initial.getInsertedRecords()).isEqualTo(100);
+        assertThat(delta.getInsertedRecords()).isEqualTo(5);
+        assertThat(delta.getUpdatedRecords()).isEqualTo(10);
+        assertThat(delta.getUnchangedRecords()).isEqualTo(90);
+        assertThat(delta.getSuccessfulRecords()).isEqualTo(105);
+        assertThat(cached.getUnchangedRecords()).isEqualTo(105);
+        assertThat(cached.getInsertedRecords() + cached.getUpdatedRecords()).isZero();
+        assertThat(cache.size()).isEqualTo(105);
+        assertThat(cache.isUnchanged(feed.get(0))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should count inserted, updated and unchanged rows in basic delta upsert")
+    void shouldCountChangesInBasicDeltaUpsert() throws Exception {
+        // Given - 10 измененных, 5 новых; 20 неизмененных известны кэшу, 20 - только БД
+        List<Product> products = generateProducts(50);
+        BasicBatchProcessor processor = new BasicBatchProcessor(connection);
+        BatchResult initial = processor.deltaUpsert(products);
+        List<Product> feed = new ArrayList<>(products);
+        for (int i = 0; i < 10; i++) {
+            feed.get(i).setPrice(feed.get(i).getPrice().add(BigDecimal.ONE));
+        }
+        feed.addAll(generateProducts(5));
+        ProductHashCache cache = new ProductHashCache();
+        cache.putAll(products.subList(30, 50));
+
+        // When
+        BatchResult delta = processor.deltaUpsert(feed, cache);
+
+        // Then
+        assertThat(initial.getInsertedRecords()).isEqualTo(50);
+        assertThat(initial.getUpdatedRecords() + initial.getUnchangedRecords()).isZero();
+        assertThat(delta.getInsertedRecords()).isEqualTo(5);
+        assertThat(delta.getUpdatedRecords()).isEqualTo(10);
+        assertThat(delta.getUnchangedRecords()).isEqualTo(40);
+        assertThat(delta.getSuccessfulRecords()).isEqualTo(55);
+        assertThat(delta.getFailedRecords()).isZero();
+        assertThat(cache.size()).isEqualTo(55);
+    }
+
+    @Test
+    @DisplayName("Should report collapsed duplicate sku separately in delta upsert")
+    void shouldReportCollapsedDuplicatesInDeltaUpsert() throws Exception {
+        // Given - 1 измененный, 2 новых и повтор sku первого продукта с другими данными
+        List<Product> products = generateProducts(20);
+        OptimizedBatchProcessor processor = new OptimizedBatchProcessor(connection);
+        processor.deltaUpsertProducts(products);
+        List<Product> feed = new ArrayList<>(products);
+        feed.get(1).setPrice(feed.get(1).getPrice().add(BigDecimal.ONE));
+        feed.addAll(generateProducts(2));
+        Product duplicate = generateProduct(1_000);
+        duplicate.setSku(products.get(0).getSku());
+        feed.add(duplicate);
+
+        // When
+        BatchResult delta = processor.deltaUpsertProducts(feed);
+
+        // Then - побеждает последний повтор: первый продукт обновлен, повтор схлопнут
+        assertThat(delta.getTotalRecords()).isEqualTo(23);
+        assertThat(delta.getInsertedRecords()).isEqualTo(2);
+        assertThat(delta.getUpdatedRecords()).isEqualTo(2);
+        assertThat(delta.getUnchangedRecords()).isEqualTo(18);
+        assertThat(delta.getCollapsedRecords()).isEqualTo(1);
+        assertThat(delta.getSuccessfulRecords()).isEqualTo(23);
+        assertThat(delta.getFailedRecords()).isZero();
+        assertThat(getProductName(duplicate.getSku())).isEqualTo("Product 1000");
+    }
+
+    @Test
+    @DisplayName("Should load products from mapped files with external sort")
+    void shouldLoadFromMappedFilesWithExternalSort(@TempDir Path tempDir) throws Exception {
+        // Given - CSV в раскладке COPY и NDJSON в обратном порядке sku
+        Path csv = tempDir.resolve("products.csv");
+        Files.writeString(
+                csv,
+                "sku,name,description,price,category_id\n"
+                        + "CSV-1,\"Name, with comma\",\"Line 1\nLine \"\"2\"\"\",10.50,1\n"
+                        + "CSV-2,Plain,,20,1\n");
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 199; i >= 0; i--) {
+            ndjson.append(
+                    String.format(
+                            "{\"sku\": \"NDJ-%03d\", \"name\": \"Product \\\"%d\\\"\", "
+                                    + "\"description\": null, \"price\": %d.5, "
+                                    + "\"categoryId\": 1}\n",
+                            i,
+                            i,
+                            100 + i));
+        }
+        Path json = tempDir.resolve("products.ndjson");
+        Files.writeString(json, ndjson.append("\n"));
+        PostgresCopyProcessor processor = new PostgresCopyProcessor(connection);
+        // Маленький бюджет run'а: сортировка сбрасывает на диск несколько run'ов
+        FileLoadSource source =
+                new FileLoadSource(json, FileFormat.NDJSON, false)
+                        .sortedBy(Product::getSku, 4_096, tempDir);
+
+        // When
+        BatchResult csvResult = processor.loadCsvFile(csv, true);
+        List<String> sortedSkus;
+        try (Stream<Product> products = source.products()) {
+            sortedSkus = products.map(Product::getSku).toList();
+        }
+        BatchResult jsonResult = processor.loadWithCopy(source.products());
+
+        // Then
+        assertThat(csvResult.getSuccessfulRecords()).isEqualTo(2);
+        assertThat(getProductName("CSV-1")).isEqualTo("Name, with comma");
+        assertThat(getProductDescription("CSV-1")).isEqualTo("Line 1\nLine \"2\"");
+        assertThat(getProductDescription("CSV-2")).isNull();
+        assertThat(sortedSkus).hasSize(200).isSorted().startsWith("NDJ-000");
+        assertThat(jsonResult.getSuccessfulRecords()).isEqualTo(200);
+        assertThat(getProductName("NDJ-007")).isEqualTo("Product \"7\"");
+        assertThat(getProductColumn("NDJ-007", "price")).isEqualTo("107.50");
+        try (Stream<Path> files = Files.list(tempDir)) {
+            // Временные run'ы удалены при закрытии потоков
+            assertThat(files).hasSize(2);
+        }
+    }
+
+    @Test
+    @DisplayName("Should load and upsert from reusable columnar buffer")
+    void shouldLoadFromColumnarBuffer() throws Exception {
+        // Given - chunk'и пишутся через один буфер с ареной строк вне кучи
+        ProductColumnBuffer buffer = new ProductColumnBuffer(500, true);
+        PostgresCopyProcessor copier = new PostgresCopyProcessor(connection);
+        OptimizedBatchProcessor processor = new OptimizedBatchProcessor(connection);
+        List<Product> binaryChunk = generateProducts(500);
+        binaryChunk.get(0).setName("Чайник \"Ретро\", 1.7 л");
+        binaryChunk.get(1).setDescription(null);
+        binaryChunk.get(2).setPrice(new BigDecimal("99.9"));
+
+        // When
+        binaryChunk.forEach(buffer::add);
+        BatchResult binary = copier.loadWithCopy(buffer, CopyFormat.BINARY);
+        buffer.clear();
+        List<Product> csvChunk = generateProducts(300);
+        csvChunk.get(0).setName("Line 1\nLine \"2\", end");
+        csvChunk.forEach(buffer::add);
+        BatchResult csv = copier.loadWithCopy(buffer, CopyFormat.CSV);
+        buffer.clear();
+        // Повтор sku внутри chunk: побеждает последняя запись
+        buffer.add(binaryChunk.get(0).getSku(), "Renamed", "", 12_345, 1L);
+        buffer.add(binaryChunk.get(0).getSku(), "Renamed twice", null, 50, 1L);
+        buffer.add("SKU-COLUMNAR-NEW", "New", "Описание", 1_000, 1L);
+        // Записи без sku не схлопываются друг с другом
+        buffer.add(null, "No sku 1", null, 100, 1L);
+        buffer.add(null, "No sku 2", null, 200, 1L);
+        BatchResult upsert = processor.bulkUpsertProducts(buffer);
+
+        // Then
+        assertThat(binary.getSuccessfulRecords()).isEqualTo(500);
+        assertThat(csv.getSuccessfulRecords()).isEqualTo(300);
+        assertThat(upsert.getSuccessfulRecords()).isEqualTo(5);
+        assertThat(upsert.getCollapsedRecords()).isEqualTo(1);
+        assertThat(upsert.getFailedRecords()).isZero();
+        assertThat(getProductIds()).hasSize(803);
+        assertThat(getProductName(binaryChunk.get(1).getSku())).isEqualTo("Product 1");
+        assertThat(getProductDescription(binaryChunk.get(1).getSku())).isNull();
+        assertThat(getProductColumn(binaryChunk.get(2).getSku(), "price")).isEqualTo("99.90");
+        assertThat(getProductName(csvChunk.get(0).getSku())).isEqualTo("Line 1\nLine \"2\", end");
+        assertThat(getProductName(binaryChunk.get(0).getSku())).isEqualTo("Renamed twice");
+        assertThat(getProductColumn(binaryChunk.get(0).getSku(), "price")).isEqualTo("0.50");
+        assertThat(getProductDescription("SKU-COLUMNAR-NEW")).isEqualTo("Описание");
+        assertThatThrownBy(() -> buffer.add(withPrice(generateProduct(0), "1.001")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should run batch operations on orders through generated row binder")
+    void shouldProcessOrdersThroughGeneratedBinder() throws Exception {
+        // Given - заказы без id, статуса и даты: значения дают DEFAULT колонок
+        long userId = createUser();
+        RowBinder<Order> binder =
+                RowBinderGenerator.forEntity(connection, "mentee_power.orders", Order.class);
+        MappedBatchProcessor<Order> processor = new MappedBatchProcessor<>(connection, binder);
+        List<Order> orders = new ArrayList<>();
+        List<Order> copied = new ArrayList<>();
+        for (int i = 0; i < 1_500; i++) {
+            orders.add(Order.builder().userId(userId).total(BigDecimal.valueOf(100 + i)).build());
+        }
+        for (int i = 0; i < 500; i++) {
+            copied.add(
+                    Order.builder()
+                            .userId(userId)
+                            .total(BigDecimal.valueOf(10))
+                            .region("KAZAN")
+                            .build());
+        }
+
+        // When
+        BatchResult inserted = processor.insert(orders);
+        BatchResult loaded = processor.loadWithCopy(copied);
+        List<Long> ids = getOrderIds(userId);
+        List<Order> changes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            changes.add(
+                    Order.builder()
+                            .id(ids.get(i))
+                            .userId(userId)
+                            .total(BigDecimal.ONE)
+                            .region("SPB")
+                            .build());
+        }
+        BatchResult updated = processor.update(changes);
+        BatchResult upserted =
+                processor.upsert(
+                        List.of(
+                                Order.builder()
+                                        .id(ids.get(10))
+                                        .userId(userId)
+                                        .total(BigDecimal.TEN)
+                                        .build(),
+                                Order.builder().userId(userId).total(BigDecimal.TEN).build()));
+        BatchResult deleted = processor.delete(ids.subList(1_990, 2_000));
+        DetailedBatchResult detailed =
+                processor.processWithDetails(
+                        List.of(
+                                Order.builder().userId(userId).total(BigDecimal.ONE).build(),
+                                Order.builder().userId(-1L).total(BigDecimal.ONE).build()),
+                        BatchOperation.INSERT);
+
+        // Then
+        assertThat(RowBinderGenerator.forEntity(connection, "mentee_power.orders", Order.class))
+                .isSameAs(binder);
+        assertThat(inserted.getSuccessfulRecords()).isEqualTo(1_500);
+        assertThat(loaded.getSuccessfulRecords()).isEqualTo(500);
+        assertThat(updated.getSuccessfulRecords()).isEqualTo(10);
+        assertThat(upserted.getSuccessfulRecords()).isEqualTo(2);
+        assertThat(deleted.getSuccessfulRecords()).isEqualTo(10);
+        assertThat(detailed.getSuccessfulRecords()).isEqualTo(1);
+        assertThat(detailed.getFailedRecords()).isEqualTo(1);
+        assertThat(getOrderIds(userId)).hasSize(1_992);
+        try (var ps =
+                connection.prepareStatement(
+                        "SELECT count(*) FILTER"
+                                + " (WHERE status = 'PENDING' AND created_at IS NOT NULL),"
+                                + " count(*) FILTER (WHERE region = 'KAZAN'),"
+                                + " count(*) FILTER (WHERE region = 'SPB' AND total = 1),"
+                                + " count(*) FILTER (WHERE region = 'MOSCOW' AND total = 10)"
+                                + " FROM mentee_power.orders WHERE user_id = ?")) {
+            ps.setLong(1, userId);
+            try (var rs = ps.executeQuery()) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(1_992);
+                assertThat(rs.getInt(2)).isEqualTo(490);
+                assertThat(rs.getInt(3)).isEqualTo(10);
+                assertThat(rs.getInt(4)).isEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject keyed operations up front and apply defaults in mapped COPY")
+    void shouldRejectUnsupportedBinderOperations() throws Exception {
+        // Given - таблица без первичного ключа, ее тезка по шаблону LIKE ('_' - любой символ)
+        // и COPY заказов с частично заданным status
+        long userId = createUser();
+        try (var stmt = connection.createStatement()) {
+            stmt.execute(
+                    "CREATE TABLE IF NOT EXISTS mentee_power.order_totals"
+                            + " (user_id BIGINT NOT NULL, total DECIMAL(10,2) NOT NULL)");
+            stmt.execute(
+                    "CREATE TABLE IF NOT EXISTS mentee_power.orderstotals"
+                            + " (user_id BIGINT NOT NULL, region VARCHAR(50))");
+        }
+        RowBinder<Order> keyless =
+                RowBinderGenerator.forEntity(connection, "mentee_power.order_totals", Order.class);
+        MappedBatchProcessor<Order> totals = new MappedBatchProcessor<>(connection, keyless);
+        Order total = Order.builder().userId(userId).total(BigDecimal.ONE).build();
+        RowBinder<Order> binder =
+                RowBinderGenerator.forEntity(connection, "mentee_power.orders", Order.class);
+        List<Order> copied =
+                List.of(
+                        Order.builder().userId(userId).total(BigDecimal.ONE).build(),
+                        Order.builder()
+                                .userId(userId)
+                                .total(BigDecimal.ONE)
+                                .status("SHIPPED")
+                                .build());
+
+        try {
+            // When
+            BatchResult inserted = totals.insert(List.of(total));
+            BatchResult loaded =
+                    new MappedBatchProcessor<>(connection, binder).loadWithCopy(copied);
+
+            // Then
+            assertThat(inserted.getSuccessfulRecords()).isEqualTo(1);
+            assertThat(keyless.getColumns())
+                    .extracting(MappedColumn::getName)
+                    .containsExactly("user_id", "total");
+            assertThat(keyless.supports(BatchOperation.UPDATE)).isFalse();
+            assertThat(keyless.getKeyType()).isNull();
+            assertThat(binder.getKeyType()).isEqualTo(Long.class);
+            assertThatThrownBy(() -> totals.update(List.of(total)))
+                    .isInstanceOf(SQLFeatureNotSupportedException.class);
+            assertThatThrownBy(() -> totals.delete(List.of(1L)))
+                    .isInstanceOf(SQLFeatureNotSupportedException.class);
+            assertThatThrownBy(
+                            () -> totals.processWithDetails(List.of(total), BatchOperation.UPSERT))
+                    .isInstanceOf(SQLFeatureNotSupportedException.class);
+            // Быстрые пути знают только products
+            assertThatThrownBy(() -> new OptimizedBatchProcessor(connection).insert(copied))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(
+                            () ->
+                                    new PostgresCopyProcessor(connection)
+                                            .upsertWithCopy(copied.iterator(), CopyFormat.CSV))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThat(loaded.getSuccessfulRecords()).isEqualTo(2);
+            try (var ps =
+                    connection.prepareStatement(
+                            "SELECT count(*) FILTER (WHERE status = 'PENDING'),"
+                                    + " count(*) FILTER (WHERE status = 'SHIPPED')"
+                                    + " FROM mentee_power.orders WHERE user_id = ?")) {
+                ps.setLong(1, userId);
+                try (var rs = ps.executeQuery()) {
+                    rs.next();
+                    assertThat(rs.getInt(1)).isEqualTo(1);
+                    assertThat(rs.getInt(2)).isEqualTo(1);
+                }
+            }
+        } finally {
+            try (var stmt = connection.createStatement()) {
+                stmt.execute("DROP TABLE mentee_power.order_totals, mentee_power.orderstotals");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should accumulate small batches in long-lived session")
+    void shouldAccumulateSmallBatchesInSession() throws Exception {
+        // Given - поток мелких порций: 50 вызовов по 5 записей, коммит каждые 100 записей
+        List<Product> products = generateProducts(250);
+        BatchSession session = new BatchSession(connection, null, 100, 0);
+        int committedOnAdd = 0;
+        int visibleBeforeClose;
+
+        // When
+        try (session) {
+            for (int i = 0; i < products.size(); i += 5) {
+                committedOnAdd +=
+                        session.addAll(products.subList(i, i + 5), BatchOperation.INSERT);
+            }
+            // Последние 50 записей еще не отправлены
+            List<Long> ids = getProductIds();
+            visibleBeforeClose = ids.size();
+            Product renamed = products.get(0);
+            renamed.setId(ids.get(0));
+            renamed.setName("Renamed in session");
+            session.add(renamed, BatchOperation.UPDATE);
+            session.add(ids.get(1), BatchOperation.DELETE);
+            session.add("not a product", BatchOperation.INSERT);
+        }
+        BatchResult result = session.getResult();
+
+        BatchSession failing = new BatchSession(connection, null, 100, 0);
+        List<Product> duplicates = generateProducts(3);
+        duplicates.add(generateProduct(0));
+        duplicates.get(3).setSku(products.get(2).getSku());
+        failing.addAll(duplicates, BatchOperation.INSERT);
+
+        // Then
+        assertThat(committedOnAdd).isEqualTo(200);
+        assertThat(visibleBeforeClose).isEqualTo(200);
+        assertThat(session.getCommits()).isEqualTo(3);
+        assertThat(result.getTotalRecords()).isEqualTo(253);
+        assertThat(result.getSuccessfulRecords()).isEqualTo(252);
+        assertThat(result.getFailedRecords()).isEqualTo(1);
+        assertThat(getProductIds()).hasSize(249);
+        assertThat(getProductName(products.get(0).getSku())).isEqualTo("Renamed in session");
+        assertThat(getProductName(products.get(1).getSku())).isNull();
+        assertThat(connection.getAutoCommit()).isTrue();
+        assertThatThrownBy(failing::flush).isInstanceOf(SQLException.class);
+        failing.close();
+        assertThat(failing.getResult().getFailedRecords()).isEqualTo(4);
+        assertThat(getProductIds()).hasSize(249);
+        assertThat(connection.getAutoCommit()).isTrue();
+        assertThatThrownBy(() -> session.add(products.get(3), BatchOperation.INSERT))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Should insert all chunks through parallel workers")
+    void shouldInsertInParallel() throws Exception {
+        // Given
+        ConnectionPoolManager pool = createPool();
+        ParallelBatchProcessor processor = new ParallelBatchProcessor(pool, 4, 100);
+        try {
+            // When
+            BatchResult result = processor.insert(generateProducts(2_000));
+
+            // Then
+            assertThat(result.getTotalRecords()).isEqualTo(2_000);
+            assertThat(result.getSuccessfulRecords()).isEqualTo(2_000);
+            assertThat(result.getFailedRecords()).isZero();
+            assertThat(getProductIds()).hasSize(2_000);
+            assertThat(processor.getLastMetrics().getStrategy())
+                    .isEqualTo(ExecutionStrategy.PARALLEL);
+            assertThat(processor.getLastMetrics().getParallelism()).isEqualTo(4);
+            assertThat(processor.getLastMetrics().getThroughput()).isPositive();
+        } finally {
+            processor.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop parallel worker after its connection breaks")
+    void shouldStopParallelWorkerOnBrokenConnection() throws Exception {
+        // Given - соединение первого воркера разорвано сервером до первого чанка;
+        // чанков достаточно, чтобы он успел взять хотя бы один
+        ConnectionPoolManager pool = createPool();
+        FaultyPool faultyPool = new FaultyPool(pool, connection, 0, 1);
+        ParallelBatchProcessor processor = new ParallelBatchProcessor(faultyPool, 4, 100);
+        try {
+            // When
+            BatchResult result = processor.insert(generateProducts(10_000));
+
+            // Then - потерян только чанк, взятый воркером с разорванным соединением
+            assertThat(result.getSuccessfulRecords()).isEqualTo(9_900);
+            assertThat(result.getFailedRecords()).isEqualTo(100);
+            assertThat(getProductIds()).hasSize(9_900);
+        } finally {
+            processor.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should load all chunks through encoder and sender pipeline")
+    void shouldLoadThroughPipeline() throws Exception {
+        // Given
+        ConnectionPoolManager pool = createPool();
+        PipelinedBatchProcessor processor =
+                new PipelinedBatchProcessor(pool, 1, 2, 4, 500, CopyFormat.BINARY);
+        try {
+            // When
+            BatchResult result = processor.insert(generateProducts(5_000));
+
+            // Then
+            assertThat(result.getSuccessfulRecords()).isEqualTo(5_000);
+            assertThat(result.getFailedRecords()).isZero();
+            assertThat(getProductIds()).hasSize(5_000);
+            assertThat(processor.getLastMetrics().getParallelism()).isEqualTo(2);
+            assertThat(processor.getLastMetrics().getStrategy())
+                    .isEqualTo(ExecutionStrategy.PIPELINED);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should hand chunks to live senders and fail when none are left")
+    void shouldHandChunksToLiveSenders() throws Exception {
+        // Given - один из двух отправителей не получает соединение
+        ConnectionPoolManager pool = createPool();
+        try {
+            PipelinedBatchProcessor oneFailing =
+                    new PipelinedBatchProcessor(
+                            new FaultyPool(pool, connection, 1, 0),
+                            1,
+                            2,
+                            4,
+                            500,
+                            CopyFormat.BINARY);
+
+            // When
+            BatchResult result = oneFailing.insert(generateProducts(5_000));
+
+            // Then - все фрагменты отправил оставшийся отправитель
+            assertThat(result.getSuccessfulRecords()).isEqualTo(5_000);
+            assertThat(getProductIds()).hasSize(5_000);
+
+            // When - соединение не получил ни один отправитель
+            PipelinedBatchProcessor allFailing =
+                    new PipelinedBatchProcessor(
+                            new FaultyPool(pool, connection, 2, 0),
+                            1,
+                            2,
+                            4,
+                            500,
+                            CopyFormat.BINARY);
+
+            // Then - потеря данных видна вызывающему
+            assertThatThrownBy(() -> allFailing.insert(generateProducts(5_000)))
+                    .isInstanceOf(SQLException.class)
+                    .hasMessageContaining("загружено 0 из 5000");
+            assertThat(getProductIds()).hasSize(5_000);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should run concurrent pipeline loads without sharing threads")
+    void shouldRunConcurrentPipelineLoads() throws Exception {
+        // Given - кодировщиков больше, чем отправителей, и мало буферов
+        ConnectionPoolManager pool = createPool();
+        PipelinedBatchProcessor processor =
+                new PipelinedBatchProcessor(pool, 3, 1, 1, 200, CopyFormat.BINARY);
+        try {
+            // When
+            List<CompletableFuture<BatchResult>> runs = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                List<Product> products = generateProducts(5_000);
+                runs.add(
+                        CompletableFuture.supplyAsync(
+                                () -> {
+                                    try {
+                                        return processor.insert(products);
+                                    } catch (SQLException e) {
+                                        throw new IllegalStateException(e);
+                                    }
+                                }));
+            }
+
+            // Then - оба запуска завершаются, а не ждут друг друга
+            for (CompletableFuture<BatchResult> run : runs) {
+                assertThat(run.get(60, TimeUnit.SECONDS).getSuccessfulRecords())
+                        .isEqualTo(5_000);
+            }
+            assertThat(getProductIds()).hasSize(10_000);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     @DisplayName("Should compare all batch processors performance")
     void shouldCompareAllBatchProcessors() throws Exception {
@@ -223,21 +1521,146 @@ public class BatchProcessorIntegrationTest {
                 copyDuration, copyResult.getRecordsPerSecond());
     }
 
+    private BatchMetrics batchMetrics(
+            int batchSize, long executionTimeNanos, int parallelism, double throughput) {
+        ExecutionStrategy strategy =
+                parallelism > 1 ? ExecutionStrategy.PARALLEL : ExecutionStrategy.SEQUENTIAL;
+        return BatchMetrics.builder()
+                .batchSize(batchSize)
+                .executionTimeNanos(executionTimeNanos)
+                .strategy(strategy)
+                .parallelism(parallelism)
+                .throughput(throughput)
+                .build();
+    }
+
     private List<Product> generateProducts(int count) {
         List<Product> products = new ArrayList<>();
         for (int i = 0; i < count; i++) {
-            products.add(
-                    Product.builder()
-                            .sku("SKU-" + UUID.randomUUID().toString())
-                            .name("Product " + i)
-                            .description("Description for product " + i)
-                            .price(BigDecimal.valueOf(100 + i % 1000))
-                            .categoryId(1L)
-                            .build());
+            products.add(generateProduct(i));
         }
         return products;
     }
 
+    private Product generateProduct(int i) {
+        return Product.builder()
+                .sku("SKU-" + UUID.randomUUID().toString())
+                .name("Product " + i)
+                .description("Description for product " + i)
+                .price(BigDecimal.valueOf(100 + i % 1000))
+                .categoryId(1L)
+                .build();
+    }
+
+    private Product withoutDescription(Product product) {
+        return Product.builder()
+                .sku(product.getSku())
+                .name(product.getName())
+                .price(product.getPrice())
+                .categoryId(product.getCategoryId())
+                .build();
+    }
+
+    private Product withPrice(Product product, String price) {
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+
+    private String getProductName(String sku) throws SQLException {
+        return getProductColumn(sku, "name");
+    }
+
+    private String getProductDescription(String sku) throws SQLException {
+        return getProductColumn(sku, "description");
+    }
+
+    private String getProductColumn(String sku, String column) throws SQLException {
+        try (var ps =
+                connection.prepareStatement(
+                        "SELECT " + column + " FROM mentee_power.products WHERE sku = ?")) {
+            ps.setString(1, sku);
+            try (var rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private OrderGraph orderGraph(Order order, long productId) {
+        OrderItem item =
+                OrderItem.builder().productId(productId).quantity(1).price(BigDecimal.TEN).build();
+        return OrderGraph.builder().order(order).items(new ArrayList<>(List.of(item))).build();
+    }
+
+    private long createUser() throws SQLException {
+        try (var ps =
+                connection.prepareStatement(
+                        "INSERT INTO mentee_power.users (name, email) VALUES (?, ?)"
+                                + " RETURNING id")) {
+            ps.setString(1, "Batch User");
+            ps.setString(2, UUID.randomUUID() + "@example.com");
+            try (var rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private List<Long> getOrderIds(long userId) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (var ps =
+                connection.prepareStatement(
+                        "SELECT id FROM mentee_power.orders WHERE user_id = ? ORDER BY id")) {
+            ps.setLong(1, userId);
+            try (var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private List<String> getProductIndexes() throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (var stmt = connection.createStatement();
+                var rs =
+                        stmt.executeQuery(
+                                "SELECT indexname FROM pg_indexes WHERE schemaname ="
+                                        + " 'mentee_power' AND tablename = 'products'")) {
+            while (rs.next()) {
+                indexes.add(rs.getString(1));
+            }
+        }
+        return indexes;
+    }
+
+    private ConnectionPoolManager createPool() throws Exception {
+        Properties props = new Properties();
+        String jdbc = postgres.getJdbcUrl();
+        String sep = jdbc.contains("?") ? "&" : "?";
+        props.setProperty(
+                "db.url",
+                jdbc
+                        + sep
+                        + "user="
+                        + postgres.getUsername()
+                        + "&password="
+                        + postgres.getPassword()
+                        + "&currentSchema=mentee_power");
+        props.setProperty("db.username", postgres.getUsername());
+        props.setProperty("db.driver", "org.postgresql.Driver");
+        props.setProperty("db.show-sql", "false");
+        System.setProperty("db.password", postgres.getPassword());
+
+        return new HikariConnectionPoolManager(
+                new ApplicationConfig(props, new ConfigFilePath()) {
+                    @Override
+                    public void load(String path) {
+                        /* конфигурация задана свойствами выше */
+                    }
+                });
+    }
+
     private List<Long> getProductIds() throws SQLException {
         List<Long> ids = new ArrayList<>();
         try (var stmt = connection.createStatement();
@@ -248,4 +1671,90 @@ public class BatchProcessorIntegrationTest {
         }
         return ids;
     }
+
+    /**
+     * Пул, который отказывает в первых соединениях или выдает соединения,
+     * разорванные сервером.
+     */
+    private static class FaultyPool implements ConnectionPoolManager {
+        private final ConnectionPoolManager delegate;
+        private final Connection admin;
+        private final AtomicInteger connectionsToFail;
+        private final AtomicInteger connectionsToBreak;
+
+        FaultyPool(
+                ConnectionPoolManager delegate,
+                Connection admin,
+                int connectionsToFail,
+                int connectionsToBreak) {
+            this.delegate = delegate;
+            this.admin = admin;
+            this.connectionsToFail = new AtomicInteger(connectionsToFail);
+            this.connectionsToBreak = new AtomicInteger(connectionsToBreak);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (connectionsToFail.getAndDecrement() > 0) {
+                throw new SQLException("Пул недоступен", "08001");
+            }
+            Connection conn = delegate.getConnection();
+            if (connectionsToBreak.getAndDecrement() > 0) {
+                terminate(conn);
+            }
+            return conn;
+        }
+
+        private void terminate(Connection conn) throws SQLException {
+            int pid;
+            try (var stmt = conn.createStatement();
+                    var rs = stmt.executeQuery("SELECT pg_backend_pid()")) {
+                rs.next();
+                pid = rs.getInt(1);
+            }
+            // Разрыв со стороны сервера: пул о нем не знает и выдает соединение
+            try (var ps = admin.prepareStatement("SELECT pg_terminate_backend(?)")) {
+                ps.setInt(1, pid);
+                ps.execute();
+            }
+            try (var ps =
+                    admin.prepareStatement("SELECT count(*) FROM pg_stat_activity WHERE pid = ?")) {
+                ps.setInt(1, pid);
+                while (true) {
+                    try (var rs = ps.executeQuery()) {
+                        rs.next();
+                        if (rs.getInt(1) == 0) {
+                            return;
+                        }
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        @Override
+        public PoolStatistics getStatistics() {
+            return delegate.getStatistics();
+        }
+
+        @Override
+        public HealthCheckResult performHealthCheck() {
+            return delegate.performHealthCheck();
+        }
+
+        @Override
+        public void refreshPool() {
+            delegate.refreshPool();
+        }
+
+        @Override
+        public void resizePool(int minSize, int maxSize) {
+            delegate.resizePool(minSize, maxSize);
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
 }
@@ -3,12 +3,15 @@ package ru.mentee.power.batch;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.IntStream;
 import liquibase.Liquibase;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
@@ -18,13 +21,18 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import ru.mentee.power.batch.impl.BasicBatchProcessor;
 import ru.mentee.power.batch.impl.OptimizedBatchProcessor;
+import ru.mentee.power.batch.impl.PostgresCopyProcessor;
 import ru.mentee.power.batch.interfaces.BatchProcessor;
 import ru.mentee.power.batch.model.BatchResult;
+import ru.mentee.power.batch.model.CopyFormat;
 import ru.mentee.power.model.Product;
 
 @Testcontainers
@@ -152,21 +160,55 @@ public class BatchProcessorPerformanceTest {
         assertThat(secondResult.getSuccessfulRecords()).isEqualTo(5_000);
     }
 
+    @ParameterizedTest(name = "CSV vs BINARY COPY: {0} записей")
+    @ValueSource(ints = {1_000_000, 10_000_000})
+    @EnabledIfSystemProperty(named = "batch.benchmark", matches = "true")
+    @DisplayName("Should compare CSV and binary COPY formats on large catalogs")
+    void shouldCompareCopyFormats(int count) throws Exception {
+        PostgresCopyProcessor processor = new PostgresCopyProcessor(connection);
+
+        for (CopyFormat format : CopyFormat.values()) {
+            try (var stmt = connection.createStatement()) {
+                stmt.execute("TRUNCATE mentee_power.products CASCADE");
+            }
+
+            // Записи генерируются лениво, чтобы 10M строк не занимали кучу
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            BatchResult result =
+                    processor.loadWithCopy(
+                            IntStream.range(0, count).mapToObj(this::generateProduct), format);
+            long cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+
+            assertThat(result.getSuccessfulRecords()).isEqualTo(count);
+            System.out.printf(
+                    "COPY %s, %d записей: %d ms, %.2f rec/s, клиентский CPU %.1f нс/запись%n",
+                    format,
+                    count,
+                    result.getExecutionTimeMs(),
+                    result.getRecordsPerSecond(),
+                    (double) cpuNanos / count);
+        }
+    }
+
     private List<Product> generateProducts(int count) {
         List<Product> products = new ArrayList<>();
         for (int i = 0; i < count; i++) {
-            products.add(
-                    Product.builder()
-                            .sku("SKU-" + UUID.randomUUID().toString())
-                            .name("Product " + i)
-                            .description("Description for product " + i)
-                            .price(BigDecimal.valueOf(100 + i % 1000))
-                            .categoryId(1L)
-                            .build());
+            products.add(generateProduct(i));
         }
         return products;
     }
 
+    private Product generateProduct(int i) {
+        return Product.builder()
+                .sku("SKU-" + UUID.randomUUID().toString())
+                .name("Product " + i)
+                .description("Description for product " + i)
+                .price(BigDecimal.valueOf(100 + i % 1000))
+                .categoryId(1L)
+                .build();
+    }
+
     private List<Product> generateProductsWithSameSku(List<Product> original) {
         List<Product> products = new ArrayList<>();
         for (Product originalProduct : original) {
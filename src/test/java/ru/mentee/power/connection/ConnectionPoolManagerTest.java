@@ -2,15 +2,22 @@
 package ru.mentee.power.connection;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,8 +28,16 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import ru.mentee.power.config.ApplicationConfig;
 import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.connection.impl.FailoverConnectionPoolManager;
 import ru.mentee.power.connection.impl.HikariConnectionPoolManager;
+import ru.mentee.power.connection.impl.PoolAutoSizer;
 import ru.mentee.power.connection.interfaces.ConnectionPoolManager;
+import ru.mentee.power.connection.model.AutoSizingPolicy;
+import ru.mentee.power.connection.model.CircuitState;
+import ru.mentee.power.connection.model.DatabaseNode;
+import ru.mentee.power.connection.model.HealthCheckResult;
+import ru.mentee.power.connection.model.LatencySnapshot;
+import ru.mentee.power.connection.model.NodeRole;
 import ru.mentee.power.connection.model.PoolStatistics;
 import ru.mentee.power.exception.SASTException;
 
@@ -195,6 +210,179 @@ public class ConnectionPoolManagerTest {
         assertThat(healthCheck.getCheckTime()).isNotNull();
     }
 
+    @Test
+    @DisplayName("Should report measured latency percentiles in health check")
+    void shouldReportMeasuredLatencyPercentiles() throws Exception {
+        // Given - 20 соединений, каждое занято около 20 мс
+        for (int i = 0; i < 20; i++) {
+            try (Connection conn = pool.getConnection()) {
+                Thread.sleep(20);
+            }
+        }
+
+        // When
+        HealthCheckResult healthCheck = pool.performHealthCheck();
+
+        // Then
+        LatencySnapshot usage = healthCheck.getUsageLatency();
+        LatencySnapshot acquisition = healthCheck.getAcquisitionLatency();
+        assertThat(usage.getCount()).isGreaterThanOrEqualTo(20);
+        assertThat(usage.getP50Micros()).isGreaterThanOrEqualTo(15_000);
+        assertThat(usage.getP99Micros()).isBetween(usage.getP50Micros(), usage.getMaxMicros());
+        assertThat(healthCheck.getAverageConnectionUsageTime()).isGreaterThanOrEqualTo(15);
+        assertThat(acquisition.getCount()).isGreaterThanOrEqualTo(20);
+        assertThat(acquisition.getP999Micros()).isLessThanOrEqualTo(acquisition.getMaxMicros());
+        assertThat(healthCheck.getCreationLatency().getCount()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should shrink idle pool and grow it under load")
+    void shouldAutoSizePoolFromUsage() throws Exception {
+        // Given - короткие окна, чтобы контур успел сработать за время теста
+        PoolAutoSizer sizer =
+                ((HikariConnectionPoolManager) pool)
+                        .enableAutoSizing(
+                                AutoSizingPolicy.builder()
+                                        .minPoolSize(2)
+                                        .maxPoolSize(30)
+                                        .sampleIntervalMs(50)
+                                        .evaluationIntervalMs(200)
+                                        .growCooldownMs(0)
+                                        .shrinkCooldownMs(0)
+                                        .build());
+
+        // When - пул простаивает, затем 10 потоков непрерывно держат соединения по 50 мс
+        int idleSize = awaitSize(sizer, size -> size == 2);
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        AtomicBoolean running = new AtomicBoolean(true);
+        int loadedSize;
+        try {
+            for (int i = 0; i < 10; i++) {
+                executor.submit(
+                        () -> {
+                            while (running.get()) {
+                                try (Connection conn = pool.getConnection()) {
+                                    Thread.sleep(50);
+                                }
+                            }
+                            return null;
+                        });
+            }
+            loadedSize = awaitSize(sizer, size -> size >= 10);
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        // Then - очередь к пулу из двух соединений дает цель около 10 * 1.25
+        assertThat(idleSize).isEqualTo(2);
+        assertThat(loadedSize).isBetween(10, 30);
+        assertThat(sizer.getLastMetrics().getTotalConnectionsAcquired()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should route reads to least loaded replica and writes to primary")
+    void shouldRouteReadsToReplicas() throws Exception {
+        // Given - три узла на одном контейнере: маршрутизация не зависит от репликации
+        FailoverConnectionPoolManager router =
+                new FailoverConnectionPoolManager(
+                        List.of(
+                                node("primary", NodeRole.PRIMARY),
+                                node("replica-a", NodeRole.REPLICA),
+                                node("replica-b", NodeRole.REPLICA)));
+        List<Connection> reads = new ArrayList<>();
+        try {
+            // When - четыре одновременных чтения и одна запись
+            for (int i = 0; i < 4; i++) {
+                reads.add(router.getConnection(true));
+            }
+            boolean writeReadOnly;
+            try (Connection write = router.getConnection()) {
+                writeReadOnly = write.isReadOnly();
+            }
+
+            // Then - чтения поровну на реплики, запись на основной узел
+            for (Connection read : reads) {
+                assertThat(read.isReadOnly()).isTrue();
+            }
+            assertThat(writeReadOnly).isFalse();
+            assertThat(router.getNodeMetrics(0).getConnectionsAcquired()).isEqualTo(1);
+            assertThat(router.getNodeMetrics(1).getConnectionsAcquired()).isEqualTo(2);
+            assertThat(router.getNodeMetrics(2).getConnectionsAcquired()).isEqualTo(2);
+        } finally {
+            for (Connection read : reads) {
+                read.close();
+            }
+            router.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should detect failed node by probes within seconds and restore it")
+    void shouldDetectFailedNodeByProbes() throws Exception {
+        // Given - узел под отдельной ролью, которой можно запретить вход
+        try (Connection admin = pool.getConnection();
+                Statement stmt = admin.createStatement()) {
+            stmt.execute("CREATE ROLE flaky LOGIN PASSWORD 'flaky'");
+        }
+        DatabaseNode flaky =
+                DatabaseNode.builder()
+                        .jdbcUrl(postgres.getJdbcUrl())
+                        .username("flaky")
+                        .password("flaky")
+                        .nodeName("flaky")
+                        .enabled(true)
+                        .role(NodeRole.REPLICA)
+                        .build();
+        FailoverConnectionPoolManager router =
+                new FailoverConnectionPoolManager(
+                        List.of(node("primary", NodeRole.PRIMARY), flaky));
+        try {
+            awaitCondition(
+                    "первая успешная проверка узла flaky",
+                    () -> router.getNodeProbeLatency(1).getCount() > 0);
+
+            // When - узел перестает принимать соединения
+            long failedAt = System.currentTimeMillis();
+            try (Connection admin = pool.getConnection();
+                    Statement stmt = admin.createStatement()) {
+                stmt.execute("ALTER ROLE flaky NOLOGIN");
+                stmt.execute(
+                        "SELECT pg_terminate_backend(pid) FROM pg_stat_activity"
+                                + " WHERE usename = 'flaky'");
+            }
+            awaitCondition(
+                    "исключение узла flaky", () -> router.getNodeState(1) != CircuitState.CLOSED);
+            long detectionMs = System.currentTimeMillis() - failedAt;
+
+            try (Connection admin = pool.getConnection();
+                    Statement stmt = admin.createStatement()) {
+                stmt.execute("ALTER ROLE flaky LOGIN");
+            }
+            awaitCondition(
+                    "восстановление узла flaky",
+                    () -> router.getNodeState(1) == CircuitState.CLOSED);
+
+            // Then - отказ замечен за пару интервалов проверки, основной узел не затронут
+            assertThat(detectionMs).isLessThan(3000);
+            assertThat(router.getNodeState(1)).isEqualTo(CircuitState.CLOSED);
+            assertThat(router.getNodeState(0)).isEqualTo(CircuitState.CLOSED);
+            LatencySnapshot probeLatency = router.getNodeProbeLatency(0);
+            assertThat(probeLatency.getCount()).isPositive();
+            assertThat(probeLatency.getP50Micros()).isPositive();
+        } finally {
+            router.shutdown();
+            try (Connection admin = pool.getConnection();
+                    Statement stmt = admin.createStatement()) {
+                stmt.execute(
+                        "SELECT pg_terminate_backend(pid) FROM pg_stat_activity"
+                                + " WHERE usename = 'flaky'");
+                stmt.execute("DROP ROLE flaky");
+            }
+        }
+    }
+
     @Test
     @DisplayName("Should resize pool dynamically")
     void shouldResizePoolDynamically() throws SQLException {
@@ -224,4 +412,35 @@ public class ConnectionPoolManagerTest {
             throw new RuntimeException("Пул не работает после refresh", e);
         }
     }
+
+    private int awaitSize(PoolAutoSizer sizer, IntPredicate condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.test(sizer.getCurrentMaxSize())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        return sizer.getCurrentMaxSize();
+    }
+
+    private void awaitCondition(String description, Supplier<Boolean> condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.get()) {
+            if (System.currentTimeMillis() >= deadline) {
+                fail("Не дождались за 10 с: " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private DatabaseNode node(String name, NodeRole role) {
+        return DatabaseNode.builder()
+                .jdbcUrl(postgres.getJdbcUrl())
+                .username(postgres.getUsername())
+                .password(postgres.getPassword())
+                .nodeName(name)
+                .enabled(true)
+                .role(role)
+                .build();
+    }
 }
@@ -0,0 +1,114 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.connection.model.CircuitBreakerPolicy;
+import ru.mentee.power.connection.model.CircuitState;
+
+class CircuitBreakerTest {
+
+    // Управляемые часы: пауза проверяется сдвигом времени, а не ожиданием
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker =
+            new CircuitBreaker(
+                    "replica",
+                    CircuitBreakerPolicy.builder()
+                            .minimumCalls(3)
+                            .failureRateThreshold(0.5)
+                            .initialBackoffMs(100)
+                            .maxBackoffMs(1000)
+                            .build(),
+                    now::get);
+
+    @Test
+    @DisplayName("Should open only when failure rate in window reaches threshold")
+    void shouldOpenOnFailureRate() {
+        // Given - одна неудача среди успехов не исключает узел
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitState.CLOSED);
+
+        // When - доля отказов достигает половины
+        breaker.onFailure();
+
+        // Then
+        assertThat(breaker.getState()).isEqualTo(CircuitState.OPEN);
+        assertThat(breaker.isAvailable()).isFalse();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should grant a single trial after backoff and close on success")
+    void shouldCloseAfterSuccessfulTrial() {
+        // Given - пауза 100 мс с разбросом 20% еще не истекла через 79 мс
+        trip();
+        advanceMillis(79);
+        assertThat(breaker.tryAcquire()).isFalse();
+        advanceMillis(41);
+
+        // When - после паузы пробу получает только первый запрос
+        boolean trial = breaker.tryAcquire();
+        boolean concurrent = breaker.tryAcquire();
+        breaker.onSuccess();
+
+        // Then
+        assertThat(trial).isTrue();
+        assertThat(concurrent).isFalse();
+        assertThat(breaker.getState()).isEqualTo(CircuitState.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should double backoff after failed trial")
+    void shouldBackOffAfterFailedTrial() {
+        // Given
+        trip();
+        advanceMillis(120);
+        assertThat(breaker.tryAcquire()).isTrue();
+
+        // When
+        breaker.onFailure();
+
+        // Then - пауза 200 мс с разбросом 20%
+        assertThat(breaker.getState()).isEqualTo(CircuitState.OPEN);
+        assertThat(breaker.getRetryDelayMillis()).isBetween(159L, 240L);
+        advanceMillis(159);
+        assertThat(breaker.isAvailable()).isFalse();
+        advanceMillis(81);
+        assertThat(breaker.isAvailable()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should forget failures that slid out of the window")
+    void shouldForgetFailuresOutsideWindow() {
+        // Given - две неудачи, затем окно в 10 с целиком сдвигается
+        breaker.onFailure();
+        breaker.onFailure();
+        advanceMillis(10_000);
+
+        // When
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        // Then - в окне одна неудача из трех
+        assertThat(breaker.getState()).isEqualTo(CircuitState.CLOSED);
+    }
+
+    private void advanceMillis(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private void trip() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitState.OPEN);
+    }
+}
@@ -0,0 +1,57 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.time.Duration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.connection.model.LatencySnapshot;
+
+class PoolAutoSizerTest {
+
+    @Test
+    @DisplayName("Should size pool from sub-millisecond borrows")
+    void shouldSizeFromSubMillisecondBorrows() {
+        // Given - 50 000 выдач за секунду, использование 300 мкс и ожидание 100 мкс
+        LatencySnapshot acquisition = latency(100);
+        LatencySnapshot usage = latency(300);
+
+        // When
+        double demand = PoolAutoSizer.demand(50_000, Duration.ofSeconds(1), acquisition, usage);
+        int target = PoolAutoSizer.targetSize(5, demand, 1.2);
+
+        // Then - 0.05 выдачи в мкс * 400 мкс = 20 соединений, с запасом 20% - 24
+        assertThat(demand).isCloseTo(20.0, within(1e-9));
+        assertThat(target).isEqualTo(24);
+    }
+
+    @Test
+    @DisplayName("Should keep peak active connections when demand is lower")
+    void shouldKeepPeakWhenDemandIsLower() {
+        // Given - 1 000 выдач за секунду по 250 мкс: в среднем занято 0.25 соединения
+        double demand =
+                PoolAutoSizer.demand(1_000, Duration.ofSeconds(1), latency(0), latency(250));
+
+        // When
+        int target = PoolAutoSizer.targetSize(3, demand, 1.5);
+
+        // Then
+        assertThat(demand).isCloseTo(0.25, within(1e-9));
+        assertThat(target).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should report no demand for an empty window")
+    void shouldReportNoDemandForEmptyWindow() {
+        assertThat(PoolAutoSizer.demand(100, Duration.ZERO, latency(100), latency(100)))
+                .isZero();
+        assertThat(PoolAutoSizer.demand(0, Duration.ofSeconds(1), latency(100), latency(100)))
+                .isZero();
+    }
+
+    private static LatencySnapshot latency(long meanMicros) {
+        return LatencySnapshot.builder().count(1).meanMicros(meanMicros).build();
+    }
+}